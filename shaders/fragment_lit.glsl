@@ -0,0 +1,31 @@
+// The fragment shader for vertex_lit.glsl. See that file for the features.
+
+out vec4 outputColor;
+
+uniform vec3 input_color;
+
+#ifdef INSTANCED
+flat in vec3 instanceColor;
+#endif
+
+#ifdef LIGHTING
+#ifdef FLAT
+flat in float intensity;
+#else
+in float intensity;
+#endif
+#endif
+
+void main()
+{
+#ifdef INSTANCED
+    vec3 color = instanceColor*input_color;
+#else
+    vec3 color = input_color;
+#endif
+#ifdef LIGHTING
+    outputColor = vec4(intensity*color, 0);
+#else
+    outputColor = vec4(color, 0);
+#endif
+}
@@ -4,7 +4,10 @@ in vec2 position;
 
 uniform mat3 model_matrix;
 
-uniform mat3 view_matrix;
+// The camera, shared by all shaders. See UniformBuffer.
+layout(std140) uniform Camera2D {
+    mat3 view_matrix;
+};
 
 void main() {
 	// The global position is in homogenous coordinates
@@ -4,9 +4,11 @@ in vec3 position;
 
 uniform mat4 model_matrix;
 
-uniform mat4 view_matrix;
-
-uniform mat4 proj_matrix;
+// The camera, shared by all shaders. See UniformBuffer.
+layout(std140) uniform Camera {
+    mat4 view_matrix;
+    mat4 proj_matrix;
+};
 
 void main() {
 	// The global position is in homogenous coordinates
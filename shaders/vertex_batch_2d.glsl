@@ -0,0 +1,22 @@
+
+// Incoming vertex position, already transformed into global coordinates
+in vec2 position;
+
+// Incoming vertex color
+in vec3 color;
+
+// The camera, shared by all shaders. See UniformBuffer.
+layout(std140) uniform Camera2D {
+    mat3 view_matrix;
+};
+
+out vec3 vertexColor;
+
+void main() {
+    // The position in camera coordinates
+    vec3 viewPosition = view_matrix * vec3(position, 1);
+
+    gl_Position = vec4(viewPosition.xy, 0, 1);
+
+    vertexColor = color;
+}
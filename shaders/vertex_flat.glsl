@@ -11,14 +11,19 @@ in vec3 normal;
 
 uniform mat4 model_matrix;
 
-uniform mat4 view_matrix;
-
-uniform mat4 proj_matrix;
-
-// Light properties
-uniform vec3 lightPos;
-uniform float lightIntensity;
-uniform float ambientIntensity;
+// The camera, shared by all shaders. See UniformBuffer.
+layout(std140) uniform Camera {
+    mat4 view_matrix;
+    mat4 proj_matrix;
+};
+
+// Light properties, shared by all shaders. See UniformBuffer.
+layout(std140) uniform Light {
+    vec3 lightPos; // The light position in world coordinates
+    float lightIntensity;
+    vec3 viewLightPos; // The same position in view coordinates, set by Shader
+    float ambientIntensity;
+};
 
 // Material properties
 uniform float ambientCoeff;
@@ -38,11 +43,11 @@ void main() {
     // The position in CVV coordinates
     gl_Position = proj_matrix * viewPosition;
 
-    // Compute the normal in world coordinates
-    vec3 m = normalize(model_matrix * vec4(normal, 0)).xyz;
+    // Compute the normal in view coordinates
+    vec3 m = normalize(view_matrix*model_matrix * vec4(normal, 0)).xyz;
 
     // Compute the s, v and r vectors
-    vec3 s = normalize(vec4(lightPos,1) - viewPosition).xyz;
+    vec3 s = normalize(viewLightPos - viewPosition.xyz);
     vec3 v = normalize(-viewPosition.xyz);
     vec3 r = normalize(reflect(-s,m));
 
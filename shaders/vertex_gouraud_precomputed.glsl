@@ -0,0 +1,67 @@
+// A shader that performs Gouraud shading using matrices precomputed on the
+// CPU.
+//
+// Unlike vertex_gouraud.glsl, this shader does not multiply the view and model
+// matrices or transform the light for every vertex. Normals are transformed by
+// the normal matrix (the inverse transpose of the model-view matrix), so
+// non-uniform scale is lit correctly.
+
+// Incoming vertex position
+in vec3 position;
+
+// Incoming normal
+in vec3 normal;
+
+uniform mat4 model_view_matrix;
+
+uniform mat3 normal_matrix;
+
+// The camera, shared by all shaders. See UniformBuffer.
+layout(std140) uniform Camera {
+    mat4 view_matrix;
+    mat4 proj_matrix;
+};
+
+// Light properties, shared by all shaders. See UniformBuffer.
+layout(std140) uniform Light {
+    vec3 lightPos; // The light position in world coordinates
+    float lightIntensity;
+    vec3 viewLightPos; // The same position in view coordinates, set by Shader
+    float ambientIntensity;
+};
+
+// Material properties
+uniform float ambientCoeff;
+uniform float diffuseCoeff;
+uniform float specularCoeff;
+uniform float phongExp;
+
+out float intensity;
+
+void main() {
+    // The position in camera coordinates
+    vec4 viewPosition = model_view_matrix * vec4(position, 1);
+
+    // The position in CVV coordinates
+    gl_Position = proj_matrix * viewPosition;
+
+    // Compute the normal in view coordinates
+    vec3 m = normalize(normal_matrix * normal);
+
+    // Compute the s, v and r vectors
+    vec3 s = normalize(viewLightPos - viewPosition.xyz);
+    vec3 v = normalize(-viewPosition.xyz);
+    vec3 r = normalize(reflect(-s,m));
+
+    float ambient = ambientIntensity*ambientCoeff;
+    float diffuse = max(lightIntensity*diffuseCoeff*dot(m,s), 0.0);
+    float specular;
+
+    // Only show specular reflections for the front face
+    if (dot(m,s) > 0)
+        specular = max(lightIntensity*specularCoeff*pow(dot(r,v),phongExp), 0.0);
+    else
+        specular = 0;
+
+    intensity = ambient + diffuse + specular;
+}
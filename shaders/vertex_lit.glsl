@@ -0,0 +1,104 @@
+// A shader with optional lighting, compiled into variants by ShaderVariants.
+//
+// Features (defined or not by ShaderVariants):
+//   LIGHTING - Light the surface with the Phong model, evaluated per vertex.
+//              Otherwise the pen color is used as is.
+//   FLAT     - Use one intensity for the whole face (flat shading) rather
+//              than interpolating it (Gouraud shading).
+//   SPECULAR - Include specular highlights.
+//   INSTANCED - Draw many copies of a mesh at once with
+//              TriangleMesh.drawInstanced(). Each copy has its own matrix,
+//              applied before the model matrix, and color, multiplied by
+//              the pen color.
+//
+// The model-view and normal matrices are computed on the CPU when the model
+// matrix is set, so non-uniform scale is lit correctly. Instance matrices
+// should only rotate, translate and scale uniformly, as their normals are
+// transformed by the instance matrix itself.
+
+// Incoming vertex position
+in vec3 position;
+
+// Incoming normal
+in vec3 normal;
+
+#ifdef INSTANCED
+// The matrix and color of each instance
+in mat4 instance_matrix;
+in vec3 instance_color;
+
+flat out vec3 instanceColor;
+#endif
+
+uniform mat4 model_view_matrix;
+
+uniform mat3 normal_matrix;
+
+// The camera, shared by all shaders. See UniformBuffer.
+layout(std140) uniform Camera {
+    mat4 view_matrix;
+    mat4 proj_matrix;
+};
+
+#ifdef LIGHTING
+// Light properties, shared by all shaders. See UniformBuffer.
+layout(std140) uniform Light {
+    vec3 lightPos; // The light position in world coordinates
+    float lightIntensity;
+    vec3 viewLightPos; // The same position in view coordinates, set by Shader
+    float ambientIntensity;
+};
+
+// Material properties
+uniform float ambientCoeff;
+uniform float diffuseCoeff;
+#ifdef SPECULAR
+uniform float specularCoeff;
+uniform float phongExp;
+#endif
+
+#ifdef FLAT
+flat out float intensity;
+#else
+out float intensity;
+#endif
+#endif
+
+void main() {
+#ifdef INSTANCED
+    vec4 modelPosition = instance_matrix * vec4(position, 1);
+    vec3 modelNormal = mat3(instance_matrix) * normal;
+    instanceColor = instance_color;
+#else
+    vec4 modelPosition = vec4(position, 1);
+    vec3 modelNormal = normal;
+#endif
+
+    // The position in camera coordinates
+    vec4 viewPosition = model_view_matrix * modelPosition;
+
+    // The position in CVV coordinates
+    gl_Position = proj_matrix * viewPosition;
+
+#ifdef LIGHTING
+    // Compute the normal in view coordinates
+    vec3 m = normalize(normal_matrix * modelNormal);
+
+    // Compute the s vector
+    vec3 s = normalize(viewLightPos - viewPosition.xyz);
+
+    float ambient = ambientIntensity*ambientCoeff;
+    float diffuse = max(lightIntensity*diffuseCoeff*dot(m,s), 0.0);
+    intensity = ambient + diffuse;
+
+#ifdef SPECULAR
+    // Compute the v and r vectors
+    vec3 v = normalize(-viewPosition.xyz);
+    vec3 r = normalize(reflect(-s,m));
+
+    // Only show specular reflections for the front face
+    float front = step(0.0, dot(m,s));
+    intensity += front*max(lightIntensity*specularCoeff*pow(max(dot(r,v), 0.0),phongExp), 0.0);
+#endif
+#endif
+}
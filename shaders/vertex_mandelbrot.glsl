@@ -4,7 +4,10 @@ in vec2 position;
 
 uniform mat3 model_matrix;
 
-uniform mat3 view_matrix;
+// The camera, shared by all shaders. See UniformBuffer.
+layout(std140) uniform Camera2D {
+    mat3 view_matrix;
+};
 
 //Make the globalPosition an output so we can access it from the fragment shader
 out vec3 globalPosition;
@@ -4,6 +4,8 @@
 package unsw.graphics;
 
 import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
 
 import com.jogamp.nativewindow.NativeSurface;
 import com.jogamp.newt.event.WindowAdapter;
@@ -23,6 +25,10 @@ import com.jogamp.opengl.util.FPSAnimator;
  * Applications in UNSWgraph are single window applications containing an OpenGL
  * surface.
  * 
+ * The shaders share their camera and light uniforms through uniform blocks
+ * (see {@link UniformBuffer}), so UNSWgraph needs OpenGL 3.1, or OpenGL 3.0
+ * with the GL_ARB_uniform_buffer_object extension.
+ * 
  * @author Robert Clifton-Everest
  *
  */
@@ -38,6 +44,30 @@ public abstract class Application implements GLEventListener {
 
     private int height;
 
+    /**
+     * Set the system property unsw.graphics.uniformStats to true to print the
+     * number of uniform uploads issued and skipped every second.
+     */
+    private static final boolean PRINT_UNIFORM_STATS =
+            Boolean.getBoolean("unsw.graphics.uniformStats");
+
+    /**
+     * Set the system property unsw.graphics.streamStats to true to print how
+     * much vertex data has been streamed every second.
+     */
+    private static final boolean PRINT_STREAM_STATS =
+            Boolean.getBoolean("unsw.graphics.streamStats");
+
+    private int frames;
+
+    /**
+     * Set the system property unsw.graphics.shaderReload to true to reload
+     * shaders whenever a file in the shaders directory changes. See
+     * {@link ShaderReloader}.
+     */
+    private static final boolean RELOAD_SHADERS =
+            Boolean.getBoolean("unsw.graphics.shaderReload");
+
     /**
      * Construct an Application. The window for the application will have the
      * given title, width, and height.
@@ -102,6 +132,14 @@ public abstract class Application implements GLEventListener {
             }
         });
 
+        if (RELOAD_SHADERS) {
+            try {
+                ShaderReloader.start(new File("shaders"));
+            } catch (IOException e) {
+                System.err.println("Could not watch the shaders directory: " + e.getMessage());
+            }
+        }
+
         // Start the actual animator.
         animator.start();
     }
@@ -110,6 +148,7 @@ public abstract class Application implements GLEventListener {
     public void display(GLAutoDrawable drawable) {
         GL3 gl = drawable.getGL().getGL3();
         display(gl);
+        endFrame(gl);
     }
 
     /**
@@ -119,6 +158,27 @@ public abstract class Application implements GLEventListener {
      */
     public abstract void display(GL3 gl);
 
+    /**
+     * This is called after each frame has been drawn. Subclasses that override
+     * this must still call super.endFrame().
+     * 
+     * @param gl
+     */
+    protected void endFrame(GL3 gl) {
+        ShaderReloader.update(gl);
+        GeometryBuffer.reap(gl);
+        StreamBuffer.endFrame(gl);
+        Shader.endFrame();
+        frames++;
+        if (PRINT_UNIFORM_STATS && frames % 60 == 0)
+            System.out.println("Uniform uploads: " + Shader.getUniformUploadsIssued()
+                    + " issued, " + Shader.getUniformUploadsSkipped() + " skipped");
+        StreamBuffer stream = StreamBuffer.getShared(gl);
+        if (PRINT_STREAM_STATS && frames % 60 == 0 && stream != null)
+            System.out.println("Streamed " + stream.getBytesStreamed() + " bytes, "
+                    + stream.getStallsAvoided() + " stalls avoided");
+    }
+
     @Override
     public void dispose(GLAutoDrawable drawable) {
         GL3 gl = drawable.getGL().getGL3();
@@ -136,6 +196,10 @@ public abstract class Application implements GLEventListener {
     @Override
     public void init(GLAutoDrawable drawable) {
         GL3 gl = drawable.getGL().getGL3();
+        if (!UniformBuffer.isSupported(gl))
+            throw new RuntimeException("UNSWgraph needs OpenGL 3.1, or OpenGL 3.0 with "
+                    + "GL_ARB_uniform_buffer_object, but this context is OpenGL "
+                    + gl.getContext().getGLVersion());
         init(gl);
     }
 
@@ -23,6 +23,12 @@ public abstract class Application2D extends Application {
      */
     private Shader shader;
 
+    /**
+     * The batch that is flushed at the end of every frame, and whenever the
+     * view matrix or shader changes.
+     */
+    private Batch2D batch;
+
     /**
      * Construct a new 2D application.
      * 
@@ -64,6 +70,8 @@ public abstract class Application2D extends Application {
         shader = new Shader(gl, "shaders/vertex_2d.glsl",
                 "shaders/fragment_2d.glsl");
         shader.use(gl);
+        batch = new Batch2D();
+        Shader.setBatch(batch);
 
         // Make points big (10 pixels wide) so we can see them clearly
         gl.glPointSize(10);
@@ -71,9 +79,30 @@ public abstract class Application2D extends Application {
 
     @Override
     public void destroy(GL3 gl) {
+        Shader.setBatch(null);
+        batch.destroy(gl);
         shader.destroy(gl);
     }
 
+    @Override
+    protected void endFrame(GL3 gl) {
+        if (batch != null)
+            batch.flush(gl);
+        super.endFrame(gl);
+    }
+
+    /**
+     * The batch for this application. Polygons and lines added to it are
+     * drawn at the end of the frame, or when the view matrix or shader
+     * changes, with a few draw calls rather than with one draw call each. See
+     * {@link Batch2D}.
+     * 
+     * @return
+     */
+    public Batch2D getBatch() {
+        return batch;
+    }
+
     @Override
     public void reshape(GL3 gl, int width, int height) {
         // We're not doing anything here yet
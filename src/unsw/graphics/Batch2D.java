@@ -0,0 +1,262 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import java.awt.Color;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.geometry.Line2D;
+import unsw.graphics.geometry.LineStrip2D;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Polygon2D;
+
+/**
+ * Collects many small 2D draws and draws them together.
+ *
+ * Drawing a polygon directly costs a draw call and a model matrix upload. For
+ * a scene with thousands of small polygons that is far more work than drawing
+ * the polygons themselves. Instead, a batch transforms the vertices of each
+ * polygon and line by its frame on the CPU and stores them with their color.
+ * When the batch is flushed, everything that was collected is streamed to the
+ * GPU at once (see {@link StreamBuffer}) and drawn with one draw call for the
+ * triangles and one for the lines.
+ *
+ * Because of this, within one batch lines are always drawn on top of filled
+ * polygons. Apart from that, things are drawn in the order they were added.
+ *
+ * The vertices collected so far are drawn with the view matrix current when
+ * the batch is flushed, so it must be flushed before changing the view matrix.
+ * {@link Application2D} has a batch that is flushed at the end of every frame,
+ * and that {@link Shader} flushes whenever the 2D view matrix changes or
+ * another shader is used (see {@link Shader#setBatch(Batch2D)}).
+ */
+public class Batch2D {
+
+    // Floats per vertex: x, y, r, g, b
+    private static final int FLOATS = 5;
+
+    private static final int STRIDE = FLOATS * Float.BYTES;
+
+    private Shader shader;
+
+    private float[] triangles = new float[FLOATS * 1024];
+    private int triangleFloats;
+
+    private float[] lines = new float[FLOATS * 1024];
+    private int lineFloats;
+
+    private int drawCalls;
+
+    /**
+     * Create an empty batch. The shader it draws with is created when it is
+     * first flushed.
+     */
+    public Batch2D() {
+    }
+
+    /**
+     * Add a filled polygon.
+     *
+     * @param polygon
+     * @param frame
+     * @param color
+     */
+    public void add(Polygon2D polygon, CoordFrame2D frame, Color color) {
+        List<Point2D> points = polygon.getPoints();
+        int n = points.size();
+        if (n < 3)
+            return;
+        float[] m = frame.getMatrix().values;
+        float r = color.getRed() / 255f, g = color.getGreen() / 255f,
+                b = color.getBlue() / 255f;
+        triangles = ensure(triangles, triangleFloats + (n - 2) * 3 * FLOATS);
+        float[] t = triangles;
+        int k = triangleFloats;
+
+        // The polygon is a triangle fan, which is split into separate
+        // triangles so that many polygons can be drawn at once
+        Point2D first = points.get(0);
+        float x0 = m[0]*first.getX() + m[3]*first.getY() + m[6];
+        float y0 = m[1]*first.getX() + m[4]*first.getY() + m[7];
+        Point2D p = points.get(1);
+        float px = m[0]*p.getX() + m[3]*p.getY() + m[6];
+        float py = m[1]*p.getX() + m[4]*p.getY() + m[7];
+        for (int i = 2; i < n; i++) {
+            Point2D q = points.get(i);
+            float qx = m[0]*q.getX() + m[3]*q.getY() + m[6];
+            float qy = m[1]*q.getX() + m[4]*q.getY() + m[7];
+            k = put(t, k, x0, y0, r, g, b);
+            k = put(t, k, px, py, r, g, b);
+            k = put(t, k, qx, qy, r, g, b);
+            px = qx;
+            py = qy;
+        }
+        triangleFloats = k;
+    }
+
+    /**
+     * Add the outline of a polygon.
+     *
+     * @param polygon
+     * @param frame
+     * @param color
+     */
+    public void addOutline(Polygon2D polygon, CoordFrame2D frame, Color color) {
+        addLines(polygon.getPoints(), true, frame, color);
+    }
+
+    /**
+     * Add a line strip.
+     *
+     * @param strip
+     * @param frame
+     * @param color
+     */
+    public void add(LineStrip2D strip, CoordFrame2D frame, Color color) {
+        addLines(strip.getPoints(), false, frame, color);
+    }
+
+    /**
+     * Add a line.
+     *
+     * @param line
+     * @param frame
+     * @param color
+     */
+    public void add(Line2D line, CoordFrame2D frame, Color color) {
+        addLines(Arrays.asList(line.getStart(), line.getEnd()), false, frame, color);
+    }
+
+    private void addLines(List<Point2D> points, boolean closed, CoordFrame2D frame,
+            Color color) {
+        int n = points.size();
+        if (n < 2)
+            return;
+        int segments = closed ? n : n - 1;
+        float[] m = frame.getMatrix().values;
+        float r = color.getRed() / 255f, g = color.getGreen() / 255f,
+                b = color.getBlue() / 255f;
+        lines = ensure(lines, lineFloats + segments * 2 * FLOATS);
+        float[] l = lines;
+        int k = lineFloats;
+
+        Point2D p = points.get(0);
+        float px = m[0]*p.getX() + m[3]*p.getY() + m[6];
+        float py = m[1]*p.getX() + m[4]*p.getY() + m[7];
+        float x0 = px, y0 = py;
+        for (int i = 1; i < n; i++) {
+            Point2D q = points.get(i);
+            float qx = m[0]*q.getX() + m[3]*q.getY() + m[6];
+            float qy = m[1]*q.getX() + m[4]*q.getY() + m[7];
+            k = put(l, k, px, py, r, g, b);
+            k = put(l, k, qx, qy, r, g, b);
+            px = qx;
+            py = qy;
+        }
+        if (closed) {
+            k = put(l, k, px, py, r, g, b);
+            k = put(l, k, x0, y0, r, g, b);
+        }
+        lineFloats = k;
+    }
+
+    private static int put(float[] a, int k, float x, float y, float r, float g, float b) {
+        a[k] = x;
+        a[k + 1] = y;
+        a[k + 2] = r;
+        a[k + 3] = g;
+        a[k + 4] = b;
+        return k + FLOATS;
+    }
+
+    private static float[] ensure(float[] a, int length) {
+        if (length <= a.length)
+            return a;
+        return Arrays.copyOf(a, Math.max(length, a.length * 2));
+    }
+
+    /**
+     * Discard everything that has been added since the last flush.
+     */
+    public void clear() {
+        triangleFloats = 0;
+        lineFloats = 0;
+    }
+
+    /**
+     * The number of vertices waiting to be drawn.
+     *
+     * @return
+     */
+    public int getVertexCount() {
+        return (triangleFloats + lineFloats) / FLOATS;
+    }
+
+    /**
+     * The number of draw calls made by this batch so far.
+     *
+     * @return
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    /**
+     * Draw everything that has been added since the last flush. The shader
+     * that was in use before is used again afterwards.
+     *
+     * @param gl
+     */
+    public void flush(GL3 gl) {
+        int triangleCount = triangleFloats, lineCount = lineFloats;
+        if (triangleCount == 0 && lineCount == 0)
+            return;
+        // Empty the batch first, so that using the shader below doesn't flush
+        // it again
+        clear();
+        if (shader == null)
+            shader = new Shader(gl, "shaders/vertex_batch_2d.glsl",
+                    "shaders/fragment_batch_2d.glsl");
+        Shader previous = Shader.getCurrent();
+        shader.use(gl);
+        gl.glEnableVertexAttribArray(Shader.POSITION);
+        gl.glEnableVertexAttribArray(Shader.COLOR);
+
+        StreamBuffer stream = StreamBuffer.get(gl);
+        draw(gl, stream, GL.GL_TRIANGLES, triangles, triangleCount);
+        draw(gl, stream, GL.GL_LINES, lines, lineCount);
+
+        gl.glDisableVertexAttribArray(Shader.POSITION);
+        gl.glDisableVertexAttribArray(Shader.COLOR);
+        if (previous != null && previous != shader)
+            previous.use(gl);
+    }
+
+    private void draw(GL3 gl, StreamBuffer stream, int mode, float[] data, int floats) {
+        if (floats == 0)
+            return;
+        long start = stream.write(gl, FloatBuffer.wrap(data, 0, floats));
+        gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, STRIDE, start);
+        gl.glVertexAttribPointer(Shader.COLOR, 3, GL.GL_FLOAT, false, STRIDE,
+                start + 2 * Float.BYTES);
+        gl.glDrawArrays(mode, 0, floats / FLOATS);
+        drawCalls++;
+    }
+
+    /**
+     * Release the shader used by this batch.
+     *
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        if (shader != null)
+            shader.destroy(gl);
+        shader = null;
+    }
+}
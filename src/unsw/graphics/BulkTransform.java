@@ -0,0 +1,205 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Kernels for transforming whole buffers of points by a matrix.
+ *
+ * Points are copied a block at a time from the source buffer into a scratch
+ * array, transformed with a straight-line kernel chosen by the
+ * {@link MatrixKind} of the matrix and copied back into the destination
+ * buffer. Large buffers are split into ranges that are transformed in parallel
+ * on the common fork/join pool.
+ *
+ * The source and destination may be the same buffer.
+ */
+class BulkTransform {
+
+    /**
+     * The number of points transformed between bulk copies.
+     */
+    private static final int BLOCK = 1024;
+
+    /**
+     * Buffers with fewer points than this are transformed on the calling
+     * thread. Forking is not worth it below this size.
+     */
+    static final int PARALLEL_THRESHOLD = 64 * 1024;
+
+    /**
+     * The size of the ranges that the parallel tasks split the buffer into.
+     */
+    private static final int SPLIT_SIZE = 16 * 1024;
+
+    /**
+     * Transform count 3D points in src (starting at its position) by the
+     * given 4x4 matrix, storing them in dst (starting at its position). Only
+     * the x, y and z rows are computed, exactly like
+     * {@link CoordFrame3D#transform(unsw.graphics.geometry.Point3D)}. The
+     * positions of the buffers are not changed.
+     */
+    static void transform3D(float[] m, MatrixKind kind, FloatBuffer src, FloatBuffer dst, int count) {
+        checkCapacity(src, count * 3, "source");
+        checkCapacity(dst, count * 3, "destination");
+        int srcStart = src.position(), dstStart = dst.position();
+        if (count < PARALLEL_THRESHOLD) {
+            transform3D(m, kind, src, srcStart, dst, dstStart, count);
+        } else {
+            ForkJoinPool.commonPool().invoke(
+                    new Task(3, m, kind, src, srcStart, dst, dstStart, count));
+        }
+    }
+
+    /**
+     * Transform count 2D points in src (starting at its position) by the
+     * given 3x3 matrix, storing them in dst (starting at its position). The
+     * positions of the buffers are not changed.
+     */
+    static void transform2D(float[] m, MatrixKind kind, FloatBuffer src, FloatBuffer dst, int count) {
+        checkCapacity(src, count * 2, "source");
+        checkCapacity(dst, count * 2, "destination");
+        int srcStart = src.position(), dstStart = dst.position();
+        if (count < PARALLEL_THRESHOLD) {
+            transform2D(m, kind, src, srcStart, dst, dstStart, count);
+        } else {
+            ForkJoinPool.commonPool().invoke(
+                    new Task(2, m, kind, src, srcStart, dst, dstStart, count));
+        }
+    }
+
+    private static void checkCapacity(FloatBuffer buffer, int floats, String which) {
+        if (buffer.remaining() < floats)
+            throw new IndexOutOfBoundsException("The " + which + " buffer has room for "
+                    + buffer.remaining() + " floats but " + floats + " are needed");
+    }
+
+    /**
+     * Transform a range of 3D points. The offsets are in floats.
+     */
+    private static void transform3D(float[] m, MatrixKind kind, FloatBuffer src, int srcOffset,
+            FloatBuffer dst, int dstOffset, int count) {
+        FloatBuffer in = src.duplicate();
+        FloatBuffer out = dst.duplicate();
+        float[] block = new float[Math.min(count, BLOCK) * 3];
+
+        float m0 = m[0], m1 = m[1], m2 = m[2];
+        float m4 = m[4], m5 = m[5], m6 = m[6];
+        float m8 = m[8], m9 = m[9], m10 = m[10];
+        float m12 = m[12], m13 = m[13], m14 = m[14];
+
+        for (int done = 0; done < count; done += BLOCK) {
+            int n = Math.min(BLOCK, count - done) * 3;
+            in.position(srcOffset + done * 3);
+            in.get(block, 0, n);
+
+            switch (kind) {
+            case IDENTITY:
+                break;
+            case TRANSLATION:
+                for (int i = 0; i < n; i += 3) {
+                    block[i]     += m12;
+                    block[i + 1] += m13;
+                    block[i + 2] += m14;
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i += 3) {
+                    float x = block[i], y = block[i + 1], z = block[i + 2];
+                    block[i]     = m0*x + m4*y + m8*z  + m12;
+                    block[i + 1] = m1*x + m5*y + m9*z  + m13;
+                    block[i + 2] = m2*x + m6*y + m10*z + m14;
+                }
+            }
+
+            out.position(dstOffset + done * 3);
+            out.put(block, 0, n);
+        }
+    }
+
+    /**
+     * Transform a range of 2D points. The offsets are in floats.
+     */
+    private static void transform2D(float[] m, MatrixKind kind, FloatBuffer src, int srcOffset,
+            FloatBuffer dst, int dstOffset, int count) {
+        FloatBuffer in = src.duplicate();
+        FloatBuffer out = dst.duplicate();
+        float[] block = new float[Math.min(count, BLOCK) * 2];
+
+        float m0 = m[0], m1 = m[1];
+        float m3 = m[3], m4 = m[4];
+        float m6 = m[6], m7 = m[7];
+
+        for (int done = 0; done < count; done += BLOCK) {
+            int n = Math.min(BLOCK, count - done) * 2;
+            in.position(srcOffset + done * 2);
+            in.get(block, 0, n);
+
+            switch (kind) {
+            case IDENTITY:
+                break;
+            case TRANSLATION:
+                for (int i = 0; i < n; i += 2) {
+                    block[i]     += m6;
+                    block[i + 1] += m7;
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i += 2) {
+                    float x = block[i], y = block[i + 1];
+                    block[i]     = m0*x + m3*y + m6;
+                    block[i + 1] = m1*x + m4*y + m7;
+                }
+            }
+
+            out.position(dstOffset + done * 2);
+            out.put(block, 0, n);
+        }
+    }
+
+    /**
+     * Transforms a range of points, splitting it in half until it is small
+     * enough.
+     */
+    private static class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int dimension;
+        private final float[] m;
+        private final MatrixKind kind;
+        private final FloatBuffer src, dst;
+        private final int srcOffset, dstOffset, count;
+
+        Task(int dimension, float[] m, MatrixKind kind, FloatBuffer src, int srcOffset,
+                FloatBuffer dst, int dstOffset, int count) {
+            this.dimension = dimension;
+            this.m = m;
+            this.kind = kind;
+            this.src = src;
+            this.srcOffset = srcOffset;
+            this.dst = dst;
+            this.dstOffset = dstOffset;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            if (count <= SPLIT_SIZE) {
+                if (dimension == 3)
+                    transform3D(m, kind, src, srcOffset, dst, dstOffset, count);
+                else
+                    transform2D(m, kind, src, srcOffset, dst, dstOffset, count);
+                return;
+            }
+            int half = count / 2;
+            int floats = half * dimension;
+            invokeAll(new Task(dimension, m, kind, src, srcOffset, dst, dstOffset, half),
+                    new Task(dimension, m, kind, src, srcOffset + floats, dst, dstOffset + floats,
+                            count - half));
+        }
+    }
+}
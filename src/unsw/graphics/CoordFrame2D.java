@@ -4,6 +4,8 @@
 package unsw.graphics;
 
 import java.awt.Color;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 import com.jogamp.opengl.GL3;
 
@@ -15,11 +17,27 @@ import unsw.graphics.geometry.Point2D;
  * 
  * Coordinate frames allow for geometry to be transformed before being drawn to the canvas.
  * 
+ * Like {@link CoordFrame3D}, the steps of a chain like <code>frame.translate(..).rotate(..)</code>
+ * are recorded rather than multiplied out straight away, and the matrix is computed and cached 
+ * the first time it is needed. Consecutive translations, rotations, scales and shears in the same
+ * direction are combined into a single step when they are recorded.
+ * 
  * @author Robert Clifton-Everest
  *
  */
 public class CoordFrame2D {
-    private Matrix3 matrix;
+    private enum Op {
+        TRANSLATE, ROTATE, SCALE, HORIZONTAL_SHEAR, VERTICAL_SHEAR
+    }
+
+    // See CoordFrame3D
+    private volatile Matrix3 matrix;
+    private volatile CoordFrame2D parent;
+    private int children;
+
+    // The step applied to the parent
+    private final Op op;
+    private final float x, y;
     
     /**
      * Use the given 3X3 matrix as a coordinate frame.
@@ -28,6 +46,19 @@ public class CoordFrame2D {
      */
     public CoordFrame2D(Matrix3 matrix) {
         this.matrix = matrix;
+        this.parent = null;
+        this.op = null;
+        this.x = this.y = 0;
+    }
+
+    private CoordFrame2D(CoordFrame2D parent, Op op, float x, float y) {
+        if (parent.matrix == null)
+            parent.children++;
+        this.matrix = null;
+        this.parent = parent;
+        this.op = op;
+        this.x = x;
+        this.y = y;
     }
     
     /**
@@ -46,7 +77,10 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D translate(float x, float y) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.translation(x, y)));
+        CoordFrame2D p = parent;
+        if (p != null && op == Op.TRANSLATE)
+            return new CoordFrame2D(p, Op.TRANSLATE, this.x + x, this.y + y);
+        return new CoordFrame2D(this, Op.TRANSLATE, x, y);
     }
     
     /**
@@ -56,7 +90,7 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D translate(Point2D point) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.translation(point)));
+        return translate(point.getX(), point.getY());
     }
     
     /**
@@ -65,7 +99,7 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D rotate(float degrees) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.rotation(degrees)));
+        return add(Op.ROTATE, degrees);
     }
 
     /**
@@ -76,7 +110,10 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D scale(float x, float y) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.scale(x,y)));
+        CoordFrame2D p = parent;
+        if (p != null && op == Op.SCALE)
+            return new CoordFrame2D(p, Op.SCALE, this.x * x, this.y * y);
+        return new CoordFrame2D(this, Op.SCALE, x, y);
     }
 
     /**
@@ -86,7 +123,7 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D horizontalShear(float h) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.horizontalShear(h)));
+        return add(Op.HORIZONTAL_SHEAR, h);
     }
 
     /**
@@ -96,7 +133,18 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D verticalShear(float v) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.horizontalShear(v)));
+        return add(Op.VERTICAL_SHEAR, v);
+    }
+
+    /**
+     * Record a step with a single parameter. Two rotations (or two shears in the same direction)
+     * in a row are the same as one by the sum of their amounts.
+     */
+    private CoordFrame2D add(Op step, float amount) {
+        CoordFrame2D p = parent;
+        if (p != null && op == step)
+            return new CoordFrame2D(p, step, x + amount, 0);
+        return new CoordFrame2D(this, step, amount, 0);
     }
 
     /**
@@ -104,7 +152,73 @@ public class CoordFrame2D {
      * @return
      */
     public Matrix3 getMatrix() {
-        return matrix;
+        Matrix3 m = matrix;
+        if (m == null) {
+            m = fold();
+            matrix = m;
+            parent = null;
+        }
+        return m;
+    }
+
+    /**
+     * Whether the matrix of this frame has been computed, so that
+     * {@link #getMatrix()} returns it straight away.
+     * @return
+     */
+    public boolean isComputed() {
+        return matrix != null;
+    }
+
+    /**
+     * Compute the matrix of this frame by applying the outstanding steps, starting from the
+     * nearest ancestor whose matrix is known.
+     */
+    private Matrix3 fold() {
+        CoordFrame2D[] pending = new CoordFrame2D[8];
+        int n = 0;
+        CoordFrame2D f = this;
+        Matrix3 base;
+        while ((base = f.matrix) == null) {
+            CoordFrame2D p = f.parent;
+            if (p == null) {
+                // Computed by another thread in the meantime
+                base = f.matrix;
+                break;
+            }
+            if (n == pending.length)
+                pending = Arrays.copyOf(pending, n * 2);
+            pending[n++] = f;
+            f = p;
+        }
+
+        MutableMatrix3 m = new MutableMatrix3(base);
+        while (n > 0) {
+            CoordFrame2D step = pending[--n];
+            switch (step.op) {
+            case TRANSLATE:
+                m.translate(step.x, step.y);
+                break;
+            case ROTATE:
+                m.rotate(step.x);
+                break;
+            case SCALE:
+                m.scale(step.x, step.y);
+                break;
+            case HORIZONTAL_SHEAR:
+                m.horizontalShear(step.x);
+                break;
+            case VERTICAL_SHEAR:
+                m.verticalShear(step.x);
+                break;
+            }
+            if (n > 0 && step.children > 1) {
+                step.matrix = new Matrix3(m.values.clone(), m.kind);
+                step.parent = null;
+            }
+        }
+        // m is never used again, so the matrix can take ownership of its values
+        return new Matrix3(m.values, m.kind);
     }
     
     /**
@@ -123,4 +237,45 @@ public class CoordFrame2D {
        jAxis.draw(gl,this);
        Shader.setPenColor(gl, Color.BLACK);
     }
+
+    /**
+     * Transform the given point under this coordinate frame.
+     * @param p
+     * @return
+     */
+    public Point2D transform(Point2D p) {
+        return getMatrix().multiply(p.asHomogenous()).asPoint2D();
+    }
+
+    /**
+     * Transform every point in src under this coordinate frame, storing the results in dst.
+     * 
+     * This is much faster than transforming the points one at a time, and large buffers are 
+     * transformed in parallel. src and dst may be the same buffer.
+     * 
+     * @param src
+     * @param dst A buffer with at least the capacity of src
+     */
+    public void transform(Point2DBuffer src, Point2DBuffer dst) {
+        if (dst.capacity() < src.capacity())
+            throw new IllegalArgumentException("Destination capacity " + dst.capacity()
+                    + " is less than source capacity " + src.capacity());
+        Matrix3 matrix = getMatrix();
+        BulkTransform.transform2D(matrix.values, matrix.kind, src.floatBuffer, dst.floatBuffer,
+                src.capacity());
+    }
+
+    /**
+     * Transform count points stored as consecutive (x, y) pairs in src, starting at its position,
+     * storing the results in dst, starting at its position. The positions of the buffers are not
+     * changed.
+     * 
+     * @param src
+     * @param dst
+     * @param count The number of points (not floats) to transform
+     */
+    public void transform(FloatBuffer src, FloatBuffer dst, int count) {
+        Matrix3 matrix = getMatrix();
+        BulkTransform.transform2D(matrix.values, matrix.kind, src, dst, count);
+    }
 }
@@ -4,6 +4,8 @@
 package unsw.graphics;
 
 import java.awt.Color;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 import com.jogamp.opengl.GL3;
 
@@ -15,11 +17,41 @@ import unsw.graphics.geometry.Point3D;
  * 
  * Coordinate frames allow for geometry to be transformed before being drawn to the canvas.
  * 
+ * This class is immutable, so every step in a chain like 
+ * <code>frame.translate(..).rotateY(..)</code> creates a new frame. Code that composes many frames
+ * every frame can use a {@link Builder} instead, which composes in place.
+ * 
+ * The steps of a chain are not multiplied out straight away. Each new frame only records its 
+ * parent and the step applied to it, and the matrix is computed the first time it is needed 
+ * (e.g. by {@link #getMatrix()} or {@link #transform(Point3D)}) by applying all the outstanding 
+ * steps in place. The result is then cached on the frame, and on any frame along the way that 
+ * more than one frame was built on, so the steps they share are only applied once. Consecutive 
+ * translations, scales and rotations around the same axis are combined into a single step when 
+ * they are recorded.
+ * 
  * @author Robert Clifton-Everest
  *
  */
 public class CoordFrame3D {
-    private Matrix4 matrix;
+    private enum Op {
+        TRANSLATE, ROTATE_X, ROTATE_Y, ROTATE_Z, ROTATE, SCALE
+    }
+
+    // Once the matrix has been computed the parent is dropped so that long
+    // chains can be garbage collected. Both are volatile so that frames can
+    // still be shared between threads.
+    private volatile Matrix4 matrix;
+    private volatile CoordFrame3D parent;
+
+    // The number of frames built on this one before its matrix was known.
+    // It isn't synchronized, since a missed count only means some steps are
+    // applied twice.
+    private int children;
+
+    // The step applied to the parent. A rotation by a quaternion uses all
+    // four values.
+    private final Op op;
+    private final float x, y, z, w;
     
     /**
      * Use the given 4X4 matrix as a coordinate frame.
@@ -28,6 +60,21 @@ public class CoordFrame3D {
      */
     public CoordFrame3D(Matrix4 matrix) {
         this.matrix = matrix;
+        this.parent = null;
+        this.op = null;
+        this.x = this.y = this.z = this.w = 0;
+    }
+
+    private CoordFrame3D(CoordFrame3D parent, Op op, float x, float y, float z, float w) {
+        if (parent.matrix == null)
+            parent.children++;
+        this.matrix = null;
+        this.parent = parent;
+        this.op = op;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
     }
     
     /**
@@ -47,7 +94,10 @@ public class CoordFrame3D {
      * @return
      */
     public CoordFrame3D translate(float x, float y, float z) {
-        return new CoordFrame3D(matrix.multiply(Matrix4.translation(x, y, z)));
+        CoordFrame3D p = parent;
+        if (p != null && op == Op.TRANSLATE)
+            return new CoordFrame3D(p, Op.TRANSLATE, this.x + x, this.y + y, this.z + z, 0);
+        return new CoordFrame3D(this, Op.TRANSLATE, x, y, z, 0);
     }
     
     /**
@@ -57,7 +107,7 @@ public class CoordFrame3D {
      * @return
      */
     public CoordFrame3D translate(Point3D point) {
-        return new CoordFrame3D(matrix.multiply(Matrix4.translation(point)));
+        return translate(point.getX(), point.getY(), point.getZ());
     }
     
     /**
@@ -67,7 +117,7 @@ public class CoordFrame3D {
      * @return
      */
     public CoordFrame3D rotateX(float degrees) {
-        return new CoordFrame3D(matrix.multiply(Matrix4.rotationX(degrees)));
+        return rotate(Op.ROTATE_X, degrees);
     }
     
     /**
@@ -77,7 +127,7 @@ public class CoordFrame3D {
      * @return
      */
     public CoordFrame3D rotateY(float degrees) {
-        return new CoordFrame3D(matrix.multiply(Matrix4.rotationY(degrees)));
+        return rotate(Op.ROTATE_Y, degrees);
     }
 
     /**
@@ -87,7 +137,35 @@ public class CoordFrame3D {
      * @return
      */
     public CoordFrame3D rotateZ(float degrees) {
-        return new CoordFrame3D(matrix.multiply(Matrix4.rotationZ(degrees)));
+        return rotate(Op.ROTATE_Z, degrees);
+    }
+
+    private CoordFrame3D rotate(Op axis, float degrees) {
+        CoordFrame3D p = parent;
+        if (p != null && op == axis)
+            return new CoordFrame3D(p, axis, x + degrees, 0, 0, 0);
+        return new CoordFrame3D(this, axis, degrees, 0, 0, 0);
+    }
+
+    /**
+     * A new coordinate frame that is a rotation of this frame by the given quaternion.
+     * 
+     * The quaternion is copied, so changing it afterwards does not affect the new frame.
+     * @param q
+     * @return
+     */
+    public CoordFrame3D rotate(Quaternion q) {
+        CoordFrame3D p = parent;
+        if (p != null && op == Op.ROTATE) {
+            // Two rotations in a row are the product of their quaternions
+            float bx = q.x, by = q.y, bz = q.z, bw = q.w;
+            return new CoordFrame3D(p, Op.ROTATE,
+                    w*bx + x*bw + y*bz - z*by,
+                    w*by - x*bz + y*bw + z*bx,
+                    w*bz + x*by - y*bx + z*bw,
+                    w*bw - x*bx - y*by - z*bz);
+        }
+        return new CoordFrame3D(this, Op.ROTATE, q.x, q.y, q.z, q.w);
     }
 
     /**
@@ -99,7 +177,10 @@ public class CoordFrame3D {
      * @return
      */
     public CoordFrame3D scale(float x, float y, float z) {
-        return new CoordFrame3D(matrix.multiply(Matrix4.scale(x,y,z)));
+        CoordFrame3D p = parent;
+        if (p != null && op == Op.SCALE)
+            return new CoordFrame3D(p, Op.SCALE, this.x * x, this.y * y, this.z * z, 0);
+        return new CoordFrame3D(this, Op.SCALE, x, y, z, 0);
     }
 
     /**
@@ -107,7 +188,77 @@ public class CoordFrame3D {
      * @return
      */
     public Matrix4 getMatrix() {
-        return matrix;
+        Matrix4 m = matrix;
+        if (m == null) {
+            m = fold();
+            matrix = m;
+            parent = null;
+        }
+        return m;
+    }
+
+    /**
+     * Whether the matrix of this frame has been computed, so that
+     * {@link #getMatrix()} returns it straight away.
+     * @return
+     */
+    public boolean isComputed() {
+        return matrix != null;
+    }
+
+    /**
+     * Compute the matrix of this frame by applying the outstanding steps, starting from the
+     * nearest ancestor whose matrix is known.
+     */
+    private Matrix4 fold() {
+        CoordFrame3D[] pending = new CoordFrame3D[8];
+        int n = 0;
+        CoordFrame3D f = this;
+        Matrix4 base;
+        while ((base = f.matrix) == null) {
+            CoordFrame3D p = f.parent;
+            if (p == null) {
+                // Computed by another thread in the meantime
+                base = f.matrix;
+                break;
+            }
+            if (n == pending.length)
+                pending = Arrays.copyOf(pending, n * 2);
+            pending[n++] = f;
+            f = p;
+        }
+
+        MutableMatrix4 m = new MutableMatrix4(base);
+        while (n > 0) {
+            CoordFrame3D step = pending[--n];
+            switch (step.op) {
+            case TRANSLATE:
+                m.translate(step.x, step.y, step.z);
+                break;
+            case ROTATE_X:
+                m.rotateX(step.x);
+                break;
+            case ROTATE_Y:
+                m.rotateY(step.x);
+                break;
+            case ROTATE_Z:
+                m.rotateZ(step.x);
+                break;
+            case ROTATE:
+                m.rotate(new Quaternion(step.x, step.y, step.z, step.w));
+                break;
+            case SCALE:
+                m.scale(step.x, step.y, step.z);
+                break;
+            }
+            // Other frames built on this step can start from here
+            if (n > 0 && step.children > 1) {
+                step.matrix = new Matrix4(m.values.clone(), m.kind);
+                step.parent = null;
+            }
+        }
+        // m is never used again, so the matrix can take ownership of its values
+        return new Matrix4(m.values, m.kind);
     }
     
     /**
@@ -136,7 +287,7 @@ public class CoordFrame3D {
      * @return
      */
     public Point3D transform(Point3D p) {
-        return matrix.multiply(p.asHomogenous()).asPoint3D();
+        return getMatrix().multiply(p.asHomogenous()).asPoint3D();
     }
 
     /**
@@ -145,6 +296,152 @@ public class CoordFrame3D {
      * @return
      */
     public Vector3 transform(Vector3 v) {
-        return matrix.multiply(v.extend()).trim();
+        return getMatrix().multiply(v.extend()).trim();
+    }
+
+    /**
+     * Transform every point in src under this coordinate frame, storing the results in dst.
+     * 
+     * This is much faster than transforming the points one at a time, and large buffers are 
+     * transformed in parallel. src and dst may be the same buffer.
+     * 
+     * @param src
+     * @param dst A buffer with at least the capacity of src
+     */
+    public void transform(Point3DBuffer src, Point3DBuffer dst) {
+        if (dst.capacity() < src.capacity())
+            throw new IllegalArgumentException("Destination capacity " + dst.capacity()
+                    + " is less than source capacity " + src.capacity());
+        Matrix4 matrix = getMatrix();
+        BulkTransform.transform3D(matrix.values, matrix.kind, src.floatBuffer, dst.floatBuffer,
+                src.capacity());
+    }
+
+    /**
+     * Transform count points stored as consecutive (x, y, z) triples in src, starting at its 
+     * position, storing the results in dst, starting at its position. The positions of the buffers
+     * are not changed.
+     * 
+     * @param src
+     * @param dst
+     * @param count The number of points (not floats) to transform
+     */
+    public void transform(FloatBuffer src, FloatBuffer dst, int count) {
+        Matrix4 matrix = getMatrix();
+        BulkTransform.transform3D(matrix.values, matrix.kind, src, dst, count);
+    }
+
+    /**
+     * Create a builder that starts at this coordinate frame.
+     * @return
+     */
+    public Builder toBuilder() {
+        return new Builder().set(this);
+    }
+
+    /**
+     * A mutable coordinate frame in 3D.
+     * 
+     * A builder composes transformations in place into its {@link MutableMatrix4}, so a builder
+     * that is reused (e.g. by calling {@link #set(CoordFrame3D)} at the start of every frame)
+     * does not allocate. The methods correspond exactly to those of {@link CoordFrame3D}.
+     */
+    public static class Builder {
+        private final MutableMatrix4 matrix;
+
+        /**
+         * Create a builder starting at the identity coordinate frame.
+         */
+        public Builder() {
+            this(new MutableMatrix4());
+        }
+
+        /**
+         * Create a builder that composes into the given storage. The storage is not reset.
+         * @param storage
+         */
+        public Builder(MutableMatrix4 storage) {
+            this.matrix = storage;
+        }
+
+        /**
+         * Reset this builder to the identity coordinate frame.
+         * @return this
+         */
+        public Builder setIdentity() {
+            matrix.setIdentity();
+            return this;
+        }
+
+        /**
+         * Reset this builder to the given coordinate frame.
+         * @param frame
+         * @return this
+         */
+        public Builder set(CoordFrame3D frame) {
+            matrix.set(frame.getMatrix());
+            return this;
+        }
+
+        /**
+         * Reset this builder to the current state of another builder.
+         * @param builder
+         * @return this
+         */
+        public Builder set(Builder builder) {
+            matrix.set(builder.matrix);
+            return this;
+        }
+
+        public Builder translate(float x, float y, float z) {
+            matrix.translate(x, y, z);
+            return this;
+        }
+
+        public Builder translate(Point3D point) {
+            matrix.translate(point);
+            return this;
+        }
+
+        public Builder rotateX(float degrees) {
+            matrix.rotateX(degrees);
+            return this;
+        }
+
+        public Builder rotateY(float degrees) {
+            matrix.rotateY(degrees);
+            return this;
+        }
+
+        public Builder rotateZ(float degrees) {
+            matrix.rotateZ(degrees);
+            return this;
+        }
+
+        public Builder rotate(Quaternion q) {
+            matrix.rotate(q);
+            return this;
+        }
+
+        public Builder scale(float x, float y, float z) {
+            matrix.scale(x, y, z);
+            return this;
+        }
+
+        /**
+         * Get the storage this builder composes into.
+         * @return
+         */
+        public MutableMatrix4 getMatrix() {
+            return matrix;
+        }
+
+        /**
+         * Create an immutable coordinate frame from the current state of this builder.
+         * @return
+         */
+        public CoordFrame3D build() {
+            return new CoordFrame3D(matrix.toMatrix4());
+        }
     }
 }
@@ -0,0 +1,254 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLContext;
+
+/**
+ * The vertices of a piece of geometry, copied to graphics memory the first
+ * time they are drawn and kept there for later draws.
+ *
+ * Along with the buffer object, each GeometryBuffer has its own vertex array
+ * object that records where its vertices are. Drawing just binds it, so
+ * nothing else has to be set up and no vertex array state is left behind for
+ * other draws.
+ *
+ * The geometry classes (Polygon2D, TriangleFan3D, etc.) use this so that
+ * drawing the same object every frame doesn't allocate a new buffer object
+ * each time. The buffer object is created for the context the geometry is
+ * first drawn in. If it is later drawn in a different context, a new buffer
+ * object is created for that one.
+ *
+ * Call {@link #destroy(GL3)} to release the buffer object when the geometry is
+ * no longer needed. If that is never done, the buffer object is released at
+ * the end of a frame some time after the GeometryBuffer has been garbage
+ * collected, so forgetting to destroy it doesn't leak graphics memory.
+ */
+public class GeometryBuffer {
+
+    /**
+     * Names whose GeometryBuffer has been garbage collected.
+     */
+    private static final ReferenceQueue<GeometryBuffer> unreachable =
+            new ReferenceQueue<GeometryBuffer>();
+
+    /**
+     * Every name that currently exists. This keeps the references reachable
+     * so that they are enqueued.
+     */
+    private static final Set<Name> names = Collections.synchronizedSet(new HashSet<Name>());
+
+    /**
+     * Names waiting to be deleted in their own context.
+     */
+    private static final List<Name> orphans = new ArrayList<Name>();
+
+    /**
+     * A buffer object, its vertex array object and the context they belong
+     * to. The reference is enqueued when the GeometryBuffer that owns them
+     * becomes unreachable.
+     */
+    private static class Name extends PhantomReference<GeometryBuffer> {
+        final int name;
+        final int vertexArray;
+        final GLContext context;
+
+        Name(GeometryBuffer owner, int name, int vertexArray, GLContext context) {
+            super(owner, unreachable);
+            this.name = name;
+            this.vertexArray = vertexArray;
+            this.context = context;
+        }
+
+        void delete(GL3 gl) {
+            gl.glDeleteVertexArrays(1, new int[] { vertexArray }, 0);
+            gl.glDeleteBuffers(1, new int[] { name }, 0);
+        }
+    }
+
+    // The number of floats per vertex
+    private final int size;
+
+    private FloatBuffer data;
+    private int count;
+
+    // Whether the data has changed since it was copied
+    private boolean changed;
+
+    private Name name;
+
+    /**
+     * Create a buffer holding the given 2D points.
+     *
+     * @param points
+     */
+    public GeometryBuffer(Point2DBuffer points) {
+        this.size = 2;
+        set(points);
+    }
+
+    /**
+     * Create a buffer holding the given 3D points.
+     *
+     * @param points
+     */
+    public GeometryBuffer(Point3DBuffer points) {
+        this.size = 3;
+        set(points);
+    }
+
+    /**
+     * Replace the points in this buffer. They are copied to graphics memory
+     * the next time the buffer is drawn.
+     *
+     * @param points
+     */
+    public void set(Point2DBuffer points) {
+        if (size != 2)
+            throw new IllegalArgumentException("Buffer holds 3D points");
+        data = points.floatBuffer;
+        count = points.capacity();
+        changed = true;
+    }
+
+    /**
+     * Replace the points in this buffer. They are copied to graphics memory
+     * the next time the buffer is drawn.
+     *
+     * @param points
+     */
+    public void set(Point3DBuffer points) {
+        if (size != 3)
+            throw new IllegalArgumentException("Buffer holds 2D points");
+        data = points.floatBuffer;
+        count = points.capacity();
+        changed = true;
+    }
+
+    /**
+     * The number of points in this buffer.
+     *
+     * @return
+     */
+    public int getVertexCount() {
+        return count;
+    }
+
+    /**
+     * Draw all the points in this buffer with the given primitive type (e.g.
+     * GL_TRIANGLES), copying them to graphics memory first if they aren't
+     * there for the current context yet.
+     *
+     * @param gl
+     * @param mode
+     */
+    public void draw(GL3 gl, int mode) {
+        GLContext current = gl.getContext();
+        if (name == null || name.context != current) {
+            release(gl);
+            int[] names = new int[2];
+            gl.glGenBuffers(1, names, 0);
+            gl.glGenVertexArrays(1, names, 1);
+            name = new Name(this, names[0], names[1], current);
+            GeometryBuffer.names.add(name);
+
+            gl.glBindVertexArray(name.vertexArray);
+            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, name.name);
+            gl.glVertexAttribPointer(Shader.POSITION, size, GL.GL_FLOAT, false, 0, 0);
+            gl.glEnableVertexAttribArray(Shader.POSITION);
+            changed = true;
+        } else {
+            gl.glBindVertexArray(name.vertexArray);
+        }
+        if (changed) {
+            // The vertex array refers to the buffer by name, so it doesn't
+            // need updating when the contents change
+            data.rewind();
+            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, name.name);
+            gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) count * size * Float.BYTES, data,
+                    GL.GL_STATIC_DRAW);
+            changed = false;
+        }
+        gl.glDrawArrays(mode, 0, count);
+        bindDefaultVertexArray(gl);
+    }
+
+    /**
+     * Bind the vertex array object that is bound when nothing else is. Code
+     * that binds its own vertex array object should call this once it has
+     * finished drawing with it.
+     *
+     * With a core profile there is no vertex array object 0, so JOGL creates
+     * one to stand in for it.
+     *
+     * @param gl
+     */
+    public static void bindDefaultVertexArray(GL3 gl) {
+        gl.glBindVertexArray(gl.getContext().getDefaultVAO());
+    }
+
+    /**
+     * Release the buffer object and vertex array object. The buffer can still
+     * be drawn afterwards, in which case the data is copied again.
+     *
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        release(gl);
+    }
+
+    private void release(GL3 gl) {
+        if (name == null)
+            return;
+        names.remove(name);
+        name.clear();
+        if (name.context == gl.getContext()) {
+            name.delete(gl);
+        } else {
+            // It can only be deleted while its own context is current
+            synchronized (orphans) {
+                orphans.add(name);
+            }
+        }
+        name = null;
+    }
+
+    /**
+     * Delete the buffer objects of geometry that has been garbage collected.
+     * Called at the end of every frame.
+     */
+    static void reap(GL3 gl) {
+        GLContext current = gl.getContext();
+        synchronized (orphans) {
+            Name ref;
+            while ((ref = (Name) unreachable.poll()) != null) {
+                names.remove(ref);
+                orphans.add(ref);
+            }
+            Iterator<Name> it = orphans.iterator();
+            while (it.hasNext()) {
+                ref = it.next();
+                if (ref.context == current) {
+                    ref.delete(gl);
+                    it.remove();
+                } else if (!ref.context.isCreated()) {
+                    // Deleted along with its context
+                    it.remove();
+                }
+            }
+        }
+    }
+}
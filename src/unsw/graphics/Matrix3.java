@@ -12,12 +12,17 @@ import unsw.graphics.geometry.Point2D;
  * 
  * This class is immutable.
  * 
+ * Like {@link Matrix4}, every matrix is tagged with a {@link MatrixKind} so that products,
+ * transforms and inverses can use cheaper kernels for translations and rigid transformations.
+ * 
  * @author Robert Clifton-Everest
  *
  */
 public class Matrix3 {
     // Matrix is stored in column-major order to match OpenGL
-    private float[] values;
+    final float[] values;
+    
+    final MatrixKind kind;
     
     /**
      * Construct a matrix from the given flat array of values.
@@ -27,6 +32,36 @@ public class Matrix3 {
         if (values.length != 9)
             throw new IllegalArgumentException("Matrix3 constructor passed an array of length " + values.length);
         this.values = Arrays.copyOf(values, 9);
+        this.kind = classify(this.values);
+    }
+    
+    /**
+     * Construct a matrix of a known kind that takes ownership of the given array without copying
+     * it. Only for use within this package, where the caller guarantees the array is never
+     * modified afterwards.
+     * @param values
+     * @param kind
+     */
+    Matrix3(float[] values, MatrixKind kind) {
+        this.values = values;
+        this.kind = kind;
+    }
+    
+    /**
+     * Determine the kind of an arbitrary matrix. Like {@link Matrix4#classify(float[])}, this
+     * never returns RIGID.
+     * 
+     * @param m
+     * @return
+     */
+    static MatrixKind classify(float[] m) {
+        if (m[2] != 0 || m[5] != 0 || m[8] != 1)
+            return MatrixKind.PROJECTIVE;
+        if (m[0] != 1 || m[1] != 0 || m[3] != 0 || m[4] != 1)
+            return MatrixKind.AFFINE;
+        if (m[6] != 0 || m[7] != 0)
+            return MatrixKind.TRANSLATION;
+        return MatrixKind.IDENTITY;
     }
     
     /**
@@ -38,7 +73,7 @@ public class Matrix3 {
             0, 1, 0, // j
             0, 0, 1  // phi
         };
-        return new Matrix3(values);
+        return new Matrix3(values, MatrixKind.IDENTITY);
     }
     
     /**
@@ -53,7 +88,7 @@ public class Matrix3 {
             0, 1, 0, // j
             x, y, 1  // phi
         };
-        return new Matrix3(values);
+        return new Matrix3(values, MatrixKind.TRANSLATION);
     }
     
     /**
@@ -78,7 +113,7 @@ public class Matrix3 {
             (float) -Math.sin(radians), (float) Math.cos(radians), 0, // j
             0, 0, 1  // phi
         };
-        return new Matrix3(values);
+        return new Matrix3(values, MatrixKind.RIGID);
     }
     
     /**
@@ -93,7 +128,7 @@ public class Matrix3 {
             0, y, 0, // j
             0, 0, 1  // phi
         };
-        return new Matrix3(values);
+        return new Matrix3(values, MatrixKind.AFFINE);
     }
     
     /**
@@ -107,7 +142,7 @@ public class Matrix3 {
             h, 1, 0, // j
             0, 0, 1  // phi
         };
-        return new Matrix3(values);
+        return new Matrix3(values, MatrixKind.AFFINE);
     }
     
     /**
@@ -121,7 +156,7 @@ public class Matrix3 {
             0, 1, 0, // j
             0, 0, 1  // phi
         };
-        return new Matrix3(values);
+        return new Matrix3(values, MatrixKind.AFFINE);
     }
     
     @Override
@@ -136,19 +171,27 @@ public class Matrix3 {
         return str;
     }
     
+    /**
+     * Get the kind of this matrix.
+     * @return
+     */
+    public MatrixKind getKind() {
+        return kind;
+    }
+    
     /**
      * Multiply this matrix by the given matrix.
      * @param mat
      * @return
      */
     public Matrix3 multiply(Matrix3 mat) {
+        if (kind == MatrixKind.IDENTITY)
+            return mat;
+        if (mat.kind == MatrixKind.IDENTITY)
+            return this;
         float[] r = new float[9];
-        for (int x = 0; x < 3; x++) {
-            for (int y = 0; y < 3; y++) {
-                r[x*3 + y] = getRow(y).dotp(mat.getColumn(x));
-            }
-        }
-        return new Matrix3(r);
+        MatrixKind k = multiply(values, kind, mat.values, mat.kind, r);
+        return new Matrix3(r, k);
     }
     
     /**
@@ -157,27 +200,180 @@ public class Matrix3 {
      * @return
      */
     public Vector3 multiply(Vector3 v) {
-        float[] r = new float[3];
-        for (int y = 0; y < 3; y++) {
-            r[y] = getRow(y).dotp(v);
+        float[] m = values;
+        float x = v.getX(), y = v.getY(), z = v.getZ();
+        switch (kind) {
+        case IDENTITY:
+            return v;
+        case TRANSLATION:
+            return new Vector3(x + m[6]*z, y + m[7]*z, z);
+        case RIGID:
+        case AFFINE:
+            return new Vector3(m[0]*x + m[3]*y + m[6]*z,
+                               m[1]*x + m[4]*y + m[7]*z,
+                               z);
+        default:
+            return new Vector3(m[0]*x + m[3]*y + m[6]*z,
+                               m[1]*x + m[4]*y + m[7]*z,
+                               m[2]*x + m[5]*y + m[8]*z);
         }
-        return new Vector3(r);
     }
     
-    private Vector3 getColumn(int x) {
-        float[] vec = new float[3];
-        for (int y = 0; y < 3; y++) {
-            vec[y] = values[x*3 + y];
+    /**
+     * Compute the inverse of this matrix.
+     * 
+     * @throws ArithmeticException if the matrix is singular
+     * @return
+     */
+    public Matrix3 inverse() {
+        if (kind == MatrixKind.IDENTITY)
+            return this;
+        float[] r = new float[9];
+        inverse(values, kind, r);
+        return new Matrix3(r, kind);
+    }
+    
+    /**
+     * Compute the transpose of this matrix.
+     * @return
+     */
+    public Matrix3 transpose() {
+        float[] m = values;
+        float[] r = new float[] {
+            m[0], m[3], m[6],
+            m[1], m[4], m[7],
+            m[2], m[5], m[8]
+        };
+        return new Matrix3(r, classify(r));
+    }
+    
+    /**
+     * Compute r = a * b, where a has kind ka and b has kind kb, picking the cheapest kernel for
+     * the two kinds. All matrices are in column-major order and r may be the same array as a or b.
+     * 
+     * @return the kind of the result
+     */
+    static MatrixKind multiply(float[] a, MatrixKind ka, float[] b, MatrixKind kb, float[] r) {
+        if (ka == MatrixKind.IDENTITY) {
+            if (r != b)
+                System.arraycopy(b, 0, r, 0, 9);
+            return kb;
+        }
+        if (kb == MatrixKind.IDENTITY) {
+            if (r != a)
+                System.arraycopy(a, 0, r, 0, 9);
+            return ka;
         }
-        return new Vector3(vec);
+        if (kb == MatrixKind.TRANSLATION) {
+            // Only the phi column changes
+            float x = b[6], y = b[7];
+            if (r != a)
+                System.arraycopy(a, 0, r, 0, 9);
+            r[6] += r[0]*x + r[3]*y;
+            r[7] += r[1]*x + r[4]*y;
+            r[8] += r[2]*x + r[5]*y;
+            return ka.compose(kb);
+        }
+        if (ka == MatrixKind.TRANSLATION) {
+            // Each column gains the translation scaled by its w component
+            float x = a[6], y = a[7];
+            if (r != b)
+                System.arraycopy(b, 0, r, 0, 9);
+            r[0] += x*r[2]; r[1] += y*r[2];
+            r[3] += x*r[5]; r[4] += y*r[5];
+            r[6] += x*r[8]; r[7] += y*r[8];
+            return ka.compose(kb);
+        }
+        
+        float a0 = a[0], a1 = a[1], a2 = a[2];
+        float a3 = a[3], a4 = a[4], a5 = a[5];
+        float a6 = a[6], a7 = a[7], a8 = a[8];
+        
+        float b0 = b[0], b1 = b[1], b2 = b[2];
+        float b3 = b[3], b4 = b[4], b5 = b[5];
+        float b6 = b[6], b7 = b[7], b8 = b[8];
+        
+        if (ka.isAffine() && kb.isAffine()) {
+            // The last row is known to be (0,0,1)
+            r[0] = a0*b0 + a3*b1;
+            r[1] = a1*b0 + a4*b1;
+            r[2] = 0;
+            r[3] = a0*b3 + a3*b4;
+            r[4] = a1*b3 + a4*b4;
+            r[5] = 0;
+            r[6] = a0*b6 + a3*b7 + a6;
+            r[7] = a1*b6 + a4*b7 + a7;
+            r[8] = 1;
+        } else {
+            r[0] = a0*b0 + a3*b1 + a6*b2;
+            r[1] = a1*b0 + a4*b1 + a7*b2;
+            r[2] = a2*b0 + a5*b1 + a8*b2;
+            r[3] = a0*b3 + a3*b4 + a6*b5;
+            r[4] = a1*b3 + a4*b4 + a7*b5;
+            r[5] = a2*b3 + a5*b4 + a8*b5;
+            r[6] = a0*b6 + a3*b7 + a6*b8;
+            r[7] = a1*b6 + a4*b7 + a7*b8;
+            r[8] = a2*b6 + a5*b7 + a8*b8;
+        }
+        return ka.compose(kb);
     }
     
-    private Vector3 getRow(int y) {
-        float[] vec = new float[3];
-        for (int x = 0; x < 3; x++) {
-            vec[x] = values[x*3 + y];
+    /**
+     * Compute the inverse of m, which has kind k, and store it in r. r may be the same array as m.
+     * 
+     * @throws ArithmeticException if the matrix is singular
+     */
+    static void inverse(float[] m, MatrixKind k, float[] r) {
+        float m0 = m[0], m1 = m[1], m2 = m[2];
+        float m3 = m[3], m4 = m[4], m5 = m[5];
+        float m6 = m[6], m7 = m[7], m8 = m[8];
+        switch (k) {
+        case IDENTITY:
+            if (r != m)
+                System.arraycopy(m, 0, r, 0, 9);
+            return;
+        case TRANSLATION:
+            if (r != m)
+                System.arraycopy(m, 0, r, 0, 9);
+            r[6] = -m6;
+            r[7] = -m7;
+            return;
+        case RIGID:
+            // The inverse of the rotation is its transpose
+            r[0] = m0; r[3] = m1; r[6] = -(m0*m6 + m1*m7);
+            r[1] = m3; r[4] = m4; r[7] = -(m3*m6 + m4*m7);
+            r[2] = 0;  r[5] = 0;  r[8] = 1;
+            return;
+        case AFFINE: {
+            float det = m0*m4 - m1*m3;
+            if (det == 0)
+                throw new ArithmeticException("Matrix is not invertible");
+            float inv = 1/det;
+            float i0 = m4*inv, i1 = -m1*inv, i3 = -m3*inv, i4 = m0*inv;
+            r[0] = i0; r[3] = i3; r[6] = -(i0*m6 + i3*m7);
+            r[1] = i1; r[4] = i4; r[7] = -(i1*m6 + i4*m7);
+            r[2] = 0;  r[5] = 0;  r[8] = 1;
+            return;
+        }
+        default: {
+            float c0 = m4*m8 - m5*m7;
+            float c1 = m5*m6 - m3*m8;
+            float c2 = m3*m7 - m4*m6;
+            float det = m0*c0 + m1*c1 + m2*c2;
+            if (det == 0)
+                throw new ArithmeticException("Matrix is not invertible");
+            float inv = 1/det;
+            r[0] = c0*inv;
+            r[1] = (m2*m7 - m1*m8)*inv;
+            r[2] = (m1*m5 - m2*m4)*inv;
+            r[3] = c1*inv;
+            r[4] = (m0*m8 - m2*m6)*inv;
+            r[5] = (m2*m3 - m0*m5)*inv;
+            r[6] = c2*inv;
+            r[7] = (m1*m6 - m0*m7)*inv;
+            r[8] = (m0*m4 - m1*m3)*inv;
+        }
         }
-        return new Vector3(vec);
     }
 
     /**
@@ -187,5 +383,15 @@ public class Matrix3 {
     public float[] getValues() {
         return Arrays.copyOf(values, 9);
     }
+    
+    /**
+     * Copy the values stored in this matrix in column-major order into the given array, starting
+     * at the given offset. This avoids allocating a new array.
+     * @param dest
+     * @param offset
+     */
+    public void getValues(float[] dest, int offset) {
+        System.arraycopy(values, 0, dest, offset, 9);
+    }
 
 }
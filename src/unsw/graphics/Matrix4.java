@@ -12,12 +12,18 @@ import unsw.graphics.geometry.Point3D;
  * 
  * This class is immutable.
  * 
+ * Every matrix is tagged with a {@link MatrixKind} describing its structure. Matrices built by the
+ * static factory methods know their kind exactly, and products, transforms and inverses use
+ * cheaper specialised kernels for the simpler kinds.
+ * 
  * @author Robert Clifton-Everest
  *
  */
 public class Matrix4 {
     // Matrix is stored in column-major order to match OpenGL
-    private float[] values;
+    final float[] values;
+    
+    final MatrixKind kind;
     
     /**
      * Construct a matrix from the given flat array of values.
@@ -27,6 +33,40 @@ public class Matrix4 {
         if (values.length != 16)
             throw new IllegalArgumentException("Matrix4 constructor passed an array of length " + values.length);
         this.values = Arrays.copyOf(values, 16);
+        this.kind = classify(this.values);
+    }
+    
+    /**
+     * Construct a matrix of a known kind that takes ownership of the given array without copying
+     * it. Only for use within this package, where the caller guarantees the array is never
+     * modified afterwards.
+     * @param values
+     * @param kind
+     */
+    Matrix4(float[] values, MatrixKind kind) {
+        this.values = values;
+        this.kind = kind;
+    }
+    
+    /**
+     * Determine the kind of an arbitrary matrix.
+     * 
+     * This is conservative: rotations are only recognised as RIGID when they are built by the
+     * factory methods, otherwise they are classified as AFFINE.
+     * 
+     * @param m
+     * @return
+     */
+    static MatrixKind classify(float[] m) {
+        if (m[3] != 0 || m[7] != 0 || m[11] != 0 || m[15] != 1)
+            return MatrixKind.PROJECTIVE;
+        if (m[0] != 1 || m[1] != 0 || m[2] != 0 ||
+                m[4] != 0 || m[5] != 1 || m[6] != 0 ||
+                m[8] != 0 || m[9] != 0 || m[10] != 1)
+            return MatrixKind.AFFINE;
+        if (m[12] != 0 || m[13] != 0 || m[14] != 0)
+            return MatrixKind.TRANSLATION;
+        return MatrixKind.IDENTITY;
     }
     
     /**
@@ -39,7 +79,7 @@ public class Matrix4 {
             0, 0, 1, 0, // k
             0, 0, 0, 1  // phi
         };
-        return new Matrix4(values);
+        return new Matrix4(values, MatrixKind.IDENTITY);
     }
     
     /**
@@ -55,7 +95,7 @@ public class Matrix4 {
             0, 0, 1, 0, // k
             x, y, z, 1  // phi
         };
-        return new Matrix4(values);
+        return new Matrix4(values, MatrixKind.TRANSLATION);
     }
     
     /**
@@ -81,7 +121,7 @@ public class Matrix4 {
             0, (float) -Math.sin(radians), (float) Math.cos(radians), 0, // k
             0, 0, 0, 1                                                   // phi
         };
-        return new Matrix4(values);
+        return new Matrix4(values, MatrixKind.RIGID);
     }
     
     
@@ -98,7 +138,7 @@ public class Matrix4 {
             (float) Math.sin(radians), 0, (float) Math.cos(radians), 0,  // k
             0, 0, 0, 1                                                   // phi
         };
-        return new Matrix4(values);
+        return new Matrix4(values, MatrixKind.RIGID);
     }
     
     
@@ -115,7 +155,7 @@ public class Matrix4 {
             0, 0, 1, 0,                                                  // k
             0, 0, 0, 1                                                   // phi
         };
-        return new Matrix4(values);
+        return new Matrix4(values, MatrixKind.RIGID);
     }
     
     /**
@@ -131,7 +171,7 @@ public class Matrix4 {
             0, 0, z, 0, // k
             0, 0, 0, 1  // phi
         };
-        return new Matrix4(values);
+        return new Matrix4(values, MatrixKind.AFFINE);
     }
     
     /**
@@ -152,7 +192,7 @@ public class Matrix4 {
             0, 0, -2/(far-near), 0,                                                           // k
             -(right+left)/(right-left), -(top+bottom)/(top-bottom), -(far+near)/(far-near), 1 // phi
         };
-        return new Matrix4(values);
+        return new Matrix4(values, MatrixKind.AFFINE);
     }
     
     /**
@@ -173,7 +213,7 @@ public class Matrix4 {
             (right+left)/(right-left), (top+bottom)/(top-bottom), -(far+near)/(far-near), -1, // k
             0, 0, -2*far*near/(far-near), 0                                                   // phi
         };
-        return new Matrix4(values);
+        return new Matrix4(values, MatrixKind.PROJECTIVE);
     }
     
     /**
@@ -203,19 +243,27 @@ public class Matrix4 {
         return str;
     }
     
+    /**
+     * Get the kind of this matrix.
+     * @return
+     */
+    public MatrixKind getKind() {
+        return kind;
+    }
+    
     /**
      * Multiply this matrix by the given matrix.
      * @param mat
      * @return
      */
     public Matrix4 multiply(Matrix4 mat) {
+        if (kind == MatrixKind.IDENTITY)
+            return mat;
+        if (mat.kind == MatrixKind.IDENTITY)
+            return this;
         float[] r = new float[16];
-        for (int x = 0; x < 4; x++) {
-            for (int y = 0; y < 4; y++) {
-                r[x*4 + y] = getRow(y).dotp(mat.getColumn(x));
-            }
-        }
-        return new Matrix4(r);
+        MatrixKind k = multiply(values, kind, mat.values, mat.kind, r);
+        return new Matrix4(r, k);
     }
     
     /**
@@ -224,27 +272,362 @@ public class Matrix4 {
      * @return
      */
     public Vector4 multiply(Vector4 v) {
-        float[] r = new float[4];
-        for (int y = 0; y < 4; y++) {
-            r[y] = getRow(y).dotp(v);
+        float[] m = values;
+        float x = v.getX(), y = v.getY(), z = v.getZ(), w = v.getW();
+        switch (kind) {
+        case IDENTITY:
+            return v;
+        case TRANSLATION:
+            return new Vector4(x + m[12]*w, y + m[13]*w, z + m[14]*w, w);
+        case RIGID:
+        case AFFINE:
+            return new Vector4(m[0]*x + m[4]*y + m[8]*z  + m[12]*w,
+                               m[1]*x + m[5]*y + m[9]*z  + m[13]*w,
+                               m[2]*x + m[6]*y + m[10]*z + m[14]*w,
+                               w);
+        default:
+            return new Vector4(m[0]*x + m[4]*y + m[8]*z  + m[12]*w,
+                               m[1]*x + m[5]*y + m[9]*z  + m[13]*w,
+                               m[2]*x + m[6]*y + m[10]*z + m[14]*w,
+                               m[3]*x + m[7]*y + m[11]*z + m[15]*w);
         }
-        return new Vector4(r);
     }
     
-    private Vector4 getColumn(int x) {
-        float[] vec = new float[4];
-        for (int y = 0; y < 4; y++) {
-            vec[y] = values[x*4 + y];
+    /**
+     * Compute the inverse of this matrix.
+     * 
+     * Translations and rigid transformations are inverted directly, affine transformations only
+     * need the inverse of their 3x3 linear part, and only projective matrices need a full 4x4
+     * inverse.
+     * 
+     * @throws ArithmeticException if the matrix is singular
+     * @return
+     */
+    public Matrix4 inverse() {
+        if (kind == MatrixKind.IDENTITY)
+            return this;
+        float[] r = new float[16];
+        inverse(values, kind, r);
+        return new Matrix4(r, kind);
+    }
+    
+    /**
+     * Compute the transpose of this matrix.
+     * @return
+     */
+    public Matrix4 transpose() {
+        float[] m = values;
+        float[] r = new float[] {
+            m[0], m[4], m[8],  m[12],
+            m[1], m[5], m[9],  m[13],
+            m[2], m[6], m[10], m[14],
+            m[3], m[7], m[11], m[15]
+        };
+        return new Matrix4(r, classify(r));
+    }
+    
+    /**
+     * Compute the normal matrix of this matrix: the inverse transpose of its upper-left 3x3 block.
+     * 
+     * Normals transformed by the normal matrix stay perpendicular to surfaces even when this 
+     * matrix contains a non-uniform scale. For rigid transformations the normal matrix is just the
+     * rotation.
+     * 
+     * @throws ArithmeticException if the 3x3 block is singular
+     * @return
+     */
+    public Matrix3 normalMatrix() {
+        float[] r = new float[9];
+        if (!normalMatrix(values, kind, r))
+            throw new ArithmeticException("Matrix is not invertible");
+        return new Matrix3(r);
+    }
+    
+    /**
+     * Store the normal matrix of m, which has kind k, in r as a 3x3 column-major matrix.
+     * 
+     * @return false (leaving r unchanged) if the 3x3 block is singular
+     */
+    static boolean normalMatrix(float[] m, MatrixKind k, float[] r) {
+        float m0 = m[0], m1 = m[1], m2 = m[2];
+        float m4 = m[4], m5 = m[5], m6 = m[6];
+        float m8 = m[8], m9 = m[9], m10 = m[10];
+        if (k == MatrixKind.IDENTITY || k == MatrixKind.TRANSLATION || k == MatrixKind.RIGID) {
+            r[0] = m0; r[3] = m4; r[6] = m8;
+            r[1] = m1; r[4] = m5; r[7] = m9;
+            r[2] = m2; r[5] = m6; r[8] = m10;
+            return true;
         }
-        return new Vector4(vec);
+        // The inverse transpose is the matrix of cofactors divided by the determinant
+        float c0 = m5*m10 - m6*m9;
+        float c1 = m6*m8 - m4*m10;
+        float c2 = m4*m9 - m5*m8;
+        float det = m0*c0 + m1*c1 + m2*c2;
+        if (det == 0)
+            return false;
+        float inv = 1/det;
+        r[0] = c0*inv;
+        r[1] = c1*inv;
+        r[2] = c2*inv;
+        r[3] = (m2*m9 - m1*m10)*inv;
+        r[4] = (m0*m10 - m2*m8)*inv;
+        r[5] = (m1*m8 - m0*m9)*inv;
+        r[6] = (m1*m6 - m2*m5)*inv;
+        r[7] = (m2*m4 - m0*m6)*inv;
+        r[8] = (m0*m5 - m1*m4)*inv;
+        return true;
     }
     
-    private Vector4 getRow(int y) {
-        float[] vec = new float[4];
-        for (int x = 0; x < 4; x++) {
-            vec[x] = values[x*4 + y];
+    /**
+     * Compute r = a * b, where a has kind ka and b has kind kb, picking the cheapest kernel for
+     * the two kinds. All matrices are in column-major order.
+     * 
+     * Every input is read before the corresponding output is written, so r may be the same array
+     * as a or b.
+     * 
+     * @return the kind of the result
+     */
+    static MatrixKind multiply(float[] a, MatrixKind ka, float[] b, MatrixKind kb, float[] r) {
+        if (ka == MatrixKind.IDENTITY) {
+            if (r != b)
+                System.arraycopy(b, 0, r, 0, 16);
+            return kb;
+        }
+        if (kb == MatrixKind.IDENTITY) {
+            if (r != a)
+                System.arraycopy(a, 0, r, 0, 16);
+            return ka;
+        }
+        if (kb == MatrixKind.TRANSLATION) {
+            // Only the phi column changes
+            float x = b[12], y = b[13], z = b[14];
+            if (r != a)
+                System.arraycopy(a, 0, r, 0, 16);
+            r[12] += r[0]*x + r[4]*y + r[8]*z;
+            r[13] += r[1]*x + r[5]*y + r[9]*z;
+            r[14] += r[2]*x + r[6]*y + r[10]*z;
+            r[15] += r[3]*x + r[7]*y + r[11]*z;
+            return ka.compose(kb);
+        }
+        if (ka == MatrixKind.TRANSLATION) {
+            // Each column gains the translation scaled by its w component
+            float x = a[12], y = a[13], z = a[14];
+            if (r != b)
+                System.arraycopy(b, 0, r, 0, 16);
+            r[0]  += x*r[3];  r[1]  += y*r[3];  r[2]  += z*r[3];
+            r[4]  += x*r[7];  r[5]  += y*r[7];  r[6]  += z*r[7];
+            r[8]  += x*r[11]; r[9]  += y*r[11]; r[10] += z*r[11];
+            r[12] += x*r[15]; r[13] += y*r[15]; r[14] += z*r[15];
+            return ka.compose(kb);
         }
-        return new Vector4(vec);
+        if (ka.isAffine() && kb.isAffine()) {
+            multiplyAffine(a, b, r);
+            return ka.compose(kb);
+        }
+        multiply(a, b, r);
+        return ka.compose(kb);
+    }
+    
+    /**
+     * Compute r = a * b for two affine matrices. The last row is known to be (0,0,0,1), so only
+     * the top three rows are computed.
+     */
+    private static void multiplyAffine(float[] a, float[] b, float[] r) {
+        float a0 = a[0], a1 = a[1], a2 = a[2];
+        float a4 = a[4], a5 = a[5], a6 = a[6];
+        float a8 = a[8], a9 = a[9], a10 = a[10];
+        float a12 = a[12], a13 = a[13], a14 = a[14];
+        
+        float b0 = b[0], b1 = b[1], b2 = b[2];
+        float b4 = b[4], b5 = b[5], b6 = b[6];
+        float b8 = b[8], b9 = b[9], b10 = b[10];
+        float b12 = b[12], b13 = b[13], b14 = b[14];
+        
+        // i
+        r[0]  = a0*b0  + a4*b1  + a8*b2;
+        r[1]  = a1*b0  + a5*b1  + a9*b2;
+        r[2]  = a2*b0  + a6*b1  + a10*b2;
+        r[3]  = 0;
+        // j
+        r[4]  = a0*b4  + a4*b5  + a8*b6;
+        r[5]  = a1*b4  + a5*b5  + a9*b6;
+        r[6]  = a2*b4  + a6*b5  + a10*b6;
+        r[7]  = 0;
+        // k
+        r[8]  = a0*b8  + a4*b9  + a8*b10;
+        r[9]  = a1*b8  + a5*b9  + a9*b10;
+        r[10] = a2*b8  + a6*b9  + a10*b10;
+        r[11] = 0;
+        // phi
+        r[12] = a0*b12 + a4*b13 + a8*b14  + a12;
+        r[13] = a1*b12 + a5*b13 + a9*b14  + a13;
+        r[14] = a2*b12 + a6*b13 + a10*b14 + a14;
+        r[15] = 1;
+    }
+    
+    /**
+     * Compute the inverse of m, which has kind k, and store it in r. r may be the same array as m.
+     * 
+     * @throws ArithmeticException if the matrix is singular
+     */
+    static void inverse(float[] m, MatrixKind k, float[] r) {
+        switch (k) {
+        case IDENTITY:
+            if (r != m)
+                System.arraycopy(m, 0, r, 0, 16);
+            return;
+        case TRANSLATION: {
+            float x = m[12], y = m[13], z = m[14];
+            if (r != m)
+                System.arraycopy(m, 0, r, 0, 16);
+            r[12] = -x;
+            r[13] = -y;
+            r[14] = -z;
+            return;
+        }
+        case RIGID: {
+            // The inverse of the rotation is its transpose
+            float m0 = m[0], m1 = m[1], m2 = m[2];
+            float m4 = m[4], m5 = m[5], m6 = m[6];
+            float m8 = m[8], m9 = m[9], m10 = m[10];
+            float x = m[12], y = m[13], z = m[14];
+            r[0] = m0; r[4] = m1; r[8]  = m2;
+            r[1] = m4; r[5] = m5; r[9]  = m6;
+            r[2] = m8; r[6] = m9; r[10] = m10;
+            r[3] = 0;  r[7] = 0;  r[11] = 0;
+            r[12] = -(m0*x + m1*y + m2*z);
+            r[13] = -(m4*x + m5*y + m6*z);
+            r[14] = -(m8*x + m9*y + m10*z);
+            r[15] = 1;
+            return;
+        }
+        case AFFINE: {
+            // Invert the 3x3 linear part with cofactors, then transform the translation
+            float m0 = m[0], m1 = m[1], m2 = m[2];
+            float m4 = m[4], m5 = m[5], m6 = m[6];
+            float m8 = m[8], m9 = m[9], m10 = m[10];
+            float x = m[12], y = m[13], z = m[14];
+            
+            float c0 = m5*m10 - m6*m9;
+            float c1 = m6*m8 - m4*m10;
+            float c2 = m4*m9 - m5*m8;
+            float det = m0*c0 + m1*c1 + m2*c2;
+            if (det == 0)
+                throw new ArithmeticException("Matrix is not invertible");
+            float inv = 1/det;
+            
+            float i0 = c0*inv;
+            float i1 = (m2*m9 - m1*m10)*inv;
+            float i2 = (m1*m6 - m2*m5)*inv;
+            float i4 = c1*inv;
+            float i5 = (m0*m10 - m2*m8)*inv;
+            float i6 = (m2*m4 - m0*m6)*inv;
+            float i8 = c2*inv;
+            float i9 = (m1*m8 - m0*m9)*inv;
+            float i10 = (m0*m5 - m1*m4)*inv;
+            
+            r[0] = i0; r[4] = i4; r[8]  = i8;
+            r[1] = i1; r[5] = i5; r[9]  = i9;
+            r[2] = i2; r[6] = i6; r[10] = i10;
+            r[3] = 0;  r[7] = 0;  r[11] = 0;
+            r[12] = -(i0*x + i4*y + i8*z);
+            r[13] = -(i1*x + i5*y + i9*z);
+            r[14] = -(i2*x + i6*y + i10*z);
+            r[15] = 1;
+            return;
+        }
+        default:
+            inverseGeneral(m, r);
+        }
+    }
+    
+    /**
+     * A general 4x4 inverse by cofactor expansion.
+     */
+    private static void inverseGeneral(float[] m, float[] r) {
+        float[] inv = new float[16];
+        inv[0] = m[5]*m[10]*m[15] - m[5]*m[11]*m[14] - m[9]*m[6]*m[15]
+                + m[9]*m[7]*m[14] + m[13]*m[6]*m[11] - m[13]*m[7]*m[10];
+        inv[4] = -m[4]*m[10]*m[15] + m[4]*m[11]*m[14] + m[8]*m[6]*m[15]
+                - m[8]*m[7]*m[14] - m[12]*m[6]*m[11] + m[12]*m[7]*m[10];
+        inv[8] = m[4]*m[9]*m[15] - m[4]*m[11]*m[13] - m[8]*m[5]*m[15]
+                + m[8]*m[7]*m[13] + m[12]*m[5]*m[11] - m[12]*m[7]*m[9];
+        inv[12] = -m[4]*m[9]*m[14] + m[4]*m[10]*m[13] + m[8]*m[5]*m[14]
+                - m[8]*m[6]*m[13] - m[12]*m[5]*m[10] + m[12]*m[6]*m[9];
+        inv[1] = -m[1]*m[10]*m[15] + m[1]*m[11]*m[14] + m[9]*m[2]*m[15]
+                - m[9]*m[3]*m[14] - m[13]*m[2]*m[11] + m[13]*m[3]*m[10];
+        inv[5] = m[0]*m[10]*m[15] - m[0]*m[11]*m[14] - m[8]*m[2]*m[15]
+                + m[8]*m[3]*m[14] + m[12]*m[2]*m[11] - m[12]*m[3]*m[10];
+        inv[9] = -m[0]*m[9]*m[15] + m[0]*m[11]*m[13] + m[8]*m[1]*m[15]
+                - m[8]*m[3]*m[13] - m[12]*m[1]*m[11] + m[12]*m[3]*m[9];
+        inv[13] = m[0]*m[9]*m[14] - m[0]*m[10]*m[13] - m[8]*m[1]*m[14]
+                + m[8]*m[2]*m[13] + m[12]*m[1]*m[10] - m[12]*m[2]*m[9];
+        inv[2] = m[1]*m[6]*m[15] - m[1]*m[7]*m[14] - m[5]*m[2]*m[15]
+                + m[5]*m[3]*m[14] + m[13]*m[2]*m[7] - m[13]*m[3]*m[6];
+        inv[6] = -m[0]*m[6]*m[15] + m[0]*m[7]*m[14] + m[4]*m[2]*m[15]
+                - m[4]*m[3]*m[14] - m[12]*m[2]*m[7] + m[12]*m[3]*m[6];
+        inv[10] = m[0]*m[5]*m[15] - m[0]*m[7]*m[13] - m[4]*m[1]*m[15]
+                + m[4]*m[3]*m[13] + m[12]*m[1]*m[7] - m[12]*m[3]*m[5];
+        inv[14] = -m[0]*m[5]*m[14] + m[0]*m[6]*m[13] + m[4]*m[1]*m[14]
+                - m[4]*m[2]*m[13] - m[12]*m[1]*m[6] + m[12]*m[2]*m[5];
+        inv[3] = -m[1]*m[6]*m[11] + m[1]*m[7]*m[10] + m[5]*m[2]*m[11]
+                - m[5]*m[3]*m[10] - m[9]*m[2]*m[7] + m[9]*m[3]*m[6];
+        inv[7] = m[0]*m[6]*m[11] - m[0]*m[7]*m[10] - m[4]*m[2]*m[11]
+                + m[4]*m[3]*m[10] + m[8]*m[2]*m[7] - m[8]*m[3]*m[6];
+        inv[11] = -m[0]*m[5]*m[11] + m[0]*m[7]*m[9] + m[4]*m[1]*m[11]
+                - m[4]*m[3]*m[9] - m[8]*m[1]*m[7] + m[8]*m[3]*m[5];
+        inv[15] = m[0]*m[5]*m[10] - m[0]*m[6]*m[9] - m[4]*m[1]*m[10]
+                + m[4]*m[2]*m[9] + m[8]*m[1]*m[6] - m[8]*m[2]*m[5];
+
+        float det = m[0]*inv[0] + m[1]*inv[4] + m[2]*inv[8] + m[3]*inv[12];
+        if (det == 0)
+            throw new ArithmeticException("Matrix is not invertible");
+        float invDet = 1/det;
+        for (int i = 0; i < 16; i++)
+            r[i] = inv[i]*invDet;
+    }
+    
+    /**
+     * Compute r = a * b where all three arrays are 4x4 matrices in column-major order.
+     * 
+     * The product is fully unrolled and every input is read before r is written, so r may be the
+     * same array as a or b.
+     * 
+     * @param a
+     * @param b
+     * @param r
+     */
+    static void multiply(float[] a, float[] b, float[] r) {
+        float a0 = a[0], a1 = a[1], a2 = a[2], a3 = a[3];
+        float a4 = a[4], a5 = a[5], a6 = a[6], a7 = a[7];
+        float a8 = a[8], a9 = a[9], a10 = a[10], a11 = a[11];
+        float a12 = a[12], a13 = a[13], a14 = a[14], a15 = a[15];
+        
+        float b0 = b[0], b1 = b[1], b2 = b[2], b3 = b[3];
+        float b4 = b[4], b5 = b[5], b6 = b[6], b7 = b[7];
+        float b8 = b[8], b9 = b[9], b10 = b[10], b11 = b[11];
+        float b12 = b[12], b13 = b[13], b14 = b[14], b15 = b[15];
+        
+        // i
+        r[0]  = a0*b0  + a4*b1  + a8*b2   + a12*b3;
+        r[1]  = a1*b0  + a5*b1  + a9*b2   + a13*b3;
+        r[2]  = a2*b0  + a6*b1  + a10*b2  + a14*b3;
+        r[3]  = a3*b0  + a7*b1  + a11*b2  + a15*b3;
+        // j
+        r[4]  = a0*b4  + a4*b5  + a8*b6   + a12*b7;
+        r[5]  = a1*b4  + a5*b5  + a9*b6   + a13*b7;
+        r[6]  = a2*b4  + a6*b5  + a10*b6  + a14*b7;
+        r[7]  = a3*b4  + a7*b5  + a11*b6  + a15*b7;
+        // k
+        r[8]  = a0*b8  + a4*b9  + a8*b10  + a12*b11;
+        r[9]  = a1*b8  + a5*b9  + a9*b10  + a13*b11;
+        r[10] = a2*b8  + a6*b9  + a10*b10 + a14*b11;
+        r[11] = a3*b8  + a7*b9  + a11*b10 + a15*b11;
+        // phi
+        r[12] = a0*b12 + a4*b13 + a8*b14  + a12*b15;
+        r[13] = a1*b12 + a5*b13 + a9*b14  + a13*b15;
+        r[14] = a2*b12 + a6*b13 + a10*b14 + a14*b15;
+        r[15] = a3*b12 + a7*b13 + a11*b14 + a15*b15;
     }
 
     /**
@@ -254,5 +637,15 @@ public class Matrix4 {
     public float[] getValues() {
         return Arrays.copyOf(values, 16);
     }
+    
+    /**
+     * Copy the values stored in this matrix in column-major order into the given array, starting
+     * at the given offset. This avoids allocating a new array.
+     * @param dest
+     * @param offset
+     */
+    public void getValues(float[] dest, int offset) {
+        System.arraycopy(values, 0, dest, offset, 16);
+    }
 
 }
@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+/**
+ * The structure of a transformation matrix.
+ *
+ * The kinds are ordered from most to least specialised, so the kind of a product of two matrices
+ * is (at most) the later of the two kinds. Knowing the kind of a matrix means products, transforms
+ * and inverses can skip the parts of the matrix that are known to be 0 or 1.
+ *
+ * For a 3x3 matrix the same kinds apply to 2D transformations, with the last row playing the role
+ * of the projective row.
+ */
+public enum MatrixKind {
+    /**
+     * The identity matrix.
+     */
+    IDENTITY,
+
+    /**
+     * A pure translation. The linear part is the identity.
+     */
+    TRANSLATION,
+
+    /**
+     * A rotation followed by a translation. The linear part is orthonormal, so its inverse is its
+     * transpose.
+     */
+    RIGID,
+
+    /**
+     * Any affine transformation (e.g. scale or shear). The last row is (0, ..., 0, 1).
+     */
+    AFFINE,
+
+    /**
+     * Anything else, e.g. a perspective projection.
+     */
+    PROJECTIVE;
+
+    /**
+     * The kind of the product of a matrix of this kind with a matrix of the given kind.
+     * @param other
+     * @return
+     */
+    public MatrixKind compose(MatrixKind other) {
+        return ordinal() >= other.ordinal() ? this : other;
+    }
+
+    /**
+     * Whether the last row of a matrix of this kind is known to be (0, ..., 0, 1).
+     * @return
+     */
+    public boolean isAffine() {
+        return this != PROJECTIVE;
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import java.util.Arrays;
+
+import unsw.graphics.geometry.Point2D;
+
+/**
+ * A 3x3 matrix that can be modified in place.
+ *
+ * This is the 2D counterpart of {@link MutableMatrix4}. Every operation overwrites the values of
+ * this matrix and returns this matrix. The operations that correspond to a {@link CoordFrame2D}
+ * step multiply on the right, exactly like the methods of CoordFrame2D.
+ */
+public class MutableMatrix3 {
+    // Matrix is stored in column-major order to match OpenGL
+    final float[] values;
+
+    MatrixKind kind;
+
+    /**
+     * Construct a new identity matrix.
+     */
+    public MutableMatrix3() {
+        values = new float[9];
+        setIdentity();
+    }
+
+    /**
+     * Construct a new matrix with the same values as the given matrix.
+     * @param mat
+     */
+    public MutableMatrix3(Matrix3 mat) {
+        values = new float[9];
+        set(mat);
+    }
+
+    /**
+     * Set this matrix to the identity matrix.
+     * @return this
+     */
+    public MutableMatrix3 setIdentity() {
+        Arrays.fill(values, 0);
+        values[0] = 1;
+        values[4] = 1;
+        values[8] = 1;
+        kind = MatrixKind.IDENTITY;
+        return this;
+    }
+
+    /**
+     * Copy the values of the given matrix into this matrix.
+     * @param mat
+     * @return this
+     */
+    public MutableMatrix3 set(Matrix3 mat) {
+        System.arraycopy(mat.values, 0, values, 0, 9);
+        kind = mat.kind;
+        return this;
+    }
+
+    /**
+     * Copy the values of the given matrix into this matrix.
+     * @param mat
+     * @return this
+     */
+    public MutableMatrix3 set(MutableMatrix3 mat) {
+        System.arraycopy(mat.values, 0, values, 0, 9);
+        kind = mat.kind;
+        return this;
+    }
+
+    /**
+     * Copy the given values (in column-major order) into this matrix.
+     * @param values
+     * @return this
+     */
+    public MutableMatrix3 set(float[] values) {
+        if (values.length != 9)
+            throw new IllegalArgumentException("MutableMatrix3.set passed an array of length " + values.length);
+        System.arraycopy(values, 0, this.values, 0, 9);
+        kind = Matrix3.classify(this.values);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by the given matrix, storing the result
+     * in this matrix.
+     * @param mat
+     * @return this
+     */
+    public MutableMatrix3 multiply(Matrix3 mat) {
+        kind = Matrix3.multiply(values, kind, mat.values, mat.kind, values);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by a translation matrix.
+     *
+     * Only the phi column changes.
+     *
+     * @param x
+     * @param y
+     * @return this
+     */
+    public MutableMatrix3 translate(float x, float y) {
+        float[] m = values;
+        if (kind == MatrixKind.IDENTITY || kind == MatrixKind.TRANSLATION) {
+            m[6] += x;
+            m[7] += y;
+            kind = MatrixKind.TRANSLATION;
+            return this;
+        }
+        m[6] += m[0]*x + m[3]*y;
+        m[7] += m[1]*x + m[4]*y;
+        m[8] += m[2]*x + m[5]*y;
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by a translation matrix.
+     * @param point
+     * @return this
+     */
+    public MutableMatrix3 translate(Point2D point) {
+        return translate(point.getX(), point.getY());
+    }
+
+    /**
+     * Multiply this matrix on the right by a rotation matrix.
+     *
+     * Only the i and j columns change.
+     *
+     * @param degrees
+     * @return this
+     */
+    public MutableMatrix3 rotate(float degrees) {
+        double radians = Math.toRadians(degrees);
+        float c = (float) Math.cos(radians);
+        float s = (float) Math.sin(radians);
+        float[] m = values;
+        float i0 = m[0], j0 = m[3];
+        float i1 = m[1], j1 = m[4];
+        float i2 = m[2], j2 = m[5];
+        m[0] = c*i0 + s*j0;
+        m[1] = c*i1 + s*j1;
+        m[2] = c*i2 + s*j2;
+        m[3] = c*j0 - s*i0;
+        m[4] = c*j1 - s*i1;
+        m[5] = c*j2 - s*i2;
+        kind = kind.compose(MatrixKind.RIGID);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by a scale matrix.
+     * @param x
+     * @param y
+     * @return this
+     */
+    public MutableMatrix3 scale(float x, float y) {
+        float[] m = values;
+        m[0] *= x; m[3] *= y;
+        m[1] *= x; m[4] *= y;
+        m[2] *= x; m[5] *= y;
+        kind = kind.compose(MatrixKind.AFFINE);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by a horizontal shear matrix.
+     *
+     * Only the j column changes.
+     *
+     * @param h
+     * @return this
+     */
+    public MutableMatrix3 horizontalShear(float h) {
+        float[] m = values;
+        m[3] += h*m[0];
+        m[4] += h*m[1];
+        m[5] += h*m[2];
+        kind = kind.compose(MatrixKind.AFFINE);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by a vertical shear matrix.
+     *
+     * Only the i column changes.
+     *
+     * @param v
+     * @return this
+     */
+    public MutableMatrix3 verticalShear(float v) {
+        float[] m = values;
+        m[0] += v*m[3];
+        m[1] += v*m[4];
+        m[2] += v*m[5];
+        kind = kind.compose(MatrixKind.AFFINE);
+        return this;
+    }
+
+    /**
+     * Get the kind of this matrix.
+     * @return
+     */
+    public MatrixKind getKind() {
+        return kind;
+    }
+
+    /**
+     * Get the value at the given column and row.
+     * @param column
+     * @param row
+     * @return
+     */
+    public float get(int column, int row) {
+        return values[column*3 + row];
+    }
+
+    /**
+     * Copy the values stored in this matrix in column-major order into the
+     * given array, starting at the given offset.
+     * @param dest
+     * @param offset
+     */
+    public void getValues(float[] dest, int offset) {
+        System.arraycopy(values, 0, dest, offset, 9);
+    }
+
+    /**
+     * Create an immutable copy of this matrix.
+     * @return
+     */
+    public Matrix3 toMatrix3() {
+        return new Matrix3(Arrays.copyOf(values, 9), kind);
+    }
+
+    @Override
+    public String toString() {
+        return toMatrix3().toString();
+    }
+}
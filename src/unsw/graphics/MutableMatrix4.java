@@ -0,0 +1,333 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import java.util.Arrays;
+
+import unsw.graphics.geometry.Point3D;
+
+/**
+ * A 4x4 matrix that can be modified in place.
+ *
+ * Unlike {@link Matrix4}, this class is mutable. Every operation overwrites the
+ * values of this matrix and returns this matrix, so a chain of transformations
+ * can be composed every frame without allocating. All the operations that
+ * correspond to a {@link CoordFrame3D} step (translate, rotate, scale) multiply
+ * on the right, exactly like the methods of CoordFrame3D.
+ *
+ * Use {@link #set(Matrix4)} and {@link #toMatrix4()} to convert to and from
+ * the immutable representation.
+ *
+ * Like Matrix4, the matrix keeps track of its {@link MatrixKind} so that
+ * products can use the specialised kernels.
+ */
+public class MutableMatrix4 {
+    // Matrix is stored in column-major order to match OpenGL
+    final float[] values;
+
+    MatrixKind kind;
+
+    /**
+     * Construct a new identity matrix.
+     */
+    public MutableMatrix4() {
+        values = new float[16];
+        setIdentity();
+    }
+
+    /**
+     * Construct a new matrix with the same values as the given matrix.
+     * @param mat
+     */
+    public MutableMatrix4(Matrix4 mat) {
+        values = new float[16];
+        set(mat);
+    }
+
+    /**
+     * Set this matrix to the identity matrix.
+     * @return this
+     */
+    public MutableMatrix4 setIdentity() {
+        Arrays.fill(values, 0);
+        values[0] = 1;
+        values[5] = 1;
+        values[10] = 1;
+        values[15] = 1;
+        kind = MatrixKind.IDENTITY;
+        return this;
+    }
+
+    /**
+     * Copy the values of the given matrix into this matrix.
+     * @param mat
+     * @return this
+     */
+    public MutableMatrix4 set(Matrix4 mat) {
+        System.arraycopy(mat.values, 0, values, 0, 16);
+        kind = mat.kind;
+        return this;
+    }
+
+    /**
+     * Copy the values of the given matrix into this matrix.
+     * @param mat
+     * @return this
+     */
+    public MutableMatrix4 set(MutableMatrix4 mat) {
+        System.arraycopy(mat.values, 0, values, 0, 16);
+        kind = mat.kind;
+        return this;
+    }
+
+    /**
+     * Copy the given values (in column-major order) into this matrix.
+     * @param values
+     * @return this
+     */
+    public MutableMatrix4 set(float[] values) {
+        if (values.length != 16)
+            throw new IllegalArgumentException("MutableMatrix4.set passed an array of length " + values.length);
+        System.arraycopy(values, 0, this.values, 0, 16);
+        kind = Matrix4.classify(this.values);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by the given matrix, storing the result
+     * in this matrix.
+     * @param mat
+     * @return this
+     */
+    public MutableMatrix4 multiply(Matrix4 mat) {
+        kind = Matrix4.multiply(values, kind, mat.values, mat.kind, values);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by the given matrix, storing the result
+     * in this matrix.
+     * @param mat
+     * @return this
+     */
+    public MutableMatrix4 multiply(MutableMatrix4 mat) {
+        kind = Matrix4.multiply(values, kind, mat.values, mat.kind, values);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by a translation matrix.
+     *
+     * Only the phi column changes, so this is much cheaper than a full
+     * multiplication.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return this
+     */
+    public MutableMatrix4 translate(float x, float y, float z) {
+        float[] m = values;
+        if (kind == MatrixKind.IDENTITY || kind == MatrixKind.TRANSLATION) {
+            m[12] += x;
+            m[13] += y;
+            m[14] += z;
+            kind = MatrixKind.TRANSLATION;
+            return this;
+        }
+        m[12] += m[0]*x + m[4]*y + m[8]*z;
+        m[13] += m[1]*x + m[5]*y + m[9]*z;
+        m[14] += m[2]*x + m[6]*y + m[10]*z;
+        m[15] += m[3]*x + m[7]*y + m[11]*z;
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by a translation matrix.
+     * @param point
+     * @return this
+     */
+    public MutableMatrix4 translate(Point3D point) {
+        return translate(point.getX(), point.getY(), point.getZ());
+    }
+
+    /**
+     * Multiply this matrix on the right by a rotation around the x-axis.
+     *
+     * Only the j and k columns change.
+     *
+     * @param degrees
+     * @return this
+     */
+    public MutableMatrix4 rotateX(float degrees) {
+        double radians = Math.toRadians(degrees);
+        float c = (float) Math.cos(radians);
+        float s = (float) Math.sin(radians);
+        float[] m = values;
+        float j0 = m[4], k0 = m[8];
+        float j1 = m[5], k1 = m[9];
+        float j2 = m[6], k2 = m[10];
+        float j3 = m[7], k3 = m[11];
+        m[4] = c*j0 + s*k0;
+        m[5] = c*j1 + s*k1;
+        m[6] = c*j2 + s*k2;
+        m[7] = c*j3 + s*k3;
+        m[8] = c*k0 - s*j0;
+        m[9] = c*k1 - s*j1;
+        m[10] = c*k2 - s*j2;
+        m[11] = c*k3 - s*j3;
+        kind = kind.compose(MatrixKind.RIGID);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by a rotation around the y-axis.
+     *
+     * Only the i and k columns change.
+     *
+     * @param degrees
+     * @return this
+     */
+    public MutableMatrix4 rotateY(float degrees) {
+        double radians = Math.toRadians(degrees);
+        float c = (float) Math.cos(radians);
+        float s = (float) Math.sin(radians);
+        float[] m = values;
+        float i0 = m[0], k0 = m[8];
+        float i1 = m[1], k1 = m[9];
+        float i2 = m[2], k2 = m[10];
+        float i3 = m[3], k3 = m[11];
+        m[0] = c*i0 - s*k0;
+        m[1] = c*i1 - s*k1;
+        m[2] = c*i2 - s*k2;
+        m[3] = c*i3 - s*k3;
+        m[8] = s*i0 + c*k0;
+        m[9] = s*i1 + c*k1;
+        m[10] = s*i2 + c*k2;
+        m[11] = s*i3 + c*k3;
+        kind = kind.compose(MatrixKind.RIGID);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by a rotation around the z-axis.
+     *
+     * Only the i and j columns change.
+     *
+     * @param degrees
+     * @return this
+     */
+    public MutableMatrix4 rotateZ(float degrees) {
+        double radians = Math.toRadians(degrees);
+        float c = (float) Math.cos(radians);
+        float s = (float) Math.sin(radians);
+        float[] m = values;
+        float i0 = m[0], j0 = m[4];
+        float i1 = m[1], j1 = m[5];
+        float i2 = m[2], j2 = m[6];
+        float i3 = m[3], j3 = m[7];
+        m[0] = c*i0 + s*j0;
+        m[1] = c*i1 + s*j1;
+        m[2] = c*i2 + s*j2;
+        m[3] = c*i3 + s*j3;
+        m[4] = c*j0 - s*i0;
+        m[5] = c*j1 - s*i1;
+        m[6] = c*j2 - s*i2;
+        m[7] = c*j3 - s*i3;
+        kind = kind.compose(MatrixKind.RIGID);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by the rotation matrix of the given
+     * quaternion.
+     *
+     * Only the i, j and k columns change.
+     *
+     * @param q
+     * @return this
+     */
+    public MutableMatrix4 rotate(Quaternion q) {
+        float n = q.dot(q);
+        if (n == 0)
+            throw new ArithmeticException("Quaternion has zero length");
+        // See Quaternion.getRotation()
+        float s = 2 / n;
+        float xs = q.x*s, ys = q.y*s, zs = q.z*s;
+        float xx = q.x*xs, yy = q.y*ys, zz = q.z*zs;
+        float xy = q.x*ys, xz = q.x*zs, yz = q.y*zs;
+        float wx = q.w*xs, wy = q.w*ys, wz = q.w*zs;
+        float r0 = 1 - (yy + zz), r1 = xy + wz,       r2 = xz - wy;
+        float r3 = xy - wz,       r4 = 1 - (xx + zz), r5 = yz + wx;
+        float r6 = xz + wy,       r7 = yz - wx,       r8 = 1 - (xx + yy);
+
+        float[] m = values;
+        for (int row = 0; row < 4; row++) {
+            float i = m[row], j = m[4 + row], k = m[8 + row];
+            m[row]     = i*r0 + j*r1 + k*r2;
+            m[4 + row] = i*r3 + j*r4 + k*r5;
+            m[8 + row] = i*r6 + j*r7 + k*r8;
+        }
+        kind = kind.compose(MatrixKind.RIGID);
+        return this;
+    }
+
+    /**
+     * Multiply this matrix on the right by a scale matrix.
+     * @param x
+     * @param y
+     * @param z
+     * @return this
+     */
+    public MutableMatrix4 scale(float x, float y, float z) {
+        float[] m = values;
+        m[0] *= x; m[4] *= y; m[8] *= z;
+        m[1] *= x; m[5] *= y; m[9] *= z;
+        m[2] *= x; m[6] *= y; m[10] *= z;
+        m[3] *= x; m[7] *= y; m[11] *= z;
+        kind = kind.compose(MatrixKind.AFFINE);
+        return this;
+    }
+
+    /**
+     * Get the kind of this matrix.
+     * @return
+     */
+    public MatrixKind getKind() {
+        return kind;
+    }
+
+    /**
+     * Get the value at the given column and row.
+     * @param column
+     * @param row
+     * @return
+     */
+    public float get(int column, int row) {
+        return values[column*4 + row];
+    }
+
+    /**
+     * Copy the values stored in this matrix in column-major order into the
+     * given array, starting at the given offset.
+     * @param dest
+     * @param offset
+     */
+    public void getValues(float[] dest, int offset) {
+        System.arraycopy(values, 0, dest, offset, 16);
+    }
+
+    /**
+     * Create an immutable copy of this matrix.
+     * @return
+     */
+    public Matrix4 toMatrix4() {
+        return new Matrix4(Arrays.copyOf(values, 16), kind);
+    }
+
+    @Override
+    public String toString() {
+        return toMatrix4().toString();
+    }
+}
@@ -20,7 +20,7 @@ import unsw.graphics.geometry.Point2D;
  */
 public class Point2DBuffer {
 
-    private FloatBuffer floatBuffer;
+    final FloatBuffer floatBuffer;
 
     private int capacity;
 
@@ -74,4 +74,12 @@ public class Point2DBuffer {
         return floatBuffer;
     }
 
+    public int capacity() {
+        return capacity;
+    }
+
+    public Point2D get(int i) {
+        return new Point2D(floatBuffer.get(i*2), floatBuffer.get(i*2 + 1));
+    }
+
 }
@@ -20,7 +20,7 @@ import unsw.graphics.geometry.Point3D;
  */
 public class Point3DBuffer {
 
-    private FloatBuffer floatBuffer;
+    final FloatBuffer floatBuffer;
 
     private int capacity;
 
@@ -35,6 +35,23 @@ public class Point3DBuffer {
         floatBuffer = GLBuffers.newDirectFloatBuffer(capacity * 3);
     }
 
+    /**
+     * Construct a buffer that wraps the given buffer of floats without copying
+     * it. Each point is three consecutive floats, starting at index 0.
+     * 
+     * The buffer must be direct so that it can be passed to OpenGL.
+     * 
+     * @param floats
+     */
+    public Point3DBuffer(FloatBuffer floats) {
+        if (!floats.isDirect())
+            throw new IllegalArgumentException("The buffer must be direct");
+        if (floats.capacity() % 3 != 0)
+            throw new IllegalArgumentException("The capacity must be a multiple of 3");
+        capacity = floats.capacity() / 3;
+        floatBuffer = floats;
+    }
+
     public Point3DBuffer(List<Point3D> points) {
         this(points.size());
         for (int i = 0; i < capacity; i++) {
@@ -0,0 +1,362 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import unsw.graphics.geometry.Point3D;
+
+/**
+ * A quaternion representing a rotation in 3D.
+ *
+ * Like {@link MutableMatrix4}, this class is mutable. Every operation overwrites the values of
+ * this quaternion and returns this quaternion, so orientations can be composed and interpolated
+ * every frame without allocating. Composing two rotations takes 16 multiplications, compared to
+ * 64 for a matrix product, and interpolating between two orientations with {@link #slerp} does
+ * not suffer from gimbal lock like interpolating Euler angles does.
+ *
+ * All angles are in degrees. Like the methods of {@link CoordFrame3D}, {@link #multiply} and the
+ * rotate methods compose on the right, so <code>q.rotateY(a).rotateX(b)</code> is the same
+ * rotation as <code>frame.rotateY(a).rotateX(b)</code>.
+ *
+ * Only quaternions of length 1 represent rotations. The conversions to matrices divide by the
+ * length, so a quaternion that has drifted slightly from length 1 after many products still
+ * produces a rotation, but it is best to call {@link #normalize()} now and again.
+ */
+public class Quaternion {
+    float x, y, z, w;
+
+    /**
+     * Construct the identity rotation.
+     */
+    public Quaternion() {
+        setIdentity();
+    }
+
+    /**
+     * Construct a quaternion with the given values. The vector part is (x, y, z) and the scalar
+     * part is w.
+     * @param x
+     * @param y
+     * @param z
+     * @param w
+     */
+    public Quaternion(float x, float y, float z, float w) {
+        set(x, y, z, w);
+    }
+
+    /**
+     * Construct a copy of the given quaternion.
+     * @param q
+     */
+    public Quaternion(Quaternion q) {
+        set(q);
+    }
+
+    /**
+     * Create a rotation by the given degrees around the given axis.
+     * @param axis Need not be of length 1
+     * @param degrees
+     * @return
+     */
+    public static Quaternion axisAngle(Vector3 axis, float degrees) {
+        return new Quaternion().setAxisAngle(axis.getX(), axis.getY(), axis.getZ(), degrees);
+    }
+
+    /**
+     * Create a rotation by the given degrees around the x-axis.
+     * @param degrees
+     * @return
+     */
+    public static Quaternion rotationX(float degrees) {
+        return new Quaternion().setAxisAngle(1, 0, 0, degrees);
+    }
+
+    /**
+     * Create a rotation by the given degrees around the y-axis.
+     * @param degrees
+     * @return
+     */
+    public static Quaternion rotationY(float degrees) {
+        return new Quaternion().setAxisAngle(0, 1, 0, degrees);
+    }
+
+    /**
+     * Create a rotation by the given degrees around the z-axis.
+     * @param degrees
+     * @return
+     */
+    public static Quaternion rotationZ(float degrees) {
+        return new Quaternion().setAxisAngle(0, 0, 1, degrees);
+    }
+
+    /**
+     * Set this quaternion to the identity rotation.
+     * @return this
+     */
+    public Quaternion setIdentity() {
+        return set(0, 0, 0, 1);
+    }
+
+    /**
+     * Set the values of this quaternion.
+     * @param x
+     * @param y
+     * @param z
+     * @param w
+     * @return this
+     */
+    public Quaternion set(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        return this;
+    }
+
+    /**
+     * Copy the values of the given quaternion into this quaternion.
+     * @param q
+     * @return this
+     */
+    public Quaternion set(Quaternion q) {
+        return set(q.x, q.y, q.z, q.w);
+    }
+
+    /**
+     * Set this quaternion to a rotation by the given degrees around the axis (ax, ay, az).
+     * @param ax
+     * @param ay
+     * @param az
+     * @param degrees
+     * @return this
+     */
+    public Quaternion setAxisAngle(float ax, float ay, float az, float degrees) {
+        double length = Math.sqrt(ax*ax + ay*ay + az*az);
+        if (length == 0)
+            throw new IllegalArgumentException("Rotation axis has zero length");
+        double half = Math.toRadians(degrees) / 2;
+        float s = (float) (Math.sin(half) / length);
+        return set(ax * s, ay * s, az * s, (float) Math.cos(half));
+    }
+
+    /**
+     * Multiply this quaternion on the right by the given quaternion, storing the result in this
+     * quaternion. The result is the rotation q followed by the rotation this.
+     * @param q
+     * @return this
+     */
+    public Quaternion multiply(Quaternion q) {
+        return multiply(q.x, q.y, q.z, q.w);
+    }
+
+    private Quaternion multiply(float bx, float by, float bz, float bw) {
+        float ax = x, ay = y, az = z, aw = w;
+        x = aw*bx + ax*bw + ay*bz - az*by;
+        y = aw*by - ax*bz + ay*bw + az*bx;
+        z = aw*bz + ax*by - ay*bx + az*bw;
+        w = aw*bw - ax*bx - ay*by - az*bz;
+        return this;
+    }
+
+    /**
+     * Multiply this quaternion on the right by a rotation around the x-axis.
+     * @param degrees
+     * @return this
+     */
+    public Quaternion rotateX(float degrees) {
+        double half = Math.toRadians(degrees) / 2;
+        return multiply((float) Math.sin(half), 0, 0, (float) Math.cos(half));
+    }
+
+    /**
+     * Multiply this quaternion on the right by a rotation around the y-axis.
+     * @param degrees
+     * @return this
+     */
+    public Quaternion rotateY(float degrees) {
+        double half = Math.toRadians(degrees) / 2;
+        return multiply(0, (float) Math.sin(half), 0, (float) Math.cos(half));
+    }
+
+    /**
+     * Multiply this quaternion on the right by a rotation around the z-axis.
+     * @param degrees
+     * @return this
+     */
+    public Quaternion rotateZ(float degrees) {
+        double half = Math.toRadians(degrees) / 2;
+        return multiply(0, 0, (float) Math.sin(half), (float) Math.cos(half));
+    }
+
+    /**
+     * Replace this quaternion with its conjugate. For a rotation, this is the inverse rotation.
+     * @return this
+     */
+    public Quaternion conjugate() {
+        x = -x;
+        y = -y;
+        z = -z;
+        return this;
+    }
+
+    /**
+     * Scale this quaternion to length 1.
+     * @return this
+     */
+    public Quaternion normalize() {
+        float length = length();
+        if (length == 0)
+            throw new ArithmeticException("Quaternion has zero length");
+        float inv = 1 / length;
+        return set(x * inv, y * inv, z * inv, w * inv);
+    }
+
+    /**
+     * The length of this quaternion.
+     * @return
+     */
+    public float length() {
+        return (float) Math.sqrt(dot(this));
+    }
+
+    /**
+     * The dot product of this quaternion with the given quaternion.
+     * @param q
+     * @return
+     */
+    public float dot(Quaternion q) {
+        return x*q.x + y*q.y + z*q.z + w*q.w;
+    }
+
+    /**
+     * Set this quaternion to the normalised linear interpolation between a and b. This is cheaper
+     * than {@link #slerp(Quaternion, Quaternion, float)} and is close to it when a and b are
+     * similar, but it does not rotate at a constant speed.
+     *
+     * The interpolation takes the shortest path between the two orientations. Either a or b may be
+     * this quaternion.
+     *
+     * @param a The rotation when t is 0
+     * @param b The rotation when t is 1
+     * @param t
+     * @return this
+     */
+    public Quaternion nlerp(Quaternion a, Quaternion b, float t) {
+        float tb = a.dot(b) < 0 ? -t : t;
+        float ta = 1 - t;
+        set(ta*a.x + tb*b.x, ta*a.y + tb*b.y, ta*a.z + tb*b.z, ta*a.w + tb*b.w);
+        return normalize();
+    }
+
+    /**
+     * Set this quaternion to the spherical linear interpolation between a and b, which rotates
+     * from a to b at a constant speed.
+     *
+     * The interpolation takes the shortest path between the two orientations. Either a or b may be
+     * this quaternion.
+     *
+     * @param a The rotation when t is 0
+     * @param b The rotation when t is 1
+     * @param t
+     * @return this
+     */
+    public Quaternion slerp(Quaternion a, Quaternion b, float t) {
+        double cos = a.dot(b) / (a.length() * b.length());
+        double sign = 1;
+        if (cos < 0) {
+            cos = -cos;
+            sign = -1;
+        }
+        // When the orientations are almost the same sin(angle) is too small
+        // to divide by, but nlerp is just as good
+        if (cos > 0.9995)
+            return nlerp(a, b, t);
+
+        double angle = Math.acos(cos);
+        double sin = Math.sin(angle);
+        float ta = (float) (Math.sin((1 - t) * angle) / sin);
+        float tb = (float) (sign * Math.sin(t * angle) / sin);
+        set(ta*a.x + tb*b.x, ta*a.y + tb*b.y, ta*a.z + tb*b.z, ta*a.w + tb*b.w);
+        return normalize();
+    }
+
+    /**
+     * Rotate the given point around the origin by this rotation.
+     * @param p
+     * @return
+     */
+    public Point3D transform(Point3D p) {
+        float[] r = new float[9];
+        getRotation(r, 0);
+        float px = p.getX(), py = p.getY(), pz = p.getZ();
+        return new Point3D(r[0]*px + r[3]*py + r[6]*pz,
+                r[1]*px + r[4]*py + r[7]*pz,
+                r[2]*px + r[5]*py + r[8]*pz);
+    }
+
+    /**
+     * Store the 3x3 rotation matrix for this rotation in column-major order in the given array,
+     * starting at the given offset.
+     * @param dest
+     * @param offset
+     */
+    public void getRotation(float[] dest, int offset) {
+        float n = dot(this);
+        if (n == 0)
+            throw new ArithmeticException("Quaternion has zero length");
+        float s = 2 / n;
+        float xs = x*s, ys = y*s, zs = z*s;
+        float xx = x*xs, yy = y*ys, zz = z*zs;
+        float xy = x*ys, xz = x*zs, yz = y*zs;
+        float wx = w*xs, wy = w*ys, wz = w*zs;
+
+        dest[offset]     = 1 - (yy + zz);
+        dest[offset + 1] = xy + wz;
+        dest[offset + 2] = xz - wy;
+
+        dest[offset + 3] = xy - wz;
+        dest[offset + 4] = 1 - (xx + zz);
+        dest[offset + 5] = yz + wx;
+
+        dest[offset + 6] = xz + wy;
+        dest[offset + 7] = yz - wx;
+        dest[offset + 8] = 1 - (xx + yy);
+    }
+
+    /**
+     * Create the rotation matrix for this rotation.
+     * @return
+     */
+    public Matrix4 toMatrix4() {
+        float[] r = new float[9];
+        getRotation(r, 0);
+        float[] values = new float[] {
+            r[0], r[1], r[2], 0, // i
+            r[3], r[4], r[5], 0, // j
+            r[6], r[7], r[8], 0, // k
+            0, 0, 0, 1           // phi
+        };
+        return new Matrix4(values, MatrixKind.RIGID);
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getW() {
+        return w;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ", " + z + ", " + w + ")";
+    }
+}
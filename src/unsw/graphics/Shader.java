@@ -4,6 +4,10 @@
 package unsw.graphics;
 
 import java.awt.Color;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.jogamp.opengl.GL3;
 import com.jogamp.opengl.util.glsl.ShaderCode;
@@ -25,6 +29,33 @@ import unsw.graphics.geometry.Point3D;
  *   - "uniform mat4 model_matrix"
  *   - "uniform mat4 view_matrix"
  *   - "uniform mat4 proj_matrix"
+ * The view and projection matrices may instead be declared in the Camera (or
+ * Camera2D) uniform block. See {@link UniformBuffer}.
+ * 
+ * 3D shaders may also declare "uniform mat4 model_view_matrix" and
+ * "uniform mat3 normal_matrix". If they do, whenever the model matrix is set
+ * the product of the current view matrix and the model matrix, and the inverse
+ * transpose of that product, are computed on the CPU and uploaded as well. This
+ * saves the shader from computing them for every vertex. For this to work the
+ * view matrix must be set before the model matrix.
+ * 
+ * The locations of all the uniforms of a shader are looked up once, when it is
+ * linked. The static methods of this class set uniforms of the shader most
+ * recently passed to {@link #use(GL3)} using those locations, so they don't
+ * need to query OpenGL. For uniforms that are set often, a handle from
+ * {@link #uniform(String)} avoids even the lookup by name.
+ * 
+ * The view and projection matrices and the light properties are also written
+ * to the uniform blocks described in {@link UniformBuffer}. Shaders that
+ * declare those blocks (like all the shaders shipped with UNSWgraph) share
+ * them, so they don't need to be set again after switching shaders.
+ * 
+ * Linked programs can be saved to disk and loaded again the next time the
+ * program starts, rather than being compiled. See {@link ShaderCache}.
+ * 
+ * Setting a uniform to the value it already has doesn't call OpenGL at all.
+ * See {@link #getUniformUploadsIssued()} and
+ * {@link #getUniformUploadsSkipped()} for how much this saves.
  * 
  * @author Robert Clifton-Everest
  *
@@ -43,8 +74,81 @@ public class Shader {
      */
     public static final int NORMAL = 1;
 
+    /**
+     * The vertex color attribute for use with glAttribPointer.
+     */
+    public static final int COLOR = 2;
+
+    /**
+     * The per-instance model matrix attribute for use with glAttribPointer.
+     * A mat4 attribute takes up four locations, one for each column, so this
+     * uses locations 3 to 6.
+     */
+    public static final int INSTANCE_MATRIX = 3;
+
+    /**
+     * The per-instance color attribute for use with glAttribPointer.
+     */
+    public static final int INSTANCE_COLOR = 7;
+
     private int id;
 
+    // Where the program came from, so that it can be reloaded
+    private final String vertexFile;
+    private final String fragmentFile;
+    private final String[] defines;
+
+    private boolean destroyed;
+
+    /**
+     * The active uniforms of this shader, found when it is linked. Names that
+     * have been asked for but aren't active are also stored here (with a
+     * location of -1) so they are only looked up once.
+     */
+    private final Map<String, Uniform> uniforms = new HashMap<String, Uniform>();
+
+    /**
+     * The shader most recently used with {@link #use(GL3)}. The static methods
+     * below set the uniforms of this shader.
+     */
+    private static Shader current;
+
+    /**
+     * The most recently set 3D view matrix. Used to compute the model-view
+     * matrix on the CPU.
+     */
+    private static Matrix4 currentView = Matrix4.identity();
+
+    /**
+     * The most recently set 3D projection matrix.
+     */
+    private static Matrix4 currentProj = Matrix4.identity();
+
+    /**
+     * The most recently set light position in world coordinates, or null if
+     * it hasn't been set. viewLightPos is derived from it and the view
+     * matrix.
+     */
+    private static Point3D currentLightPos;
+
+    /**
+     * The most recently set 2D view matrix.
+     */
+    private static Matrix3 currentView2D = Matrix3.identity();
+
+    /**
+     * The batch that is flushed before the 2D view matrix or the current
+     * shader changes. See {@link #setBatch(Batch2D)}.
+     */
+    private static Batch2D batch;
+
+    // Uniform uploads issued and skipped in the last complete frame
+    private static int lastIssued, lastSkipped;
+
+    // Scratch space for the model-view and normal matrices.
+    private static final float[] modelView = new float[16];
+    private static final float[] normal = new float[9];
+
     /**
      * Construct a shader in the given OpenGL context.
      * 
@@ -53,16 +157,72 @@ public class Shader {
      * @param fragment The file containing the fragment shader code.
      */
     public Shader(GL3 gl, String vertex, String fragment) {
+        this(gl, vertex, fragment, new String[0]);
+    }
+
+    /**
+     * Construct a shader in the given OpenGL context, with the given
+     * preprocessor symbols defined in both the vertex and fragment shader.
+     * 
+     * This allows one pair of source files to be compiled into several
+     * variants that use #ifdef to leave out features they don't need. See
+     * {@link ShaderVariants}.
+     * 
+     * @param gl
+     * @param vertex The file containing the vertex shader code.
+     * @param fragment The file containing the fragment shader code.
+     * @param defines The symbols to define, e.g. "FLAT" or "SPECULAR 1".
+     */
+    public Shader(GL3 gl, String vertex, String fragment, String... defines) {
+        this.vertexFile = vertex;
+        this.fragmentFile = fragment;
+        this.defines = defines.clone();
 
         ShaderCode vertShader = ShaderCode.create(gl, GL3.GL_VERTEX_SHADER, 1,
                 this.getClass(), new String[] { vertex }, true);
         ShaderCode fragShader = ShaderCode.create(gl, GL3.GL_FRAGMENT_SHADER, 1,
                 this.getClass(), new String[] { fragment }, true);
 
+        id = build(gl, vertShader, fragShader, defines);
+        linked(gl);
+        ShaderReloader.register(this);
+    }
+
+    /**
+     * Make a program out of the given shaders, either by loading it from the
+     * {@link ShaderCache} or by compiling and linking it. The program is
+     * returned even if it failed to link.
+     */
+    static int build(GL3 gl, ShaderCode vertShader, ShaderCode fragShader, String[] defines) {
         // We unfortunately have to do this for this library to be compatible
         // with the older lab machines and the newer Macs
-        vertShader.addGLSLVersion(gl);
-        fragShader.addGLSLVersion(gl);
+        int vertStart = vertShader.addGLSLVersion(gl);
+        int fragStart = fragShader.addGLSLVersion(gl);
+
+        // The older lab machines have a 3.0 context (GLSL 1.30), which only
+        // has uniform blocks through an extension. See UniformBuffer.
+        StringBuilder directives = new StringBuilder();
+        if (UniformBuffer.needsExtension(gl))
+            directives.append("#extension GL_ARB_uniform_buffer_object : require\n");
+        for (String define : defines)
+            directives.append("#define ").append(define).append('\n');
+
+        // The directives have to come after the #version line
+        if (directives.length() > 0) {
+            vertShader.insertShaderSource(0, vertStart, directives);
+            fragShader.insertShaderSource(0, fragStart, directives);
+        }
+
+        String key = null;
+        if (ShaderCache.isAvailable(gl)) {
+            key = ShaderCache.key(gl, "position=" + POSITION + ",normal=" + NORMAL
+                    + ",color=" + COLOR + ",instance_matrix=" + INSTANCE_MATRIX
+                    + ",instance_color=" + INSTANCE_COLOR,
+                    vertShader, fragShader);
+            int id = ShaderCache.load(gl, key);
+            if (id != 0)
+                return id;
+        }
 
         ShaderProgram shaderProgram = new ShaderProgram();
         shaderProgram.add(vertShader);
@@ -71,28 +231,143 @@ public class Shader {
         if (!shaderProgram.init(gl))
             throw new RuntimeException("Invalid shader program");
 
-        id = shaderProgram.program();
-        
+        int id = shaderProgram.program();
+
         gl.glBindAttribLocation(id, POSITION, "position");
         gl.glBindAttribLocation(id, NORMAL, "normal");
-        
-        shaderProgram.link(gl, System.err);
-        
-        gl.glEnableVertexAttribArray(POSITION);
-        if (gl.glGetAttribLocation(id, "normal") != -1)
-            gl.glEnableVertexAttribArray(NORMAL);
-        
+        gl.glBindAttribLocation(id, COLOR, "color");
+        gl.glBindAttribLocation(id, INSTANCE_MATRIX, "instance_matrix");
+        gl.glBindAttribLocation(id, INSTANCE_COLOR, "instance_color");
+
+        if (key != null)
+            ShaderCache.prepare(gl, id);
+
+        boolean linked = shaderProgram.link(gl, System.err);
+
+        // A linked program doesn't need its shader objects, and a program
+        // that failed to link is deleted, so release them either way rather
+        // than leaking two for every program built
+        int[] count = new int[1];
+        int[] attached = new int[2];
+        gl.glGetAttachedShaders(id, attached.length, count, 0, attached, 0);
+        for (int i = 0; i < count[0]; i++)
+            gl.glDetachShader(id, attached[i]);
+        vertShader.destroy(gl);
+        fragShader.destroy(gl);
+
+        if (linked && key != null)
+            ShaderCache.store(gl, id, key);
+        return id;
+    }
+
+    /**
+     * Whether the given program linked successfully.
+     */
+    static boolean isLinked(GL3 gl, int program) {
+        int[] status = new int[1];
+        gl.glGetProgramiv(program, GL3.GL_LINK_STATUS, status, 0);
+        return status[0] == GL3.GL_TRUE;
+    }
+
+    /**
+     * Set up this shader after its program has been linked.
+     */
+    private void linked(GL3 gl) {
+        findUniforms(gl);
+        UniformBuffer.bindBlocks(gl, id);
+    }
+
+    /**
+     * Replace the program of this shader with a newly linked one, deleting the
+     * old program. Used by {@link ShaderReloader}.
+     * 
+     * Uniform handles obtained from {@link #uniform(String)} stay valid, but
+     * every uniform has to be set again.
+     */
+    void swap(GL3 gl, int program) {
+        int old = id;
+        id = program;
+        linked(gl);
+        if (current == this)
+            gl.glUseProgram(id);
+        gl.glDeleteProgram(old);
+    }
+
+    /**
+     * Look up the locations of all the active uniforms of this shader.
+     * 
+     * Existing handles are updated rather than replaced, so that they can be
+     * kept across a {@link #swap(GL3, int)}.
+     */
+    private void findUniforms(GL3 gl) {
+        for (Uniform u : uniforms.values())
+            u.relink(-1, 0, 0);
+
+        int[] count = new int[1];
+        int[] maxLength = new int[1];
+        gl.glGetProgramiv(id, GL3.GL_ACTIVE_UNIFORMS, count, 0);
+        gl.glGetProgramiv(id, GL3.GL_ACTIVE_UNIFORM_MAX_LENGTH, maxLength, 0);
+
+        byte[] nameBytes = new byte[Math.max(maxLength[0], 1)];
+        int[] length = new int[1];
+        int[] size = new int[1];
+        int[] type = new int[1];
+        for (int i = 0; i < count[0]; i++) {
+            gl.glGetActiveUniform(id, i, nameBytes.length, length, 0, size, 0, type, 0,
+                    nameBytes, 0);
+            String name = new String(nameBytes, 0, length[0], StandardCharsets.US_ASCII);
+            int location = gl.glGetUniformLocation(id, name);
+            // Arrays are reported as "name[0]", but are set by their name
+            if (name.endsWith("[0]"))
+                name = name.substring(0, name.length() - 3);
+            Uniform u = uniforms.get(name);
+            if (u == null)
+                uniforms.put(name, new Uniform(name, location, type[0], size[0]));
+            else
+                u.relink(location, type[0], size[0]);
+        }
+    }
+
+    /**
+     * The file containing the vertex shader code.
+     * 
+     * @return
+     */
+    public String getVertexFile() {
+        return vertexFile;
+    }
+
+    /**
+     * The file containing the fragment shader code.
+     * 
+     * @return
+     */
+    public String getFragmentFile() {
+        return fragmentFile;
+    }
+
+    /**
+     * The preprocessor symbols this shader was compiled with.
+     * 
+     * @return
+     */
+    public String[] getDefines() {
+        return defines.clone();
     }
 
     /**
      * "Use" this shader in the given context.
      * 
-     * This just calls glUseProgram() with this shader.
+     * This calls glUseProgram() with this shader, and makes it the shader
+     * that the static methods of this class affect.
      * 
      * @param gl
      */
     public void use(GL3 gl) {
+        if (batch != null && current != this)
+            batch.flush(gl);
         gl.glUseProgram(id);
+        current = this;
     }
 
     /**
@@ -104,17 +379,112 @@ public class Shader {
      */
     public void destroy(GL3 gl) {
         gl.glDeleteProgram(id);
+        destroyed = true;
+        if (current == this)
+            current = null;
+    }
+
+    /**
+     * Whether {@link #destroy(GL3)} has been called.
+     * 
+     * @return
+     */
+    public boolean isDestroyed() {
+        return destroyed;
     }
 
     /**
      * Get the ID OpenGL associates with this shader.
      * 
+     * This changes if the shader is reloaded by {@link ShaderReloader}.
+     * 
      * @return
      */
     public int getId() {
         return id;
     }
 
+    /**
+     * Get a handle for the uniform with the given name.
+     * 
+     * Handles can be kept and reused. Setting a uniform through its handle
+     * avoids looking it up by name every time.
+     * 
+     * @param name
+     * @return
+     */
+    public Uniform uniform(String name) {
+        Uniform u = uniforms.get(name);
+        if (u == null) {
+            u = new Uniform(name, -1, 0, 0);
+            uniforms.put(name, u);
+        }
+        return u;
+    }
+
+    /**
+     * Forget the values last uploaded to the uniforms of this shader, so they
+     * are all uploaded the next time they are set. This is only necessary
+     * after setting uniforms of this shader without going through this class.
+     */
+    public void invalidateUniforms() {
+        for (Uniform u : uniforms.values())
+            u.invalidate();
+    }
+
+    /**
+     * Called at the end of every frame (see {@link Application#endFrame(GL3)})
+     * to start counting uniform uploads for the next frame.
+     */
+    static void endFrame() {
+        int[] counts = Uniform.endFrame();
+        lastIssued = counts[0];
+        lastSkipped = counts[1];
+    }
+
+    /**
+     * The number of uniform uploads that were sent to OpenGL in the last
+     * frame.
+     * 
+     * @return
+     */
+    public static int getUniformUploadsIssued() {
+        return lastIssued;
+    }
+
+    /**
+     * The number of uniform uploads that were skipped in the last frame
+     * because the uniform already had the value.
+     * 
+     * @return
+     */
+    public static int getUniformUploadsSkipped() {
+        return lastSkipped;
+    }
+
+    /**
+     * The shader most recently used with {@link #use(GL3)}, or null if no
+     * shader is in use.
+     * 
+     * @return
+     */
+    public static Shader getCurrent() {
+        return current;
+    }
+
+    /**
+     * Get the uniform with the given name of the current shader.
+     */
+    private static Uniform currentUniform(GL3 gl, String name) {
+        Shader shader = current;
+        if (shader != null)
+            return shader.uniform(name);
+        // The program wasn't made current through this class, so ask OpenGL
+        int ids[] = new int[1];
+        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
+        return new Uniform(name, gl.glGetUniformLocation(ids[0], name), 0, 0);
+    }
+
     /**
      * Sets the model matrix of the currently loaded shader.
      * 
@@ -122,10 +492,7 @@ public class Shader {
      * @param mat
      */
     public static void setModelMatrix(GL3 gl, Matrix3 mat) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int modelLoc = gl.glGetUniformLocation(ids[0], "model_matrix");
-        gl.glUniformMatrix3fv(modelLoc, 1, false, mat.getValues(), 0);
+        currentUniform(gl, "model_matrix").set(gl, mat);
     }
 
     /**
@@ -135,10 +502,66 @@ public class Shader {
      * @param mat
      */
     public static void setModelMatrix(GL3 gl, Matrix4 mat) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int modelLoc = gl.glGetUniformLocation(ids[0], "model_matrix");
-        gl.glUniformMatrix4fv(modelLoc, 1, false, mat.getValues(), 0);
+        currentUniform(gl, "model_matrix").set(gl, mat);
+        setModelViewMatrices(gl, mat.values, mat.kind);
+    }
+
+    /**
+     * Sets the model matrix of the currently loaded shader.
+     * 
+     * The values are uploaded straight from the matrix without copying it.
+     * 
+     * @param gl
+     * @param mat
+     */
+    public static void setModelMatrix(GL3 gl, MutableMatrix4 mat) {
+        currentUniform(gl, "model_matrix").set(gl, mat);
+        setModelViewMatrices(gl, mat.values, mat.kind);
+    }
+
+    /**
+     * If the current shader uses them, compute and upload the model-view and
+     * normal matrices for the given model matrix and the current view matrix.
+     */
+    private static void setModelViewMatrices(GL3 gl, float[] model, MatrixKind kind) {
+        Uniform modelViewUniform = currentUniform(gl, "model_view_matrix");
+        Uniform normalUniform = currentUniform(gl, "normal_matrix");
+        if (!modelViewUniform.isActive() && !normalUniform.isActive())
+            return;
+        MatrixKind k = Matrix4.multiply(currentView.values, currentView.kind, model, kind,
+                modelView);
+        modelViewUniform.setMatrix(gl, modelView);
+        // A degenerate (e.g. zero scale) model has no normal matrix, but it
+        // isn't visible either
+        if (normalUniform.isActive() && Matrix4.normalMatrix(modelView, k, normal))
+            normalUniform.setMatrix(gl, normal);
+    }
+
+    /**
+     * Sets the model-view matrix of the currently loaded shader directly.
+     * 
+     * Usually this is not necessary as it is computed automatically when the
+     * model matrix is set.
+     * 
+     * @param gl
+     * @param mat
+     */
+    public static void setModelViewMatrix(GL3 gl, Matrix4 mat) {
+        currentUniform(gl, "model_view_matrix").set(gl, mat);
+    }
+
+    /**
+     * Sets the normal matrix of the currently loaded shader directly. See
+     * {@link Matrix4#normalMatrix()}.
+     * 
+     * Usually this is not necessary as it is computed automatically when the
+     * model matrix is set.
+     * 
+     * @param gl
+     * @param mat
+     */
+    public static void setNormalMatrix(GL3 gl, Matrix3 mat) {
+        currentUniform(gl, "normal_matrix").set(gl, mat);
     }
 
     /**
@@ -148,10 +571,12 @@ public class Shader {
      * @param mat
      */
     public static void setViewMatrix(GL3 gl, Matrix3 mat) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int viewLoc = gl.glGetUniformLocation(ids[0], "view_matrix");
-        gl.glUniformMatrix3fv(viewLoc, 1, false, mat.getValues(), 0);
+        // What has been batched so far is drawn with the old view matrix
+        if (batch != null && !Arrays.equals(currentView2D.values, mat.values))
+            batch.flush(gl);
+        currentView2D = mat;
+        UniformBuffer.CAMERA_2D.set(gl, "view_matrix", mat);
+        currentUniform(gl, "view_matrix").set(gl, mat);
     }
 
     /**
@@ -161,10 +586,20 @@ public class Shader {
      * @param mat
      */
     public static void setViewMatrix(GL3 gl, Matrix4 mat) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int viewLoc = gl.glGetUniformLocation(ids[0], "view_matrix");
-        gl.glUniformMatrix4fv(viewLoc, 1, false, mat.getValues(), 0);
+        currentView = mat;
+        UniformBuffer.CAMERA.set(gl, "view_matrix", mat);
+        currentUniform(gl, "view_matrix").set(gl, mat);
+        if (currentLightPos != null)
+            setViewLightPos(gl);
+    }
+
+    /**
+     * Set viewLightPos to the light position transformed by the view matrix.
+     */
+    private static void setViewLightPos(GL3 gl) {
+        Point3D p = currentView.multiply(currentLightPos.asHomogenous()).asPoint3D();
+        UniformBuffer.LIGHT.set(gl, "viewLightPos", p.getX(), p.getY(), p.getZ());
+        currentUniform(gl, "viewLightPos").set(gl, p);
     }
 
     /**
@@ -174,10 +609,39 @@ public class Shader {
      * @param mat
      */
     public static void setProjMatrix(GL3 gl, Matrix4 mat) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int viewLoc = gl.glGetUniformLocation(ids[0], "proj_matrix");
-        gl.glUniformMatrix4fv(viewLoc, 1, false, mat.getValues(), 0);
+        currentProj = mat;
+        UniformBuffer.CAMERA.set(gl, "proj_matrix", mat);
+        currentUniform(gl, "proj_matrix").set(gl, mat);
+    }
+
+    /**
+     * Set the batch that is flushed whenever the 2D view matrix changes or
+     * another shader is used, so that everything added to it is drawn with the
+     * view matrix and in the order it was added with. {@link Application2D}
+     * sets its batch here.
+     * 
+     * @param batch The batch, or null for none.
+     */
+    public static void setBatch(Batch2D batch) {
+        Shader.batch = batch;
+    }
+
+    /**
+     * Gets the most recently set 3D view matrix.
+     * 
+     * @return
+     */
+    public static Matrix4 getViewMatrix() {
+        return currentView;
+    }
+
+    /**
+     * Gets the most recently set 3D projection matrix.
+     * 
+     * @return
+     */
+    public static Matrix4 getProjMatrix() {
+        return currentProj;
     }
 
     /**
@@ -198,10 +662,14 @@ public class Shader {
      * @param point3d
      */
     public static void setPoint3D(GL3 gl, String var, Point3D point3d) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int loc = gl.glGetUniformLocation(ids[0], var);
-        gl.glUniform3f(loc, point3d.getX(), point3d.getY(), point3d.getZ());
+        UniformBuffer block = UniformBuffer.findMember(var);
+        if (block != null)
+            block.set(gl, var, point3d.getX(), point3d.getY(), point3d.getZ());
+        currentUniform(gl, var).set(gl, point3d);
+        if (var.equals("lightPos")) {
+            currentLightPos = point3d;
+            setViewLightPos(gl);
+        }
     }
     
     /**
@@ -212,11 +680,11 @@ public class Shader {
      * @param color
      */
     public static void setColor(GL3 gl, String var, Color color) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int loc = gl.glGetUniformLocation(ids[0], var);
-        gl.glUniform3f(loc, color.getRed() / 255f, color.getGreen() / 255f,
-                color.getBlue() / 255f);
+        UniformBuffer block = UniformBuffer.findMember(var);
+        if (block != null)
+            block.set(gl, var, color.getRed() / 255f, color.getGreen() / 255f,
+                    color.getBlue() / 255f);
+        currentUniform(gl, var).set(gl, color);
     }
     
     /**
@@ -227,9 +695,9 @@ public class Shader {
      * @param f
      */
     public static void setFloat(GL3 gl, String var, float f) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int loc = gl.glGetUniformLocation(ids[0], var);
-        gl.glUniform1f(loc, f);
+        UniformBuffer block = UniformBuffer.findMember(var);
+        if (block != null)
+            block.set(gl, var, f);
+        currentUniform(gl, var).set(gl, f);
     }
 }
@@ -0,0 +1,203 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2ES3;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.GLBuffers;
+import com.jogamp.opengl.util.glsl.ShaderCode;
+
+/**
+ * An on-disk cache of linked shader programs.
+ *
+ * Compiling and linking GLSL takes a noticeable amount of time at startup,
+ * especially with a software renderer. When the cache is enabled, every
+ * {@link Shader} saves its linked program with glGetProgramBinary(), and the
+ * next time the same shader is created it is loaded with glProgramBinary()
+ * instead of being compiled.
+ *
+ * Programs are keyed by a hash of their source code and the OpenGL vendor,
+ * renderer and version, so editing a shader or changing driver makes a new
+ * entry rather than loading a stale one. If the driver rejects a cached
+ * program anyway (drivers are allowed to), the shader is compiled from source
+ * as normal and the entry is replaced.
+ *
+ * The cache is disabled by default. Enable it with {@link #setDirectory(File)}
+ * or by setting the system property unsw.graphics.shaderCache to a
+ * directory.
+ */
+public class ShaderCache {
+
+    /**
+     * Changes whenever the format of a cache entry does.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static File directory;
+
+    static {
+        String property = System.getProperty("unsw.graphics.shaderCache");
+        if (property != null && !property.isEmpty())
+            directory = new File(property);
+    }
+
+    private ShaderCache() {
+    }
+
+    /**
+     * Set the directory to store programs in, or null to disable the cache.
+     * The directory is created if it doesn't exist.
+     * @param dir
+     */
+    public static void setDirectory(File dir) {
+        directory = dir;
+    }
+
+    /**
+     * The directory programs are stored in, or null if the cache is disabled.
+     * @return
+     */
+    public static File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Whether the cache is enabled and the driver can save programs.
+     */
+    static boolean isAvailable(GL3 gl) {
+        if (directory == null || !gl.isFunctionAvailable("glProgramBinary"))
+            return false;
+        int[] formats = new int[1];
+        gl.glGetIntegerv(GL3.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+        return formats[0] > 0;
+    }
+
+    /**
+     * Compute the key for a program made of the given shaders. The key also
+     * depends on the driver and on the attribute locations the program is
+     * linked with.
+     */
+    static String key(GL3 gl, String attributes, ShaderCode... shaders) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, Integer.toString(FORMAT_VERSION));
+            update(digest, gl.glGetString(GL.GL_VENDOR));
+            update(digest, gl.glGetString(GL.GL_RENDERER));
+            update(digest, gl.glGetString(GL.GL_VERSION));
+            update(digest, attributes);
+            for (ShaderCode shader : shaders) {
+                update(digest, Integer.toString(shader.shaderType()));
+                for (CharSequence[] sources : shader.shaderSource())
+                    for (CharSequence source : sources)
+                        update(digest, source.toString());
+            }
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest())
+                key.append(String.format("%02x", b));
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        // Include the length so that different splits of the same text give
+        // different keys
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    /**
+     * Try to create a program from the entry with the given key.
+     *
+     * @return The linked program, or 0 if there is no entry or the driver
+     *         rejected it.
+     */
+    static int load(GL3 gl, String key) {
+        File file = new File(directory, key + ".bin");
+        if (!file.isFile())
+            return 0;
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            return 0;
+        }
+        if (bytes.length < 8)
+            return 0;
+
+        ByteBuffer entry = ByteBuffer.wrap(bytes);
+        if (entry.getInt() != FORMAT_VERSION)
+            return 0;
+        int format = entry.getInt();
+        ByteBuffer binary = GLBuffers.newDirectByteBuffer(entry.remaining());
+        binary.put(entry);
+        binary.flip();
+
+        int program = gl.glCreateProgram();
+        gl.glProgramBinary(program, format, binary, binary.remaining());
+        int[] status = new int[1];
+        gl.glGetProgramiv(program, GL3.GL_LINK_STATUS, status, 0);
+        if (status[0] != GL.GL_TRUE) {
+            gl.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    /**
+     * Ask the driver to keep the binary of the given program when it is
+     * linked. Must be called before linking.
+     */
+    static void prepare(GL3 gl, int program) {
+        gl.glProgramParameteri(program, GL2ES3.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL.GL_TRUE);
+    }
+
+    /**
+     * Save the binary of the given linked program under the given key.
+     * Failing to save is not an error; the program just isn't cached.
+     */
+    static void store(GL3 gl, int program, String key) {
+        int[] length = new int[1];
+        gl.glGetProgramiv(program, GL3.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0)
+            return;
+
+        ByteBuffer binary = GLBuffers.newDirectByteBuffer(length[0]);
+        int[] written = new int[1];
+        int[] format = new int[1];
+        gl.glGetProgramBinary(program, length[0], written, 0, format, 0, binary);
+
+        byte[] bytes = new byte[8 + written[0]];
+        ByteBuffer entry = ByteBuffer.wrap(bytes);
+        entry.putInt(FORMAT_VERSION);
+        entry.putInt(format[0]);
+        binary.limit(written[0]);
+        entry.put(binary);
+
+        try {
+            Files.createDirectories(directory.toPath());
+            // Write to a temporary file first so that another process never
+            // sees a partial entry
+            File tmp = File.createTempFile(key, ".tmp", directory);
+            Files.write(tmp.toPath(), bytes);
+            Files.move(tmp.toPath(), new File(directory, key + ".bin").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not save shader program to cache: " + e.getMessage());
+        }
+    }
+}
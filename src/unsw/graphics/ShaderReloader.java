@@ -0,0 +1,330 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.glsl.ShaderCode;
+
+/**
+ * Reloads shaders while the application is running whenever their source
+ * files change.
+ *
+ * A background thread watches a directory (usually "shaders") for changes.
+ * When a file that a {@link Shader} was created from changes, the new source
+ * is read and checked on that thread. The shader is then recompiled on the
+ * OpenGL thread at the end of a frame, spending at most a few milliseconds per
+ * frame on recompiling. If the new program links, it replaces the old one
+ * behind the same Shader object, so nothing else in the application needs to
+ * change. If it doesn't, the error is printed and the old program keeps
+ * running.
+ *
+ * Start it with {@link #start(File)}, or run the application with the system
+ * property unsw.graphics.shaderReload set to true to watch the "shaders"
+ * directory.
+ */
+public class ShaderReloader {
+
+    /**
+     * How long to wait for more changes after a file changes. Editors often
+     * write a file in several steps.
+     */
+    private static final long SETTLE_MILLIS = 50;
+
+    /**
+     * Every shader that has been created. Weak so that this doesn't keep
+     * them alive.
+     */
+    private static final List<WeakReference<Shader>> shaders =
+            new ArrayList<WeakReference<Shader>>();
+
+    /**
+     * Shaders waiting to be recompiled on the OpenGL thread, with their new
+     * source. Only the newest source for each shader is kept.
+     */
+    private static final Map<Shader, String[]> pending = new LinkedHashMap<Shader, String[]>();
+
+    private static long frameBudget = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private static Thread watcher;
+    private static WatchService watchService;
+
+    private ShaderReloader() {
+    }
+
+    /**
+     * Start watching the given directory for changes to shader source files.
+     *
+     * @param directory
+     * @throws IOException If the directory can't be watched
+     */
+    public static synchronized void start(File directory) throws IOException {
+        if (watcher != null)
+            stop();
+        final Path dir = directory.toPath().toAbsolutePath().normalize();
+        final WatchService service = dir.getFileSystem().newWatchService();
+        dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        watchService = service;
+        watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch(service, dir);
+            }
+        }, "Shader reloader");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stop watching for changes.
+     */
+    public static synchronized void stop() {
+        if (watcher == null)
+            return;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Closing is only to stop the thread
+        }
+        watcher = null;
+        watchService = null;
+    }
+
+    /**
+     * Whether a directory is being watched.
+     *
+     * @return
+     */
+    public static synchronized boolean isRunning() {
+        return watcher != null;
+    }
+
+    /**
+     * Set the longest time to spend recompiling shaders in one frame. At
+     * least one shader is recompiled per frame whatever the budget.
+     *
+     * @param millis
+     */
+    public static void setFrameBudget(long millis) {
+        frameBudget = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Called by every new shader.
+     */
+    static void register(Shader shader) {
+        synchronized (shaders) {
+            shaders.add(new WeakReference<Shader>(shader));
+        }
+    }
+
+    private static void watch(WatchService service, Path dir) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Set<Path> changed = new HashSet<Path>();
+                // Gather up everything that changes until things settle down
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path)
+                            changed.add(dir.resolve((Path) event.context()));
+                    }
+                    key.reset();
+                    key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                for (Shader shader : shadersUsing(changed))
+                    prepare(shader);
+            }
+        } catch (InterruptedException e) {
+            // Stop watching
+        } catch (ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    private static List<Shader> shadersUsing(Set<Path> files) {
+        List<Shader> using = new ArrayList<Shader>();
+        synchronized (shaders) {
+            Iterator<WeakReference<Shader>> it = shaders.iterator();
+            while (it.hasNext()) {
+                Shader shader = it.next().get();
+                if (shader == null || shader.isDestroyed()) {
+                    it.remove();
+                } else if (files.contains(path(shader.getVertexFile()))
+                        || files.contains(path(shader.getFragmentFile()))) {
+                    using.add(shader);
+                }
+            }
+        }
+        return using;
+    }
+
+    private static Path path(String file) {
+        return Paths.get(file).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Read and check the new source of the given shader, and queue it to be
+     * compiled if it looks valid.
+     */
+    private static void prepare(Shader shader) {
+        String vertex, fragment;
+        try {
+            vertex = new String(Files.readAllBytes(path(shader.getVertexFile())),
+                    StandardCharsets.UTF_8);
+            fragment = new String(Files.readAllBytes(path(shader.getFragmentFile())),
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Could not read shader source: " + e.getMessage());
+            return;
+        }
+        String error = check(vertex);
+        if (error != null) {
+            System.err.println("Not reloading " + shader.getVertexFile() + ": " + error);
+            return;
+        }
+        error = check(fragment);
+        if (error != null) {
+            System.err.println("Not reloading " + shader.getFragmentFile() + ": " + error);
+            return;
+        }
+        synchronized (pending) {
+            pending.remove(shader);
+            pending.put(shader, new String[] { vertex, fragment });
+        }
+    }
+
+    /**
+     * Check the given source for mistakes that can be found without
+     * compiling it, such as unbalanced brackets or #if without #endif. This
+     * catches files that are saved half-edited.
+     *
+     * @return A description of the problem, or null if none was found
+     */
+    static String check(String source) {
+        if (!source.contains("main"))
+            return "there is no main function";
+        int braces = 0, parens = 0, conditionals = 0;
+        int line = 1;
+        boolean startOfLine = true;
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '/') {
+                // Skip the rest of the line
+                while (i + 1 < source.length() && source.charAt(i + 1) != '\n')
+                    i++;
+                continue;
+            }
+            if (c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+                if (end == -1)
+                    return "unterminated comment on line " + line;
+                for (int j = i; j < end; j++) {
+                    if (source.charAt(j) == '\n')
+                        line++;
+                }
+                i = end + 1;
+                continue;
+            }
+            if (c == '#' && startOfLine) {
+                int end = source.indexOf('\n', i);
+                String directive = source.substring(i + 1, end == -1 ? source.length() : end)
+                        .trim();
+                if (directive.startsWith("if"))
+                    conditionals++;
+                else if (directive.startsWith("endif") && --conditionals < 0)
+                    return "#endif without #if on line " + line;
+                else if ((directive.startsWith("else") || directive.startsWith("elif"))
+                        && conditionals == 0)
+                    return "#" + directive + " without #if on line " + line;
+                i = end == -1 ? source.length() : end - 1;
+                continue;
+            }
+            switch (c) {
+            case '{': braces++; break;
+            case '}': if (--braces < 0) return "unmatched } on line " + line; break;
+            case '(': parens++; break;
+            case ')': if (--parens < 0) return "unmatched ) on line " + line; break;
+            case '\n': line++; break;
+            }
+            if (c == '\n')
+                startOfLine = true;
+            else if (!Character.isWhitespace(c))
+                startOfLine = false;
+        }
+        if (conditionals > 0)
+            return "#if without #endif";
+        if (braces > 0)
+            return "unmatched {";
+        if (parens > 0)
+            return "unmatched (";
+        return null;
+    }
+
+    /**
+     * Recompile shaders whose source has changed. Called on the OpenGL thread
+     * at the end of every frame.
+     */
+    static void update(GL3 gl) {
+        long deadline = System.nanoTime() + frameBudget;
+        do {
+            Shader shader;
+            String[] sources;
+            synchronized (pending) {
+                if (pending.isEmpty())
+                    return;
+                Iterator<Map.Entry<Shader, String[]>> it = pending.entrySet().iterator();
+                Map.Entry<Shader, String[]> next = it.next();
+                it.remove();
+                shader = next.getKey();
+                sources = next.getValue();
+            }
+            if (!shader.isDestroyed())
+                reload(gl, shader, sources[0], sources[1]);
+        } while (System.nanoTime() < deadline);
+    }
+
+    private static void reload(GL3 gl, Shader shader, String vertex, String fragment) {
+        ShaderCode vertShader = new ShaderCode(GL3.GL_VERTEX_SHADER, 1,
+                new CharSequence[][] { { new StringBuilder(vertex) } });
+        ShaderCode fragShader = new ShaderCode(GL3.GL_FRAGMENT_SHADER, 1,
+                new CharSequence[][] { { new StringBuilder(fragment) } });
+        String name = shader.getVertexFile() + " + " + shader.getFragmentFile();
+        int program;
+        try {
+            program = Shader.build(gl, vertShader, fragShader, shader.getDefines());
+        } catch (RuntimeException e) {
+            System.err.println("Could not reload " + name + ", keeping the old program: "
+                    + e.getMessage());
+            return;
+        }
+        if (!Shader.isLinked(gl, program)) {
+            gl.glDeleteProgram(program);
+            System.err.println("Could not reload " + name + ", keeping the old program");
+            return;
+        }
+        shader.swap(gl, program);
+    }
+}
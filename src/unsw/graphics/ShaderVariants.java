@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jogamp.opengl.GL3;
+
+/**
+ * A family of shaders compiled from the same source files with different
+ * preprocessor symbols defined.
+ *
+ * Instead of keeping a separate pair of shader files for every combination of
+ * features (and instead of checking at run time for features that are
+ * switched off), the source can use #ifdef for each optional feature. Each
+ * feature is given a flag, and the flags are combined with | to select a
+ * variant when drawing:
+ *
+ * <pre>
+ * ShaderVariants lit = new ShaderVariants("shaders/vertex_lit.glsl",
+ *         "shaders/fragment_lit.glsl", "LIGHTING", "FLAT", "SPECULAR");
+ * int flags = lit.flag("LIGHTING") | lit.flag("SPECULAR");
+ * ...
+ * lit.use(gl, flags);
+ * </pre>
+ *
+ * A variant is only compiled the first time it is used. After that it is
+ * kept, so switching between variants costs no more than switching between
+ * ordinary shaders.
+ */
+public class ShaderVariants {
+
+    private final String vertex;
+    private final String fragment;
+    private final String[] features;
+
+    // Compiled variants, indexed by their flags
+    private final Shader[] variants;
+
+    /**
+     * Create a family of shaders from the given source files with the given
+     * optional features. No shaders are compiled until they are used.
+     *
+     * @param vertex The file containing the vertex shader code.
+     * @param fragment The file containing the fragment shader code.
+     * @param features The preprocessor symbols that each switch on a feature.
+     */
+    public ShaderVariants(String vertex, String fragment, String... features) {
+        if (features.length > 16)
+            throw new IllegalArgumentException("A shader can have at most 16 features, not "
+                    + features.length);
+        this.vertex = vertex;
+        this.fragment = fragment;
+        this.features = features.clone();
+        this.variants = new Shader[1 << features.length];
+    }
+
+    /**
+     * The flag that switches on the given feature.
+     *
+     * @param feature
+     * @return
+     */
+    public int flag(String feature) {
+        for (int i = 0; i < features.length; i++) {
+            if (features[i].equals(feature))
+                return 1 << i;
+        }
+        throw new IllegalArgumentException("Unknown shader feature " + feature);
+    }
+
+    /**
+     * Get the variant with the given features switched on, compiling it if it
+     * hasn't been used before.
+     *
+     * @param gl
+     * @param flags A combination of values returned by {@link #flag(String)}.
+     * @return
+     */
+    public Shader get(GL3 gl, int flags) {
+        if (flags < 0 || flags >= variants.length)
+            throw new IllegalArgumentException("Invalid shader feature flags " + flags);
+        Shader shader = variants[flags];
+        if (shader == null) {
+            List<String> defines = new ArrayList<String>();
+            for (int i = 0; i < features.length; i++) {
+                if ((flags & (1 << i)) != 0)
+                    defines.add(features[i]);
+            }
+            shader = new Shader(gl, vertex, fragment, defines.toArray(new String[0]));
+            variants[flags] = shader;
+        }
+        return shader;
+    }
+
+    /**
+     * "Use" the variant with the given features switched on.
+     *
+     * @param gl
+     * @param flags A combination of values returned by {@link #flag(String)}.
+     * @return The variant
+     */
+    public Shader use(GL3 gl, int flags) {
+        Shader shader = get(gl, flags);
+        shader.use(gl);
+        return shader;
+    }
+
+    /**
+     * The number of variants that have been compiled so far.
+     *
+     * @return
+     */
+    public int getCompiledCount() {
+        int count = 0;
+        for (Shader shader : variants) {
+            if (shader != null)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Destroy all the variants that have been compiled.
+     *
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        for (int i = 0; i < variants.length; i++) {
+            if (variants[i] != null) {
+                variants[i].destroy(gl);
+                variants[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLContext;
+
+/**
+ * A large vertex buffer that geometry which changes every frame is streamed
+ * through.
+ *
+ * Each draw takes the next free piece of the buffer, so drawing transient
+ * geometry costs a copy into graphics memory and a draw call rather than
+ * creating and deleting a buffer object. When the end of the buffer is
+ * reached, allocation starts again from the beginning.
+ *
+ * The buffer is mapped without synchronization, so OpenGL never waits for
+ * earlier draws before letting new data be written. Instead, a fence is
+ * placed after the draws of every frame. Before a piece of the buffer is
+ * reused, its fence is checked. If the GPU is still reading it, the whole
+ * buffer is orphaned (the driver gives us fresh memory and frees the old
+ * memory when the GPU is finished with it) rather than waiting.
+ *
+ * There is one shared stream per context, returned by {@link #get(GL3)}. Its
+ * draws use the default vertex array object, enabling the attributes they
+ * need only for as long as they need them.
+ */
+public class StreamBuffer {
+
+    /**
+     * The size of the buffer, unless a single draw needs more.
+     */
+    private static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+
+    /**
+     * The offset of every draw is a multiple of this.
+     */
+    private static final int ALIGNMENT = 16;
+
+    private static StreamBuffer shared;
+
+    /**
+     * A fence and the part of the buffer written before it.
+     */
+    private static class Fence {
+        final long sync;
+        final int start, end;
+
+        Fence(long sync, int start, int end) {
+            this.sync = sync;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final GLContext context;
+    private final int name;
+    private int capacity;
+
+    // Where the next allocation starts
+    private int offset;
+
+    // The start of the data written since the last fence
+    private int unfenced;
+
+    // The oldest fence is first
+    private final Deque<Fence> fences = new ArrayDeque<Fence>();
+
+    private long bytesStreamed;
+    private int stallsAvoided;
+    private int orphans;
+
+    private StreamBuffer(GL3 gl, int capacity) {
+        this.context = gl.getContext();
+        int[] names = new int[1];
+        gl.glGenBuffers(1, names, 0);
+        this.name = names[0];
+        this.capacity = capacity;
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, name);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, capacity, null, GL3.GL_STREAM_DRAW);
+    }
+
+    /**
+     * The stream for the current context, created if it doesn't exist yet.
+     *
+     * @param gl
+     * @return
+     */
+    public static StreamBuffer get(GL3 gl) {
+        if (shared == null || shared.context != gl.getContext())
+            shared = new StreamBuffer(gl, DEFAULT_CAPACITY);
+        return shared;
+    }
+
+    /**
+     * Draw the given points with the given primitive type (e.g. GL_LINES) by
+     * streaming them.
+     *
+     * @param gl
+     * @param mode
+     * @param points
+     */
+    public void draw(GL3 gl, int mode, Point2DBuffer points) {
+        draw(gl, mode, points.floatBuffer, 2, points.capacity());
+    }
+
+    /**
+     * Draw the given points with the given primitive type (e.g. GL_LINES) by
+     * streaming them.
+     *
+     * @param gl
+     * @param mode
+     * @param points
+     */
+    public void draw(GL3 gl, int mode, Point3DBuffer points) {
+        draw(gl, mode, points.floatBuffer, 3, points.capacity());
+    }
+
+    private void draw(GL3 gl, int mode, FloatBuffer data, int size, int count) {
+        if (count == 0)
+            return;
+        data.rewind();
+        long start = write(gl, data);
+        gl.glVertexAttribPointer(Shader.POSITION, size, GL.GL_FLOAT, false, 0, start);
+        gl.glEnableVertexAttribArray(Shader.POSITION);
+        gl.glDrawArrays(mode, 0, count);
+        gl.glDisableVertexAttribArray(Shader.POSITION);
+    }
+
+    /**
+     * Copy the remaining floats of the given buffer into the stream. The
+     * stream is left bound to GL_ARRAY_BUFFER.
+     *
+     * @param gl
+     * @param data
+     * @return The offset in bytes where the data was written
+     */
+    public int write(GL3 gl, FloatBuffer data) {
+        int bytes = data.remaining() * Float.BYTES;
+        int start = allocate(gl, bytes);
+        ByteBuffer mapped = gl.glMapBufferRange(GL.GL_ARRAY_BUFFER, start, bytes,
+                GL.GL_MAP_WRITE_BIT | GL.GL_MAP_UNSYNCHRONIZED_BIT
+                        | GL.GL_MAP_INVALIDATE_RANGE_BIT);
+        int position = data.position();
+        mapped.order(ByteOrder.nativeOrder()).asFloatBuffer().put(data);
+        data.position(position);
+        gl.glUnmapBuffer(GL.GL_ARRAY_BUFFER);
+        bytesStreamed += bytes;
+        return start;
+    }
+
+    /**
+     * Find room for the given number of bytes and bind the buffer.
+     */
+    private int allocate(GL3 gl, int bytes) {
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, name);
+        if (bytes > capacity) {
+            // Grow so that the data fits
+            while (capacity < bytes)
+                capacity *= 2;
+            orphan(gl);
+        }
+        int start = (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        if (start + bytes > capacity) {
+            // Start again from the beginning. The data written so far this
+            // frame gets its own fence, so that it isn't overwritten later
+            // this frame.
+            fence(gl);
+            start = 0;
+            unfenced = 0;
+        }
+        // Make sure the GPU has finished with everything that is about to be
+        // overwritten
+        while (!fences.isEmpty()) {
+            Fence fence = fences.peekFirst();
+            if (fence.end <= start || fence.start >= start + bytes)
+                break;
+            int status = gl.glClientWaitSync(fence.sync, 0, 0);
+            if (status == GL3.GL_ALREADY_SIGNALED || status == GL3.GL_CONDITION_SATISFIED) {
+                gl.glDeleteSync(fence.sync);
+                fences.removeFirst();
+            } else {
+                stallsAvoided++;
+                orphan(gl);
+                start = 0;
+                break;
+            }
+        }
+        offset = start + bytes;
+        return start;
+    }
+
+    /**
+     * Replace the memory of the buffer with fresh memory. Everything that
+     * was in the buffer is no longer needed by us, and the driver frees it
+     * once the GPU is finished with it.
+     */
+    private void orphan(GL3 gl) {
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, capacity, null, GL3.GL_STREAM_DRAW);
+        for (Fence fence : fences)
+            gl.glDeleteSync(fence.sync);
+        fences.clear();
+        offset = 0;
+        unfenced = 0;
+        orphans++;
+    }
+
+    /**
+     * Place a fence after the data written since the last one.
+     */
+    private void fence(GL3 gl) {
+        if (offset == unfenced)
+            return;
+        long sync = gl.glFenceSync(GL3.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        fences.addLast(new Fence(sync, unfenced, offset));
+        unfenced = offset;
+    }
+
+    /**
+     * The stream for the current context, or null if nothing has been
+     * streamed in it.
+     */
+    static StreamBuffer getShared(GL3 gl) {
+        return shared != null && shared.context == gl.getContext() ? shared : null;
+    }
+
+    /**
+     * Place a fence after the draws of this frame. Called at the end of every
+     * frame.
+     */
+    static void endFrame(GL3 gl) {
+        StreamBuffer stream = getShared(gl);
+        if (stream != null)
+            stream.fence(gl);
+    }
+
+    /**
+     * The total number of bytes streamed.
+     *
+     * @return
+     */
+    public long getBytesStreamed() {
+        return bytesStreamed;
+    }
+
+    /**
+     * The number of times the GPU was still reading the part of the buffer
+     * that was needed, so the buffer was orphaned rather than waiting.
+     *
+     * @return
+     */
+    public int getStallsAvoided() {
+        return stallsAvoided;
+    }
+
+    /**
+     * The number of times the buffer has been orphaned, either to avoid a
+     * stall or to grow it.
+     *
+     * @return
+     */
+    public int getOrphanCount() {
+        return orphans;
+    }
+
+    /**
+     * The current size of the buffer in bytes.
+     *
+     * @return
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
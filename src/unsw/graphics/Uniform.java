@@ -0,0 +1,311 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Point3D;
+
+/**
+ * A uniform variable of a shader.
+ *
+ * Handles are obtained from {@link Shader#uniform(String)}. The location of the
+ * uniform is looked up once, when the shader is linked, so setting a uniform
+ * through its handle is a single OpenGL call. Matrices are uploaded straight
+ * from their storage without being copied.
+ *
+ * Like glUniform*(), the set methods affect the shader that is currently in
+ * use, so the shader this handle came from must be in use when they are
+ * called.
+ *
+ * A handle for a uniform the shader doesn't have (or that the GLSL compiler
+ * has optimised away) is still valid, but setting it does nothing.
+ *
+ * Each handle remembers the last value it uploaded. Setting a uniform to the
+ * value it already has skips the OpenGL call. This relies on the uniform only
+ * being changed through its handle (or the static methods of {@link Shader});
+ * code that calls glUniform*() directly should call
+ * {@link Shader#invalidateUniforms()} afterwards.
+ */
+public class Uniform {
+    private final String name;
+    private int location;
+    private int type;
+    private int size;
+
+    // The last values uploaded, or null if nothing has been uploaded yet. Its
+    // length is the number of floats that were uploaded.
+    private float[] shadow;
+
+    // The last value uploaded with glUniform1i()
+    private int shadowInt;
+    private boolean shadowIntKnown;
+
+    // Uploads issued and skipped since the last call to endFrame()
+    private static int issued, skipped;
+
+    Uniform(String name, int location, int type, int size) {
+        this.name = name;
+        this.location = location;
+        this.type = type;
+        this.size = size;
+    }
+
+    /**
+     * The name of this uniform in the shader.
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The location of this uniform, or -1 if the shader doesn't have it.
+     * @return
+     */
+    public int getLocation() {
+        return location;
+    }
+
+    /**
+     * The GLSL type of this uniform (e.g. GL_FLOAT_MAT4), or 0 if the shader
+     * doesn't have it.
+     * @return
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * The number of elements if this uniform is an array, otherwise 1.
+     * @return
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Whether the shader actually has this uniform.
+     * @return
+     */
+    public boolean isActive() {
+        return location != -1;
+    }
+
+    /**
+     * Set a uniform of type 'mat4'.
+     * @param gl
+     * @param mat
+     */
+    public void set(GL3 gl, Matrix4 mat) {
+        if (location != -1 && changed(mat.values, 16))
+            gl.glUniformMatrix4fv(location, 1, false, mat.values, 0);
+    }
+
+    /**
+     * Set a uniform of type 'mat4'.
+     * @param gl
+     * @param mat
+     */
+    public void set(GL3 gl, MutableMatrix4 mat) {
+        if (location != -1 && changed(mat.values, 16))
+            gl.glUniformMatrix4fv(location, 1, false, mat.values, 0);
+    }
+
+    /**
+     * Set a uniform of type 'mat3'.
+     * @param gl
+     * @param mat
+     */
+    public void set(GL3 gl, Matrix3 mat) {
+        if (location != -1 && changed(mat.values, 9))
+            gl.glUniformMatrix3fv(location, 1, false, mat.values, 0);
+    }
+
+    /**
+     * Set a uniform of type 'mat4' or 'mat3' from an array of values in
+     * column-major order.
+     * @param gl
+     * @param values
+     */
+    public void setMatrix(GL3 gl, float[] values) {
+        if (values.length != 16 && values.length != 9)
+            throw new IllegalArgumentException("Uniform.setMatrix passed an array of length " + values.length);
+        if (location == -1 || !changed(values, values.length))
+            return;
+        if (values.length == 16)
+            gl.glUniformMatrix4fv(location, 1, false, values, 0);
+        else
+            gl.glUniformMatrix3fv(location, 1, false, values, 0);
+    }
+
+    /**
+     * Set a uniform of type 'float'.
+     * @param gl
+     * @param f
+     */
+    public void set(GL3 gl, float f) {
+        if (location != -1 && changed(f, 0, 0, 1))
+            gl.glUniform1f(location, f);
+    }
+
+    /**
+     * Set a uniform of type 'int' (or a sampler).
+     * @param gl
+     * @param i
+     */
+    public void set(GL3 gl, int i) {
+        if (location == -1)
+            return;
+        if (shadowIntKnown && shadowInt == i) {
+            skipped++;
+            return;
+        }
+        shadowInt = i;
+        shadowIntKnown = true;
+        issued++;
+        gl.glUniform1i(location, i);
+    }
+
+    /**
+     * Set a uniform of type 'vec2'.
+     * @param gl
+     * @param x
+     * @param y
+     */
+    public void set(GL3 gl, float x, float y) {
+        if (location != -1 && changed(x, y, 0, 2))
+            gl.glUniform2f(location, x, y);
+    }
+
+    /**
+     * Set a uniform of type 'vec3'.
+     * @param gl
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void set(GL3 gl, float x, float y, float z) {
+        if (location != -1 && changed(x, y, z, 3))
+            gl.glUniform3f(location, x, y, z);
+    }
+
+    /**
+     * Set a uniform of type 'vec2'.
+     * @param gl
+     * @param point
+     */
+    public void set(GL3 gl, Point2D point) {
+        set(gl, point.getX(), point.getY());
+    }
+
+    /**
+     * Set a uniform of type 'vec3'.
+     * @param gl
+     * @param point
+     */
+    public void set(GL3 gl, Point3D point) {
+        set(gl, point.getX(), point.getY(), point.getZ());
+    }
+
+    /**
+     * Set a uniform of type 'vec3' with the red, green and blue components of
+     * the given color.
+     * @param gl
+     * @param color
+     */
+    public void set(GL3 gl, Color color) {
+        set(gl, color.getRed() / 255f, color.getGreen() / 255f, color.getBlue() / 255f);
+    }
+
+    /**
+     * Compare the first n values with the last values uploaded, and remember
+     * them if they are different.
+     */
+    private boolean changed(float[] values, int n) {
+        float[] s = shadow;
+        if (s == null || s.length != n) {
+            shadow = Arrays.copyOf(values, n);
+            issued++;
+            return true;
+        }
+        for (int i = 0; i < n; i++) {
+            if (s[i] != values[i]) {
+                System.arraycopy(values, i, s, i, n - i);
+                issued++;
+                return true;
+            }
+        }
+        skipped++;
+        return false;
+    }
+
+    /**
+     * Like {@link #changed(float[], int)} for up to 3 values.
+     */
+    private boolean changed(float x, float y, float z, int n) {
+        float[] s = shadow;
+        if (s == null || s.length != n) {
+            s = shadow = new float[n];
+        } else if (s[0] == x && (n < 2 || s[1] == y) && (n < 3 || s[2] == z)) {
+            skipped++;
+            return false;
+        }
+        s[0] = x;
+        if (n > 1)
+            s[1] = y;
+        if (n > 2)
+            s[2] = z;
+        issued++;
+        return true;
+    }
+
+    /**
+     * Point this handle at the uniform's location in a newly linked program.
+     */
+    void relink(int location, int type, int size) {
+        this.location = location;
+        this.type = type;
+        this.size = size;
+        invalidate();
+    }
+
+    /**
+     * Count an upload that was issued (if changed) or skipped.
+     */
+    static void count(boolean changed) {
+        if (changed)
+            issued++;
+        else
+            skipped++;
+    }
+
+    /**
+     * Forget the last uploaded value, so the next set always uploads.
+     */
+    void invalidate() {
+        shadow = null;
+        shadowIntKnown = false;
+    }
+
+    /**
+     * Start counting uploads for a new frame, returning the counts for the
+     * frame that just finished as {issued, skipped}.
+     */
+    static int[] endFrame() {
+        int[] counts = new int[] { issued, skipped };
+        issued = 0;
+        skipped = 0;
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return name + "@" + location;
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ *
+ */
+package unsw.graphics;
+
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.jogamp.opengl.GL2ES3;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLContext;
+import com.jogamp.opengl.util.GLBuffers;
+
+/**
+ * A uniform block shared by every shader, backed by a uniform buffer object.
+ *
+ * Uniforms in a block live in a buffer rather than in a program, so they keep
+ * their values when a different shader is used and only need to be written
+ * once per frame however many shaders read them. Every shader is connected to
+ * the blocks it declares when it is linked, so a shader only has to declare a
+ * block (with exactly the layout given here) to use it.
+ *
+ * The blocks use the std140 layout, so the offset of every member is fixed
+ * and the same on every OpenGL implementation. The shipped blocks are:
+ *
+ * <pre>
+ * layout(std140) uniform Camera {
+ *     mat4 view_matrix;
+ *     mat4 proj_matrix;
+ * };
+ *
+ * layout(std140) uniform Camera2D {
+ *     mat3 view_matrix;
+ * };
+ *
+ * layout(std140) uniform Light {
+ *     vec3 lightPos;
+ *     float lightIntensity;
+ *     vec3 viewLightPos;
+ *     float ambientIntensity;
+ * };
+ * </pre>
+ *
+ * lightPos is the position of the light in world coordinates. viewLightPos is
+ * the same position in view coordinates, which is what the shipped shaders
+ * use. It is computed by {@link Shader} whenever the light position (set with
+ * {@link Shader#setPoint3D}) or the view matrix changes, so it should not be
+ * set directly.
+ *
+ * The static methods of {@link Shader} write to these blocks, so usually there
+ * is no need to use this class directly.
+ *
+ * Uniform blocks need OpenGL 3.1 (GLSL 1.40), or OpenGL 3.0 with the
+ * GL_ARB_uniform_buffer_object extension. {@link Application} checks for this
+ * when it starts, and on a 3.0 context {@link Shader} enables the extension in
+ * every shader it compiles.
+ */
+public class UniformBuffer {
+
+    /**
+     * The binding point of the Camera block.
+     */
+    public static final int CAMERA_BINDING = 0;
+
+    /**
+     * The binding point of the Light block.
+     */
+    public static final int LIGHT_BINDING = 1;
+
+    /**
+     * The binding point of the Camera2D block.
+     */
+    public static final int CAMERA_2D_BINDING = 2;
+
+    /**
+     * The view and projection matrices for 3D shaders.
+     */
+    public static final UniformBuffer CAMERA = new UniformBuffer("Camera", CAMERA_BINDING, 128,
+            "view_matrix", 0, "proj_matrix", 64);
+
+    /**
+     * The view matrix for 2D shaders.
+     */
+    public static final UniformBuffer CAMERA_2D = new UniformBuffer("Camera2D",
+            CAMERA_2D_BINDING, 48, "view_matrix", 0);
+
+    /**
+     * The properties of the light.
+     */
+    public static final UniformBuffer LIGHT = new UniformBuffer("Light", LIGHT_BINDING, 32,
+            "lightPos", 0, "lightIntensity", 12, "viewLightPos", 16, "ambientIntensity", 28);
+
+    private static final UniformBuffer[] ALL = { CAMERA, CAMERA_2D, LIGHT };
+
+    private final String blockName;
+    private final int binding;
+    private final int size;
+
+    // Member name -> offset in bytes
+    private final Map<String, Integer> offsets = new HashMap<String, Integer>();
+
+    // The contents of the block. This is kept so that values can be compared
+    // before uploading them and so that the buffer can be recreated with the
+    // same contents for a new context.
+    private final FloatBuffer data;
+
+    // The buffer object and the context it belongs to.
+    private int buffer;
+    private GLContext context;
+
+    private UniformBuffer(String blockName, int binding, int size, Object... members) {
+        this.blockName = blockName;
+        this.binding = binding;
+        this.size = size;
+        for (int i = 0; i < members.length; i += 2)
+            offsets.put((String) members[i], (Integer) members[i + 1]);
+        data = GLBuffers.newDirectFloatBuffer(size / Float.BYTES);
+    }
+
+    /**
+     * Whether the given context supports uniform blocks.
+     *
+     * @param gl
+     * @return
+     */
+    public static boolean isSupported(GL3 gl) {
+        GLContext context = gl.getContext();
+        return context.getGLVersionNumber().compareTo(GLContext.Version3_1) >= 0
+                || context.isExtensionAvailable("GL_ARB_uniform_buffer_object");
+    }
+
+    /**
+     * Whether shaders compiled in the given context have to enable
+     * GL_ARB_uniform_buffer_object to declare uniform blocks.
+     */
+    static boolean needsExtension(GL3 gl) {
+        return gl.getContext().getGLSLVersionNumber().compareTo(GLContext.Version1_40) < 0;
+    }
+
+    /**
+     * The name of this block in GLSL.
+     * @return
+     */
+    public String getBlockName() {
+        return blockName;
+    }
+
+    /**
+     * The binding point this block is bound to.
+     * @return
+     */
+    public int getBinding() {
+        return binding;
+    }
+
+    /**
+     * Whether this block has a member with the given name.
+     * @param member
+     * @return
+     */
+    public boolean hasMember(String member) {
+        return offsets.containsKey(member);
+    }
+
+    /**
+     * Connect the blocks the given program declares to their binding points.
+     * Called when a shader is linked.
+     */
+    static void bindBlocks(GL3 gl, int program) {
+        for (UniformBuffer block : ALL) {
+            int index = gl.glGetUniformBlockIndex(program, block.blockName);
+            if (index != GL2ES3.GL_INVALID_INDEX) {
+                gl.glUniformBlockBinding(program, index, block.binding);
+                block.ensureBuffer(gl);
+            }
+        }
+    }
+
+    /**
+     * Find the block with a member of the given name that isn't a matrix, or
+     * null if there isn't one.
+     */
+    static UniformBuffer findMember(String member) {
+        return LIGHT.hasMember(member) ? LIGHT : null;
+    }
+
+    /**
+     * Create the buffer object if there isn't one for the current context.
+     */
+    private void ensureBuffer(GL3 gl) {
+        GLContext current = gl.getContext();
+        if (buffer != 0 && context == current)
+            return;
+        int[] names = new int[1];
+        gl.glGenBuffers(1, names, 0);
+        buffer = names[0];
+        context = current;
+        data.rewind();
+        gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, buffer);
+        gl.glBufferData(GL2ES3.GL_UNIFORM_BUFFER, size, data, GL3.GL_DYNAMIC_DRAW);
+        gl.glBindBufferBase(GL2ES3.GL_UNIFORM_BUFFER, binding, buffer);
+    }
+
+    private int offset(String member) {
+        Integer offset = offsets.get(member);
+        if (offset == null)
+            throw new IllegalArgumentException("Block " + blockName + " has no member " + member);
+        return offset;
+    }
+
+    /**
+     * Set a member of type 'mat4'.
+     * @param gl
+     * @param member
+     * @param mat
+     */
+    public void set(GL3 gl, String member, Matrix4 mat) {
+        int start = offset(member) / Float.BYTES;
+        boolean changed = false;
+        for (int i = 0; i < 16; i++) {
+            if (data.get(start + i) != mat.values[i]) {
+                data.put(start + i, mat.values[i]);
+                changed = true;
+            }
+        }
+        upload(gl, start, 16, changed);
+    }
+
+    /**
+     * Set a member of type 'mat3'. In the std140 layout each column takes up
+     * as much room as a vec4.
+     * @param gl
+     * @param member
+     * @param mat
+     */
+    public void set(GL3 gl, String member, Matrix3 mat) {
+        int start = offset(member) / Float.BYTES;
+        boolean changed = false;
+        for (int col = 0; col < 3; col++) {
+            for (int row = 0; row < 3; row++) {
+                float value = mat.values[col*3 + row];
+                if (data.get(start + col*4 + row) != value) {
+                    data.put(start + col*4 + row, value);
+                    changed = true;
+                }
+            }
+        }
+        upload(gl, start, 11, changed);
+    }
+
+    /**
+     * Set a member of type 'float'.
+     * @param gl
+     * @param member
+     * @param f
+     */
+    public void set(GL3 gl, String member, float f) {
+        int start = offset(member) / Float.BYTES;
+        boolean changed = data.get(start) != f;
+        data.put(start, f);
+        upload(gl, start, 1, changed);
+    }
+
+    /**
+     * Set a member of type 'vec3'.
+     * @param gl
+     * @param member
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void set(GL3 gl, String member, float x, float y, float z) {
+        int start = offset(member) / Float.BYTES;
+        boolean changed = data.get(start) != x || data.get(start + 1) != y
+                || data.get(start + 2) != z;
+        data.put(start, x);
+        data.put(start + 1, y);
+        data.put(start + 2, z);
+        upload(gl, start, 3, changed);
+    }
+
+    /**
+     * Copy count floats of the block starting at the given float into the
+     * buffer, if they have changed.
+     */
+    private void upload(GL3 gl, int start, int count, boolean changed) {
+        Uniform.count(changed);
+        if (buffer != 0 && context == gl.getContext()) {
+            if (!changed)
+                return;
+            data.position(start);
+            gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, buffer);
+            gl.glBufferSubData(GL2ES3.GL_UNIFORM_BUFFER, (long) start * Float.BYTES,
+                    (long) count * Float.BYTES, data);
+            data.rewind();
+        } else {
+            // The whole block is uploaded when the buffer is created
+            ensureBuffer(gl);
+        }
+    }
+}
@@ -57,6 +57,22 @@ public class Vector4 {
         return r;
     }
     
+    public float getX() {
+        return values[0];
+    }
+    
+    public float getY() {
+        return values[1];
+    }
+    
+    public float getZ() {
+        return values[2];
+    }
+    
+    public float getW() {
+        return values[3];
+    }
+    
     /**
      * Ignores the final value to create a 2D point
      * @return
@@ -0,0 +1,83 @@
+package unsw.graphics.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.MeshOptions;
+import unsw.graphics.geometry.NormalWeighting;
+import unsw.graphics.geometry.PackedMesh;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Reports the graphics memory taken by each model in res/models with and
+ * without the compact formats of {@link PackedMesh}, the largest error they
+ * make in the positions (as a fraction of the size of the model) and normals
+ * (in degrees), and how long packing takes.
+ *
+ * Run from the root of the project so the models can be found.
+ */
+public class CompactMeshBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException {
+        MeshCache.setEnabled(false);
+        File[] files = new File("res/models").listFiles();
+        Arrays.sort(files);
+        System.out.printf("%-18s %9s %10s %10s %6s %11s %11s %9s%n", "", "vertices", "floats",
+                "compact", "saved", "pos. error", "normal", "pack");
+        for (File file : files) {
+            if (!file.getName().endsWith(".ply"))
+                continue;
+            TriangleMesh mesh = new TriangleMesh(file.getPath(),
+                    new MeshOptions().normals(NormalWeighting.ANGLE, true));
+            long floats = mesh.getGpuMemory();
+            mesh.setCompact(true);
+            long compact = mesh.getGpuMemory();
+
+            Point3DBuffer vertices = mesh.getVertices();
+            Point3DBuffer normals = mesh.getNormals();
+            PackedMesh packed = PackedMesh.pack(vertices, normals, mesh.getIndices());
+            if (packed.getBytes() != compact)
+                throw new AssertionError(file.getName() + ": packed into " + packed.getBytes()
+                        + " bytes rather than " + compact);
+
+            float size = 0, positionError = 0, normalError = 0;
+            for (int i = 0; i < vertices.capacity(); i++) {
+                Point3D p = vertices.get(i);
+                size = Math.max(size, Math.max(Math.abs(p.getX()),
+                        Math.max(Math.abs(p.getY()), Math.abs(p.getZ()))));
+            }
+            for (int i = 0; i < vertices.capacity(); i++) {
+                Point3D p = vertices.get(i), q = packed.getVertex(i);
+                positionError = Math.max(positionError, Math.max(Math.abs(p.getX() - q.getX()),
+                        Math.max(Math.abs(p.getY() - q.getY()), Math.abs(p.getZ() - q.getZ()))));
+                Point3D n = normals.get(i);
+                Vector3 m = packed.getNormal(i);
+                float length = (float) Math.sqrt(m.dotp(m));
+                if (length == 0)
+                    continue;
+                float dot = m.dotp(new Vector3(n.getX(), n.getY(), n.getZ())) / length;
+                normalError = Math.max(normalError,
+                        (float) Math.toDegrees(Math.acos(Math.min(1, dot))));
+            }
+
+            for (int r = 0; r < ROUNDS; r++)
+                PackedMesh.pack(vertices, normals, mesh.getIndices());
+            long start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++)
+                PackedMesh.pack(vertices, normals, mesh.getIndices());
+            long pack = (System.nanoTime() - start) / ROUNDS;
+
+            System.out.printf("%-18s %9d %10d %10d %5.1f%% %11.2e %8.3fdeg %7.2fms%n",
+                    file.getName(), vertices.capacity(), floats, compact,
+                    100 - 100.0 * compact / floats, positionError / size, normalError,
+                    pack / 1e6);
+        }
+    }
+}
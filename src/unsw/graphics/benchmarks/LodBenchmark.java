@@ -0,0 +1,80 @@
+package unsw.graphics.benchmarks;
+
+import java.io.IOException;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.examples.LodBunnies;
+import unsw.graphics.geometry.LodMesh;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.MeshOptions;
+import unsw.graphics.geometry.MeshSimplifier;
+import unsw.graphics.geometry.NormalWeighting;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Reports how long {@link MeshSimplifier} takes to generate levels of detail
+ * for the bunny, and how many triangles a field of bunnies takes to draw with
+ * and without {@link LodMesh} (and with it culling the smallest bunnies) as
+ * the field grows. The field is laid out as in
+ * examples/LodBunnies, seen by the same camera, so bigger fields add bunnies
+ * further away.
+ *
+ * No drawing is done, so this doesn't need OpenGL.
+ *
+ * Run from the root of the project so the models can be found.
+ */
+public class LodBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        MeshCache.setEnabled(false);
+        MeshOptions options = new MeshOptions().normals(NormalWeighting.EQUAL, true);
+        TriangleMesh bunny = new TriangleMesh("res/models/bunny.ply", options);
+
+        LodMesh generated = LodMesh.generate(bunny, 4);
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++)
+            generated = LodMesh.generate(bunny, 4);
+        System.out.printf("Generated %d levels in %.1fms%n", generated.getLevelCount(),
+                (System.nanoTime() - start) / 1e6 / ROUNDS);
+
+        LodMesh loaded = LodMesh.load("res/models/bunny.ply", options);
+        System.out.printf("%-10s %10s %10s %8s%n", "level", "generated", "loaded", "switch");
+        for (int i = 0; i < generated.getLevelCount(); i++)
+            System.out.printf("%-10d %10d %10d %8s%n", i, triangles(generated.getLevel(i)),
+                    i < loaded.getLevelCount() ? triangles(loaded.getLevel(i)) : 0,
+                    i < generated.getLevelCount() - 1
+                            ? String.format("%.3f", generated.getSwitchSize(i)) : "");
+
+        Matrix4 view = LodBunnies.view().getMatrix();
+        Matrix4 proj = Matrix4.perspective(60, 1, 1, 1000);
+        LodMesh culled = LodMesh.load("res/models/bunny.ply", options);
+        culled.setCullSize(LodBunnies.CULL_SIZE);
+        System.out.printf("%n%-10s %12s %12s %12s %12s%n", "bunnies", "full", "generated",
+                "loaded", "culled");
+        for (int rows = 10; rows <= 16 * LodBunnies.ROWS; rows *= 2) {
+            long full = 0, withGenerated = 0, withLoaded = 0, withCulled = 0;
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < LodBunnies.COLUMNS; col++) {
+                    CoordFrame3D frame = LodBunnies.frame(row, col);
+                    full += triangles(bunny);
+                    withGenerated += triangles(generated.getLevel(generated.selectLevel(
+                            generated.getScreenSize(view, proj, frame), -1)));
+                    withLoaded += triangles(loaded.getLevel(loaded.selectLevel(
+                            loaded.getScreenSize(view, proj, frame), -1)));
+                    int level = culled.selectLevel(culled.getScreenSize(view, proj, frame), -1);
+                    if (level < culled.getLevelCount())
+                        withCulled += triangles(culled.getLevel(level));
+                }
+            }
+            System.out.printf("%-10d %12d %12d %12d %12d%n", rows * LodBunnies.COLUMNS, full,
+                    withGenerated, withLoaded, withCulled);
+        }
+    }
+
+    private static int triangles(TriangleMesh mesh) {
+        return mesh.getIndices().capacity() / 3;
+    }
+}
@@ -0,0 +1,67 @@
+package unsw.graphics.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import unsw.graphics.geometry.AsyncMesh;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.MeshLoader;
+import unsw.graphics.geometry.MeshOptions;
+import unsw.graphics.geometry.NormalWeighting;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Compares loading every model in res/models several times over with
+ * {@link TriangleMesh} and with {@link MeshLoader}: how long it takes before
+ * the first frame could be drawn, and until every mesh has loaded. Uploading
+ * needs OpenGL, so isn't included.
+ *
+ * The cache is disabled so that every load reads its PLY file.
+ *
+ * Run from the root of the project so the models can be found.
+ */
+public class MeshLoaderBenchmark {
+
+    private static final int COPIES = 4;
+
+    public static void main(String[] args) throws IOException {
+        MeshCache.setEnabled(false);
+        File[] files = new File("res/models").listFiles();
+        Arrays.sort(files);
+        List<String> models = new ArrayList<String>();
+        for (int c = 0; c < COPIES; c++)
+            for (File file : files)
+                if (file.getName().endsWith(".ply"))
+                    models.add(file.getPath());
+        MeshOptions options = new MeshOptions().normals(NormalWeighting.EQUAL, true);
+
+        // Warm up
+        for (String model : models)
+            new TriangleMesh(model, options);
+
+        long start = System.nanoTime();
+        for (String model : models)
+            new TriangleMesh(model, options);
+        double blocking = (System.nanoTime() - start) / 1e6;
+
+        MeshLoader loader = new MeshLoader();
+        start = System.nanoTime();
+        List<AsyncMesh> meshes = new ArrayList<AsyncMesh>();
+        for (String model : models)
+            meshes.add(loader.load(model, options));
+        double firstFrame = (System.nanoTime() - start) / 1e6;
+        for (AsyncMesh mesh : meshes)
+            mesh.get();
+        double allLoaded = (System.nanoTime() - start) / 1e6;
+        loader.shutdown();
+
+        System.out.printf("%d models, %d processors%n", models.size(),
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("TriangleMesh: first frame after %.1fms%n", blocking);
+        System.out.printf("MeshLoader:   first frame after %.1fms, all loaded after %.1fms%n",
+                firstFrame, allLoaded);
+    }
+}
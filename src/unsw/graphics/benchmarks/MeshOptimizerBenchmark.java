@@ -0,0 +1,55 @@
+package unsw.graphics.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.MeshOptimizer;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Reports the average cache miss ratio (ACMR) of each model in res/models as
+ * it is stored, after reordering for the vertex cache and after also
+ * clustering to reduce overdraw, and how long each step takes.
+ *
+ * Run from the root of the project so the models can be found.
+ */
+public class MeshOptimizerBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException {
+        MeshCache.setEnabled(false);
+        File[] files = new File("res/models").listFiles();
+        Arrays.sort(files);
+        System.out.printf("%-18s %9s %9s %9s %9s %10s %10s%n", "", "triangles", "ACMR", "tipsify",
+                "overdraw", "tipsify", "overdraw");
+        for (File file : files) {
+            if (!file.getName().endsWith(".ply"))
+                continue;
+            TriangleMesh mesh = new TriangleMesh(file.getPath());
+            float before = MeshOptimizer.acmr(mesh.getIndices(), MeshOptimizer.CACHE_SIZE);
+
+            long tipsify = 0, overdraw = 0;
+            float afterTipsify = 0, afterOverdraw = 0;
+            for (int r = 0; r < ROUNDS; r++) {
+                mesh = new TriangleMesh(file.getPath());
+                long start = System.nanoTime();
+                MeshOptimizer.optimizeVertexCache(mesh.getIndices(),
+                        mesh.getVertices().capacity());
+                tipsify += System.nanoTime() - start;
+                afterTipsify = MeshOptimizer.acmr(mesh.getIndices(), MeshOptimizer.CACHE_SIZE);
+
+                start = System.nanoTime();
+                MeshOptimizer.optimizeOverdraw(mesh.getIndices(), mesh.getVertices(),
+                        MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD);
+                overdraw += System.nanoTime() - start;
+                afterOverdraw = MeshOptimizer.acmr(mesh.getIndices(), MeshOptimizer.CACHE_SIZE);
+            }
+            System.out.printf("%-18s %9d %9.3f %9.3f %9.3f %7.2f ms %7.2f ms%n", file.getName(),
+                    mesh.getIndices().capacity() / 3, before, afterTipsify, afterOverdraw,
+                    tipsify / 1e6 / ROUNDS, overdraw / 1e6 / ROUNDS);
+        }
+    }
+}
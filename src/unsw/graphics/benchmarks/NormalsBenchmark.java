@@ -0,0 +1,105 @@
+package unsw.graphics.benchmarks;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.MeshNormals;
+import unsw.graphics.geometry.NormalWeighting;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Compares computing the vertex normals of the bunny with {@link MeshNormals}
+ * and with {@link Point3D}s and {@link Vector3}s, which is how
+ * {@link TriangleMesh} used to compute them. Also checks that both give
+ * exactly the same normals.
+ *
+ * The bunny on its own is below the parallel threshold, so copies of it are
+ * also joined into one big mesh to show the parallel path.
+ *
+ * Run from the root of the project so the model can be found.
+ */
+public class NormalsBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+
+    private static final int ROUNDS = 20;
+
+    private static final int COPIES = 32;
+
+    public static void main(String[] args) throws IOException {
+        TriangleMesh bunny = new TriangleMesh("res/models/bunny.ply");
+        run("bunny.ply", bunny.getVertices(), bunny.getIndices());
+
+        Point3DBuffer vertices = new Point3DBuffer(bunny.getVertices().capacity() * COPIES);
+        IntBuffer indices = GLBuffers.newDirectIntBuffer(bunny.getIndices().capacity() * COPIES);
+        for (int c = 0; c < COPIES; c++) {
+            int first = c * bunny.getVertices().capacity();
+            for (int i = 0; i < bunny.getVertices().capacity(); i++)
+                vertices.put(first + i, bunny.getVertices().get(i).translate(c, 0, 0));
+            for (int i = 0; i < bunny.getIndices().capacity(); i++)
+                indices.put(first + bunny.getIndices().get(i));
+        }
+        indices.flip();
+        run("bunny.ply x " + COPIES, vertices, indices);
+    }
+
+    private static void run(String name, Point3DBuffer vertices, IntBuffer indices) {
+        Point3DBuffer expected = new Point3DBuffer(vertices.capacity());
+        Point3DBuffer normals = new Point3DBuffer(vertices.capacity());
+        withObjects(vertices, indices, expected);
+        MeshNormals.compute(vertices, indices, normals, NormalWeighting.EQUAL, false);
+        for (int i = 0; i < vertices.capacity(); i++) {
+            Point3D a = expected.get(i), b = normals.get(i);
+            if (a.getX() != b.getX() || a.getY() != b.getY() || a.getZ() != b.getZ())
+                throw new AssertionError(name + ": normal " + i + " differs");
+        }
+
+        System.out.println(name + ": " + vertices.capacity() + " vertices, "
+                + indices.capacity() / 3 + " triangles");
+        for (int r = 0; r < WARMUP_ROUNDS; r++)
+            withObjects(vertices, indices, expected);
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++)
+            withObjects(vertices, indices, expected);
+        report("Point3D and Vector3", System.nanoTime() - start);
+
+        for (NormalWeighting weighting : NormalWeighting.values()) {
+            for (int r = 0; r < WARMUP_ROUNDS; r++)
+                MeshNormals.compute(vertices, indices, normals, weighting, true);
+            start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++)
+                MeshNormals.compute(vertices, indices, normals, weighting, true);
+            report("MeshNormals " + weighting, System.nanoTime() - start);
+        }
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.printf("  %-22s %8.2f ms%n", name, nanos / 1e6 / ROUNDS);
+    }
+
+    /**
+     * Compute the normals the way TriangleMesh used to.
+     */
+    private static void withObjects(Point3DBuffer vertices, IntBuffer indices,
+            Point3DBuffer normals) {
+        for (int i = 0; i < normals.capacity(); i++)
+            normals.put(i, 0, 0, 0);
+        for (int i = 0; i < indices.capacity() / 3; i++) {
+            int index1 = indices.get(i*3);
+            int index2 = indices.get(i*3 + 1);
+            int index3 = indices.get(i*3 + 2);
+            Point3D p1 = vertices.get(index1);
+            Point3D p2 = vertices.get(index2);
+            Point3D p3 = vertices.get(index3);
+            Vector3 normal = p2.minus(p1).cross(p3.minus(p1)).normalize();
+            normals.put(index1, normals.get(index1).translate(normal));
+            normals.put(index2, normals.get(index2).translate(normal));
+            normals.put(index3, normals.get(index3).translate(normal));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package unsw.graphics.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import org.smurn.jply.Element;
+import org.smurn.jply.ElementReader;
+import org.smurn.jply.PlyReaderFile;
+import org.smurn.jply.util.NormalMode;
+import org.smurn.jply.util.NormalizingPlyReader;
+import org.smurn.jply.util.TesselationMode;
+import org.smurn.jply.util.TextureMode;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Compares how long it takes to load each model in res/models with
+ * {@link TriangleMesh#TriangleMesh(String)} and with jply's
+ * {@link NormalizingPlyReader}, which is how meshes used to be loaded. Also
+ * checks that both give the same vertices and triangles.
+ *
+ * TriangleMesh is timed both parsing the file and loading it from the
+ * {@link MeshCache}, with and without computing normals.
+ *
+ * Run from the root of the project so the models can be found.
+ */
+public class PlyLoadBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException {
+        File[] files = new File("res/models").listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            if (!file.getName().endsWith(".ply"))
+                continue;
+            String path = file.getPath();
+            MeshCache.setEnabled(false);
+            check(path);
+            long jply = time(path, true, false);
+            long parse = time(path, false, false);
+            long parseNormals = time(path, false, true);
+            MeshCache.setEnabled(true);
+            check(path);
+            long cached = time(path, false, false);
+            long cachedNormals = time(path, false, true);
+            System.out.printf("%-18s %9d bytes   jply %8.3f ms   parse %7.3f ms   cache %7.3f ms"
+                    + "   (with normals: parse %7.3f ms   cache %7.3f ms)%n",
+                    file.getName(), file.length(), jply / 1e6, parse / 1e6, cached / 1e6,
+                    parseNormals / 1e6, cachedNormals / 1e6);
+        }
+    }
+
+    /**
+     * The average time to load the given file, in nanoseconds.
+     */
+    private static long time(String path, boolean jply, boolean normals) throws IOException {
+        for (int r = 0; r < WARMUP_ROUNDS; r++)
+            load(path, jply, normals);
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++)
+            load(path, jply, normals);
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+
+    private static void load(String path, boolean jply, boolean normals) throws IOException {
+        if (jply)
+            readWithJply(path);
+        else
+            new TriangleMesh(path, normals);
+    }
+
+    /**
+     * Make sure both ways of loading the file agree.
+     */
+    private static void check(String path) throws IOException {
+        JplyMesh expected = readWithJply(path);
+        Point3DBuffer expectedVertices = expected.vertices;
+        IntBuffer expectedIndices = expected.indices;
+        TriangleMesh mesh = new TriangleMesh(path);
+        if (mesh.getVertices().capacity() != expectedVertices.capacity()
+                || mesh.getIndices().capacity() != expectedIndices.capacity())
+            throw new AssertionError(path + ": the sizes differ");
+        for (int i = 0; i < expectedVertices.capacity(); i++) {
+            Point3D a = expectedVertices.get(i), b = mesh.getVertices().get(i);
+            if (a.getX() != b.getX() || a.getY() != b.getY() || a.getZ() != b.getZ())
+                throw new AssertionError(path + ": vertex " + i + " differs");
+        }
+        for (int i = 0; i < expectedIndices.capacity(); i++)
+            if (expectedIndices.get(i) != mesh.getIndices().get(i))
+                throw new AssertionError(path + ": index " + i + " differs");
+    }
+
+    private static class JplyMesh {
+        Point3DBuffer vertices;
+        IntBuffer indices;
+    }
+
+    /**
+     * Read the vertices and triangle indices of the given file with jply.
+     */
+    private static JplyMesh readWithJply(String path) throws IOException {
+        JplyMesh mesh = new JplyMesh();
+        NormalizingPlyReader reader = new NormalizingPlyReader(new PlyReaderFile(path),
+                TesselationMode.TRIANGLES, NormalMode.PASS_THROUGH, TextureMode.PASS_THROUGH);
+        mesh.vertices = new Point3DBuffer(reader.getElementCount("vertex"));
+        mesh.indices = GLBuffers.newDirectIntBuffer(reader.getElementCount("face") * 3);
+
+        ElementReader elReader = reader.nextElementReader();
+        while (elReader != null) {
+            String name = elReader.getElementType().getName();
+            int i = 0;
+            Element element = elReader.readElement();
+            while (element != null) {
+                if (name.equals("vertex")) {
+                    mesh.vertices.put(i++, (float) element.getDouble("x"),
+                            (float) element.getDouble("y"), (float) element.getDouble("z"));
+                } else if (name.equals("face")) {
+                    for (int index : element.getIntList("vertex_index"))
+                        mesh.indices.put(i++, index);
+                }
+                element = elReader.readElement();
+            }
+            elReader.close();
+            elReader = reader.nextElementReader();
+        }
+        reader.close();
+        return mesh;
+    }
+}
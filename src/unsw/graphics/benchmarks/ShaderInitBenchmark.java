@@ -0,0 +1,98 @@
+package unsw.graphics.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLContext;
+import com.jogamp.opengl.GLDrawableFactory;
+import com.jogamp.opengl.GLOffscreenAutoDrawable;
+import com.jogamp.opengl.GLProfile;
+
+import unsw.graphics.Shader;
+import unsw.graphics.ShaderCache;
+
+/**
+ * Measures how long it takes to create all the shaders shipped with
+ * UNSWgraph, without the {@link ShaderCache}, with an empty cache (cold) and
+ * with a full cache (warm).
+ *
+ * Every measurement uses a new offscreen context so that nothing is shared
+ * between them. Drivers may have a cache of their own, which makes the
+ * uncached times look better than a real first launch. For Mesa, set the
+ * environment variable MESA_SHADER_CACHE_DISABLE=true to turn it off.
+ *
+ * Run from the root of the project so the shaders can be found.
+ */
+public class ShaderInitBenchmark {
+
+    private static final String[][] SHADERS = {
+        { "shaders/vertex_2d.glsl", "shaders/fragment_2d.glsl" },
+        { "shaders/vertex_3d.glsl", "shaders/fragment_3d.glsl" },
+        { "shaders/vertex_flat.glsl", "shaders/fragment_flat.glsl" },
+        { "shaders/vertex_gouraud.glsl", "shaders/fragment_gouraud.glsl" },
+        { "shaders/vertex_gouraud_precomputed.glsl", "shaders/fragment_gouraud.glsl" },
+        { "shaders/vertex_mandelbrot.glsl", "shaders/fragment_mandelbrot.glsl" },
+        { "shaders/vertex_batch_2d.glsl", "shaders/fragment_batch_2d.glsl" },
+    };
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        GLProfile profile = GLProfile.get(GLProfile.GL3);
+        GLCapabilities capabilities = new GLCapabilities(profile);
+        GLDrawableFactory factory = GLDrawableFactory.getFactory(profile);
+
+        File dir = Files.createTempDirectory("shader-cache").toFile();
+        try {
+            for (int r = 0; r < ROUNDS; r++) {
+                ShaderCache.setDirectory(null);
+                report("no cache", time(factory, capabilities));
+
+                for (File f : dir.listFiles())
+                    f.delete();
+                ShaderCache.setDirectory(dir);
+                report("cold cache", time(factory, capabilities));
+                report("warm cache", time(factory, capabilities));
+            }
+        } finally {
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Create all the shaders in a new context, returning the time taken.
+     */
+    private static long time(GLDrawableFactory factory, GLCapabilities capabilities) {
+        GLOffscreenAutoDrawable drawable = factory.createOffscreenAutoDrawable(null,
+                capabilities, null, 16, 16);
+        drawable.display();
+        GLContext context = drawable.getContext();
+        context.makeCurrent();
+        try {
+            GL3 gl = context.getGL().getGL3();
+            Shader[] shaders = new Shader[SHADERS.length];
+            long start = System.nanoTime();
+            for (int i = 0; i < SHADERS.length; i++)
+                shaders[i] = new Shader(gl, SHADERS[i][0], SHADERS[i][1]);
+            // Make sure the driver has actually finished
+            gl.glFinish();
+            long time = System.nanoTime() - start;
+            for (Shader shader : shaders)
+                shader.destroy(gl);
+            return time;
+        } finally {
+            context.release();
+            drawable.destroy();
+        }
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.printf("%-12s %8.2f ms for %d programs%n", name, nanos / 1e6,
+                SHADERS.length);
+    }
+}
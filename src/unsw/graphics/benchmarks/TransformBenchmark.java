@@ -0,0 +1,73 @@
+package unsw.graphics.benchmarks;
+
+import java.io.IOException;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Measures how many points per second can be transformed on the CPU, using
+ * the vertices of the bunny model.
+ * 
+ * Compares transforming one {@link unsw.graphics.geometry.Point3D} at a time
+ * with the bulk {@link CoordFrame3D#transform(Point3DBuffer, Point3DBuffer)}.
+ * The bunny on its own is below the parallel threshold, so the vertex set is
+ * also replicated to show the parallel path.
+ * 
+ * Run from the root of the project so the model can be found.
+ */
+public class TransformBenchmark {
+
+    private static final int WARMUP_ROUNDS = 100;
+
+    private static final int ROUNDS = 100;
+
+    private static final int COPIES = 32;
+
+    public static void main(String[] args) throws IOException {
+        Point3DBuffer bunny = new TriangleMesh("res/models/bunny.ply").getVertices();
+
+        Point3DBuffer many = new Point3DBuffer(bunny.capacity() * COPIES);
+        for (int c = 0; c < COPIES; c++)
+            for (int i = 0; i < bunny.capacity(); i++)
+                many.put(c * bunny.capacity() + i, bunny.get(i));
+
+        CoordFrame3D frame = CoordFrame3D.identity().translate(0, -0.5f, -2)
+                .rotateY(30).scale(5, 5, 5);
+
+        System.out.println("bunny.ply: " + bunny.capacity() + " points");
+        report("Point3D at a time", perPoint(frame, bunny), bunny.capacity());
+        report("bulk", bulk(frame, bunny), bunny.capacity());
+        System.out.println("bunny.ply x " + COPIES + ": " + many.capacity() + " points");
+        report("Point3D at a time", perPoint(frame, many), many.capacity());
+        report("bulk (parallel)", bulk(frame, many), many.capacity());
+    }
+
+    private static long perPoint(CoordFrame3D frame, Point3DBuffer src) {
+        Point3DBuffer dst = new Point3DBuffer(src.capacity());
+        for (int r = 0; r < WARMUP_ROUNDS; r++)
+            for (int i = 0; i < src.capacity(); i++)
+                dst.put(i, frame.transform(src.get(i)));
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++)
+            for (int i = 0; i < src.capacity(); i++)
+                dst.put(i, frame.transform(src.get(i)));
+        return System.nanoTime() - start;
+    }
+
+    private static long bulk(CoordFrame3D frame, Point3DBuffer src) {
+        Point3DBuffer dst = new Point3DBuffer(src.capacity());
+        for (int r = 0; r < WARMUP_ROUNDS; r++)
+            frame.transform(src, dst);
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++)
+            frame.transform(src, dst);
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long nanos, int points) {
+        double perSecond = (double) points * ROUNDS / (nanos / 1e9);
+        System.out.printf("  %-20s %8.1f M points/s%n", name, perSecond / 1e6);
+    }
+}
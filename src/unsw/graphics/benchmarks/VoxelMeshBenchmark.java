@@ -0,0 +1,47 @@
+package unsw.graphics.benchmarks;
+
+import unsw.graphics.geometry.TriangleMesh;
+import unsw.graphics.voxel.GreedyMesher;
+import unsw.graphics.voxel.VoxelGrid;
+
+/**
+ * Measures how long {@link GreedyMesher} takes to mesh every chunk of a
+ * 256x256x256 grid of rolling hills (the same as the VoxelField example), on
+ * one thread.
+ */
+public class VoxelMeshBenchmark {
+
+    private static final int SIZE = 256;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        VoxelGrid grid = new VoxelGrid(SIZE, SIZE, SIZE);
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                int height = (int) (SIZE / 3 + 20 * Math.sin(x / 20.0)
+                        + 20 * Math.cos(z / 25.0));
+                for (int y = 0; y < height; y++)
+                    grid.set(x, y, z, true);
+            }
+        }
+
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            int chunks = 0, triangles = 0;
+            for (int cx = 0; cx < grid.getChunksX(); cx++) {
+                for (int cy = 0; cy < grid.getChunksY(); cy++) {
+                    for (int cz = 0; cz < grid.getChunksZ(); cz++) {
+                        TriangleMesh mesh = GreedyMesher.mesh(grid, cx, cy, cz);
+                        chunks++;
+                        if (mesh != null)
+                            triangles += mesh.getIndices().capacity() / 3;
+                    }
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%d chunks, %d triangles: %.1f ms (%.2f ms per chunk)%n", chunks,
+                    triangles, nanos / 1e6, nanos / 1e6 / chunks);
+        }
+    }
+}
@@ -72,12 +72,14 @@ public class IndexedCube extends Application3D {
     private void drawCube(GL3 gl, CoordFrame3D frame) {
         gl.glBindBuffer(GL.GL_ARRAY_BUFFER, verticesName);
         gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
+        gl.glEnableVertexAttribArray(Shader.POSITION);
         
         gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
         
         Shader.setModelMatrix(gl, frame.getMatrix());
         gl.glDrawElements(GL.GL_TRIANGLES, indicesBuffer.capacity(), 
                 GL.GL_UNSIGNED_INT, 0);
+        gl.glDisableVertexAttribArray(Shader.POSITION);
     }
 
     @Override
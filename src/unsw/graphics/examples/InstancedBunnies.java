@@ -0,0 +1,114 @@
+package unsw.graphics.examples;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.Application3D;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.Shader;
+import unsw.graphics.ShaderVariants;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Draws a field of 100,000 low resolution bunnies with a single draw call,
+ * using {@link TriangleMesh#drawInstanced(GL3, CoordFrame3D, FloatBuffer, FloatBuffer, int)}.
+ *
+ * The matrix and color of every bunny are packed into buffers once. Each
+ * frame only the frame they are all drawn in changes.
+ */
+public class InstancedBunnies extends Application3D {
+
+    private static final int ROWS = 250;
+
+    private static final int COLUMNS = 400;
+
+    private static final int COUNT = ROWS * COLUMNS;
+
+    private TriangleMesh bunny;
+
+    private ShaderVariants litShaders;
+
+    private FloatBuffer matrices;
+
+    private FloatBuffer colors;
+
+    private float rotation;
+
+    public InstancedBunnies() throws IOException {
+        super("Instanced bunnies", 800, 600);
+        bunny = new TriangleMesh("res/models/bunny_res4.ply", true);
+
+        // Lay the bunnies out on a grid, each facing its own way
+        matrices = GLBuffers.newDirectFloatBuffer(COUNT * 16);
+        colors = GLBuffers.newDirectFloatBuffer(COUNT * 3);
+        float[] values = new float[16];
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLUMNS; col++) {
+                CoordFrame3D frame = CoordFrame3D.identity()
+                        .translate(col - COLUMNS / 2f, 0, -row)
+                        .rotateY((row * 31 + col * 17) % 360)
+                        .scale(4, 4, 4);
+                frame.getMatrix().getValues(values, 0);
+                matrices.put(values);
+                Color color = Color.getHSBColor((row + col) / (float) (ROWS + COLUMNS), 0.6f, 1);
+                colors.put(color.getRed() / 255f).put(color.getGreen() / 255f)
+                        .put(color.getBlue() / 255f);
+            }
+        }
+        matrices.flip();
+        colors.flip();
+    }
+
+    @Override
+    public void init(GL3 gl) {
+        super.init(gl);
+        bunny.init(gl);
+        litShaders = new ShaderVariants("shaders/vertex_lit.glsl",
+                "shaders/fragment_lit.glsl", "LIGHTING", "FLAT", "SPECULAR", "INSTANCED");
+        litShaders.use(gl, litShaders.flag("LIGHTING") | litShaders.flag("INSTANCED"));
+    }
+
+    @Override
+    public void reshape(GL3 gl, int width, int height) {
+        super.reshape(gl, width, height);
+        Shader.setProjMatrix(gl, Matrix4.perspective(60, width / (float) height, 1, 300));
+    }
+
+    public static void main(String[] args) throws IOException {
+        InstancedBunnies example = new InstancedBunnies();
+        example.start();
+    }
+
+    @Override
+    public void display(GL3 gl) {
+        super.display(gl);
+
+        CoordFrame3D view = CoordFrame3D.identity().rotateX(20).translate(0, -10, -5);
+        Shader.setViewMatrix(gl, view.getMatrix());
+
+        Shader.setPoint3D(gl, "lightPos", new Point3D(0, 50, 0));
+        Shader.setFloat(gl, "lightIntensity", 1);
+        Shader.setFloat(gl, "ambientIntensity", 0.2f);
+        Shader.setFloat(gl, "ambientCoeff", 1);
+        Shader.setFloat(gl, "diffuseCoeff", 0.8f);
+
+        Shader.setPenColor(gl, Color.WHITE);
+        bunny.drawInstanced(gl, CoordFrame3D.identity().rotateY(rotation), matrices, colors,
+                COUNT);
+
+        rotation += 0.1f;
+    }
+
+    @Override
+    public void destroy(GL3 gl) {
+        super.destroy(gl);
+        bunny.destroy(gl);
+        litShaders.destroy(gl);
+    }
+}
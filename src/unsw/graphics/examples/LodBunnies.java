@@ -0,0 +1,131 @@
+package unsw.graphics.examples;
+
+import java.awt.Color;
+import java.io.IOException;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.Application3D;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.Shader;
+import unsw.graphics.ShaderVariants;
+import unsw.graphics.geometry.LodMesh;
+import unsw.graphics.geometry.MeshOptions;
+import unsw.graphics.geometry.NormalWeighting;
+import unsw.graphics.geometry.Point3D;
+
+/**
+ * Draws a field of bunnies stretching away from the camera, each with the
+ * level of detail that suits its size on the screen, using {@link LodMesh}.
+ *
+ * The levels are the bunny_res files that come with the bunny. Change
+ * LodMesh.load() to LodMesh.generate() to make them with the simplifier
+ * instead. Doubling the number of rows adds bunnies further away, which are
+ * drawn with few triangles or, once they are only a few pixels across, not at
+ * all, so the frame time barely changes.
+ */
+public class LodBunnies extends Application3D {
+
+    public static final int ROWS = 80;
+
+    public static final int COLUMNS = 20;
+
+    /**
+     * Bunnies smaller than this on the screen aren't drawn. See
+     * {@link LodMesh#setCullSize(float)}.
+     */
+    public static final float CULL_SIZE = 0.01f;
+
+    private LodMesh bunny;
+
+    /**
+     * The level each bunny was drawn with last frame.
+     */
+    private final int[] levels = new int[ROWS * COLUMNS];
+
+    private ShaderVariants litShaders;
+
+    private float rotation;
+
+    public LodBunnies() throws IOException {
+        super("Level of detail bunnies", 800, 600);
+        bunny = LodMesh.load("res/models/bunny.ply",
+                new MeshOptions().normals(NormalWeighting.EQUAL, true));
+        bunny.setCullSize(CULL_SIZE);
+        for (int i = 0; i < levels.length; i++)
+            levels[i] = -1;
+    }
+
+    /**
+     * The frame of the bunny in the given row and column of the field.
+     *
+     * @param row
+     * @param col
+     * @return
+     */
+    public static CoordFrame3D frame(int row, int col) {
+        return CoordFrame3D.identity()
+                .translate(col - COLUMNS / 2f, 0, -row)
+                .rotateY((row * 31 + col * 17) % 360)
+                .scale(4, 4, 4);
+    }
+
+    @Override
+    public void init(GL3 gl) {
+        super.init(gl);
+        bunny.init(gl);
+        litShaders = new ShaderVariants("shaders/vertex_lit.glsl",
+                "shaders/fragment_lit.glsl", "LIGHTING", "FLAT", "SPECULAR", "INSTANCED");
+        litShaders.use(gl, litShaders.flag("LIGHTING"));
+    }
+
+    @Override
+    public void reshape(GL3 gl, int width, int height) {
+        super.reshape(gl, width, height);
+        Shader.setProjMatrix(gl, Matrix4.perspective(60, width / (float) height, 1, 1000));
+    }
+
+    public static void main(String[] args) throws IOException {
+        LodBunnies example = new LodBunnies();
+        example.start();
+    }
+
+    /**
+     * The view transform: the camera is just above the front row.
+     *
+     * @return
+     */
+    public static CoordFrame3D view() {
+        return CoordFrame3D.identity().translate(0, -0.5f, -1);
+    }
+
+    @Override
+    public void display(GL3 gl) {
+        super.display(gl);
+
+        CoordFrame3D view = view();
+        Shader.setViewMatrix(gl, view.getMatrix());
+
+        Shader.setPoint3D(gl, "lightPos", new Point3D(0, 50, 0));
+        Shader.setFloat(gl, "lightIntensity", 1);
+        Shader.setFloat(gl, "ambientIntensity", 0.2f);
+        Shader.setFloat(gl, "ambientCoeff", 1);
+        Shader.setFloat(gl, "diffuseCoeff", 0.8f);
+
+        Shader.setPenColor(gl, Color.WHITE);
+        for (int row = 0; row < ROWS; row++)
+            for (int col = 0; col < COLUMNS; col++)
+                levels[row * COLUMNS + col] = bunny.draw(gl,
+                        frame(row, col).rotateY(rotation), levels[row * COLUMNS + col]);
+
+        rotation += 0.5f;
+    }
+
+    @Override
+    public void destroy(GL3 gl) {
+        super.destroy(gl);
+        bunny.destroy(gl);
+        litShaders.destroy(gl);
+    }
+}
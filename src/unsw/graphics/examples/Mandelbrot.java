@@ -63,11 +63,10 @@ public class Mandelbrot extends Application2D {
                 .translate(-cameraPos.getX(), -cameraPos.getY());
         Polygon2D quad = new Polygon2D(-2,-1, 1,-1, 1,1, -2,1);
            
-        shader.use(gl);
-        
-        //Using a new shader invalidates all the values we've previously provided as uniform inputs.
-        //Need to supply them again.
+        //The view matrix is kept in a uniform block shared by every shader, so it stays set when we
+        //switch to the Mandelbrot shader.
         Shader.setViewMatrix(gl, view.getMatrix());
+        shader.use(gl);
         
         //Just drawing a standard 2x1 quad.
         quad.draw(gl);
@@ -8,7 +8,13 @@ import com.jogamp.opengl.GL3;
 import unsw.graphics.Application3D;
 import unsw.graphics.CoordFrame3D;
 import unsw.graphics.Matrix4;
+import unsw.graphics.Quaternion;
 import unsw.graphics.Shader;
+import unsw.graphics.ShaderVariants;
+import unsw.graphics.geometry.AsyncMesh;
+import unsw.graphics.geometry.MeshLoader;
+import unsw.graphics.geometry.MeshOptions;
+import unsw.graphics.geometry.NormalWeighting;
 import unsw.graphics.geometry.Point3D;
 import unsw.graphics.geometry.TriangleMesh;
 
@@ -30,27 +36,54 @@ public class ModelViewer extends Application3D {
 
     private static final boolean USE_LIGHTING = false;
 
-    private float rotateY;
+    /**
+     * The rotation applied every frame.
+     */
+    private static final Quaternion SPIN = Quaternion.rotationY(1);
 
-    private TriangleMesh model;
+    private final Quaternion orientation = new Quaternion();
+
+    private MeshLoader loader;
+
+    private AsyncMesh model;
+
+    /**
+     * Drawn until the model is ready.
+     */
+    private TriangleMesh placeholder;
 
     private TriangleMesh base;
 
+    private ShaderVariants litShaders;
+
     public ModelViewer() throws IOException {
         super("Model viewer", 600, 600);
-        model = new TriangleMesh("res/models/bunny.ply", true);
+        // Big models are loaded in the background, so the window appears
+        // straight away. Reordering the triangles of a big model for the
+        // vertex cache means far fewer vertices are shaded more than once.
+        // Uploading it compact halves the graphics memory it takes.
+        loader = new MeshLoader();
+        model = loader.load("res/models/bunny.ply",
+                new MeshOptions().normals(NormalWeighting.EQUAL, false).optimize(true)
+                        .compact(true));
+        // Small models are quick enough to load here. The low resolution
+        // bunny stands in for the full one until it is ready.
+        placeholder = new TriangleMesh("res/models/bunny_res4.ply", true);
         base = new TriangleMesh("res/models/cube_normals.ply", true);
     }
 
     @Override
     public void init(GL3 gl) {
         super.init(gl);
-        model.init(gl);
+        placeholder.init(gl);
+        model.setPlaceholder(placeholder);
         base.init(gl);
         if (USE_LIGHTING) {
-            Shader shader = new Shader(gl, "shaders/vertex_gouraud.glsl",
-                    "shaders/fragment_gouraud.glsl");
-            shader.use(gl);
+            // Only the variant that is used gets compiled. Add FLAT for flat
+            // shading or take away SPECULAR to turn off highlights.
+            litShaders = new ShaderVariants("shaders/vertex_lit.glsl",
+                    "shaders/fragment_lit.glsl", "LIGHTING", "FLAT", "SPECULAR");
+            litShaders.use(gl, litShaders.flag("LIGHTING") | litShaders.flag("SPECULAR"));
         }
     }
 
@@ -70,14 +103,18 @@ public class ModelViewer extends Application3D {
     public void display(GL3 gl) {
         super.display(gl);
 
+        // Upload a little more of the model each frame
+        loader.upload(gl);
+
         // Compute the view transform
         CoordFrame3D view = CoordFrame3D.identity().translate(0, 0, -2)
                 // Uncomment the line below to rotate the camera
-                // .rotateY(rotateY)
+                // .rotate(orientation)
                 .translate(0, 0, 2);
         Shader.setViewMatrix(gl, view.getMatrix());
 
-        // Set the lighting properties
+        // Set the lighting properties. The light is in world coordinates; the
+        // shaders read it in view coordinates, which Shader keeps up to date.
         Shader.setPoint3D(gl, "lightPos", new Point3D(0, 0, 5));
         Shader.setFloat(gl, "lightIntensity", 1);
         Shader.setFloat(gl, "ambientIntensity", 0.2f);
@@ -94,7 +131,7 @@ public class ModelViewer extends Application3D {
         // The coordinate frame for the model we're viewing.
         CoordFrame3D modelFrame = frame
                 // Uncomment the line below to rotate the model
-                .rotateY(rotateY)
+                .rotate(orientation)
 
                 // This translation and scale works well for the bunny and
                 // dragon1
@@ -112,14 +149,19 @@ public class ModelViewer extends Application3D {
         Shader.setPenColor(gl, Color.BLUE);
         base.draw(gl, baseFrame);
 
-        rotateY += 1;
+        // Normalising stops rounding errors building up over many frames
+        orientation.multiply(SPIN).normalize();
     }
     
     @Override
     public void destroy(GL3 gl) {
         super.destroy(gl);
         model.destroy(gl);
+        loader.destroy(gl);
+        placeholder.destroy(gl);
         base.destroy(gl);
+        if (litShaders != null)
+            litShaders.destroy(gl);
     }
 
 }
\ No newline at end of file
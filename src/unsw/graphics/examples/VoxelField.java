@@ -0,0 +1,117 @@
+package unsw.graphics.examples;
+
+import java.awt.Color;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.Application3D;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.Shader;
+import unsw.graphics.ShaderVariants;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.voxel.VoxelGrid;
+import unsw.graphics.voxel.VoxelRenderer;
+
+/**
+ * A 256x256x256 field of voxels shaped like rolling hills, drawn with a
+ * {@link VoxelRenderer}.
+ *
+ * A ball moves through the hills, digging a tunnel as it goes, so some chunks
+ * change every frame. Their meshes are rebuilt in the background.
+ */
+public class VoxelField extends Application3D {
+
+    private static final int SIZE = 256;
+
+    private static final int BALL_RADIUS = 12;
+
+    private VoxelGrid grid;
+
+    private VoxelRenderer renderer;
+
+    private ShaderVariants litShaders;
+
+    private float rotation;
+
+    private float ballAngle;
+
+    public VoxelField() {
+        super("Voxel field", 800, 600);
+        grid = new VoxelGrid(SIZE, SIZE, SIZE);
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                int height = (int) (SIZE / 3 + 20 * Math.sin(x / 20.0)
+                        + 20 * Math.cos(z / 25.0));
+                for (int y = 0; y < height; y++)
+                    grid.set(x, y, z, true);
+            }
+        }
+    }
+
+    @Override
+    public void init(GL3 gl) {
+        super.init(gl);
+        renderer = new VoxelRenderer(grid);
+        litShaders = new ShaderVariants("shaders/vertex_lit.glsl",
+                "shaders/fragment_lit.glsl", "LIGHTING", "FLAT", "SPECULAR");
+        litShaders.use(gl, litShaders.flag("LIGHTING") | litShaders.flag("FLAT"));
+    }
+
+    @Override
+    public void reshape(GL3 gl, int width, int height) {
+        super.reshape(gl, width, height);
+        Shader.setProjMatrix(gl, Matrix4.perspective(60, width / (float) height, 1, 1000));
+    }
+
+    public static void main(String[] args) {
+        VoxelField example = new VoxelField();
+        example.start();
+    }
+
+    @Override
+    public void display(GL3 gl) {
+        super.display(gl);
+
+        dig();
+        renderer.update(gl);
+
+        CoordFrame3D view = CoordFrame3D.identity().translate(0, 0, -400).rotateX(30);
+        Shader.setViewMatrix(gl, view.getMatrix());
+        Shader.setPoint3D(gl, "lightPos", new Point3D(100, 500, 200));
+        Shader.setFloat(gl, "lightIntensity", 1);
+        Shader.setFloat(gl, "ambientIntensity", 0.3f);
+        Shader.setFloat(gl, "ambientCoeff", 1);
+        Shader.setFloat(gl, "diffuseCoeff", 0.7f);
+
+        Shader.setPenColor(gl, new Color(0.4f, 0.7f, 0.3f));
+        renderer.draw(gl, CoordFrame3D.identity().rotateY(rotation)
+                .translate(-SIZE / 2f, -SIZE / 2f, -SIZE / 2f));
+
+        rotation += 0.2f;
+    }
+
+    /**
+     * Move the ball along and clear the voxels it passes through.
+     */
+    private void dig() {
+        ballAngle += 1;
+        double radians = Math.toRadians(ballAngle);
+        int cx = (int) (SIZE / 2 + SIZE / 3 * Math.cos(radians));
+        int cy = SIZE / 3;
+        int cz = (int) (SIZE / 2 + SIZE / 3 * Math.sin(radians));
+        for (int x = -BALL_RADIUS; x <= BALL_RADIUS; x++)
+            for (int y = -BALL_RADIUS; y <= BALL_RADIUS; y++)
+                for (int z = -BALL_RADIUS; z <= BALL_RADIUS; z++)
+                    if (x*x + y*y + z*z <= BALL_RADIUS*BALL_RADIUS
+                            && grid.get(cx + x, cy + y, cz + z))
+                        grid.set(cx + x, cy + y, cz + z, false);
+    }
+
+    @Override
+    public void destroy(GL3 gl) {
+        super.destroy(gl);
+        renderer.destroy(gl);
+        litShaders.destroy(gl);
+    }
+}
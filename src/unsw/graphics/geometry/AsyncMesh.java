@@ -0,0 +1,204 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.CoordFrame3D;
+
+/**
+ * A {@link TriangleMesh} that is being loaded by a {@link MeshLoader}.
+ *
+ * The mesh goes through three stages:
+ *
+ * 1. Loading: the PLY file is being read and the normals computed on one of
+ * the loader's worker threads.
+ * 2. Loaded: the mesh is waiting for, or partway through, being uploaded to
+ * graphics memory by {@link MeshLoader#upload(GL3)}.
+ * 3. Ready: the mesh can be drawn.
+ *
+ * Until the mesh is ready, {@link #draw(GL3, CoordFrame3D)} draws the
+ * placeholder instead, if there is one.
+ */
+public class AsyncMesh {
+
+    private final String plyFile;
+
+    /**
+     * Finishes when the mesh has been loaded (or failed to load).
+     */
+    private Future<TriangleMesh> loading;
+
+    private TriangleMesh placeholder;
+
+    private volatile boolean ready;
+
+    /**
+     * Set when the mesh is destroyed before it is ready, so the loader
+     * knows to stop uploading it.
+     */
+    private volatile boolean destroyed;
+
+    AsyncMesh(String plyFile) {
+        this.plyFile = plyFile;
+    }
+
+    void setLoading(Future<TriangleMesh> loading) {
+        this.loading = loading;
+    }
+
+    void setReady() {
+        ready = true;
+    }
+
+    boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * The PLY file the mesh is loaded from.
+     *
+     * @return
+     */
+    public String getFile() {
+        return plyFile;
+    }
+
+    /**
+     * Set the mesh to draw until this one is ready. It must already be
+     * initialised. It is drawn in the same frame as this mesh would be, so it
+     * should be about the same size, like a lower resolution version of it.
+     *
+     * @param placeholder The placeholder, or null to draw nothing.
+     */
+    public void setPlaceholder(TriangleMesh placeholder) {
+        this.placeholder = placeholder;
+    }
+
+    public TriangleMesh getPlaceholder() {
+        return placeholder;
+    }
+
+    /**
+     * Whether the mesh has finished loading (or failed to), although it might
+     * not have been uploaded yet.
+     *
+     * @return
+     */
+    public boolean isLoaded() {
+        return loading.isDone();
+    }
+
+    /**
+     * Whether the mesh has been uploaded and can be drawn.
+     *
+     * @return
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Whether the mesh failed to load. {@link #get()} throws the reason.
+     *
+     * @return
+     */
+    public boolean isFailed() {
+        if (!loading.isDone() || loading.isCancelled())
+            return false;
+        try {
+            loading.get();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (InterruptedException e) {
+            // Can't happen, as the loading is done
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Wait until the mesh has loaded and get it. It might not have been
+     * uploaded yet.
+     *
+     * @return
+     * @throws IOException If the mesh couldn't be loaded.
+     * @throws java.util.concurrent.CancellationException If the mesh was
+     *             destroyed before it loaded.
+     */
+    public TriangleMesh get() throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return loading.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Draw the mesh in the given frame if it is ready, or the placeholder if
+     * it isn't.
+     *
+     * @param gl
+     * @param frame
+     */
+    public void draw(GL3 gl, CoordFrame3D frame) {
+        if (ready) {
+            // Can't fail once the mesh is ready
+            loadedMesh().draw(gl, frame);
+        } else if (placeholder != null) {
+            placeholder.draw(gl, frame);
+        }
+    }
+
+    /**
+     * Release the graphics memory of the mesh, or stop it from being loaded
+     * and uploaded if it isn't ready yet. The placeholder is not destroyed.
+     *
+     * A mesh that is part way through being uploaded is released by the next
+     * {@link MeshLoader#upload(GL3)} or {@link MeshLoader#destroy(GL3)}.
+     *
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        destroyed = true;
+        loading.cancel(false);
+        if (ready) {
+            loadedMesh().destroy(gl);
+            ready = false;
+        }
+    }
+
+    /**
+     * The mesh, which must have loaded successfully.
+     */
+    TriangleMesh loadedMesh() {
+        try {
+            return get();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
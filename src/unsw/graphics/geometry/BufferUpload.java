@@ -0,0 +1,68 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+import java.nio.Buffer;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL2ES3;
+import com.jogamp.opengl.GL3;
+
+/**
+ * Copying data into a buffer object that has already been allocated, a piece
+ * at a time, so that the copy can be spread over several frames.
+ *
+ * The buffer is bound to GL_COPY_WRITE_BUFFER for each piece, which doesn't
+ * change any vertex array object or the buffers bound for drawing.
+ */
+class BufferUpload {
+
+    private final int name;
+
+    /**
+     * The data to copy, from position 0. A duplicate of the buffer that was
+     * given, so its position can be moved.
+     */
+    private final Buffer data;
+
+    private final int elementBytes;
+
+    private final long bytes;
+
+    /**
+     * The number of bytes copied so far.
+     */
+    private long done;
+
+    BufferUpload(int name, Buffer data, long bytes) {
+        this.name = name;
+        this.data = Buffers.slice(data, 0, data.capacity());
+        this.elementBytes = Buffers.sizeOfBufferElem(data);
+        this.bytes = bytes;
+    }
+
+    /**
+     * The number of bytes left to copy.
+     */
+    long remaining() {
+        return bytes - done;
+    }
+
+    /**
+     * Copy the next piece of the data, of at most maxBytes (rounded down to
+     * whole elements, but at least one).
+     *
+     * @return The number of bytes copied.
+     */
+    long upload(GL3 gl, long maxBytes) {
+        long count = Math.min(remaining(), Math.max(maxBytes - maxBytes % elementBytes,
+                elementBytes));
+        data.position((int) (done / elementBytes));
+        gl.glBindBuffer(GL2ES3.GL_COPY_WRITE_BUFFER, name);
+        gl.glBufferSubData(GL2ES3.GL_COPY_WRITE_BUFFER, done, count, data);
+        gl.glBindBuffer(GL2ES3.GL_COPY_WRITE_BUFFER, 0);
+        done += count;
+        return count;
+    }
+}
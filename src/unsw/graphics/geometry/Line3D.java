@@ -7,6 +7,7 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GeometryBuffer;
 import unsw.graphics.Point3DBuffer;
 import unsw.graphics.Shader;
 
@@ -18,6 +19,20 @@ import unsw.graphics.Shader;
  *
  */
 public class Line3D {
+    /**
+     * A line from (0,0,0) to (1,1,1), which the frame moves and stretches
+     * into place. This way every line shares one buffer, so drawing lines
+     * that only last one frame costs no more than drawing the same line
+     * again.
+     */
+    private static final GeometryBuffer UNIT_LINE;
+
+    static {
+        Point3DBuffer points = new Point3DBuffer(2);
+        points.put(1, 1, 1, 1);
+        UNIT_LINE = new GeometryBuffer(points);
+    }
+
     private Point3D start, end;
 
     /** 
@@ -56,20 +71,9 @@ public class Line3D {
      * @param gl
      */
     public void draw(GL3 gl, CoordFrame3D frame) {
-        Point3DBuffer buffer = new Point3DBuffer(3);
-        buffer.put(0, start);
-        buffer.put(1, end);
-        
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, 2*3*Float.BYTES, buffer.getBuffer(), GL.GL_STATIC_DRAW);
-        
-        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
-        Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawArrays(GL.GL_LINES, 0, 2);
-        
-        gl.glDeleteBuffers(1, names, 0);
+        Shader.setModelMatrix(gl, frame.translate(start).scale(end.getX() - start.getX(),
+                end.getY() - start.getY(), end.getZ() - start.getZ()).getMatrix());
+        UNIT_LINE.draw(gl, GL.GL_LINES);
     }
     
     /**
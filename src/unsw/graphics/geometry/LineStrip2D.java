@@ -10,6 +10,7 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame2D;
+import unsw.graphics.GeometryBuffer;
 import unsw.graphics.Point2DBuffer;
 import unsw.graphics.Shader;
 
@@ -27,6 +28,12 @@ import unsw.graphics.Shader;
 public class LineStrip2D {
     private List<Point2D> points;
 
+    // The points in graphics memory, created when the line strip is first drawn
+    private GeometryBuffer buffer;
+
+    // Whether points have been added since the buffer was filled
+    private boolean changed;
+
     public LineStrip2D() {
         points = new ArrayList<Point2D>();
     }
@@ -65,19 +72,13 @@ public class LineStrip2D {
      * @param gl
      */
     public void draw(GL3 gl, CoordFrame2D frame) {
-        Point2DBuffer buffer = new Point2DBuffer(points);
-
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, points.size() * 2 * Float.BYTES,
-                buffer.getBuffer(), GL.GL_STATIC_DRAW);
-
-        gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
+        if (buffer == null)
+            buffer = new GeometryBuffer(new Point2DBuffer(points));
+        else if (changed || buffer.getVertexCount() != points.size())
+            buffer.set(new Point2DBuffer(points));
+        changed = false;
         Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawArrays(GL.GL_LINE_STRIP, 0, points.size());
-
-        gl.glDeleteBuffers(1, names, 0);
+        buffer.draw(gl, GL.GL_LINE_STRIP);
     }
     
     /**
@@ -90,6 +91,7 @@ public class LineStrip2D {
 
     public void add(Point2D p) {
         points.add(p);
+        changed = true;
     }
 
     public Point2D getLast() {
@@ -99,4 +101,14 @@ public class LineStrip2D {
     public List<Point2D> getPoints() {
         return points;
     }
+
+    /**
+     * Release the graphics memory used by this line strip. It is copied again if
+     * the line strip is drawn afterwards.
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        if (buffer != null)
+            buffer.destroy(gl);
+    }
 }
@@ -0,0 +1,353 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.Shader;
+
+/**
+ * A mesh with several levels of detail. Level 0 is the full mesh, and each
+ * level after it has fewer triangles. When the mesh is drawn, the level is
+ * chosen by how big the mesh looks on the screen, so meshes far from the
+ * camera are drawn with fewer triangles.
+ *
+ * The size of the mesh on the screen is the radius of its bounding sphere
+ * after projection, as a fraction of half the height of the viewport. The
+ * finest level that has at most {@link #getDensity()} triangles for a size of
+ * 1 (scaled by the square of the size) is used. To stop the mesh from
+ * switching back and forth when its size is near the boundary between two
+ * levels, it only switches once it is {@link #getHysteresis()} past the
+ * boundary. Optionally, a mesh smaller than {@link #getCullSize()} isn't
+ * drawn at all, so adding more meshes far from the camera costs almost
+ * nothing.
+ *
+ * The levels can be loaded from files beside the PLY file (see
+ * {@link #load(String, MeshOptions)}) or generated with
+ * {@link MeshSimplifier} (see {@link #generate(TriangleMesh, int)}).
+ */
+public class LodMesh {
+
+    /**
+     * The default for how many triangles a level may have at a size of 1.
+     */
+    public static final float DEFAULT_DENSITY = 20000;
+
+    /**
+     * The default for how far past the boundary between two levels the size
+     * has to be before the level changes.
+     */
+    public static final float DEFAULT_HYSTERESIS = 0.1f;
+
+    /**
+     * How many times fewer triangles each generated level has than the one
+     * before. Halving the size on the screen quarters its area, so the
+     * density stays the same.
+     */
+    private static final int GENERATED_RATIO = 4;
+
+    private final TriangleMesh[] levels;
+
+    /**
+     * Below switchSizes[i], level i + 1 is used rather than level i.
+     */
+    private final float[] switchSizes;
+
+    private float density = DEFAULT_DENSITY;
+
+    private float hysteresis = DEFAULT_HYSTERESIS;
+
+    private float cullSize;
+
+    /**
+     * The bounding sphere of level 0.
+     */
+    private final float centreX, centreY, centreZ, radius;
+
+    /**
+     * The level used by the last call to {@link #draw(GL3, CoordFrame3D)}, or
+     * -1 if it hasn't been called.
+     */
+    private int currentLevel = -1;
+
+    /**
+     * Construct a mesh with the given levels of detail, finest first.
+     *
+     * @param levels
+     */
+    public LodMesh(List<TriangleMesh> levels) {
+        if (levels.isEmpty())
+            throw new IllegalArgumentException("There must be at least one level");
+        this.levels = levels.toArray(new TriangleMesh[levels.size()]);
+        switchSizes = new float[this.levels.length - 1];
+        updateSwitchSizes();
+
+        // The centre of the bounding box and the furthest vertex from it
+        BoundingSphere bounds = new BoundingSphere(this.levels[0]);
+        centreX = bounds.centreX;
+        centreY = bounds.centreY;
+        centreZ = bounds.centreZ;
+        radius = bounds.radius;
+    }
+
+    /**
+     * Load a mesh and its levels of detail from PLY files. The level after
+     * name.ply is name_res2.ply, then name_res3.ply and so on, until a file
+     * doesn't exist.
+     *
+     * @param plyFile
+     * @param options The options to load every level with.
+     * @return
+     * @throws IOException
+     */
+    public static LodMesh load(String plyFile, MeshOptions options) throws IOException {
+        List<TriangleMesh> levels = new ArrayList<TriangleMesh>();
+        levels.add(new TriangleMesh(plyFile, options));
+        String base = plyFile.endsWith(".ply") ? plyFile.substring(0, plyFile.length() - 4)
+                : plyFile;
+        for (int res = 2; new File(base + "_res" + res + ".ply").isFile(); res++)
+            levels.add(new TriangleMesh(base + "_res" + res + ".ply", options));
+        return new LodMesh(levels);
+    }
+
+    /**
+     * Generate levels of detail for a mesh with {@link MeshSimplifier}. Each
+     * level has a quarter of the triangles of the one before.
+     *
+     * @param mesh The finest level.
+     * @param levelCount The number of levels, including the finest one.
+     * @return
+     */
+    public static LodMesh generate(TriangleMesh mesh, int levelCount) {
+        List<TriangleMesh> levels = new ArrayList<TriangleMesh>();
+        levels.add(mesh);
+        for (int i = 1; i < levelCount; i++) {
+            TriangleMesh last = levels.get(i - 1);
+            int target = last.getIndices().capacity() / 3 / GENERATED_RATIO;
+            TriangleMesh level = MeshSimplifier.simplify(last, target);
+            // Stop once the simplifier can't make any progress
+            if (level.getIndices().capacity() == last.getIndices().capacity())
+                break;
+            levels.add(level);
+        }
+        return new LodMesh(levels);
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public TriangleMesh getLevel(int level) {
+        return levels[level];
+    }
+
+    /**
+     * Set how many triangles a level may have at a size of 1. Higher
+     * densities use finer levels.
+     *
+     * @param density
+     */
+    public void setDensity(float density) {
+        this.density = density;
+        updateSwitchSizes();
+    }
+
+    public float getDensity() {
+        return density;
+    }
+
+    /**
+     * Set how far past the boundary between two levels, as a fraction of the
+     * size at the boundary, the size has to be before the level changes.
+     *
+     * @param hysteresis
+     */
+    public void setHysteresis(float hysteresis) {
+        this.hysteresis = hysteresis;
+    }
+
+    public float getHysteresis() {
+        return hysteresis;
+    }
+
+    /**
+     * Set the size below which the mesh isn't drawn at all. It is 0 by
+     * default, so the mesh is always drawn.
+     *
+     * @param size
+     */
+    public void setCullSize(float size) {
+        this.cullSize = size;
+    }
+
+    public float getCullSize() {
+        return cullSize;
+    }
+
+    /**
+     * The size below which the given level is replaced by the next one
+     * (ignoring hysteresis).
+     *
+     * @param level
+     * @return
+     */
+    public float getSwitchSize(int level) {
+        return switchSizes[level];
+    }
+
+    private void updateSwitchSizes() {
+        for (int i = 0; i < switchSizes.length; i++)
+            switchSizes[i] = (float) Math.sqrt(levels[i].getIndices().capacity() / 3 / density);
+    }
+
+    /**
+     * The size of this mesh on the screen when drawn in the given frame: the
+     * radius of its bounding sphere after projection, as a fraction of half
+     * the height of the viewport.
+     *
+     * @param view
+     * @param proj
+     * @param frame
+     * @return The size, or infinity if the camera is inside the bounding
+     *         sphere.
+     */
+    public float getScreenSize(Matrix4 view, Matrix4 proj, CoordFrame3D frame) {
+        float[] m = view.multiply(frame.getMatrix()).getValues();
+        float[] p = proj.getValues();
+        float x = m[0]*centreX + m[4]*centreY + m[8]*centreZ + m[12];
+        float y = m[1]*centreX + m[5]*centreY + m[9]*centreZ + m[13];
+        float z = m[2]*centreX + m[6]*centreY + m[10]*centreZ + m[14];
+
+        // The radius is scaled by the largest scale of the model-view matrix
+        float scale = 0;
+        for (int col = 0; col < 3; col++)
+            scale = Math.max(scale, m[4*col]*m[4*col] + m[4*col + 1]*m[4*col + 1]
+                    + m[4*col + 2]*m[4*col + 2]);
+        float r = radius * (float) Math.sqrt(scale);
+        if (x*x + y*y + z*z <= r*r)
+            return Float.POSITIVE_INFINITY;
+
+        // w is the distance in front of the camera for a perspective
+        // projection, and 1 for an orthographic one
+        float w = p[3]*x + p[7]*y + p[11]*z + p[15];
+        if (w <= 0)
+            return 0;
+        return r * Math.abs(p[5]) / w;
+    }
+
+    /**
+     * The level to draw this mesh with at the given size on the screen.
+     *
+     * @param size See {@link #getScreenSize(Matrix4, Matrix4, CoordFrame3D)}.
+     * @param current The level the mesh was drawn with last time, or -1.
+     * @return The level, or {@link #getLevelCount()} if the mesh is too small
+     *         to draw.
+     */
+    public int selectLevel(float size, int current) {
+        // Culling is one more level, with nothing in it
+        int last = cullSize > 0 ? levels.length : levels.length - 1;
+        if (current < 0 || current > last) {
+            int level = 0;
+            while (level < last && size < switchSize(level))
+                level++;
+            return level;
+        }
+        int level = current;
+        while (level < last && size < switchSize(level) * (1 - hysteresis))
+            level++;
+        while (level > 0 && size > switchSize(level - 1) * (1 + hysteresis))
+            level--;
+        return level;
+    }
+
+    private float switchSize(int level) {
+        return level < switchSizes.length ? switchSizes[level] : cullSize;
+    }
+
+    public void init(GL3 gl) {
+        for (TriangleMesh level : levels)
+            level.init(gl);
+    }
+
+    public void destroy(GL3 gl) {
+        for (TriangleMesh level : levels)
+            level.destroy(gl);
+    }
+
+    /**
+     * Draw this mesh in the given frame, with the level chosen for its size
+     * with the current view and projection matrices. This remembers the level
+     * for next time, so use {@link #draw(GL3, CoordFrame3D, int)} for a mesh
+     * drawn more than once a frame.
+     *
+     * @param gl
+     * @param frame
+     */
+    public void draw(GL3 gl, CoordFrame3D frame) {
+        currentLevel = draw(gl, frame, currentLevel);
+    }
+
+    /**
+     * Draw this mesh in the given frame, with the level chosen for its size
+     * with the current view and projection matrices.
+     *
+     * @param gl
+     * @param frame
+     * @param current The level this copy of the mesh was drawn with last
+     *            time, or -1.
+     * @return The level it was drawn with this time, or
+     *         {@link #getLevelCount()} if it was too small to draw.
+     */
+    public int draw(GL3 gl, CoordFrame3D frame, int current) {
+        float size = getScreenSize(Shader.getViewMatrix(), Shader.getProjMatrix(), frame);
+        int level = selectLevel(size, current);
+        if (level < levels.length)
+            levels[level].draw(gl, frame);
+        return level;
+    }
+
+    /**
+     * The bounding sphere of a mesh: the centre of its bounding box and the
+     * distance to the vertex furthest from it.
+     */
+    private static class BoundingSphere {
+        float centreX, centreY, centreZ, radius;
+
+        BoundingSphere(TriangleMesh mesh) {
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY,
+                    minZ = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY,
+                    maxZ = Float.NEGATIVE_INFINITY;
+            int count = mesh.getVertices().capacity();
+            for (int i = 0; i < count; i++) {
+                Point3D p = mesh.getVertices().get(i);
+                minX = Math.min(minX, p.getX());
+                maxX = Math.max(maxX, p.getX());
+                minY = Math.min(minY, p.getY());
+                maxY = Math.max(maxY, p.getY());
+                minZ = Math.min(minZ, p.getZ());
+                maxZ = Math.max(maxZ, p.getZ());
+            }
+            if (count == 0)
+                return;
+            centreX = (minX + maxX) / 2;
+            centreY = (minY + maxY) / 2;
+            centreZ = (minZ + maxZ) / 2;
+            float r2 = 0;
+            for (int i = 0; i < count; i++) {
+                Point3D p = mesh.getVertices().get(i);
+                float dx = p.getX() - centreX, dy = p.getY() - centreY, dz = p.getZ() - centreZ;
+                r2 = Math.max(r2, dx*dx + dy*dy + dz*dz);
+            }
+            radius = (float) Math.sqrt(r2);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import unsw.graphics.Point3DBuffer;
+
+/**
+ * A binary cache of the meshes loaded from PLY files.
+ *
+ * The first time a {@link TriangleMesh} is loaded from a PLY file, its
+ * vertices, normals and indices are written to a cache file beside it, with
+ * the extension .meshcache added. Later loads map the cache file into memory
+ * and use the mapped vertices, normals and indices directly, so they are only
+ * copied once: by glBufferData() into graphics memory. The buffers of a mesh
+ * loaded from the cache are read-only.
+ *
+ * Since the mapped buffers go straight to OpenGL, which reads them in the
+ * byte order of the machine, a cache file is written in that order. The order
+ * is recorded in the header, and a cache file written in the other order is
+ * treated as out of date.
+ *
+ * A cache file records the length, modification time and CRC-32 of the PLY
+ * file it was made from. If the length or the modification time has changed,
+ * the CRC is checked, so a file that has only been touched (e.g. by checking
+ * it out again) still uses the cache. A cache file whose CRC doesn't match is
+ * replaced. A cache file only holds the mesh loaded with one set of
+ * {@link MeshOptions}, so loading a mesh with different options replaces it
+ * too.
+ *
+ * The cache is enabled by default. Disable it with
+ * {@link #setEnabled(boolean)} or by setting the system property
+ * unsw.graphics.meshCache to false.
+ */
+public class MeshCache {
+
+    /**
+     * Changes whenever the format of a cache file does.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte[] MAGIC = "UNSWMESH".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The size of the header. The sections after it start on a 16 byte
+     * boundary.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    private static final int MODIFIED_OFFSET = 24;
+
+    /**
+     * Set in the flags of the header if the file has normals.
+     */
+    private static final int HAS_NORMALS = 1;
+
+    /**
+     * Set in the flags of the header if the normals are unit vectors.
+     */
+    private static final int NORMALIZED = 2;
+
+    /**
+     * The {@link NormalWeighting} of the normals is stored in the flags of the
+     * header, shifted left by this.
+     */
+    private static final int WEIGHTING_SHIFT = 8;
+
+    /**
+     * The flags that describe the normals.
+     */
+    private static final int NORMAL_FLAGS = HAS_NORMALS | NORMALIZED | (0xff << WEIGHTING_SHIFT);
+
+    /**
+     * Set in the flags of the header if the mesh has been reordered by
+     * {@link MeshOptimizer}.
+     */
+    private static final int OPTIMIZED = 4;
+
+    /**
+     * Set in the flags of the header if the triangles have been clustered to
+     * reduce overdraw. The threshold used follows the index count.
+     */
+    private static final int REDUCED_OVERDRAW = 8;
+
+    /**
+     * Set in the flags of the header if the file is big-endian.
+     */
+    private static final int BIG_ENDIAN = 16;
+
+    /**
+     * The byte order cache files are written and read in.
+     */
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+    private static final String EXTENSION = ".meshcache";
+
+    private static boolean enabled =
+            !"false".equalsIgnoreCase(System.getProperty("unsw.graphics.meshCache"));
+
+    /**
+     * The vertices of a mesh loaded from the cache.
+     */
+    final Point3DBuffer vertices;
+
+    /**
+     * The normals of a mesh loaded from the cache, or null if it has none.
+     */
+    final Point3DBuffer normals;
+
+    /**
+     * The indices of a mesh loaded from the cache.
+     */
+    final IntBuffer indices;
+
+    private MeshCache(Point3DBuffer vertices, Point3DBuffer normals, IntBuffer indices) {
+        this.vertices = vertices;
+        this.normals = normals;
+        this.indices = indices;
+    }
+
+    /**
+     * Enable or disable the cache.
+     * @param enable
+     */
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    /**
+     * Whether meshes are loaded from and saved to the cache.
+     * @return
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The cache file for the given PLY file.
+     *
+     * @param plyFile
+     * @return
+     */
+    public static File getCacheFile(String plyFile) {
+        return new File(plyFile + EXTENSION);
+    }
+
+    /**
+     * Try to load the mesh for the given PLY file from its cache file.
+     *
+     * @param plyFile
+     * @param options The options the cached mesh has to have been loaded
+     *            with. If they don't ask for normals, the cached mesh may
+     *            have any kind.
+     * @return The cached mesh, or null if the cache is disabled or there is
+     *         no up to date cache file.
+     */
+    static MeshCache load(String plyFile, MeshOptions options) {
+        if (!enabled)
+            return null;
+        File source = new File(plyFile);
+        File cache = getCacheFile(plyFile);
+        if (!cache.isFile())
+            return null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(cache, "r");
+                FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            data.order(ORDER);
+            if (data.remaining() < HEADER_SIZE)
+                return null;
+            for (byte b : MAGIC)
+                if (data.get() != b)
+                    return null;
+            if (data.getInt() != FORMAT_VERSION)
+                return null;
+            int flags = data.getInt();
+            long length = data.getLong();
+            long modified = data.getLong();
+            long crc = data.getLong();
+            int vertexCount = data.getInt();
+            int indexCount = data.getInt();
+            float overdrawThreshold = data.getFloat();
+
+            boolean hasNormals = (flags & HAS_NORMALS) != 0;
+            boolean needNormals = options.getNormalWeighting() != null;
+            int wanted = flags(options, needNormals);
+            if ((flags & ~NORMAL_FLAGS) != (wanted & ~NORMAL_FLAGS))
+                return null;
+            if (needNormals && (flags & NORMAL_FLAGS) != (wanted & NORMAL_FLAGS))
+                return null;
+            if (options.isReducingOverdraw()
+                    && overdrawThreshold != options.getOverdrawThreshold())
+                return null;
+            long size = HEADER_SIZE + align(vertexCount * 12L)
+                    + (hasNormals ? align(vertexCount * 12L) : 0) + indexCount * 4L;
+            if (vertexCount < 0 || indexCount < 0 || size != channel.size())
+                return null;
+
+            if (length != source.length() || modified != source.lastModified()) {
+                if (length != source.length() || crc != crc(source))
+                    return null;
+                // Only the time has changed, so remember the new one
+                updateModified(cache, source.lastModified());
+            }
+
+            int offset = HEADER_SIZE;
+            FloatBuffer vertices = section(data, offset, vertexCount * 12).asFloatBuffer();
+            offset += align(vertexCount * 12L);
+            FloatBuffer normals = null;
+            if (hasNormals) {
+                normals = section(data, offset, vertexCount * 12).asFloatBuffer();
+                offset += align(vertexCount * 12L);
+            }
+            IntBuffer indices = section(data, offset, indexCount * 4).asIntBuffer();
+
+            return new MeshCache(new Point3DBuffer(vertices),
+                    needNormals ? new Point3DBuffer(normals) : null, indices);
+        } catch (IOException e) {
+            // An unreadable cache file is treated as a missing one
+            return null;
+        }
+    }
+
+    /**
+     * Save the given mesh as the cache of the given PLY file. Failing to save
+     * is not an error; the mesh just isn't cached.
+     *
+     * @param plyFile
+     * @param vertices
+     * @param normals May be null.
+     * @param indices
+     * @param options The options the mesh was loaded with.
+     */
+    static void store(String plyFile, Point3DBuffer vertices, Point3DBuffer normals,
+            IntBuffer indices, MeshOptions options) {
+        if (!enabled)
+            return;
+        File source = new File(plyFile);
+        File cache = getCacheFile(plyFile);
+        int vertexCount = vertices.capacity();
+        int indexCount = indices.capacity();
+        long size = HEADER_SIZE + align(vertexCount * 12L)
+                + (normals != null ? align(vertexCount * 12L) : 0) + indexCount * 4L;
+        if (size > Integer.MAX_VALUE)
+            return;
+
+        try {
+            ByteBuffer data = ByteBuffer.allocateDirect((int) size).order(ORDER);
+            // Read the time before the CRC so a change while reading makes the
+            // entry look stale rather than current
+            long modified = source.lastModified();
+            data.put(MAGIC);
+            data.putInt(FORMAT_VERSION);
+            data.putInt(flags(options, normals != null));
+            data.putLong(source.length());
+            data.putLong(modified);
+            data.putLong(crc(source));
+            data.putInt(vertexCount);
+            data.putInt(indexCount);
+            data.putFloat(options.isReducingOverdraw() ? options.getOverdrawThreshold() : 0);
+
+            int offset = HEADER_SIZE;
+            section(data, offset, vertexCount * 12).asFloatBuffer()
+                    .put(floats(vertices));
+            offset += align(vertexCount * 12L);
+            if (normals != null) {
+                section(data, offset, vertexCount * 12).asFloatBuffer().put(floats(normals));
+                offset += align(vertexCount * 12L);
+            }
+            IntBuffer src = indices.duplicate();
+            src.clear();
+            section(data, offset, indexCount * 4).asIntBuffer().put(src);
+            data.clear();
+
+            // Write to a temporary file first so that another process never
+            // sees a partial cache file
+            File dir = cache.getAbsoluteFile().getParentFile();
+            File tmp = File.createTempFile(cache.getName(), ".tmp", dir);
+            try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+                    FileChannel channel = raf.getChannel()) {
+                while (data.hasRemaining())
+                    channel.write(data);
+            }
+            Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not save mesh to cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The flags of the header of a file loaded with the given options.
+     */
+    private static int flags(MeshOptions options, boolean hasNormals) {
+        int flags = 0;
+        if (hasNormals) {
+            flags |= HAS_NORMALS | (options.isNormalized() ? NORMALIZED : 0)
+                    | (options.getNormalWeighting().ordinal() << WEIGHTING_SHIFT);
+        }
+        if (options.isOptimized())
+            flags |= OPTIMIZED;
+        if (options.isReducingOverdraw())
+            flags |= REDUCED_OVERDRAW;
+        if (ORDER == ByteOrder.BIG_ENDIAN)
+            flags |= BIG_ENDIAN;
+        return flags;
+    }
+
+    /**
+     * Change the modification time recorded in the given cache file. Failing
+     * to change it only means the CRC is checked again next time.
+     */
+    private static void updateModified(File cache, long modified) {
+        try (RandomAccessFile raf = new RandomAccessFile(cache, "rw");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer time = ByteBuffer.allocate(8).order(ORDER);
+            time.putLong(modified).flip();
+            channel.write(time, MODIFIED_OFFSET);
+        } catch (IOException e) {
+            // Ignored
+        }
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 15) & ~15L;
+    }
+
+    /**
+     * A view of the given bytes of data, in the order of the cache files.
+     */
+    private static ByteBuffer section(ByteBuffer data, int offset, int bytes) {
+        ByteBuffer view = data.duplicate();
+        view.limit(offset + bytes).position(offset);
+        return view.slice().order(ORDER);
+    }
+
+    private static FloatBuffer floats(Point3DBuffer points) {
+        FloatBuffer floats = ((FloatBuffer) points.getBuffer()).duplicate();
+        floats.clear();
+        return floats;
+    }
+
+    /**
+     * The CRC-32 of the contents of the given file.
+     */
+    private static long crc(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            CRC32 crc = new CRC32();
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            return crc.getValue();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jogamp.opengl.GL3;
+
+/**
+ * Loads meshes in the background, so that an application can show its first
+ * frame without waiting for them.
+ *
+ * {@link #load(String, MeshOptions)} returns straight away with an
+ * {@link AsyncMesh}. The PLY file is read and the normals computed on a pool
+ * of worker threads. Once a mesh has loaded it still has to be copied to
+ * graphics memory, which can only be done on the OpenGL thread, so the
+ * application has to call {@link #upload(GL3)} at the start of every frame.
+ * Each call copies no more than the upload budget, so loading many or large
+ * meshes spreads the copying over several frames rather than making one frame
+ * take much longer than the others. Meshes are uploaded in the order they
+ * finish loading.
+ *
+ * <pre>
+ * MeshLoader loader = new MeshLoader();
+ * AsyncMesh bunny = loader.load("res/models/bunny.ply", options);
+ * ...
+ * // In display()
+ * loader.upload(gl);
+ * bunny.draw(gl, frame);
+ * </pre>
+ *
+ * The worker threads are daemon threads, so they don't keep the application
+ * running, but {@link #destroy(GL3)} (or {@link #shutdown()} off the OpenGL
+ * thread) should still be called when the loader is no longer needed.
+ */
+public class MeshLoader {
+
+    /**
+     * The default for how many bytes {@link #upload(GL3)} copies each frame.
+     */
+    public static final long DEFAULT_UPLOAD_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The default for how long {@link #upload(GL3)} may take each frame, in
+     * milliseconds.
+     */
+    public static final float DEFAULT_UPLOAD_MILLIS = 2;
+
+    /**
+     * The most that is copied at once, so the time budget can be checked
+     * between copies.
+     */
+    private static final long PIECE_BYTES = 256 * 1024;
+
+    private static final AtomicInteger loaderCount = new AtomicInteger();
+
+    private final ExecutorService workers;
+
+    /**
+     * Meshes that have loaded and are waiting to be uploaded.
+     */
+    private final Queue<AsyncMesh> loaded = new ConcurrentLinkedQueue<AsyncMesh>();
+
+    /**
+     * The mesh being uploaded, and the copies left to do for it.
+     */
+    private AsyncMesh uploading;
+    private final List<BufferUpload> uploads = new ArrayList<BufferUpload>();
+
+    /**
+     * The number of meshes that haven't finished loading.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private long uploadBytes = DEFAULT_UPLOAD_BYTES;
+
+    private float uploadMillis = DEFAULT_UPLOAD_MILLIS;
+
+    /**
+     * Construct a loader with one worker thread for each processor but one,
+     * which is left for the OpenGL thread.
+     */
+    public MeshLoader() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Construct a loader with the given number of worker threads.
+     *
+     * @param threads
+     */
+    public MeshLoader(int threads) {
+        final int id = loaderCount.incrementAndGet();
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "MeshLoader-" + id + "-" + ++count);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Set how much {@link #upload(GL3)} may do each frame. It stops once it
+     * has copied the given number of bytes or taken the given time, whichever
+     * comes first, but always copies something if there is anything to copy,
+     * even if the budget is 0.
+     *
+     * @param bytes
+     * @param millis
+     */
+    public void setUploadBudget(long bytes, float millis) {
+        this.uploadBytes = bytes;
+        this.uploadMillis = millis;
+    }
+
+    public long getUploadBytes() {
+        return uploadBytes;
+    }
+
+    public float getUploadMillis() {
+        return uploadMillis;
+    }
+
+    /**
+     * Start loading the mesh in the given PLY file.
+     *
+     * @param plyFile
+     * @param options
+     * @return The mesh, which isn't ready to draw yet.
+     */
+    public AsyncMesh load(final String plyFile, final MeshOptions options) {
+        final AsyncMesh mesh = new AsyncMesh(plyFile);
+        FutureTask<TriangleMesh> task = new FutureTask<TriangleMesh>(new Callable<TriangleMesh>() {
+            @Override
+            public TriangleMesh call() throws IOException {
+                TriangleMesh result = new TriangleMesh(plyFile, options);
+                result.prepare();
+                return result;
+            }
+        }) {
+            @Override
+            protected void done() {
+                // Failed meshes are queued too, and skipped by upload()
+                if (!isCancelled())
+                    loaded.add(mesh);
+                pending.decrementAndGet();
+            }
+        };
+        mesh.setLoading(task);
+        pending.incrementAndGet();
+        workers.execute(task);
+        return mesh;
+    }
+
+    /**
+     * Upload as much of the loaded meshes as the budget allows. Must be called
+     * on the OpenGL thread, usually at the start of display().
+     *
+     * @param gl
+     * @return The number of bytes copied.
+     */
+    public long upload(GL3 gl) {
+        long start = System.nanoTime();
+        long deadline = start + (long) (uploadMillis * 1e6);
+        long copied = 0;
+        // Something is copied even if the budget is 0
+        while (copied == 0 || copied < uploadBytes) {
+            if (uploading == null && !startNext(gl))
+                break;
+            if (uploading.isDestroyed()) {
+                uploading.loadedMesh().destroy(gl);
+                uploading = null;
+                uploads.clear();
+                continue;
+            }
+
+            BufferUpload upload = uploads.get(0);
+            copied += upload.upload(gl, Math.min(PIECE_BYTES, uploadBytes - copied));
+            if (upload.remaining() == 0)
+                uploads.remove(0);
+            if (uploads.isEmpty()) {
+                uploading.setReady();
+                uploading = null;
+            }
+            if (System.nanoTime() >= deadline)
+                break;
+        }
+        return copied;
+    }
+
+    /**
+     * Start uploading the next loaded mesh.
+     *
+     * @return Whether there was one.
+     */
+    private boolean startNext(GL3 gl) {
+        while (true) {
+            AsyncMesh next = loaded.poll();
+            if (next == null)
+                return false;
+            if (next.isDestroyed())
+                continue;
+            if (next.isFailed()) {
+                try {
+                    next.get();
+                } catch (IOException e) {
+                    System.err.println("Could not load " + next.getFile() + ": " + e.getMessage());
+                }
+                continue;
+            }
+            next.loadedMesh().init(gl, uploads);
+            uploading = next;
+            if (uploads.isEmpty()) {
+                next.setReady();
+                uploading = null;
+                continue;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Whether any meshes are still loading or waiting to be uploaded.
+     *
+     * @return
+     */
+    public boolean isBusy() {
+        return uploading != null || !loaded.isEmpty() || pending.get() > 0;
+    }
+
+    /**
+     * Stop the worker threads. Meshes that haven't started loading never
+     * will.
+     *
+     * This can't release the graphics memory of a mesh that is part way
+     * through being uploaded, so on the OpenGL thread use
+     * {@link #destroy(GL3)} instead.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Stop the worker threads and release the graphics memory of the mesh
+     * being uploaded, if any. Meshes waiting to be uploaded have no graphics
+     * memory yet, so they are just dropped. Meshes that are ready belong to
+     * the application and have to be destroyed with
+     * {@link AsyncMesh#destroy(GL3)}.
+     *
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        shutdown();
+        if (uploading != null) {
+            uploading.loadedMesh().destroy(gl);
+            uploading = null;
+            uploads.clear();
+        }
+        loaded.clear();
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import unsw.graphics.Point3DBuffer;
+
+/**
+ * Computes the vertex normals of a triangle mesh.
+ *
+ * The vertices and indices are copied into arrays and the normals are
+ * computed in two passes, without creating any objects per triangle or per
+ * vertex:
+ *
+ * 1. The normal of every triangle is computed, and for angle weighting the
+ * angle at each of its corners.
+ * 2. The normal of every vertex is the sum of the weighted normals of the
+ * triangles around it.
+ *
+ * Small meshes are done on the calling thread, and the second pass adds the
+ * normal of each triangle to its three vertices. For large meshes both passes
+ * run in parallel on the common fork/join pool. To avoid two threads adding to
+ * the same vertex, the second pass then goes through the vertices instead,
+ * using a table of the triangles around each vertex. Either way the triangles
+ * are summed in the order they appear in the mesh, so the result doesn't
+ * depend on how the work is done.
+ */
+public class MeshNormals {
+
+    /**
+     * Meshes with fewer triangles than this are done on the calling thread.
+     * Forking is not worth it below this size.
+     */
+    static final int PARALLEL_THRESHOLD = 32 * 1024;
+
+    /**
+     * The size of the ranges that the parallel tasks split the triangles or
+     * vertices into.
+     */
+    private static final int SPLIT_SIZE = 8 * 1024;
+
+    private MeshNormals() {
+    }
+
+    /**
+     * Compute the normal of every vertex of a mesh.
+     *
+     * Triangles with no area contribute nothing. A vertex that isn't part of
+     * any triangle (or only of triangles with no area) gets the zero vector.
+     *
+     * @param vertices
+     * @param indices Each set of 3 indices forms a triangle.
+     * @param normals Where to put the normals. Must be the same size as
+     *            vertices.
+     * @param weighting How much each triangle around a vertex contributes.
+     * @param normalize Whether to make every normal a unit vector. If false,
+     *            each normal is the sum of the contributions of its
+     *            triangles: unit vectors scaled by 1, twice the area or the
+     *            angle (in radians).
+     */
+    public static void compute(Point3DBuffer vertices, IntBuffer indices, Point3DBuffer normals,
+            NormalWeighting weighting, boolean normalize) {
+        int vertexCount = vertices.capacity();
+        if (normals.capacity() != vertexCount)
+            throw new IllegalArgumentException("There are " + vertexCount + " vertices but room for "
+                    + normals.capacity() + " normals");
+
+        float[] positions = new float[vertexCount * 3];
+        FloatBuffer in = ((FloatBuffer) vertices.getBuffer()).duplicate();
+        in.clear();
+        in.get(positions);
+        int[] triangles = new int[indices.capacity() - indices.capacity() % 3];
+        IntBuffer src = indices.duplicate();
+        src.clear();
+        src.get(triangles);
+        for (int index : triangles)
+            if (index < 0 || index >= vertexCount)
+                throw new IndexOutOfBoundsException("Vertex index " + index
+                        + " is out of range for " + vertexCount + " vertices");
+
+        Job job = new Job(positions, triangles, weighting, normalize);
+        int triangleCount = triangles.length / 3;
+        if (triangleCount < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            job.faces(0, triangleCount);
+            job.scatter();
+        } else {
+            ForkJoinPool.commonPool().invoke(new Task(job, Task.FACES, 0, triangleCount));
+            job.buildTable(vertexCount);
+            ForkJoinPool.commonPool().invoke(new Task(job, Task.VERTICES, 0, vertexCount));
+        }
+
+        FloatBuffer out = ((FloatBuffer) normals.getBuffer()).duplicate();
+        out.clear();
+        out.put(job.normals);
+    }
+
+    /**
+     * The arrays used to compute the normals of one mesh.
+     */
+    private static class Job {
+        final float[] positions;
+        final int[] triangles;
+        final NormalWeighting weighting;
+        final boolean normalize;
+
+        // The normal of each triangle: a unit vector, or for AREA weighting
+        // the cross product of two of its sides
+        final float[] faceNormals;
+
+        // For ANGLE weighting, the angle of each triangle at each corner.
+        // Corner k of triangle t is 3*t + k.
+        final float[] angles;
+
+        // The corners of the triangles around vertex v are
+        // corners[firstCorner[v]] up to corners[firstCorner[v + 1]].
+        int[] firstCorner;
+        int[] corners;
+
+        final float[] normals;
+
+        Job(float[] positions, int[] triangles, NormalWeighting weighting, boolean normalize) {
+            this.positions = positions;
+            this.triangles = triangles;
+            this.weighting = weighting;
+            this.normalize = normalize;
+            faceNormals = new float[triangles.length];
+            angles = weighting == NormalWeighting.ANGLE ? new float[triangles.length] : null;
+            normals = new float[positions.length];
+        }
+
+        /**
+         * Compute the normals of triangles from up to to.
+         */
+        void faces(int from, int to) {
+            float[] p = positions;
+            for (int t = from; t < to; t++) {
+                int i1 = 3 * triangles[3*t];
+                int i2 = 3 * triangles[3*t + 1];
+                int i3 = 3 * triangles[3*t + 2];
+
+                float ax = p[i2] - p[i1], ay = p[i2 + 1] - p[i1 + 1], az = p[i2 + 2] - p[i1 + 2];
+                float bx = p[i3] - p[i1], by = p[i3 + 1] - p[i1 + 1], bz = p[i3 + 2] - p[i1 + 2];
+                float nx = ay*bz - az*by;
+                float ny = az*bx - ax*bz;
+                float nz = ax*by - ay*bx;
+                float length = (float) Math.sqrt(nx*nx + ny*ny + nz*nz);
+
+                if (angles != null) {
+                    // The cross product of any two sides has the same length,
+                    // so only the dot products differ between the corners.
+                    // atan2 is more accurate than acos for angles near 0 and
+                    // 180 degrees.
+                    float cx = p[i3] - p[i2], cy = p[i3 + 1] - p[i2 + 1], cz = p[i3 + 2] - p[i2 + 2];
+                    angles[3*t] = (float) Math.atan2(length, ax*bx + ay*by + az*bz);
+                    angles[3*t + 1] = (float) Math.atan2(length, -(ax*cx + ay*cy + az*cz));
+                    angles[3*t + 2] = (float) Math.atan2(length, bx*cx + by*cy + bz*cz);
+                }
+
+                if (weighting != NormalWeighting.AREA) {
+                    if (length == 0) {
+                        nx = ny = nz = 0;
+                    } else {
+                        float s = 1 / length;
+                        nx *= s;
+                        ny *= s;
+                        nz *= s;
+                    }
+                }
+                faceNormals[3*t] = nx;
+                faceNormals[3*t + 1] = ny;
+                faceNormals[3*t + 2] = nz;
+            }
+        }
+
+        /**
+         * Add the normal of every triangle to its vertices, in order.
+         */
+        void scatter() {
+            for (int c = 0; c < triangles.length; c++) {
+                int v = 3 * triangles[c];
+                int t = c - c % 3;
+                if (angles == null) {
+                    normals[v] += faceNormals[t];
+                    normals[v + 1] += faceNormals[t + 1];
+                    normals[v + 2] += faceNormals[t + 2];
+                } else {
+                    float w = angles[c];
+                    normals[v] += faceNormals[t] * w;
+                    normals[v + 1] += faceNormals[t + 1] * w;
+                    normals[v + 2] += faceNormals[t + 2] * w;
+                }
+            }
+            if (normalize)
+                for (int v = 0; v < normals.length; v += 3)
+                    normalize(v);
+        }
+
+        /**
+         * Find the corners of the triangles around each vertex.
+         */
+        void buildTable(int vertexCount) {
+            firstCorner = new int[vertexCount + 1];
+            for (int index : triangles)
+                firstCorner[index + 1]++;
+            for (int v = 0; v < vertexCount; v++)
+                firstCorner[v + 1] += firstCorner[v];
+
+            corners = new int[triangles.length];
+            int[] next = new int[vertexCount];
+            System.arraycopy(firstCorner, 0, next, 0, vertexCount);
+            for (int c = 0; c < triangles.length; c++)
+                corners[next[triangles[c]]++] = c;
+        }
+
+        /**
+         * Sum the normals of the triangles around vertices from up to to.
+         */
+        void gather(int from, int to) {
+            for (int v = from; v < to; v++) {
+                float x = 0, y = 0, z = 0;
+                for (int i = firstCorner[v]; i < firstCorner[v + 1]; i++) {
+                    int c = corners[i];
+                    int t = c - c % 3;
+                    if (angles == null) {
+                        x += faceNormals[t];
+                        y += faceNormals[t + 1];
+                        z += faceNormals[t + 2];
+                    } else {
+                        float w = angles[c];
+                        x += faceNormals[t] * w;
+                        y += faceNormals[t + 1] * w;
+                        z += faceNormals[t + 2] * w;
+                    }
+                }
+                normals[3*v] = x;
+                normals[3*v + 1] = y;
+                normals[3*v + 2] = z;
+                if (normalize)
+                    normalize(3*v);
+            }
+        }
+
+        private void normalize(int i) {
+            float x = normals[i], y = normals[i + 1], z = normals[i + 2];
+            float length = (float) Math.sqrt(x*x + y*y + z*z);
+            if (length != 0) {
+                float s = 1 / length;
+                normals[i] = x * s;
+                normals[i + 1] = y * s;
+                normals[i + 2] = z * s;
+            }
+        }
+    }
+
+    /**
+     * Runs a pass over a range of triangles or vertices, splitting it in half
+     * until it is small enough.
+     */
+    private static class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        static final int FACES = 0;
+        static final int VERTICES = 1;
+
+        private final Job job;
+        private final int pass, from, to;
+
+        Task(Job job, int pass, int from, int to) {
+            this.job = job;
+            this.pass = pass;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_SIZE) {
+                if (pass == FACES)
+                    job.faces(from, to);
+                else
+                    job.gather(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Task(job, pass, from, middle), new Task(job, pass, middle, to));
+        }
+    }
+}
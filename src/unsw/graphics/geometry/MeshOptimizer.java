@@ -0,0 +1,462 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import unsw.graphics.Point3DBuffer;
+
+/**
+ * Reorders the triangles and vertices of a mesh so that it draws faster.
+ *
+ * The GPU keeps the last few vertices it has shaded in a small cache, so a
+ * vertex shared by triangles drawn close together is only shaded once.
+ * {@link #optimizeVertexCache(IntBuffer, int)} reorders the triangles so that
+ * as many vertices as possible are found in the cache, using the Tipsify
+ * algorithm from "Fast Triangle Reordering for Vertex Locality and Reduced
+ * Overdraw" (Sander, Nehab and Barczak, 2007).
+ *
+ * {@link #optimizeOverdraw(IntBuffer, Point3DBuffer, float)} then splits the
+ * triangles into clusters and draws the clusters facing outwards first, so
+ * that more of the hidden parts of the mesh fail the depth test before their
+ * fragments are shaded. Finally
+ * {@link #optimizeVertexFetch(IntBuffer, Point3DBuffer, Point3DBuffer)}
+ * renumbers the vertices in the order they are first used, so the vertex
+ * data is read from memory in order.
+ *
+ * The cache is modelled as a FIFO of {@link #CACHE_SIZE} vertices, and
+ * {@link #acmr(IntBuffer, int)} measures how well a mesh uses it.
+ */
+public class MeshOptimizer {
+
+    /**
+     * The number of vertices in the modelled vertex cache.
+     */
+    public static final int CACHE_SIZE = 16;
+
+    /**
+     * The default for how much worse than the best order the vertex cache
+     * may be used to draw clusters in a better order for overdraw.
+     */
+    public static final float DEFAULT_OVERDRAW_THRESHOLD = 1.05f;
+
+    private MeshOptimizer() {
+    }
+
+    /**
+     * The average cache miss ratio of the given triangles: the number of
+     * vertices that aren't in a FIFO cache of the given size when they are
+     * needed, divided by the number of triangles. It is between 0.5 (for a
+     * large regular grid) and 3 (when no vertices are shared).
+     *
+     * @param indices Each set of 3 indices forms a triangle.
+     * @param cacheSize
+     * @return
+     */
+    public static float acmr(IntBuffer indices, int cacheSize) {
+        int[] triangles = toArray(indices);
+        if (triangles.length == 0)
+            return 0;
+        int vertexCount = 0;
+        for (int index : triangles)
+            vertexCount = Math.max(vertexCount, index + 1);
+        Cache cache = new Cache(vertexCount, cacheSize);
+        int misses = 0;
+        for (int t = 0; t < triangles.length; t += 3)
+            misses += cache.add(triangles[t], triangles[t + 1], triangles[t + 2]);
+        return misses / (float) (triangles.length / 3);
+    }
+
+    /**
+     * Reorder the given triangles for the vertex cache. The vertices of each
+     * triangle stay in the same order, so the triangles still face the same
+     * way.
+     *
+     * @param indices Each set of 3 indices forms a triangle. Changed in place.
+     * @param vertexCount
+     */
+    public static void optimizeVertexCache(IntBuffer indices, int vertexCount) {
+        int[] triangles = toArray(indices);
+        int[] order = tipsify(triangles, vertexCount, CACHE_SIZE);
+        put(indices, reorder(triangles, order));
+    }
+
+    /**
+     * Reorder the given triangles, which should already be in order for the
+     * vertex cache, to reduce overdraw.
+     *
+     * The triangles are split where the vertex cache would have to start
+     * again anyway, and also where the cache miss ratio of the triangles so
+     * far has reached threshold times that of the whole run. The clusters are
+     * then sorted so that the ones that face away from the middle of the mesh
+     * are drawn first.
+     *
+     * @param indices Each set of 3 indices forms a triangle. Changed in place.
+     * @param vertices
+     * @param threshold How much worse the vertex cache may be used, e.g.
+     *            {@link #DEFAULT_OVERDRAW_THRESHOLD}. 1 gives the fewest
+     *            clusters.
+     */
+    public static void optimizeOverdraw(IntBuffer indices, Point3DBuffer vertices,
+            float threshold) {
+        int[] triangles = toArray(indices);
+        int triangleCount = triangles.length / 3;
+        if (triangleCount == 0)
+            return;
+        float[] p = toArray(vertices);
+        int vertexCount = vertices.capacity();
+
+        int[] hard = hardBoundaries(triangles, vertexCount);
+        int[] clusters = softBoundaries(triangles, vertexCount, hard, threshold);
+        int clusterCount = clusters.length - 1;
+
+        // The middle of the mesh
+        double mx = 0, my = 0, mz = 0;
+        for (int i = 0; i < p.length; i += 3) {
+            mx += p[i];
+            my += p[i + 1];
+            mz += p[i + 2];
+        }
+        mx /= vertexCount;
+        my /= vertexCount;
+        mz /= vertexCount;
+
+        // How much each cluster faces away from the middle
+        final double[] keys = new double[clusterCount];
+        for (int c = 0; c < clusterCount; c++) {
+            double cx = 0, cy = 0, cz = 0, area = 0;
+            double nx = 0, ny = 0, nz = 0;
+            for (int t = clusters[c]; t < clusters[c + 1]; t++) {
+                int i0 = 3 * triangles[3*t], i1 = 3 * triangles[3*t + 1],
+                        i2 = 3 * triangles[3*t + 2];
+                double ax = p[i1] - p[i0], ay = p[i1 + 1] - p[i0 + 1], az = p[i1 + 2] - p[i0 + 2];
+                double bx = p[i2] - p[i0], by = p[i2 + 1] - p[i0 + 1], bz = p[i2 + 2] - p[i0 + 2];
+                double x = ay*bz - az*by, y = az*bx - ax*bz, z = ax*by - ay*bx;
+                double a = Math.sqrt(x*x + y*y + z*z);
+                cx += (p[i0] + p[i1] + p[i2]) / 3 * a;
+                cy += (p[i0 + 1] + p[i1 + 1] + p[i2 + 1]) / 3 * a;
+                cz += (p[i0 + 2] + p[i1 + 2] + p[i2 + 2]) / 3 * a;
+                area += a;
+                nx += x;
+                ny += y;
+                nz += z;
+            }
+            double length = Math.sqrt(nx*nx + ny*ny + nz*nz);
+            if (area == 0 || length == 0)
+                continue;
+            keys[c] = ((cx / area - mx) * nx + (cy / area - my) * ny + (cz / area - mz) * nz)
+                    / length;
+        }
+
+        // Sort the clusters by their keys, largest first
+        Integer[] sorted = new Integer[clusterCount];
+        for (int c = 0; c < clusterCount; c++)
+            sorted[c] = c;
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(keys[b], keys[a]);
+            }
+        });
+
+        int[] order = new int[triangleCount];
+        int n = 0;
+        for (int c : sorted)
+            for (int t = clusters[c]; t < clusters[c + 1]; t++)
+                order[n++] = t;
+        put(indices, reorder(triangles, order));
+    }
+
+    /**
+     * Renumber the vertices of a mesh in the order that the triangles first
+     * use them. Vertices that no triangle uses are moved to the end.
+     *
+     * @param indices Changed in place.
+     * @param vertices Changed in place.
+     * @param normals Changed in place. May be null.
+     */
+    public static void optimizeVertexFetch(IntBuffer indices, Point3DBuffer vertices,
+            Point3DBuffer normals) {
+        int[] triangles = toArray(indices);
+        int vertexCount = vertices.capacity();
+
+        // The new number of each vertex
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for (int i = 0; i < triangles.length; i++) {
+            int v = triangles[i];
+            if (remap[v] < 0)
+                remap[v] = next++;
+            triangles[i] = remap[v];
+        }
+        for (int v = 0; v < vertexCount; v++)
+            if (remap[v] < 0)
+                remap[v] = next++;
+
+        put(indices, triangles);
+        permute(vertices, remap);
+        if (normals != null)
+            permute(normals, remap);
+    }
+
+    /*
+     * Tipsify
+     */
+
+    /**
+     * The order to draw the given triangles in for a vertex cache of the
+     * given size.
+     */
+    private static int[] tipsify(int[] triangles, int vertexCount, int cacheSize) {
+        int triangleCount = triangles.length / 3;
+        if (triangleCount == 0)
+            return new int[0];
+
+        // The triangles around each vertex are
+        // adjacent[firstAdjacent[v]] up to adjacent[firstAdjacent[v + 1]]
+        int[] firstAdjacent = new int[vertexCount + 1];
+        for (int index : triangles) {
+            if (index < 0 || index >= vertexCount)
+                throw new IndexOutOfBoundsException("Vertex index " + index
+                        + " is out of range for " + vertexCount + " vertices");
+            firstAdjacent[index + 1]++;
+        }
+        // The number of triangles around each vertex not drawn yet
+        int[] live = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            live[v] = firstAdjacent[v + 1];
+            firstAdjacent[v + 1] += firstAdjacent[v];
+        }
+        int[] adjacent = new int[triangles.length];
+        int[] fill = Arrays.copyOf(firstAdjacent, vertexCount);
+        for (int i = 0; i < triangles.length; i++)
+            adjacent[fill[triangles[i]]++] = i / 3;
+
+        // When each vertex last went into the cache
+        int[] cacheTime = new int[vertexCount];
+        int time = cacheSize + 1;
+        boolean[] emitted = new boolean[triangleCount];
+        // Vertices of emitted triangles, for when there is nothing nearby
+        int[] deadEnds = new int[triangles.length];
+        int deadEndCount = 0;
+        int[] candidates = new int[16];
+        int cursor = 0;
+
+        int[] order = new int[triangleCount];
+        int emittedCount = 0;
+        int fan = 0;
+        while (fan >= 0) {
+            // Draw all the triangles around the fanning vertex
+            int candidateCount = 0;
+            for (int i = firstAdjacent[fan]; i < firstAdjacent[fan + 1]; i++) {
+                int t = adjacent[i];
+                if (emitted[t])
+                    continue;
+                emitted[t] = true;
+                order[emittedCount++] = t;
+                if (candidateCount + 3 > candidates.length)
+                    candidates = Arrays.copyOf(candidates, candidates.length * 2);
+                for (int k = 0; k < 3; k++) {
+                    int v = triangles[3*t + k];
+                    deadEnds[deadEndCount++] = v;
+                    candidates[candidateCount++] = v;
+                    live[v]--;
+                    if (time - cacheTime[v] > cacheSize)
+                        cacheTime[v] = time++;
+                }
+            }
+
+            // Choose the next fanning vertex: the candidate that will still be
+            // in the cache when its remaining triangles are drawn and has
+            // been in it longest
+            fan = -1;
+            int best = -1;
+            for (int i = 0; i < candidateCount; i++) {
+                int v = candidates[i];
+                if (live[v] <= 0)
+                    continue;
+                int priority = 0;
+                if (time - cacheTime[v] + 2 * live[v] <= cacheSize)
+                    priority = time - cacheTime[v];
+                if (priority > best) {
+                    best = priority;
+                    fan = v;
+                }
+            }
+
+            if (fan < 0) {
+                // A dead end, so go back to a recent vertex with triangles
+                // left, or failing that the next vertex in the mesh
+                while (deadEndCount > 0 && fan < 0) {
+                    int v = deadEnds[--deadEndCount];
+                    if (live[v] > 0)
+                        fan = v;
+                }
+                while (fan < 0 && cursor < vertexCount) {
+                    if (live[cursor] > 0)
+                        fan = cursor;
+                    cursor++;
+                }
+            }
+        }
+        return order;
+    }
+
+    /*
+     * Overdraw clusters
+     */
+
+    /**
+     * A FIFO vertex cache, modelled with the time each vertex went in.
+     */
+    private static class Cache {
+        private final int[] times;
+        private final int size;
+        private int time;
+
+        Cache(int vertexCount, int size) {
+            times = new int[vertexCount];
+            this.size = size;
+            time = size + 1;
+        }
+
+        /**
+         * Add the vertices of a triangle, returning how many weren't in the
+         * cache.
+         */
+        int add(int a, int b, int c) {
+            return add(a) + add(b) + add(c);
+        }
+
+        private int add(int v) {
+            if (time - times[v] > size) {
+                times[v] = time++;
+                return 1;
+            }
+            return 0;
+        }
+
+        /**
+         * Empty the cache.
+         */
+        void flush() {
+            time += size + 1;
+        }
+    }
+
+    /**
+     * The triangles that start clusters where the vertex cache starts again:
+     * where none of the vertices of a triangle are in the cache. The last
+     * element is the number of triangles.
+     */
+    private static int[] hardBoundaries(int[] triangles, int vertexCount) {
+        int triangleCount = triangles.length / 3;
+        Cache cache = new Cache(vertexCount, CACHE_SIZE);
+        int[] boundaries = new int[triangleCount + 1];
+        int n = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            int misses = cache.add(triangles[3*t], triangles[3*t + 1], triangles[3*t + 2]);
+            if (t == 0 || misses == 3)
+                boundaries[n++] = t;
+        }
+        boundaries[n++] = triangleCount;
+        return Arrays.copyOf(boundaries, n);
+    }
+
+    /**
+     * Split the given clusters further, wherever the cache miss ratio of a
+     * cluster so far has reached threshold times that of the whole cluster.
+     */
+    private static int[] softBoundaries(int[] triangles, int vertexCount, int[] hard,
+            float threshold) {
+        Cache cache = new Cache(vertexCount, CACHE_SIZE);
+        int[] boundaries = new int[triangles.length / 3 + 1];
+        int n = 0;
+        for (int c = 0; c + 1 < hard.length; c++) {
+            int start = hard[c], end = hard[c + 1];
+
+            cache.flush();
+            int clusterMisses = 0;
+            for (int t = start; t < end; t++)
+                clusterMisses += cache.add(triangles[3*t], triangles[3*t + 1],
+                        triangles[3*t + 2]);
+            float clusterThreshold = threshold * clusterMisses / (end - start);
+
+            boundaries[n++] = start;
+            cache.flush();
+            int misses = 0, count = 0;
+            for (int t = start; t < end - 1; t++) {
+                misses += cache.add(triangles[3*t], triangles[3*t + 1], triangles[3*t + 2]);
+                count++;
+                if (misses <= clusterThreshold * count) {
+                    boundaries[n++] = t + 1;
+                    cache.flush();
+                    misses = count = 0;
+                }
+            }
+        }
+        boundaries[n++] = triangles.length / 3;
+        return Arrays.copyOf(boundaries, n);
+    }
+
+    /*
+     * Buffers
+     */
+
+    private static int[] toArray(IntBuffer indices) {
+        IntBuffer src = indices.duplicate();
+        src.clear();
+        int[] triangles = new int[src.remaining() - src.remaining() % 3];
+        src.get(triangles);
+        return triangles;
+    }
+
+    private static float[] toArray(Point3DBuffer points) {
+        FloatBuffer src = ((FloatBuffer) points.getBuffer()).duplicate();
+        src.clear();
+        float[] floats = new float[points.capacity() * 3];
+        src.get(floats);
+        return floats;
+    }
+
+    private static void put(IntBuffer indices, int[] triangles) {
+        IntBuffer dst = indices.duplicate();
+        dst.clear();
+        dst.put(triangles);
+    }
+
+    /**
+     * The triangles in the given order.
+     */
+    private static int[] reorder(int[] triangles, int[] order) {
+        int[] result = new int[order.length * 3];
+        for (int i = 0; i < order.length; i++) {
+            int t = order[i];
+            result[3*i] = triangles[3*t];
+            result[3*i + 1] = triangles[3*t + 1];
+            result[3*i + 2] = triangles[3*t + 2];
+        }
+        return result;
+    }
+
+    /**
+     * Move point v of the buffer to remap[v].
+     */
+    private static void permute(Point3DBuffer points, int[] remap) {
+        float[] src = toArray(points);
+        float[] dst = new float[src.length];
+        for (int v = 0; v < remap.length; v++) {
+            dst[3 * remap[v]] = src[3*v];
+            dst[3 * remap[v] + 1] = src[3*v + 1];
+            dst[3 * remap[v] + 2] = src[3*v + 2];
+        }
+        FloatBuffer buffer = ((FloatBuffer) points.getBuffer()).duplicate();
+        buffer.clear();
+        buffer.put(dst);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+/**
+ * Options for loading a {@link TriangleMesh} from a PLY file.
+ *
+ * The setters return the options, so they can be chained:
+ *
+ * <pre>
+ * new TriangleMesh("res/models/bunny.ply",
+ *         new MeshOptions().normals(NormalWeighting.ANGLE, true).optimize(true));
+ * </pre>
+ *
+ * By default no normals are generated and the mesh is not optimized.
+ */
+public class MeshOptions {
+
+    private NormalWeighting weighting;
+
+    private boolean normalize;
+
+    private boolean optimize;
+
+    private boolean reduceOverdraw;
+
+    private float overdrawThreshold = MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD;
+
+    private boolean compact;
+
+    /**
+     * Generate vertex normals with the given weighting.
+     *
+     * @param weighting How to weight the triangles around each vertex, or
+     *            null to not generate normals.
+     * @param normalize Whether to make the normals unit vectors.
+     * @return
+     */
+    public MeshOptions normals(NormalWeighting weighting, boolean normalize) {
+        this.weighting = weighting;
+        this.normalize = normalize;
+        return this;
+    }
+
+    /**
+     * Reorder the triangles of the mesh for the vertex cache and its vertices
+     * for fetching, using {@link MeshOptimizer}. If reduceOverdraw is true,
+     * the triangles are also clustered to reduce overdraw.
+     *
+     * @param reduceOverdraw
+     * @return
+     */
+    public MeshOptions optimize(boolean reduceOverdraw) {
+        this.optimize = true;
+        this.reduceOverdraw = reduceOverdraw;
+        return this;
+    }
+
+    /**
+     * Set how much worse the vertex cache may be used to reduce overdraw. See
+     * {@link MeshOptimizer#optimizeOverdraw(java.nio.IntBuffer,
+     * unsw.graphics.Point3DBuffer, float)}.
+     *
+     * @param threshold
+     * @return
+     */
+    public MeshOptions overdrawThreshold(float threshold) {
+        this.overdrawThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Upload the mesh in compact formats. See
+     * {@link TriangleMesh#setCompact(boolean)}. This doesn't change what is
+     * cached.
+     *
+     * @param compact
+     * @return
+     */
+    public MeshOptions compact(boolean compact) {
+        this.compact = compact;
+        return this;
+    }
+
+    public NormalWeighting getNormalWeighting() {
+        return weighting;
+    }
+
+    public boolean isNormalized() {
+        return normalize;
+    }
+
+    public boolean isOptimized() {
+        return optimize;
+    }
+
+    public boolean isReducingOverdraw() {
+        return reduceOverdraw;
+    }
+
+    public float getOverdrawThreshold() {
+        return overdrawThreshold;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+}
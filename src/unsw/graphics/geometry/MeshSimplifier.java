@@ -0,0 +1,540 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.Point3DBuffer;
+
+/**
+ * Simplifies triangle meshes by collapsing edges, using the quadric error
+ * metric from "Surface Simplification Using Quadric Error Metrics" (Garland
+ * and Heckbert, 1997).
+ *
+ * Every vertex has a quadric that measures the sum of the squared distances
+ * of a point to the planes of the triangles around the vertex, weighted by
+ * their area. The edge whose collapse moves the surface the least is
+ * collapsed first, until the mesh has few enough triangles.
+ *
+ * Each edge is collapsed by moving one of its vertices onto the other, rather
+ * than both onto a new point, so the simplified mesh only uses vertices (and
+ * normals) of the original one.
+ *
+ * The boundaries of the mesh (edges with a triangle on only one side) are
+ * kept in place: a vertex on a boundary can only move along it, and moving it
+ * away from the boundary's original line is made expensive by adding planes
+ * through each boundary edge, perpendicular to its triangle, to the quadrics.
+ * Collapses that would fold a triangle over, or join two parts of the surface
+ * that only touch at the edge, are not made.
+ */
+public class MeshSimplifier {
+
+    /**
+     * How much more moving a boundary costs than moving the surface by the
+     * same distance.
+     */
+    private static final double BOUNDARY_WEIGHT = 1000;
+
+    private MeshSimplifier() {
+    }
+
+    /**
+     * Simplify a mesh until it has at most targetTriangles triangles, or no
+     * more edges can be collapsed.
+     *
+     * @param vertices
+     * @param indices Each set of 3 indices forms a triangle. Not changed.
+     * @param targetTriangles
+     * @return The indices of the simplified mesh, into the same vertices. The
+     *         triangles that are left keep their order.
+     */
+    public static IntBuffer simplify(Point3DBuffer vertices, IntBuffer indices,
+            int targetTriangles) {
+        FloatBuffer src = ((FloatBuffer) vertices.getBuffer()).duplicate();
+        src.clear();
+        float[] positions = new float[vertices.capacity() * 3];
+        src.get(positions);
+        IntBuffer in = indices.duplicate();
+        in.clear();
+        int[] triangles = new int[in.remaining() - in.remaining() % 3];
+        in.get(triangles);
+        for (int index : triangles)
+            if (index < 0 || index >= vertices.capacity())
+                throw new IndexOutOfBoundsException("Vertex index " + index
+                        + " is out of range for " + vertices.capacity() + " vertices");
+
+        Simplification s = new Simplification(positions, triangles);
+        s.run(targetTriangles);
+
+        int[] left = s.triangles();
+        IntBuffer result = GLBuffers.newDirectIntBuffer(left.length);
+        result.put(left).flip();
+        return result;
+    }
+
+    /**
+     * Simplify a mesh until it has at most targetTriangles triangles, or no
+     * more edges can be collapsed, and make a new mesh of it with only the
+     * vertices it uses. The new mesh is optimized with {@link MeshOptimizer}.
+     *
+     * @param mesh
+     * @param targetTriangles
+     * @return
+     */
+    public static TriangleMesh simplify(TriangleMesh mesh, int targetTriangles) {
+        IntBuffer indices = simplify(mesh.getVertices(), mesh.getIndices(), targetTriangles);
+
+        // Number the vertices that are left in the order they are used
+        int[] remap = new int[mesh.getVertices().capacity()];
+        Arrays.fill(remap, -1);
+        int vertexCount = 0;
+        for (int i = 0; i < indices.capacity(); i++) {
+            int v = indices.get(i);
+            if (remap[v] < 0)
+                remap[v] = vertexCount++;
+            indices.put(i, remap[v]);
+        }
+        Point3DBuffer vertices = new Point3DBuffer(vertexCount);
+        Point3DBuffer normals = mesh.getNormals() == null ? null : new Point3DBuffer(vertexCount);
+        for (int v = 0; v < remap.length; v++) {
+            if (remap[v] < 0)
+                continue;
+            vertices.put(remap[v], mesh.getVertices().get(v));
+            if (normals != null)
+                normals.put(remap[v], mesh.getNormals().get(v));
+        }
+
+        MeshOptimizer.optimizeVertexCache(indices, vertexCount);
+        MeshOptimizer.optimizeVertexFetch(indices, vertices, normals);
+        return new TriangleMesh(vertices, normals, indices);
+    }
+
+    /**
+     * The state of simplifying one mesh.
+     */
+    private static class Simplification {
+        final float[] positions;
+
+        // The corners of each triangle. A removed triangle has -1 in its
+        // first corner.
+        final int[] triangles;
+        int triangleCount;
+
+        // The triangles around each vertex. The lists may also hold
+        // triangles that have been removed since.
+        final int[][] around;
+        final int[] aroundCount;
+
+        // The quadric of each vertex: the upper triangle of a symmetric 4x4
+        // matrix, 10 values per vertex
+        final double[] quadrics;
+
+        final boolean[] boundary;
+        final boolean[] removed;
+
+        // Bumped whenever the quadric or the triangles around a vertex change,
+        // which makes the queued collapses of its edges out of date
+        final int[] version;
+
+        // For finding the vertices around a vertex
+        final int[] mark;
+        int markTime;
+
+        final CollapseQueue queue = new CollapseQueue();
+
+        Simplification(float[] positions, int[] triangles) {
+            this.positions = positions;
+            this.triangles = triangles;
+            int vertexCount = positions.length / 3;
+            triangleCount = triangles.length / 3;
+
+            aroundCount = new int[vertexCount];
+            for (int index : triangles)
+                aroundCount[index]++;
+            around = new int[vertexCount][];
+            for (int v = 0; v < vertexCount; v++)
+                around[v] = new int[Math.max(aroundCount[v], 4)];
+            Arrays.fill(aroundCount, 0);
+            for (int i = 0; i < triangles.length; i++)
+                around[triangles[i]][aroundCount[triangles[i]]++] = i / 3;
+
+            quadrics = new double[vertexCount * 10];
+            boundary = new boolean[vertexCount];
+            removed = new boolean[vertexCount];
+            version = new int[vertexCount];
+            mark = new int[vertexCount];
+
+            for (int t = 0; t < triangleCount; t++)
+                addFaceQuadric(t);
+            findBoundaries();
+
+            for (int t = 0; t < triangleCount; t++) {
+                for (int k = 0; k < 3; k++) {
+                    int a = triangles[3*t + k], b = triangles[3*t + (k + 1) % 3];
+                    // Each edge inside the surface is in two triangles, once
+                    // each way around. Boundary edges are in one.
+                    if (a < b || (boundary[a] && boundary[b]))
+                        queueEdge(a, b);
+                }
+            }
+        }
+
+        /**
+         * Add the plane of triangle t, weighted by its area, to the quadrics
+         * of its vertices.
+         */
+        private void addFaceQuadric(int t) {
+            float[] p = positions;
+            int i1 = 3 * triangles[3*t], i2 = 3 * triangles[3*t + 1], i3 = 3 * triangles[3*t + 2];
+            double ax = p[i2] - p[i1], ay = p[i2 + 1] - p[i1 + 1], az = p[i2 + 2] - p[i1 + 2];
+            double bx = p[i3] - p[i1], by = p[i3 + 1] - p[i1 + 1], bz = p[i3 + 2] - p[i1 + 2];
+            double nx = ay*bz - az*by, ny = az*bx - ax*bz, nz = ax*by - ay*bx;
+            double length = Math.sqrt(nx*nx + ny*ny + nz*nz);
+            if (length == 0)
+                return;
+            double area = length / 2;
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            double d = -(nx*p[i1] + ny*p[i1 + 1] + nz*p[i1 + 2]);
+            for (int k = 0; k < 3; k++)
+                addPlane(triangles[3*t + k], nx, ny, nz, d, area);
+        }
+
+        /**
+         * Find the edges in only one triangle, mark their vertices and add
+         * the planes that keep them in place to their quadrics.
+         */
+        private void findBoundaries() {
+            long[] edges = new long[triangles.length];
+            for (int i = 0; i < triangles.length; i++) {
+                int a = triangles[i], b = triangles[i - i % 3 + (i + 1) % 3];
+                edges[i] = edgeKey(a, b);
+            }
+            Arrays.sort(edges);
+            Set<Long> boundaryEdges = new HashSet<Long>();
+            for (int i = 0; i < edges.length; ) {
+                int j = i + 1;
+                while (j < edges.length && edges[j] == edges[i])
+                    j++;
+                if (j - i == 1)
+                    boundaryEdges.add(edges[i]);
+                i = j;
+            }
+            if (boundaryEdges.isEmpty())
+                return;
+
+            float[] p = positions;
+            for (int t = 0; t < triangleCount; t++) {
+                for (int k = 0; k < 3; k++) {
+                    int a = triangles[3*t + k], b = triangles[3*t + (k + 1) % 3];
+                    if (!boundaryEdges.contains(edgeKey(a, b)))
+                        continue;
+                    boundary[a] = boundary[b] = true;
+
+                    int c = triangles[3*t + (k + 2) % 3];
+                    double ex = p[3*b] - p[3*a], ey = p[3*b + 1] - p[3*a + 1],
+                            ez = p[3*b + 2] - p[3*a + 2];
+                    double fx = p[3*c] - p[3*a], fy = p[3*c + 1] - p[3*a + 1],
+                            fz = p[3*c + 2] - p[3*a + 2];
+                    // The normal of the triangle, then the normal of the plane
+                    // through the edge perpendicular to it
+                    double nx = ey*fz - ez*fy, ny = ez*fx - ex*fz, nz = ex*fy - ey*fx;
+                    double mx = ey*nz - ez*ny, my = ez*nx - ex*nz, mz = ex*ny - ey*nx;
+                    double length = Math.sqrt(mx*mx + my*my + mz*mz);
+                    if (length == 0)
+                        continue;
+                    mx /= length;
+                    my /= length;
+                    mz /= length;
+                    double d = -(mx*p[3*a] + my*p[3*a + 1] + mz*p[3*a + 2]);
+                    double weight = BOUNDARY_WEIGHT * (ex*ex + ey*ey + ez*ez);
+                    addPlane(a, mx, my, mz, d, weight);
+                    addPlane(b, mx, my, mz, d, weight);
+                }
+            }
+        }
+
+        private static long edgeKey(int a, int b) {
+            return a < b ? (long) a << 32 | b : (long) b << 32 | a;
+        }
+
+        private void addPlane(int v, double a, double b, double c, double d, double weight) {
+            double[] q = quadrics;
+            int i = 10 * v;
+            q[i] += weight * a*a;
+            q[i + 1] += weight * a*b;
+            q[i + 2] += weight * a*c;
+            q[i + 3] += weight * a*d;
+            q[i + 4] += weight * b*b;
+            q[i + 5] += weight * b*c;
+            q[i + 6] += weight * b*d;
+            q[i + 7] += weight * c*c;
+            q[i + 8] += weight * c*d;
+            q[i + 9] += weight * d*d;
+        }
+
+        /**
+         * The error of moving from onto to: the sum of their quadrics at the
+         * position of to.
+         */
+        private double cost(int from, int to) {
+            double[] q = quadrics;
+            int i = 10 * from, j = 10 * to;
+            double x = positions[3*to], y = positions[3*to + 1], z = positions[3*to + 2];
+            double a2 = q[i] + q[j], ab = q[i + 1] + q[j + 1], ac = q[i + 2] + q[j + 2];
+            double ad = q[i + 3] + q[j + 3], b2 = q[i + 4] + q[j + 4], bc = q[i + 5] + q[j + 5];
+            double bd = q[i + 6] + q[j + 6], c2 = q[i + 7] + q[j + 7], cd = q[i + 8] + q[j + 8];
+            double d2 = q[i + 9] + q[j + 9];
+            return a2*x*x + 2*ab*x*y + 2*ac*x*z + 2*ad*x + b2*y*y + 2*bc*y*z + 2*bd*y
+                    + c2*z*z + 2*cd*z + d2;
+        }
+
+        /**
+         * Queue collapsing the edge between a and b in both directions.
+         */
+        private void queueEdge(int a, int b) {
+            queue.add(cost(a, b), a, b, version[a], version[b]);
+            queue.add(cost(b, a), b, a, version[b], version[a]);
+        }
+
+        void run(int targetTriangles) {
+            while (triangleCount > targetTriangles && !queue.isEmpty()) {
+                int from = queue.from(), to = queue.to();
+                boolean current = !removed[from] && !removed[to]
+                        && version[from] == queue.fromVersion()
+                        && version[to] == queue.toVersion();
+                queue.remove();
+                if (current && canCollapse(from, to))
+                    collapse(from, to);
+            }
+        }
+
+        private boolean contains(int t, int v) {
+            return triangles[3*t] == v || triangles[3*t + 1] == v || triangles[3*t + 2] == v;
+        }
+
+        /**
+         * Whether moving from onto to keeps the mesh valid.
+         */
+        private boolean canCollapse(int from, int to) {
+            // The triangles on the edge, and the vertices around from
+            markTime++;
+            int shared = 0;
+            for (int i = 0; i < aroundCount[from]; i++) {
+                int t = around[from][i];
+                if (triangles[3*t] < 0)
+                    continue;
+                if (contains(t, to))
+                    shared++;
+                for (int k = 0; k < 3; k++)
+                    mark[triangles[3*t + k]] = markTime;
+            }
+            if (shared == 0)
+                return false;
+            // A boundary vertex may only move along the boundary
+            if (boundary[from] && shared != 1)
+                return false;
+
+            // The vertices around both should be exactly the third corners of
+            // the triangles on the edge, or the surface would be pinched
+            int common = 0;
+            int commonTime = ++markTime;
+            for (int i = 0; i < aroundCount[to]; i++) {
+                int t = around[to][i];
+                if (triangles[3*t] < 0)
+                    continue;
+                for (int k = 0; k < 3; k++) {
+                    int w = triangles[3*t + k];
+                    if (w != from && w != to && mark[w] == commonTime - 1) {
+                        mark[w] = commonTime;
+                        common++;
+                    }
+                }
+            }
+            if (common != shared)
+                return false;
+
+            // None of the triangles that move may fold over
+            float[] p = positions;
+            for (int i = 0; i < aroundCount[from]; i++) {
+                int t = around[from][i];
+                if (triangles[3*t] < 0 || contains(t, to))
+                    continue;
+                int k = triangles[3*t] == from ? 0 : triangles[3*t + 1] == from ? 1 : 2;
+                int b = 3 * triangles[3*t + (k + 1) % 3], c = 3 * triangles[3*t + (k + 2) % 3];
+                double bx = p[b], by = p[b + 1], bz = p[b + 2];
+                double ux = p[c] - bx, uy = p[c + 1] - by, uz = p[c + 2] - bz;
+                double vx = p[3*from] - bx, vy = p[3*from + 1] - by, vz = p[3*from + 2] - bz;
+                double wx = p[3*to] - bx, wy = p[3*to + 1] - by, wz = p[3*to + 2] - bz;
+                // The normals before and after, both as (c - b) x (a - b)
+                double n1x = uy*vz - uz*vy, n1y = uz*vx - ux*vz, n1z = ux*vy - uy*vx;
+                double n2x = uy*wz - uz*wy, n2y = uz*wx - ux*wz, n2z = ux*wy - uy*wx;
+                if (n1x*n2x + n1y*n2y + n1z*n2z <= 0)
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Move from onto to.
+         */
+        private void collapse(int from, int to) {
+            for (int i = 0; i < aroundCount[from]; i++) {
+                int t = around[from][i];
+                if (triangles[3*t] < 0)
+                    continue;
+                if (contains(t, to)) {
+                    triangles[3*t] = -1;
+                    triangleCount--;
+                    continue;
+                }
+                for (int k = 0; k < 3; k++)
+                    if (triangles[3*t + k] == from)
+                        triangles[3*t + k] = to;
+                addAround(to, t);
+            }
+            removed[from] = true;
+            aroundCount[from] = 0;
+            for (int k = 0; k < 10; k++)
+                quadrics[10*to + k] += quadrics[10*from + k];
+            version[to]++;
+
+            // Drop the removed triangles from the list of to, then queue
+            // its edges again with its new quadric
+            int n = 0;
+            for (int i = 0; i < aroundCount[to]; i++)
+                if (triangles[3 * around[to][i]] >= 0)
+                    around[to][n++] = around[to][i];
+            aroundCount[to] = n;
+            markTime++;
+            for (int i = 0; i < n; i++) {
+                int t = around[to][i];
+                for (int k = 0; k < 3; k++) {
+                    int w = triangles[3*t + k];
+                    if (w != to && mark[w] != markTime) {
+                        mark[w] = markTime;
+                        queueEdge(to, w);
+                    }
+                }
+            }
+        }
+
+        private void addAround(int v, int t) {
+            if (aroundCount[v] == around[v].length)
+                around[v] = Arrays.copyOf(around[v], around[v].length * 2);
+            around[v][aroundCount[v]++] = t;
+        }
+
+        /**
+         * The triangles that are left, in their original order.
+         */
+        int[] triangles() {
+            int[] left = new int[triangleCount * 3];
+            int n = 0;
+            for (int t = 0; t < triangles.length / 3; t++) {
+                if (triangles[3*t] < 0)
+                    continue;
+                left[n++] = triangles[3*t];
+                left[n++] = triangles[3*t + 1];
+                left[n++] = triangles[3*t + 2];
+            }
+            return left;
+        }
+    }
+
+    /**
+     * A binary heap of collapses, cheapest first. Collapses are not removed
+     * when they go out of date; the versions they were queued with are
+     * checked when they reach the top instead.
+     */
+    private static class CollapseQueue {
+        private double[] costs = new double[1024];
+        // From, to and their versions for each collapse
+        private int[] collapses = new int[4 * 1024];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int from() {
+            return collapses[0];
+        }
+
+        int to() {
+            return collapses[1];
+        }
+
+        int fromVersion() {
+            return collapses[2];
+        }
+
+        int toVersion() {
+            return collapses[3];
+        }
+
+        void add(double cost, int from, int to, int fromVersion, int toVersion) {
+            if (size == costs.length) {
+                costs = Arrays.copyOf(costs, size * 2);
+                collapses = Arrays.copyOf(collapses, size * 8);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (costs[parent] <= cost)
+                    break;
+                move(parent, i);
+                i = parent;
+            }
+            set(i, cost, from, to, fromVersion, toVersion);
+        }
+
+        /**
+         * Remove the cheapest collapse.
+         */
+        void remove() {
+            size--;
+            if (size == 0)
+                return;
+            // Sift the last collapse down from the top
+            double cost = costs[size];
+            int last = 4 * size;
+            int from = collapses[last], to = collapses[last + 1];
+            int fromVersion = collapses[last + 2], toVersion = collapses[last + 3];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && costs[child + 1] < costs[child])
+                    child++;
+                if (cost <= costs[child])
+                    break;
+                move(child, i);
+                i = child;
+            }
+            set(i, cost, from, to, fromVersion, toVersion);
+        }
+
+        private void move(int src, int dst) {
+            costs[dst] = costs[src];
+            System.arraycopy(collapses, 4 * src, collapses, 4 * dst, 4);
+        }
+
+        private void set(int i, double cost, int from, int to, int fromVersion, int toVersion) {
+            costs[i] = cost;
+            collapses[4*i] = from;
+            collapses[4*i + 1] = to;
+            collapses[4*i + 2] = fromVersion;
+            collapses[4*i + 3] = toVersion;
+        }
+    }
+}
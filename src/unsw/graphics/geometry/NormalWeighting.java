@@ -0,0 +1,31 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+/**
+ * How much each of the triangles around a vertex contributes to the normal
+ * of the vertex, when vertex normals are computed for a {@link TriangleMesh}.
+ */
+public enum NormalWeighting {
+    /**
+     * Every triangle contributes equally. This is the cheapest, but a vertex
+     * where one side of the surface is cut into many small triangles has its
+     * normal pulled towards that side.
+     */
+    EQUAL,
+
+    /**
+     * Each triangle contributes in proportion to its area, so small triangles
+     * barely change the normal.
+     */
+    AREA,
+
+    /**
+     * Each triangle contributes in proportion to its angle at the vertex. The
+     * normal doesn't depend on how the surface around the vertex is split into
+     * triangles. Finding the angles makes this several times slower than the
+     * other weightings.
+     */
+    ANGLE
+}
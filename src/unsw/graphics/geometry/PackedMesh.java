@@ -0,0 +1,334 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.jogamp.opengl.GL;
+
+import unsw.graphics.Matrix4;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.Vector3;
+
+/**
+ * The vertices and indices of a mesh packed into the compact formats used by
+ * {@link TriangleMesh#setCompact(boolean)}.
+ *
+ * Each vertex takes 8 bytes for its position and 4 for its normal, rather
+ * than 12 for each:
+ *
+ * - The position is three normalized shorts (and a short of padding) relative
+ * to the bounds of the mesh. A short in [-32767, 32767] is read by OpenGL as a
+ * float in [-1, 1], which is then mapped back to the bounds by the model
+ * matrix. See {@link #getDequantization()}.
+ * - The normal is a unit vector with 10 bits per component, in the
+ * GL_INT_2_10_10_10_REV format, also normalized.
+ *
+ * The positions and normals are interleaved in one buffer. The indices are
+ * bytes, shorts or ints, whichever is the smallest that can hold every index.
+ *
+ * The positions are scaled by the same amount along every axis so that the
+ * normals aren't changed by the scale. Their error is at most 1/65534 of the
+ * largest side of the bounds.
+ */
+public class PackedMesh {
+
+    /**
+     * The largest value of a normalized short.
+     */
+    private static final int SHORT_SCALE = 32767;
+
+    /**
+     * The largest value of a 10 bit normalized component.
+     */
+    private static final int NORMAL_SCALE = 511;
+
+    /**
+     * The bytes taken by the position of a vertex.
+     */
+    static final int POSITION_BYTES = 4 * Short.BYTES;
+
+    /**
+     * The bytes taken by the normal of a vertex.
+     */
+    static final int NORMAL_BYTES = Integer.BYTES;
+
+    /**
+     * The packed positions and normals, interleaved.
+     */
+    final ByteBuffer vertexData;
+
+    /**
+     * The bytes from one vertex to the next in vertexData.
+     */
+    final int stride;
+
+    /**
+     * The packed indices.
+     */
+    final ByteBuffer indexData;
+
+    /**
+     * GL_UNSIGNED_BYTE, GL_UNSIGNED_SHORT or GL_UNSIGNED_INT.
+     */
+    final int indexType;
+
+    private final float centreX, centreY, centreZ, scale;
+
+    private PackedMesh(ByteBuffer vertexData, int stride, ByteBuffer indexData, int indexType,
+            float centreX, float centreY, float centreZ, float scale) {
+        this.vertexData = vertexData;
+        this.stride = stride;
+        this.indexData = indexData;
+        this.indexType = indexType;
+        this.centreX = centreX;
+        this.centreY = centreY;
+        this.centreZ = centreZ;
+        this.scale = scale;
+    }
+
+    /**
+     * Pack the given mesh.
+     *
+     * @param vertices
+     * @param normals May be null. The normals don't need to be unit vectors;
+     *            they are normalized when packed.
+     * @param indices
+     * @return
+     */
+    public static PackedMesh pack(Point3DBuffer vertices, Point3DBuffer normals,
+            IntBuffer indices) {
+        int vertexCount = vertices.capacity();
+        float[] p = new float[vertexCount * 3];
+        FloatBuffer src = ((FloatBuffer) vertices.getBuffer()).duplicate();
+        src.clear();
+        src.get(p);
+        float[] n = null;
+        if (normals != null) {
+            n = new float[vertexCount * 3];
+            src = ((FloatBuffer) normals.getBuffer()).duplicate();
+            src.clear();
+            src.get(n);
+        }
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY,
+                minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY,
+                maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < p.length; i += 3) {
+            minX = Math.min(minX, p[i]);
+            maxX = Math.max(maxX, p[i]);
+            minY = Math.min(minY, p[i + 1]);
+            maxY = Math.max(maxY, p[i + 1]);
+            minZ = Math.min(minZ, p[i + 2]);
+            maxZ = Math.max(maxZ, p[i + 2]);
+        }
+        float centreX = 0, centreY = 0, centreZ = 0, scale = 1;
+        if (vertexCount > 0) {
+            centreX = (minX + maxX) / 2;
+            centreY = (minY + maxY) / 2;
+            centreZ = (minZ + maxZ) / 2;
+            float half = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) / 2;
+            if (half > 0)
+                scale = half;
+        }
+
+        int stride = vertexStride(normals != null);
+        ByteBuffer vertexData = ByteBuffer.allocateDirect(vertexCount * stride)
+                .order(ByteOrder.nativeOrder());
+        float toShort = SHORT_SCALE / scale;
+        for (int i = 0; i < p.length; i += 3) {
+            vertexData.putShort(quantize((p[i] - centreX) * toShort));
+            vertexData.putShort(quantize((p[i + 1] - centreY) * toShort));
+            vertexData.putShort(quantize((p[i + 2] - centreZ) * toShort));
+            vertexData.putShort((short) 0);
+            if (n != null)
+                vertexData.putInt(packNormal(n[i], n[i + 1], n[i + 2]));
+        }
+        vertexData.flip();
+
+        IntBuffer in = indices.duplicate();
+        in.clear();
+        int indexCount = in.remaining();
+        int indexType = indexType(vertexCount);
+        ByteBuffer indexData = ByteBuffer.allocateDirect(indexCount * indexBytes(vertexCount))
+                .order(ByteOrder.nativeOrder());
+        for (int i = 0; i < indexCount; i++) {
+            int index = in.get(i);
+            if (indexType == GL.GL_UNSIGNED_BYTE)
+                indexData.put((byte) index);
+            else if (indexType == GL.GL_UNSIGNED_SHORT)
+                indexData.putShort((short) index);
+            else
+                indexData.putInt(index);
+        }
+        indexData.flip();
+
+        return new PackedMesh(vertexData, stride, indexData, indexType, centreX, centreY,
+                centreZ, scale);
+    }
+
+    /**
+     * The bytes from one vertex to the next in a packed mesh.
+     *
+     * @param hasNormals
+     * @return
+     */
+    public static int vertexStride(boolean hasNormals) {
+        return POSITION_BYTES + (hasNormals ? NORMAL_BYTES : 0);
+    }
+
+    /**
+     * The smallest type that can hold the indices of a mesh with the given
+     * number of vertices: GL_UNSIGNED_BYTE, GL_UNSIGNED_SHORT or
+     * GL_UNSIGNED_INT.
+     *
+     * @param vertexCount
+     * @return
+     */
+    public static int indexType(int vertexCount) {
+        if (vertexCount <= 1 << 8)
+            return GL.GL_UNSIGNED_BYTE;
+        if (vertexCount <= 1 << 16)
+            return GL.GL_UNSIGNED_SHORT;
+        return GL.GL_UNSIGNED_INT;
+    }
+
+    /**
+     * The bytes taken by each index of a mesh with the given number of
+     * vertices.
+     *
+     * @param vertexCount
+     * @return
+     */
+    public static int indexBytes(int vertexCount) {
+        switch (indexType(vertexCount)) {
+        case GL.GL_UNSIGNED_BYTE:
+            return 1;
+        case GL.GL_UNSIGNED_SHORT:
+            return 2;
+        default:
+            return 4;
+        }
+    }
+
+    /**
+     * Pack a normal into the GL_INT_2_10_10_10_REV format: x, y and z in the
+     * lowest 30 bits, 10 bits each, as signed values in [-511, 511]. The
+     * normal is made a unit vector first. The zero vector stays zero.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public static int packNormal(float x, float y, float z) {
+        float length = (float) Math.sqrt(x*x + y*y + z*z);
+        if (length == 0)
+            return 0;
+        float s = NORMAL_SCALE / length;
+        int px = Math.round(x * s), py = Math.round(y * s), pz = Math.round(z * s);
+        return (px & 0x3ff) | (py & 0x3ff) << 10 | (pz & 0x3ff) << 20;
+    }
+
+    /**
+     * Unpack a normal packed by {@link #packNormal(float, float, float)}, the
+     * way OpenGL does.
+     *
+     * @param packed
+     * @return
+     */
+    public static Vector3 unpackNormal(int packed) {
+        // Shifting left then right extends the sign of each component
+        return new Vector3(normalized(packed << 22 >> 22), normalized(packed << 12 >> 22),
+                normalized(packed << 2 >> 22));
+    }
+
+    private static float normalized(int component) {
+        return Math.max(component / (float) NORMAL_SCALE, -1);
+    }
+
+    /**
+     * The position of the given vertex, as OpenGL sees it after the
+     * dequantization.
+     *
+     * @param i
+     * @return
+     */
+    public Point3D getVertex(int i) {
+        int at = i * stride;
+        float s = scale / SHORT_SCALE;
+        return new Point3D(centreX + vertexData.getShort(at) * s,
+                centreY + vertexData.getShort(at + 2) * s,
+                centreZ + vertexData.getShort(at + 4) * s);
+    }
+
+    /**
+     * The normal of the given vertex, as OpenGL sees it.
+     *
+     * @param i
+     * @return
+     * @throws IllegalStateException If the mesh has no normals.
+     */
+    public Vector3 getNormal(int i) {
+        if (stride == POSITION_BYTES)
+            throw new IllegalStateException("The mesh has no normals");
+        return unpackNormal(vertexData.getInt(i * stride + POSITION_BYTES));
+    }
+
+    /**
+     * The index at the given position.
+     *
+     * @param i
+     * @return
+     */
+    public int getIndex(int i) {
+        if (indexType == GL.GL_UNSIGNED_BYTE)
+            return indexData.get(i) & 0xff;
+        if (indexType == GL.GL_UNSIGNED_SHORT)
+            return indexData.getShort(2 * i) & 0xffff;
+        return indexData.getInt(4 * i);
+    }
+
+    /**
+     * The matrix that maps the packed positions, as floats in [-1, 1], back to
+     * the bounds of the mesh. It has to be applied before the model matrix.
+     *
+     * @return
+     */
+    public Matrix4 getDequantization() {
+        return Matrix4.translation(centreX, centreY, centreZ)
+                .multiply(Matrix4.scale(scale, scale, scale));
+    }
+
+    /**
+     * Apply the dequantization to the given column-major matrix in place, so
+     * that it maps the packed positions rather than the original ones.
+     */
+    void dequantize(float[] m, int offset) {
+        for (int row = 0; row < 4; row++) {
+            int i = offset + row;
+            m[i + 12] += m[i] * centreX + m[i + 4] * centreY + m[i + 8] * centreZ;
+            m[i] *= scale;
+            m[i + 4] *= scale;
+            m[i + 8] *= scale;
+        }
+    }
+
+    /**
+     * The bytes taken in graphics memory by the packed vertices and indices.
+     *
+     * @return
+     */
+    public long getBytes() {
+        return (long) vertexData.capacity() + indexData.capacity();
+    }
+
+    private static short quantize(float value) {
+        return (short) Math.max(-SHORT_SCALE, Math.min(SHORT_SCALE, Math.round(value)));
+    }
+}
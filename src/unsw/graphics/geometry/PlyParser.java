@@ -0,0 +1,761 @@
+/**
+ *
+ */
+package unsw.graphics.geometry;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.Point3DBuffer;
+
+/**
+ * Reads the vertices and faces of a PLY file straight into the buffers of a
+ * {@link TriangleMesh}.
+ *
+ * The file is memory-mapped and parsed in place: no objects are created for
+ * individual vertices or faces, and values are parsed from the bytes of the
+ * file rather than from strings. ASCII, binary little-endian and binary
+ * big-endian files are supported.
+ *
+ * The body of a large ASCII file is split into ranges of whole lines that are
+ * parsed in parallel on the common fork/join pool. Each line is one element,
+ * so counting the lines before a range tells the range which vertex or face
+ * it starts at.
+ *
+ * Only the x, y and z properties of "vertex" elements and the vertex_indices
+ * (or vertex_index) list of "face" elements are kept; all other elements and
+ * properties are skipped. Faces with more than three vertices are split into
+ * a fan of triangles, and faces with fewer are dropped.
+ */
+class PlyParser {
+
+    /**
+     * ASCII bodies smaller than this are parsed on the calling thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 256 * 1024;
+
+    /**
+     * The size of the ranges a large ASCII body is split into.
+     */
+    private static final int SPLIT_SIZE = 128 * 1024;
+
+    /**
+     * The largest power of ten that a double holds exactly.
+     */
+    private static final int MAX_EXACT_POWER = 22;
+
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private enum Format {
+        ASCII, BINARY_LITTLE_ENDIAN, BINARY_BIG_ENDIAN
+    }
+
+    /**
+     * The type of a property, or of the count or items of a list property.
+     */
+    private enum Type {
+        CHAR(1), UCHAR(1), SHORT(2), USHORT(2), INT(4), UINT(4), FLOAT(4), DOUBLE(8);
+
+        final int size;
+
+        Type(int size) {
+            this.size = size;
+        }
+
+        static Type parse(String name) throws IOException {
+            switch (name) {
+            case "char": case "int8": return CHAR;
+            case "uchar": case "uint8": return UCHAR;
+            case "short": case "int16": return SHORT;
+            case "ushort": case "uint16": return USHORT;
+            case "int": case "int32": return INT;
+            case "uint": case "uint32": return UINT;
+            case "float": case "float32": return FLOAT;
+            case "double": case "float64": return DOUBLE;
+            default: throw new IOException("Unknown PLY property type " + name);
+            }
+        }
+    }
+
+    private static class Property {
+        final String name;
+        final Type type;
+        // The type of the count of a list property, or null if it is not a list
+        final Type countType;
+
+        Property(String name, Type type, Type countType) {
+            this.name = name;
+            this.type = type;
+            this.countType = countType;
+        }
+    }
+
+    private static class Element {
+        final String name;
+        final int count;
+        final List<Property> properties = new ArrayList<Property>();
+
+        Element(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        int indexOf(String... names) {
+            for (int i = 0; i < properties.size(); i++)
+                for (String name : names)
+                    if (properties.get(i).name.equals(name))
+                        return i;
+            return -1;
+        }
+    }
+
+    /**
+     * The vertices read from the file.
+     */
+    final Point3DBuffer vertices;
+
+    /**
+     * The indices of the triangles read from the file.
+     */
+    final IntBuffer indices;
+
+    private PlyParser(Point3DBuffer vertices, IntBuffer indices) {
+        this.vertices = vertices;
+        this.indices = indices;
+    }
+
+    /**
+     * Read the given PLY file.
+     *
+     * @param file
+     * @return
+     * @throws IOException If the file can't be read or isn't a valid PLY file.
+     */
+    static PlyParser parse(String file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(file + " is too large to map");
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return parse(data);
+            } catch (IOException e) {
+                throw new IOException(file + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Read a whole PLY file from the given buffer.
+     */
+    static PlyParser parse(ByteBuffer data) throws IOException {
+        List<Element> elements = new ArrayList<Element>();
+        Format format = readHeader(data, elements);
+
+        Element vertexElement = null, faceElement = null;
+        for (Element element : elements) {
+            if (element.name.equals("vertex"))
+                vertexElement = element;
+            else if (element.name.equals("face"))
+                faceElement = element;
+        }
+        if (vertexElement == null)
+            throw new IOException("There are no vertex elements");
+        int[] xyz = { vertexElement.indexOf("x"), vertexElement.indexOf("y"),
+                vertexElement.indexOf("z") };
+        if (xyz[0] < 0 || xyz[1] < 0 || xyz[2] < 0)
+            throw new IOException("Vertices must have x, y and z properties");
+        int faceList = -1;
+        if (faceElement != null) {
+            faceList = faceElement.indexOf("vertex_indices", "vertex_index");
+            if (faceList < 0 || faceElement.properties.get(faceList).countType == null)
+                throw new IOException("Faces must have a vertex_indices list");
+        }
+
+        Point3DBuffer vertices = new Point3DBuffer(vertexElement.count);
+        IntArray triangles;
+        if (format == Format.ASCII) {
+            triangles = new AsciiBody(data, elements, vertexElement, xyz, faceElement, faceList,
+                    vertices).parse();
+        } else {
+            data.order(format == Format.BINARY_LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN
+                    : ByteOrder.BIG_ENDIAN);
+            triangles = parseBinary(data, elements, vertexElement, xyz, faceElement, faceList,
+                    vertices);
+        }
+
+        IntBuffer indices = GLBuffers.newDirectIntBuffer(triangles.size);
+        indices.put(triangles.values, 0, triangles.size);
+        indices.flip();
+        return new PlyParser(vertices, indices);
+    }
+
+    /**
+     * Read the header, leaving the position of data at the start of the body.
+     */
+    private static Format readHeader(ByteBuffer data, List<Element> elements)
+            throws IOException {
+        Format format = null;
+        Element element = null;
+        boolean first = true;
+        while (true) {
+            String line = readLine(data);
+            if (line == null)
+                throw new IOException("The header has no end_header");
+            String[] words = line.trim().split("\\s+");
+            if (first) {
+                if (!words[0].equals("ply"))
+                    throw new IOException("Not a PLY file");
+                first = false;
+                continue;
+            }
+            switch (words[0]) {
+            case "format":
+                if (words.length < 2)
+                    throw new IOException("Invalid format line: " + line);
+                if (words[1].equals("ascii"))
+                    format = Format.ASCII;
+                else if (words[1].equals("binary_little_endian"))
+                    format = Format.BINARY_LITTLE_ENDIAN;
+                else if (words[1].equals("binary_big_endian"))
+                    format = Format.BINARY_BIG_ENDIAN;
+                else
+                    throw new IOException("Unknown PLY format " + words[1]);
+                break;
+            case "element":
+                if (words.length != 3)
+                    throw new IOException("Invalid element line: " + line);
+                try {
+                    element = new Element(words[1], Integer.parseInt(words[2]));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid element count: " + line);
+                }
+                elements.add(element);
+                break;
+            case "property":
+                if (element == null)
+                    throw new IOException("Property before any element: " + line);
+                if (words.length == 5 && words[1].equals("list"))
+                    element.properties.add(new Property(words[4], Type.parse(words[3]),
+                            Type.parse(words[2])));
+                else if (words.length == 3)
+                    element.properties.add(new Property(words[2], Type.parse(words[1]), null));
+                else
+                    throw new IOException("Invalid property line: " + line);
+                break;
+            case "end_header":
+                if (format == null)
+                    throw new IOException("The header has no format");
+                return format;
+            default:
+                // comment, obj_info and blank lines
+                break;
+            }
+        }
+    }
+
+    private static String readLine(ByteBuffer data) {
+        int start = data.position();
+        while (data.hasRemaining()) {
+            if (data.get() == '\n') {
+                byte[] bytes = new byte[data.position() - 1 - start];
+                for (int i = 0; i < bytes.length; i++)
+                    bytes[i] = data.get(start + i);
+                return new String(bytes, StandardCharsets.US_ASCII);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static class IntArray {
+        int[] values;
+        int size;
+
+        IntArray(int capacity) {
+            values = new int[Math.max(capacity, 16)];
+        }
+
+        void add(int a, int b, int c) {
+            if (size + 3 > values.length)
+                values = Arrays.copyOf(values, values.length * 2);
+            values[size++] = a;
+            values[size++] = b;
+            values[size++] = c;
+        }
+    }
+
+    /*
+     * Binary bodies
+     */
+
+    private static IntArray parseBinary(ByteBuffer data, List<Element> elements,
+            Element vertexElement, int[] xyz, Element faceElement, int faceList,
+            Point3DBuffer vertices) throws IOException {
+        IntArray triangles = new IntArray(faceElement == null ? 0 : faceElement.count * 3);
+        float[] point = new float[3];
+        try {
+            for (Element element : elements) {
+                for (int e = 0; e < element.count; e++) {
+                    for (int p = 0; p < element.properties.size(); p++) {
+                        Property property = element.properties.get(p);
+                        if (property.countType == null) {
+                            if (element == vertexElement && (p == xyz[0] || p == xyz[1]
+                                    || p == xyz[2])) {
+                                point[p == xyz[0] ? 0 : p == xyz[1] ? 1 : 2] =
+                                        (float) readBinary(data, property.type);
+                            } else {
+                                data.position(data.position() + property.type.size);
+                            }
+                        } else {
+                            int count = (int) readBinary(data, property.countType);
+                            if (element == faceElement && p == faceList && count >= 3) {
+                                int first = vertexIndex(readBinary(data, property.type),
+                                        vertexElement.count);
+                                int previous = vertexIndex(readBinary(data, property.type),
+                                        vertexElement.count);
+                                for (int i = 2; i < count; i++) {
+                                    int next = vertexIndex(readBinary(data, property.type),
+                                            vertexElement.count);
+                                    triangles.add(first, previous, next);
+                                    previous = next;
+                                }
+                            } else {
+                                // Faces with fewer than three vertices are dropped
+                                data.position(data.position() + count * property.type.size);
+                            }
+                        }
+                    }
+                    if (element == vertexElement)
+                        vertices.put(e, point[0], point[1], point[2]);
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("The file ends before all the elements have been read");
+        }
+        return triangles;
+    }
+
+    /**
+     * Check that a vertex index read from a face refers to one of the
+     * vertices.
+     *
+     * @throws IOException If it doesn't.
+     */
+    private static int vertexIndex(double index, int vertexCount) throws IOException {
+        if (!(index >= 0 && index < vertexCount))
+            throw new IOException("Vertex index " + (long) index + " is out of range; there are "
+                    + vertexCount + " vertices");
+        return (int) index;
+    }
+
+    private static double readBinary(ByteBuffer data, Type type) {
+        switch (type) {
+        case CHAR: return data.get();
+        case UCHAR: return data.get() & 0xff;
+        case SHORT: return data.getShort();
+        case USHORT: return data.getShort() & 0xffff;
+        case INT: return data.getInt();
+        case UINT: return data.getInt() & 0xffffffffL;
+        case FLOAT: return data.getFloat();
+        default: return data.getDouble();
+        }
+    }
+
+    /*
+     * ASCII bodies
+     */
+
+    /**
+     * The body of an ASCII file. Each element is on its own line.
+     */
+    private static class AsciiBody {
+        private final ByteBuffer data;
+        private final int start, end;
+        private final Element vertexElement, faceElement;
+        private final int[] xyz;
+        private final int faceList;
+        private final Point3DBuffer vertices;
+
+        // The first line of each element, then the total number of lines
+        private final int[] firstLines;
+        private final Element[] elementOrder;
+
+        AsciiBody(ByteBuffer data, List<Element> elements, Element vertexElement, int[] xyz,
+                Element faceElement, int faceList, Point3DBuffer vertices) {
+            this.data = data;
+            this.start = data.position();
+            this.end = data.limit();
+            this.vertexElement = vertexElement;
+            this.xyz = xyz;
+            this.faceElement = faceElement;
+            this.faceList = faceList;
+            this.vertices = vertices;
+            elementOrder = elements.toArray(new Element[elements.size()]);
+            firstLines = new int[elementOrder.length + 1];
+            for (int i = 0; i < elementOrder.length; i++)
+                firstLines[i + 1] = firstLines[i] + elementOrder[i].count;
+        }
+
+        IntArray parse() throws IOException {
+            if (end - start < PARALLEL_THRESHOLD) {
+                Range range = new Range(start, end);
+                range.parse(0);
+                checkLines(range.lines);
+                return range.triangles;
+            }
+
+            // Split the body into ranges that end at the end of a line
+            List<Range> ranges = new ArrayList<Range>();
+            int from = start;
+            while (from < end) {
+                int to = Math.min(from + SPLIT_SIZE, end);
+                while (to < end && data.get(to - 1) != '\n')
+                    to++;
+                ranges.add(new Range(from, to));
+                from = to;
+            }
+
+            // Count the lines of each range to find the line each starts on
+            List<Callable<Void>> counts = new ArrayList<Callable<Void>>();
+            for (final Range range : ranges) {
+                counts.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        range.countLines();
+                        return null;
+                    }
+                });
+            }
+            invokeAll(counts);
+            int[] firstLine = new int[ranges.size()];
+            int lines = 0;
+            for (int i = 0; i < ranges.size(); i++) {
+                firstLine[i] = lines;
+                lines += ranges.get(i).lines;
+            }
+            checkLines(lines);
+
+            List<Callable<Void>> parses = new ArrayList<Callable<Void>>();
+            for (int i = 0; i < ranges.size(); i++) {
+                final Range range = ranges.get(i);
+                final int line = firstLine[i];
+                parses.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        range.parse(line);
+                        return null;
+                    }
+                });
+            }
+            invokeAll(parses);
+
+            int total = 0;
+            for (Range range : ranges)
+                total += range.triangles.size;
+            IntArray triangles = new IntArray(total);
+            for (Range range : ranges) {
+                System.arraycopy(range.triangles.values, 0, triangles.values, triangles.size,
+                        range.triangles.size);
+                triangles.size += range.triangles.size;
+            }
+            return triangles;
+        }
+
+        private void checkLines(int lines) throws IOException {
+            if (lines < firstLines[elementOrder.length])
+                throw new IOException("The file has " + lines + " elements but the header has "
+                        + firstLines[elementOrder.length]);
+        }
+
+        private static void invokeAll(List<Callable<Void>> tasks) throws IOException {
+            try {
+                for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks))
+                    future.get();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while reading", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+        }
+
+        /**
+         * A range of whole lines. Lines with nothing on them are not counted.
+         */
+        private class Range {
+            final int from, to;
+            int lines;
+            IntArray triangles;
+
+            // The position of the next byte to parse
+            private int pos;
+
+            Range(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            void countLines() {
+                lines = 0;
+                boolean blank = true;
+                for (int i = from; i < to; i++) {
+                    byte b = data.get(i);
+                    if (b == '\n') {
+                        if (!blank)
+                            lines++;
+                        blank = true;
+                    } else if (b > ' ') {
+                        blank = false;
+                    }
+                }
+                if (!blank)
+                    lines++;
+            }
+
+            /**
+             * Parse the lines of this range, the first of which is the given
+             * line of the body.
+             */
+            void parse(int line) throws IOException {
+                int faceEstimate = faceElement == null ? 0
+                        : (int) ((long) faceElement.count * (to - from) / (end - start));
+                triangles = new IntArray(faceEstimate * 3);
+                int e = 0;
+                pos = from;
+                lines = 0;
+                while (skipBlankLines()) {
+                    while (e < elementOrder.length && line >= firstLines[e + 1])
+                        e++;
+                    // Anything after the last element is ignored
+                    if (e == elementOrder.length)
+                        return;
+                    Element element = elementOrder[e];
+                    if (element == vertexElement)
+                        parseVertex(line - firstLines[e]);
+                    else if (element == faceElement)
+                        parseFace();
+                    skipLine();
+                    line++;
+                    lines++;
+                }
+            }
+
+            private void parseVertex(int index) throws IOException {
+                float x = 0, y = 0, z = 0;
+                for (int p = 0; p < vertexElement.properties.size(); p++) {
+                    if (p == xyz[0])
+                        x = (float) parseDouble();
+                    else if (p == xyz[1])
+                        y = (float) parseDouble();
+                    else if (p == xyz[2])
+                        z = (float) parseDouble();
+                    else
+                        skipProperty(vertexElement.properties.get(p));
+                }
+                vertices.put(index, x, y, z);
+            }
+
+            private void parseFace() throws IOException {
+                for (int p = 0; p < faceElement.properties.size(); p++) {
+                    if (p != faceList) {
+                        skipProperty(faceElement.properties.get(p));
+                        continue;
+                    }
+                    int count = (int) parseLong();
+                    if (count < 3) {
+                        for (int i = 0; i < count; i++)
+                            skipToken();
+                        continue;
+                    }
+                    int first = vertexIndex(parseLong(), vertexElement.count);
+                    int previous = vertexIndex(parseLong(), vertexElement.count);
+                    for (int i = 2; i < count; i++) {
+                        int next = vertexIndex(parseLong(), vertexElement.count);
+                        triangles.add(first, previous, next);
+                        previous = next;
+                    }
+                }
+            }
+
+            private void skipProperty(Property property) throws IOException {
+                if (property.countType == null) {
+                    skipToken();
+                } else {
+                    long count = parseLong();
+                    for (long i = 0; i < count; i++)
+                        skipToken();
+                }
+            }
+
+            /**
+             * Move to the start of the next line with something on it.
+             *
+             * @return false if there are no more lines in the range.
+             */
+            private boolean skipBlankLines() {
+                while (pos < to && data.get(pos) <= ' ')
+                    pos++;
+                return pos < to;
+            }
+
+            private void skipLine() {
+                while (pos < to && data.get(pos) != '\n')
+                    pos++;
+            }
+
+            /**
+             * Move to the start of the next value on this line.
+             */
+            private void startToken() throws IOException {
+                byte b;
+                while (pos < to && (b = data.get(pos)) <= ' ' && b != '\n')
+                    pos++;
+                if (pos >= to || data.get(pos) == '\n')
+                    throw new IOException("An element has too few values");
+            }
+
+            private void skipToken() throws IOException {
+                startToken();
+                while (pos < to && data.get(pos) > ' ')
+                    pos++;
+            }
+
+            private long parseLong() throws IOException {
+                startToken();
+                int tokenStart = pos;
+                boolean negative = false;
+                byte b = data.get(pos);
+                if (b == '-' || b == '+') {
+                    negative = b == '-';
+                    pos++;
+                }
+                long value = 0;
+                int digits = 0;
+                while (pos < to && (b = data.get(pos)) >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    digits++;
+                    pos++;
+                }
+                if (digits == 0 || digits > 18 || (pos < to && data.get(pos) > ' ')) {
+                    // Not a plain integer, e.g. a list index written as "3.0"
+                    pos = tokenStart;
+                    return (long) parseDouble();
+                }
+                return negative ? -value : value;
+            }
+
+            /**
+             * Parse a decimal number. Numbers with at most 15 significant
+             * digits and a small exponent are parsed exactly with one
+             * multiplication or division. Anything else goes through
+             * {@link Double#parseDouble(String)}, so the result is always
+             * the same as parsing the text with it.
+             */
+            private double parseDouble() throws IOException {
+                startToken();
+                int tokenStart = pos;
+                boolean negative = false;
+                byte b = data.get(pos);
+                if (b == '-' || b == '+') {
+                    negative = b == '-';
+                    pos++;
+                }
+                long mantissa = 0;
+                int digits = 0, scale = 0;
+                boolean any = false, point = false;
+                while (pos < to) {
+                    b = data.get(pos);
+                    if (b >= '0' && b <= '9') {
+                        any = true;
+                        // Leading zeros aren't significant
+                        if (mantissa != 0 || b != '0')
+                            digits++;
+                        mantissa = mantissa * 10 + (b - '0');
+                        if (point)
+                            scale--;
+                        if (digits > 15)
+                            return slowDouble(tokenStart);
+                    } else if (b == '.' && !point) {
+                        point = true;
+                    } else {
+                        break;
+                    }
+                    pos++;
+                }
+                if (pos < to && (b == 'e' || b == 'E')) {
+                    pos++;
+                    boolean negativeExponent = false;
+                    if (pos < to && (data.get(pos) == '-' || data.get(pos) == '+')) {
+                        negativeExponent = data.get(pos) == '-';
+                        pos++;
+                    }
+                    int exponent = 0, exponentDigits = 0;
+                    while (pos < to && (b = data.get(pos)) >= '0' && b <= '9') {
+                        if (exponent < 10000)
+                            exponent = exponent * 10 + (b - '0');
+                        exponentDigits++;
+                        pos++;
+                    }
+                    if (exponentDigits == 0)
+                        return slowDouble(tokenStart);
+                    scale += negativeExponent ? -exponent : exponent;
+                }
+                if (!any || (pos < to && data.get(pos) > ' '))
+                    return slowDouble(tokenStart);
+
+                double value = mantissa;
+                if (mantissa != 0) {
+                    if (scale < -MAX_EXACT_POWER || scale > MAX_EXACT_POWER)
+                        return slowDouble(tokenStart);
+                    if (scale < 0)
+                        value /= POWERS_OF_TEN[-scale];
+                    else
+                        value *= POWERS_OF_TEN[scale];
+                }
+                return negative ? -value : value;
+            }
+
+            private double slowDouble(int tokenStart) throws IOException {
+                pos = tokenStart;
+                while (pos < to && data.get(pos) > ' ')
+                    pos++;
+                byte[] bytes = new byte[pos - tokenStart];
+                for (int i = 0; i < bytes.length; i++)
+                    bytes[i] = data.get(tokenStart + i);
+                String token = new String(bytes, StandardCharsets.US_ASCII);
+                try {
+                    return Double.parseDouble(token);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid number " + token);
+                }
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GeometryBuffer;
 import unsw.graphics.Point3DBuffer;
 import unsw.graphics.Shader;
 import unsw.graphics.Vector3;
@@ -18,6 +19,11 @@ import unsw.graphics.Vector4;
  *
  */
 public class Point3D {
+    /**
+     * A single point at the origin, which the frame moves into place.
+     */
+    private static final GeometryBuffer ORIGIN = new GeometryBuffer(new Point3DBuffer(1));
+
     private float x, y, z;
 
     /**
@@ -42,21 +48,8 @@ public class Point3D {
      * @param frame
      */
     public void draw(GL3 gl, CoordFrame3D frame) {
-        Point3DBuffer buffer = new Point3DBuffer(1);
-        buffer.put(0, this);
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, 3 * Float.BYTES, buffer.getBuffer(),
-                GL.GL_STATIC_DRAW);
-
-        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
-        Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawArrays(GL.GL_POINTS, 0, 1);
-
-        gl.glDeleteBuffers(1, names, 0);
+        Shader.setModelMatrix(gl, frame.translate(this).getMatrix());
+        ORIGIN.draw(gl, GL.GL_POINTS);
     }
     
     /**
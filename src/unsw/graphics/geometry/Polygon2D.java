@@ -4,12 +4,14 @@
 package unsw.graphics.geometry;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame2D;
+import unsw.graphics.GeometryBuffer;
 import unsw.graphics.Point2DBuffer;
 import unsw.graphics.Shader;
 
@@ -24,6 +26,9 @@ import unsw.graphics.Shader;
 public class Polygon2D {
     private List<Point2D> points;
 
+    // The points in graphics memory, created when the polygon is first drawn
+    private GeometryBuffer buffer;
+
     public Polygon2D(List<Point2D> points) {
         this.points = new ArrayList<Point2D>(points);
     }
@@ -54,21 +59,20 @@ public class Polygon2D {
      * @param gl
      */
     public void draw(GL3 gl, CoordFrame2D frame) {
-        Point2DBuffer buffer = new Point2DBuffer(points);
-
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, points.size() * 2 * Float.BYTES,
-                buffer.getBuffer(), GL.GL_STATIC_DRAW);
-
-        gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
+        if (buffer == null)
+            buffer = new GeometryBuffer(new Point2DBuffer(points));
         Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawArrays(GL.GL_TRIANGLE_FAN, 0, points.size());
-
-        gl.glDeleteBuffers(1, names, 0);
+        buffer.draw(gl, GL.GL_TRIANGLE_FAN);
     }
     
+    /**
+     * The vertices of this polygon. The list can't be modified.
+     * @return
+     */
+    public List<Point2D> getPoints() {
+        return Collections.unmodifiableList(points);
+    }
+
     public void drawOutline(GL3 gl, CoordFrame2D frame) {
         // TODO: You need to write this method.
         // It should draw an outline of a polygon using GL_LINE_LOOP
@@ -82,4 +86,13 @@ public class Polygon2D {
         draw(gl, CoordFrame2D.identity());
     }
 
+    /**
+     * Release the graphics memory used by this polygon. It is copied again if
+     * the polygon is drawn afterwards.
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        if (buffer != null)
+            buffer.destroy(gl);
+    }
 }
@@ -6,10 +6,10 @@ package unsw.graphics.geometry;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame2D;
+import unsw.graphics.GeometryBuffer;
 import unsw.graphics.Point2DBuffer;
 import unsw.graphics.Shader;
 
@@ -24,6 +24,9 @@ import unsw.graphics.Shader;
 public class Triangle2D {
     private List<Point2D> points;
 
+    // The points in graphics memory, created when the triangle is first drawn
+    private GeometryBuffer buffer;
+
     public Triangle2D() {
         points = new ArrayList<Point2D>();
     }
@@ -44,23 +47,24 @@ public class Triangle2D {
         this.points = points;
     }
 
-    public void draw(GL3 gl, CoordFrame2D frame) {        
-        Point2DBuffer buffer = new Point2DBuffer(points);
-
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, points.size() * 2 * Float.BYTES,
-                buffer.getBuffer(), GL.GL_STATIC_DRAW);
-
-        gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
+    public void draw(GL3 gl, CoordFrame2D frame) {
+        if (buffer == null)
+            buffer = new GeometryBuffer(new Point2DBuffer(points));
         Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawArrays(GL3.GL_TRIANGLES, 0, points.size());
-
-        gl.glDeleteBuffers(1, names, 0);
+        buffer.draw(gl, GL3.GL_TRIANGLES);
     }
     
     public void draw(GL3 gl) {
         draw(gl, CoordFrame2D.identity());
     }
+
+    /**
+     * Release the graphics memory used by this triangle. It is copied again if
+     * the triangle is drawn afterwards.
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        if (buffer != null)
+            buffer.destroy(gl);
+    }
 }
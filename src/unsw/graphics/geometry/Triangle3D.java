@@ -6,10 +6,10 @@ package unsw.graphics.geometry;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GeometryBuffer;
 import unsw.graphics.Point3DBuffer;
 import unsw.graphics.Shader;
 
@@ -23,6 +23,9 @@ import unsw.graphics.Shader;
  */
 public class Triangle3D {
     private List<Point3D> points;
+
+    // The points in graphics memory, created when the triangle is first drawn
+    private GeometryBuffer buffer;
     
     public Triangle3D(float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2) {
         List<Point3D> points = new ArrayList<Point3D>();
@@ -32,23 +35,24 @@ public class Triangle3D {
         this.points = points;
     }
 
-    public void draw(GL3 gl, CoordFrame3D frame) {        
-        Point3DBuffer buffer = new Point3DBuffer(points);
-
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, points.size() * 3 * Float.BYTES,
-                buffer.getBuffer(), GL.GL_STATIC_DRAW);
-
-        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
+    public void draw(GL3 gl, CoordFrame3D frame) {
+        if (buffer == null)
+            buffer = new GeometryBuffer(new Point3DBuffer(points));
         Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawArrays(GL3.GL_TRIANGLES, 0, points.size());
-
-        gl.glDeleteBuffers(1, names, 0);
+        buffer.draw(gl, GL3.GL_TRIANGLES);
     }
     
     public void draw(GL3 gl) {
         draw(gl, CoordFrame3D.identity());
     }
+
+    /**
+     * Release the graphics memory used by this triangle. It is copied again if
+     * the triangle is drawn afterwards.
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        if (buffer != null)
+            buffer.destroy(gl);
+    }
 }
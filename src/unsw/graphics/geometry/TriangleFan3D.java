@@ -10,6 +10,7 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GeometryBuffer;
 import unsw.graphics.Point3DBuffer;
 import unsw.graphics.Shader;
 
@@ -24,6 +25,9 @@ import unsw.graphics.Shader;
 public class TriangleFan3D {
     private List<Point3D> points;
 
+    // The points in graphics memory, created when the triangle fan is first drawn
+    private GeometryBuffer buffer;
+
     public TriangleFan3D(List<Point3D> points) {
         this.points = new ArrayList<Point3D>(points);
     }
@@ -54,19 +58,10 @@ public class TriangleFan3D {
      * @param gl
      */
     public void draw(GL3 gl, CoordFrame3D frame) {
-        Point3DBuffer buffer = new Point3DBuffer(points);
-
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, points.size() * 3 * Float.BYTES,
-                buffer.getBuffer(), GL.GL_STATIC_DRAW);
-
-        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
+        if (buffer == null)
+            buffer = new GeometryBuffer(new Point3DBuffer(points));
         Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawArrays(GL.GL_TRIANGLE_FAN, 0, points.size());
-
-        gl.glDeleteBuffers(1, names, 0);
+        buffer.draw(gl, GL.GL_TRIANGLE_FAN);
     }
     
     /**
@@ -77,4 +72,13 @@ public class TriangleFan3D {
         draw(gl, CoordFrame3D.identity());
     }
 
+    /**
+     * Release the graphics memory used by this triangle fan. It is copied again if
+     * the triangle fan is drawn afterwards.
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        if (buffer != null)
+            buffer.destroy(gl);
+    }
 }
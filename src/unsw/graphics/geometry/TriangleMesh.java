@@ -3,26 +3,22 @@
  */
 package unsw.graphics.geometry;
 
+import java.awt.Color;
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-
-import org.smurn.jply.Element;
-import org.smurn.jply.ElementReader;
-import org.smurn.jply.PlyReader;
-import org.smurn.jply.PlyReaderFile;
-import org.smurn.jply.util.NormalMode;
-import org.smurn.jply.util.NormalizingPlyReader;
-import org.smurn.jply.util.TesselationMode;
-import org.smurn.jply.util.TextureMode;
+import java.util.List;
 
 import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 import com.jogamp.opengl.util.GLBuffers;
 
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GeometryBuffer;
+import unsw.graphics.Matrix4;
 import unsw.graphics.Point3DBuffer;
 import unsw.graphics.Shader;
-import unsw.graphics.Vector3;
 
 /**
  * A triangle mesh in 3D space
@@ -30,7 +26,8 @@ import unsw.graphics.Vector3;
  * The mesh must be initialised before use. During initialisation the data will
  * be copied to graphics memory to avoid unnecessary repeated copying.
  * 
- * The normals computed during construction of this mesh are NOT normalised. 
+ * The normals computed during construction of this mesh are NOT normalised
+ * unless that is asked for.
  * 
  * @author Robert Clifton-Everest
  *
@@ -68,6 +65,46 @@ public class TriangleMesh {
      */
     private int indicesName;
 
+    /**
+     * The name of the vertex array object according to OpenGL. It records
+     * which buffers the vertices, normals and indices come from, so drawing
+     * only needs to bind it.
+     */
+    private int vertexArrayName;
+
+    /**
+     * The names of the buffers holding the matrix and color of each instance
+     * for {@link #drawInstanced(GL3, List)}. They are only created when the
+     * mesh is first drawn that way.
+     */
+    private int instanceMatricesName;
+    private int instanceColorsName;
+
+    /**
+     * Whether the mesh is uploaded in the compact formats of
+     * {@link PackedMesh}.
+     */
+    private boolean compact;
+
+    /**
+     * The packed mesh, if it is compact. Kept after initialisation for its
+     * index type and dequantization.
+     */
+    private PackedMesh packed;
+
+    /**
+     * The matrix that maps the packed positions back to the mesh, if it is
+     * compact.
+     */
+    private Matrix4 dequantization;
+
+    /**
+     * Room for packing instance matrices and colors, kept between draws.
+     */
+    private float[] instanceValues = new float[0];
+    private FloatBuffer instanceMatrices;
+    private FloatBuffer instanceColors;
+
     /**
      * Construct a triangle with the given PLY file.
      * 
@@ -78,118 +115,162 @@ public class TriangleMesh {
         this(plyFile, false);
     }
 
+    /**
+     * Construct a mesh from the given vertices, normals and indices.
+     * 
+     * The buffers are not copied, so they should not be modified afterwards.
+     * Constructing a mesh doesn't need OpenGL, so it can be done on any
+     * thread; only {@link #init(GL3)} has to be called on the OpenGL thread.
+     * 
+     * @param vertices
+     * @param normals The normal of each vertex, or null if there are none.
+     * @param indices Each set of 3 indices forms a triangle.
+     */
+    public TriangleMesh(Point3DBuffer vertices, Point3DBuffer normals, IntBuffer indices) {
+        if (normals != null && normals.capacity() != vertices.capacity())
+            throw new IllegalArgumentException("There are " + vertices.capacity()
+                    + " vertices but " + normals.capacity() + " normals");
+        if (indices.capacity() % 3 != 0)
+            throw new IllegalArgumentException("The number of indices must be a multiple of 3");
+        this.vertices = vertices;
+        this.normals = normals;
+        this.indices = indices;
+    }
+
     /**
      * Construct a triangle with the given PLY file. The third argument
      * indicates whether to generate vertex normals. If false, no normals are
      * generated.
      * 
+     * The mesh is loaded from the {@link MeshCache} if it has an up to date
+     * copy, and saved to it otherwise.
+     * 
      * @param plyFile
      * @param vertexNormals
      * @throws IOException
      */
     public TriangleMesh(String plyFile, boolean vertexNormals)
             throws IOException {
-        // Setup an initial reader
-        PlyReader rawReader = new PlyReaderFile(plyFile);
-
-        // Use a normalizing reader to get mesh only containing triangles
-        NormalizingPlyReader reader = new NormalizingPlyReader(rawReader,
-                TesselationMode.TRIANGLES, NormalMode.PASS_THROUGH,
-                TextureMode.PASS_THROUGH);
-
-        vertices = new Point3DBuffer(reader.getElementCount("vertex"));
-        indices = GLBuffers
-                .newDirectIntBuffer(reader.getElementCount("face") * 3);
-        if (vertexNormals)
-            normals = new Point3DBuffer(reader.getElementCount("vertex"));
-
-        ElementReader elReader = reader.nextElementReader();
-        while (elReader != null) {
-            if (elReader.getElementType().getName().equals("vertex")) {
-                readVertices(elReader);
-            } else if (elReader.getElementType().getName().equals("face")) {
-                readIndices(elReader);
-            }
-            elReader = reader.nextElementReader();
-        }
-        
-        //Compute the normals
-        if (vertexNormals)
-            computeNormals();
+        this(plyFile, vertexNormals ? NormalWeighting.EQUAL : null, false);
     }
 
     /**
-     * Compute normals for the mesh. Note that they are not normalised normals. 
-     * If a shader depends on the normals, it must normalise them internally.
+     * Construct a triangle with the given PLY file, generating vertex normals
+     * with the given weighting.
+     * 
+     * @param plyFile
+     * @param weighting How to weight the triangles around each vertex, or
+     *            null to not generate normals.
+     * @param normalize Whether to make the normals unit vectors.
+     * @throws IOException
      */
-    private void computeNormals() {
-        // Initialise the normals to the zero vector
-        for (int i = 0; i < normals.capacity(); i++) {
-            normals.put(i, 0, 0, 0);
+    public TriangleMesh(String plyFile, NormalWeighting weighting, boolean normalize)
+            throws IOException {
+        this(plyFile, new MeshOptions().normals(weighting, normalize));
+    }
+
+    /**
+     * Construct a triangle with the given PLY file and options.
+     * 
+     * The mesh is loaded from the {@link MeshCache} if it has an up to date
+     * copy loaded with the same options, and saved to it otherwise.
+     * 
+     * @param plyFile
+     * @param options
+     * @throws IOException
+     */
+    public TriangleMesh(String plyFile, MeshOptions options) throws IOException {
+        MeshCache cached = MeshCache.load(plyFile, options);
+        if (cached != null) {
+            vertices = cached.vertices;
+            normals = cached.normals;
+            indices = cached.indices;
+            compact = options.isCompact();
+            return;
         }
-        
-        // Add the face normals of all surrounding faces.
-        for (int i = 0; i < indices.capacity() / 3; i++) {
-            int index1 = indices.get(i*3);
-            int index2 = indices.get(i*3 + 1);
-            int index3 = indices.get(i*3 + 2);
-            
-            Point3D p1 = vertices.get(index1);
-            Point3D p2 = vertices.get(index2);
-            Point3D p3 = vertices.get(index3);
-            
-            Vector3 normal = normal(p1, p2, p3);
-            
-            normals.put(index1, normals.get(index1).translate(normal));
-            normals.put(index2, normals.get(index2).translate(normal));
-            normals.put(index3, normals.get(index3).translate(normal));
+
+        compact = options.isCompact();
+        PlyParser ply = PlyParser.parse(plyFile);
+        vertices = ply.vertices;
+        indices = ply.indices;
+
+        if (options.isOptimized()) {
+            MeshOptimizer.optimizeVertexCache(indices, vertices.capacity());
+            if (options.isReducingOverdraw())
+                MeshOptimizer.optimizeOverdraw(indices, vertices,
+                        options.getOverdrawThreshold());
+            MeshOptimizer.optimizeVertexFetch(indices, vertices, null);
+        }
+
+        //Compute the normals
+        if (options.getNormalWeighting() != null) {
+            normals = new Point3DBuffer(vertices.capacity());
+            MeshNormals.compute(vertices, indices, normals, options.getNormalWeighting(),
+                    options.isNormalized());
         }
+
+        MeshCache.store(plyFile, vertices, normals, indices, options);
     }
 
     /**
-     * For the given 3 points that make up a triangle, compute the face normal.
-     * @param p1
-     * @param p2
-     * @param p3
-     * @return
+     * Upload this mesh in the compact formats of {@link PackedMesh} rather
+     * than as floats and ints, which takes about half the graphics memory.
+     * The mesh looks the same with any shader, as the positions are mapped
+     * back by the model matrix (or instance matrices) it is drawn with.
+     *
+     * Must be called before {@link #init(GL3)}.
+     *
+     * @param compact
      */
-    private Vector3 normal(Point3D p1, Point3D p2, Point3D p3) {
-        Vector3 a = p2.minus(p1);
-        Vector3 b = p3.minus(p1);
-        
-        return a.cross(b).normalize();
+    public void setCompact(boolean compact) {
+        this.compact = compact;
     }
 
-    private void readIndices(ElementReader elReader)
-            throws IOException {
-        int indicesIndex = 0;
-        Element triangle = elReader.readElement();
-        while (triangle != null) {
-
-            int[] vertIndices = triangle.getIntList("vertex_index");
-            for (int index : vertIndices) {
-                indices.put(indicesIndex, index);
-                indicesIndex++;
-            }
-            triangle = elReader.readElement();
-        }
+    public boolean isCompact() {
+        return compact;
     }
 
-    private void readVertices(ElementReader elReader)
-            throws IOException {
-        int verticesIndex = 0;
-        Element vertex = elReader.readElement();
-        while (vertex != null) {
-            float x = (float) vertex.getDouble("x");
-            float y = (float) vertex.getDouble("y");
-            float z = (float) vertex.getDouble("z");
-            vertices.put(verticesIndex, x, y, z);
-            verticesIndex++;
-            vertex = elReader.readElement();
-        }
+    /**
+     * The number of bytes this mesh takes in graphics memory once it is
+     * initialised, not counting the buffers used to draw instances.
+     *
+     * @return
+     */
+    public long getGpuMemory() {
+        int vertexCount = vertices.capacity();
+        long indexCount = indices.capacity();
+        if (compact)
+            return (long) vertexCount * PackedMesh.vertexStride(normals != null)
+                    + indexCount * PackedMesh.indexBytes(vertexCount);
+        return vertexCount * 3L * Float.BYTES * (normals != null ? 2 : 1)
+                + indexCount * Integer.BYTES;
     }
 
     public void init(GL3 gl) {
+        init(gl, null);
+    }
+
+    /**
+     * Do the work of initialising this mesh that doesn't need OpenGL, such as
+     * packing a compact mesh, so that {@link #init(GL3)} has less to do. Can
+     * be called on any thread.
+     */
+    void prepare() {
+        if (compact && packed == null)
+            packed = PackedMesh.pack(vertices, normals, indices);
+    }
+
+    /**
+     * Initialise this mesh. If uploads isn't null, graphics memory is only
+     * allocated for the buffers, and the copies that fill them are added to
+     * uploads to be done later. The mesh can't be drawn until they are done.
+     */
+    void init(GL3 gl, List<BufferUpload> uploads) {
+        if (compact) {
+            initCompact(gl, uploads);
+            return;
+        }
+
         // Generate the names for the buffers.
         int[] names = new int[3];
         gl.glGenBuffers(3, names, 0);
@@ -198,43 +279,298 @@ public class TriangleMesh {
         normalsName = names[2];
 
         // Copy the data for the vertices
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, verticesName);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER,
-                vertices.capacity() * 3 * Float.BYTES, vertices.getBuffer(),
-                GL.GL_STATIC_DRAW);
+        bufferData(gl, GL.GL_ARRAY_BUFFER, verticesName,
+                vertices.capacity() * 3 * Float.BYTES, vertices.getBuffer(), uploads);
         
         if (normals != null) {
-            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, normalsName);
-            gl.glBufferData(GL.GL_ARRAY_BUFFER,
-                    normals.capacity() * 3 * Float.BYTES, normals.getBuffer(),
-                    GL.GL_STATIC_DRAW);
+            bufferData(gl, GL.GL_ARRAY_BUFFER, normalsName,
+                    normals.capacity() * 3 * Float.BYTES, normals.getBuffer(), uploads);
         }
 
         // Copy the data for the indices
-        gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
-        gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER,
-                indices.capacity() * Integer.BYTES, indices, GL.GL_STATIC_DRAW);
-    }
+        bufferData(gl, GL.GL_ELEMENT_ARRAY_BUFFER, indicesName,
+                indices.capacity() * Integer.BYTES, indices, uploads);
 
-    public void draw(GL3 gl, CoordFrame3D frame) {
-        gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+        // Record where everything is in a vertex array object. A mesh
+        // without normals leaves the normal attribute disabled, so it doesn't
+        // matter what other meshes have done.
+        int[] arrays = new int[1];
+        gl.glGenVertexArrays(1, arrays, 0);
+        vertexArrayName = arrays[0];
+        gl.glBindVertexArray(vertexArrayName);
 
+        gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
         gl.glBindBuffer(GL.GL_ARRAY_BUFFER, verticesName);
         gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
+        gl.glEnableVertexAttribArray(Shader.POSITION);
         if (normals != null) {
             gl.glBindBuffer(GL.GL_ARRAY_BUFFER, normalsName);
             gl.glVertexAttribPointer(Shader.NORMAL, 3, GL.GL_FLOAT, false, 0, 0);
+            gl.glEnableVertexAttribArray(Shader.NORMAL);
+        }
+        GeometryBuffer.bindDefaultVertexArray(gl);
+    }
+
+    /**
+     * Bind the given buffer and fill it with the given data, or if uploads
+     * isn't null, allocate it and add the copy to uploads.
+     */
+    private static void bufferData(GL3 gl, int target, int name, long bytes, Buffer data,
+            List<BufferUpload> uploads) {
+        gl.glBindBuffer(target, name);
+        if (uploads == null) {
+            gl.glBufferData(target, bytes, data, GL.GL_STATIC_DRAW);
+        } else {
+            gl.glBufferData(target, bytes, null, GL.GL_STATIC_DRAW);
+            uploads.add(new BufferUpload(name, data, bytes));
         }
+    }
+
+    /**
+     * Upload the packed mesh. The positions and normals are interleaved in
+     * the vertex buffer, which reuses verticesName.
+     */
+    private void initCompact(GL3 gl, List<BufferUpload> uploads) {
+        prepare();
+        dequantization = packed.getDequantization();
+
+        int[] names = new int[2];
+        gl.glGenBuffers(2, names, 0);
+        verticesName = names[0];
+        indicesName = names[1];
+
+        bufferData(gl, GL.GL_ARRAY_BUFFER, verticesName, packed.vertexData.capacity(),
+                packed.vertexData, uploads);
+        bufferData(gl, GL.GL_ELEMENT_ARRAY_BUFFER, indicesName, packed.indexData.capacity(),
+                packed.indexData, uploads);
+
+        int[] arrays = new int[1];
+        gl.glGenVertexArrays(1, arrays, 0);
+        vertexArrayName = arrays[0];
+        gl.glBindVertexArray(vertexArrayName);
+
+        // Normalized attributes are read by the shader as floats in [-1, 1],
+        // so the shaders don't need to know the mesh is compact
+        gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, verticesName);
+        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_SHORT, true, packed.stride, 0);
+        gl.glEnableVertexAttribArray(Shader.POSITION);
+        if (normals != null) {
+            gl.glVertexAttribPointer(Shader.NORMAL, 4, GL3.GL_INT_2_10_10_10_REV, true,
+                    packed.stride, PackedMesh.POSITION_BYTES);
+            gl.glEnableVertexAttribArray(Shader.NORMAL);
+        }
+        GeometryBuffer.bindDefaultVertexArray(gl);
+    }
+
+    /**
+     * The model matrix to draw this mesh with in the given frame.
+     */
+    private Matrix4 modelMatrix(CoordFrame3D frame) {
+        return compact ? frame.getMatrix().multiply(dequantization) : frame.getMatrix();
+    }
+
+    private int indexType() {
+        return compact ? packed.indexType : GL.GL_UNSIGNED_INT;
+    }
+
+    public void draw(GL3 gl, CoordFrame3D frame) {
+        gl.glBindVertexArray(vertexArrayName);
+        Shader.setModelMatrix(gl, modelMatrix(frame));
+        gl.glDrawElements(GL3.GL_TRIANGLES, indices.capacity(), indexType(), 0);
+        GeometryBuffer.bindDefaultVertexArray(gl);
+    }
+
+    /**
+     * Draw a copy of this mesh in each of the given frames, with a single
+     * draw call.
+     * 
+     * The current shader must read the matrix of each instance from the
+     * instance_matrix attribute, like the INSTANCED variant of
+     * shaders/vertex_lit.glsl.
+     * 
+     * @param gl
+     * @param frames
+     */
+    public void drawInstanced(GL3 gl, List<CoordFrame3D> frames) {
+        drawInstanced(gl, frames, null);
+    }
+
+    /**
+     * Draw a copy of this mesh in each of the given frames with the given
+     * colors, with a single draw call. The colors are multiplied by the pen
+     * color.
+     * 
+     * @param gl
+     * @param frames
+     * @param colors The color of each copy, or null to use the pen color
+     */
+    public void drawInstanced(GL3 gl, List<CoordFrame3D> frames, List<Color> colors) {
+        int count = frames.size();
+        if (instanceValues.length < count * 16)
+            instanceValues = new float[count * 16];
+        if (instanceMatrices == null || instanceMatrices.capacity() < count * 16)
+            instanceMatrices = GLBuffers.newDirectFloatBuffer(count * 16);
+        for (int i = 0; i < count; i++) {
+            frames.get(i).getMatrix().getValues(instanceValues, i * 16);
+            if (compact)
+                packed.dequantize(instanceValues, i * 16);
+        }
+        instanceMatrices.clear();
+        instanceMatrices.put(instanceValues, 0, count * 16).flip();
+
+        if (colors != null) {
+            if (instanceColors == null || instanceColors.capacity() < count * 3)
+                instanceColors = GLBuffers.newDirectFloatBuffer(count * 3);
+            instanceColors.clear();
+            for (int i = 0; i < count; i++) {
+                Color color = colors.get(i);
+                instanceColors.put(color.getRed() / 255f).put(color.getGreen() / 255f)
+                        .put(color.getBlue() / 255f);
+            }
+            instanceColors.flip();
+        }
+        drawInstances(gl, CoordFrame3D.identity(), instanceMatrices,
+                colors == null ? null : instanceColors, count);
+    }
+
+    /**
+     * Draw count copies of this mesh with a single draw call, with the
+     * matrices (and optionally colors) of the copies already packed into
+     * buffers. This avoids creating a frame for every copy.
+     * 
+     * The matrix of each copy is applied before the model matrix, which comes
+     * from the given frame. If the mesh is compact, the matrices are copied to
+     * apply its dequantization to them.
+     * 
+     * @param gl
+     * @param frame The frame all of the copies are drawn in
+     * @param matrices 16 floats for each copy, in column-major order,
+     *        starting at the position of the buffer
+     * @param colors 3 floats (red, green, blue) for each copy, starting at the
+     *        position of the buffer, or null to use the pen color
+     * @param count The number of copies
+     */
+    public void drawInstanced(GL3 gl, CoordFrame3D frame, FloatBuffer matrices,
+            FloatBuffer colors, int count) {
+        if (compact && count > 0) {
+            if (instanceValues.length < count * 16)
+                instanceValues = new float[count * 16];
+            if (instanceMatrices == null || instanceMatrices.capacity() < count * 16)
+                instanceMatrices = GLBuffers.newDirectFloatBuffer(count * 16);
+            matrices.duplicate().get(instanceValues, 0, count * 16);
+            for (int i = 0; i < count; i++)
+                packed.dequantize(instanceValues, i * 16);
+            instanceMatrices.clear();
+            instanceMatrices.put(instanceValues, 0, count * 16).flip();
+            matrices = instanceMatrices;
+        }
+        drawInstances(gl, frame, matrices, colors, count);
+    }
+
+    /**
+     * Draw count copies of this mesh with matrices that already include the
+     * dequantization, if the mesh is compact.
+     */
+    private void drawInstances(GL3 gl, CoordFrame3D frame, FloatBuffer matrices,
+            FloatBuffer colors, int count) {
+        if (count == 0)
+            return;
+        gl.glBindVertexArray(vertexArrayName);
+        if (instanceMatricesName == 0)
+            initInstancing(gl);
+
+        // The buffers are replaced rather than updated so that the driver
+        // doesn't have to wait for the last instanced draw
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, instanceMatricesName);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) count * 16 * Float.BYTES, matrices,
+                GL3.GL_STREAM_DRAW);
+        if (colors != null) {
+            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, instanceColorsName);
+            gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) count * 3 * Float.BYTES, colors,
+                    GL3.GL_STREAM_DRAW);
+            gl.glEnableVertexAttribArray(Shader.INSTANCE_COLOR);
+        } else {
+            // Every copy gets white, which leaves the pen color unchanged
+            gl.glDisableVertexAttribArray(Shader.INSTANCE_COLOR);
+            gl.glVertexAttrib3f(Shader.INSTANCE_COLOR, 1, 1, 1);
+        }
+
         Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawElements(GL3.GL_TRIANGLES, indices.capacity(),
-                GL.GL_UNSIGNED_INT, 0);
+        gl.glDrawElementsInstanced(GL3.GL_TRIANGLES, indices.capacity(), indexType(), 0,
+                count);
+        GeometryBuffer.bindDefaultVertexArray(gl);
+    }
+
+    /**
+     * Create the instance buffers and add them to the vertex array object,
+     * which must be bound.
+     */
+    private void initInstancing(GL3 gl) {
+        int[] names = new int[2];
+        gl.glGenBuffers(2, names, 0);
+        instanceMatricesName = names[0];
+        instanceColorsName = names[1];
+
+        // A mat4 attribute is four vec4 attributes, one for each column. The
+        // divisor makes each one advance once per instance rather than once
+        // per vertex.
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, instanceMatricesName);
+        for (int col = 0; col < 4; col++) {
+            gl.glVertexAttribPointer(Shader.INSTANCE_MATRIX + col, 4, GL.GL_FLOAT, false,
+                    16 * Float.BYTES, col * 4 * Float.BYTES);
+            gl.glEnableVertexAttribArray(Shader.INSTANCE_MATRIX + col);
+            gl.glVertexAttribDivisor(Shader.INSTANCE_MATRIX + col, 1);
+        }
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, instanceColorsName);
+        gl.glVertexAttribPointer(Shader.INSTANCE_COLOR, 3, GL.GL_FLOAT, false, 0, 0);
+        gl.glVertexAttribDivisor(Shader.INSTANCE_COLOR, 1);
     }
 
     public void destroy(GL3 gl) {
+        gl.glDeleteVertexArrays(1, new int[] { vertexArrayName }, 0);
         gl.glDeleteBuffers(3, new int[] { verticesName, indicesName, normalsName }, 0);
+        if (instanceMatricesName != 0) {
+            gl.glDeleteBuffers(2, new int[] { instanceMatricesName, instanceColorsName }, 0);
+            instanceMatricesName = 0;
+            instanceColorsName = 0;
+        }
     }
 
     public void draw(GL3 gl) {
         draw(gl, CoordFrame3D.identity());
     }
+
+    /**
+     * Get the vertices of this mesh.
+     * 
+     * The buffer is shared with the mesh, so it should not be modified.
+     * 
+     * @return
+     */
+    public Point3DBuffer getVertices() {
+        return vertices;
+    }
+
+    /**
+     * Get the normals of this mesh, or null if it has none.
+     * 
+     * The buffer is shared with the mesh, so it should not be modified.
+     * 
+     * @return
+     */
+    public Point3DBuffer getNormals() {
+        return normals;
+    }
+
+    /**
+     * Get the indices of this mesh. Each set of 3 indices forms a triangle.
+     * 
+     * The buffer is shared with the mesh, so it should not be modified.
+     * 
+     * @return
+     */
+    public IntBuffer getIndices() {
+        return indices;
+    }
 }
@@ -0,0 +1,100 @@
+package unsw.graphics.tests;
+
+import java.awt.Color;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL3;
+
+import junit.framework.TestCase;
+import unsw.graphics.Batch2D;
+import unsw.graphics.CoordFrame2D;
+import unsw.graphics.Matrix3;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Polygon2D;
+
+/**
+ * Checks that the batch set with {@link Shader#setBatch(Batch2D)} is flushed
+ * before the 2D view matrix changes.
+ */
+public class Batch2DTest extends TestCase {
+
+    /**
+     * A GL3 that does nothing, so the view matrix can be set without OpenGL.
+     */
+    private static final GL3 GL = (GL3) Proxy.newProxyInstance(GL3.class.getClassLoader(),
+            new Class<?>[] { GL3.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    Class<?> type = method.getReturnType();
+                    if (type == boolean.class)
+                        return false;
+                    if (type == int.class)
+                        return 0;
+                    if (type == long.class)
+                        return 0L;
+                    if (type == float.class)
+                        return 0f;
+                    if (type == double.class)
+                        return 0.0;
+                    return null;
+                }
+            });
+
+    /**
+     * A batch that counts its flushes rather than drawing.
+     */
+    private static class CountingBatch extends Batch2D {
+        int flushes;
+
+        @Override
+        public void flush(GL3 gl) {
+            if (getVertexCount() > 0)
+                flushes++;
+            clear();
+        }
+    }
+
+    private CountingBatch batch;
+
+    @Override
+    protected void setUp() {
+        Shader.setViewMatrix(GL, Matrix3.identity());
+        batch = new CountingBatch();
+        Shader.setBatch(batch);
+    }
+
+    @Override
+    protected void tearDown() {
+        Shader.setBatch(null);
+    }
+
+    private void addSquare() {
+        batch.add(new Polygon2D(0, 0, 1, 0, 1, 1, 0, 1), CoordFrame2D.identity(), Color.RED);
+    }
+
+    @Test
+    public void testFlushOnViewChange() {
+        addSquare();
+        Shader.setViewMatrix(GL, Matrix3.translation(1, 0));
+        assertEquals(1, batch.flushes);
+        assertEquals(0, batch.getVertexCount());
+
+        // What is added after the change stays in the batch until the next one
+        addSquare();
+        assertEquals(6, batch.getVertexCount());
+        Shader.setViewMatrix(GL, Matrix3.identity());
+        assertEquals(2, batch.flushes);
+    }
+
+    @Test
+    public void testNoFlushForSameView() {
+        addSquare();
+        Shader.setViewMatrix(GL, Matrix3.identity());
+        assertEquals(0, batch.flushes);
+        assertEquals(6, batch.getVertexCount());
+    }
+}
@@ -0,0 +1,210 @@
+package unsw.graphics.tests;
+
+import java.nio.FloatBuffer;
+
+import org.junit.Test;
+
+import com.jogamp.common.nio.Buffers;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame2D;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.MatrixKind;
+import unsw.graphics.Point2DBuffer;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Point3D;
+
+/**
+ * Checks that transforming whole buffers of points gives the same results as
+ * transforming the points one at a time.
+ */
+public class BulkTransformTest extends TestCase {
+
+    private static final float EPSILON = 0.0001f;
+
+    /**
+     * More points than fit in one block of the kernels.
+     */
+    private static final int SMALL = 1500;
+
+    /**
+     * More points than BulkTransform.PARALLEL_THRESHOLD, so the buffer is
+     * split into ranges transformed on the fork/join pool.
+     */
+    private static final int LARGE = 100000;
+
+    private static CoordFrame3D[] frames3D() {
+        return new CoordFrame3D[] {
+            CoordFrame3D.identity(),
+            CoordFrame3D.identity().translate(1, -2, 3),
+            CoordFrame3D.identity().rotateY(30).scale(2, 1, 0.5f).translate(1, 2, 3)
+        };
+    }
+
+    private static CoordFrame2D[] frames2D() {
+        return new CoordFrame2D[] {
+            CoordFrame2D.identity(),
+            CoordFrame2D.identity().translate(1, -2),
+            CoordFrame2D.identity().rotate(30).scale(2, 0.5f).translate(1, 2)
+        };
+    }
+
+    private static Point3DBuffer points3D(int count) {
+        Point3DBuffer points = new Point3DBuffer(count);
+        for (int i = 0; i < count; i++)
+            points.put(i, i % 17 - 8, i % 13 * 0.5f, -(i % 11));
+        return points;
+    }
+
+    private static Point2DBuffer points2D(int count) {
+        Point2DBuffer points = new Point2DBuffer(count);
+        for (int i = 0; i < count; i++)
+            points.put(i, i % 17 - 8, i % 13 * 0.5f);
+        return points;
+    }
+
+    private static void assertPointEquals(String message, Point3D expected, Point3D actual) {
+        assertEquals(message, expected.getX(), actual.getX(), EPSILON);
+        assertEquals(message, expected.getY(), actual.getY(), EPSILON);
+        assertEquals(message, expected.getZ(), actual.getZ(), EPSILON);
+    }
+
+    private static void assertPointEquals(String message, Point2D expected, Point2D actual) {
+        assertEquals(message, expected.getX(), actual.getX(), EPSILON);
+        assertEquals(message, expected.getY(), actual.getY(), EPSILON);
+    }
+
+    @Test
+    public void testKinds() {
+        CoordFrame3D[] frames = frames3D();
+        assertEquals(MatrixKind.IDENTITY, frames[0].getMatrix().getKind());
+        assertEquals(MatrixKind.TRANSLATION, frames[1].getMatrix().getKind());
+        assertEquals(MatrixKind.AFFINE, frames[2].getMatrix().getKind());
+        CoordFrame2D[] frames2D = frames2D();
+        assertEquals(MatrixKind.IDENTITY, frames2D[0].getMatrix().getKind());
+        assertEquals(MatrixKind.TRANSLATION, frames2D[1].getMatrix().getKind());
+        assertEquals(MatrixKind.AFFINE, frames2D[2].getMatrix().getKind());
+    }
+
+    private static void checkPointBuffer3D(int count, boolean inPlace) {
+        for (CoordFrame3D frame : frames3D()) {
+            Point3DBuffer src = points3D(count);
+            Point3DBuffer expected = points3D(count);
+            Point3DBuffer dst = inPlace ? src : new Point3DBuffer(count);
+            frame.transform(src, dst);
+            for (int i = 0; i < count; i++)
+                assertPointEquals(frame.getMatrix().getKind() + " point " + i,
+                        frame.transform(expected.get(i)), dst.get(i));
+        }
+    }
+
+    private static void checkPointBuffer2D(int count, boolean inPlace) {
+        for (CoordFrame2D frame : frames2D()) {
+            Point2DBuffer src = points2D(count);
+            Point2DBuffer expected = points2D(count);
+            Point2DBuffer dst = inPlace ? src : new Point2DBuffer(count);
+            frame.transform(src, dst);
+            for (int i = 0; i < count; i++)
+                assertPointEquals(frame.getMatrix().getKind() + " point " + i,
+                        frame.transform(expected.get(i)), dst.get(i));
+        }
+    }
+
+    @Test
+    public void testPointBuffer3D() {
+        checkPointBuffer3D(SMALL, false);
+        checkPointBuffer3D(SMALL, true);
+    }
+
+    @Test
+    public void testPointBuffer2D() {
+        checkPointBuffer2D(SMALL, false);
+        checkPointBuffer2D(SMALL, true);
+    }
+
+    @Test
+    public void testParallel3D() {
+        checkPointBuffer3D(LARGE, false);
+        checkPointBuffer3D(LARGE, true);
+    }
+
+    @Test
+    public void testParallel2D() {
+        checkPointBuffer2D(LARGE, false);
+        checkPointBuffer2D(LARGE, true);
+    }
+
+    @Test
+    public void testFloatBuffer3D() {
+        // Start part way into each buffer to check the positions are used
+        int count = SMALL, srcStart = 3, dstStart = 6;
+        for (CoordFrame3D frame : frames3D()) {
+            FloatBuffer src = Buffers.newDirectFloatBuffer(srcStart + count * 3);
+            FloatBuffer dst = Buffers.newDirectFloatBuffer(dstStart + count * 3);
+            for (int i = 0; i < src.capacity(); i++)
+                src.put(i, i % 23 - 11);
+            dst.put(0, 42);
+            src.position(srcStart);
+            dst.position(dstStart);
+            frame.transform(src, dst, count);
+            assertEquals(srcStart, src.position());
+            assertEquals(dstStart, dst.position());
+            assertEquals(42f, dst.get(0));
+            for (int i = 0; i < count; i++) {
+                int s = srcStart + 3 * i, d = dstStart + 3 * i;
+                Point3D expected = frame.transform(
+                        new Point3D(src.get(s), src.get(s + 1), src.get(s + 2)));
+                assertPointEquals(frame.getMatrix().getKind() + " point " + i, expected,
+                        new Point3D(dst.get(d), dst.get(d + 1), dst.get(d + 2)));
+            }
+        }
+    }
+
+    @Test
+    public void testFloatBuffer2D() {
+        int count = SMALL, srcStart = 2, dstStart = 4;
+        for (CoordFrame2D frame : frames2D()) {
+            FloatBuffer src = Buffers.newDirectFloatBuffer(srcStart + count * 2);
+            FloatBuffer dst = Buffers.newDirectFloatBuffer(dstStart + count * 2);
+            for (int i = 0; i < src.capacity(); i++)
+                src.put(i, i % 23 - 11);
+            dst.put(0, 42);
+            src.position(srcStart);
+            dst.position(dstStart);
+            frame.transform(src, dst, count);
+            assertEquals(srcStart, src.position());
+            assertEquals(dstStart, dst.position());
+            assertEquals(42f, dst.get(0));
+            for (int i = 0; i < count; i++) {
+                int s = srcStart + 2 * i, d = dstStart + 2 * i;
+                Point2D expected = frame.transform(new Point2D(src.get(s), src.get(s + 1)));
+                assertPointEquals(frame.getMatrix().getKind() + " point " + i, expected,
+                        new Point2D(dst.get(d), dst.get(d + 1)));
+            }
+        }
+    }
+
+    @Test
+    public void testFloatBufferInPlace3D() {
+        for (CoordFrame3D frame : frames3D()) {
+            Point3DBuffer expected = points3D(LARGE);
+            FloatBuffer floats = (FloatBuffer) points3D(LARGE).getBuffer();
+            frame.transform(floats, floats, LARGE);
+            Point3DBuffer result = new Point3DBuffer(floats);
+            for (int i = 0; i < LARGE; i++)
+                assertPointEquals(frame.getMatrix().getKind() + " point " + i,
+                        frame.transform(expected.get(i)), result.get(i));
+        }
+    }
+
+    @Test
+    public void testDestinationTooSmall() {
+        try {
+            CoordFrame3D.identity().transform(points3D(10), new Point3DBuffer(9));
+            fail("A destination smaller than the source should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
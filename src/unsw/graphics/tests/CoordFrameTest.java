@@ -0,0 +1,127 @@
+package unsw.graphics.tests;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame2D;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix3;
+import unsw.graphics.Matrix4;
+import unsw.graphics.MatrixKind;
+import unsw.graphics.geometry.Point3D;
+
+/**
+ * Checks that the lazily computed matrices of coordinate frames match the products of the
+ * individual steps.
+ */
+public class CoordFrameTest extends TestCase {
+
+    private static final float EPSILON = 0.0001f;
+
+    private static void assertValuesEqual(float[] expected, float[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertEquals("value " + i, expected[i], actual[i], EPSILON);
+    }
+
+    @Test
+    public void testChain3D() {
+        CoordFrame3D frame = CoordFrame3D.identity().rotateX(30).rotateY(-45)
+                .translate(1, 2, 3).scale(2, 2, 2);
+        Matrix4 expected = Matrix4.rotationX(30).multiply(Matrix4.rotationY(-45))
+                .multiply(Matrix4.translation(1, 2, 3)).multiply(Matrix4.scale(2, 2, 2));
+        assertValuesEqual(expected.getValues(), frame.getMatrix().getValues());
+        assertEquals(MatrixKind.AFFINE, frame.getMatrix().getKind());
+
+        // The cached matrix is reused
+        assertSame(frame.getMatrix(), frame.getMatrix());
+
+        // Frames built on a frame whose matrix is known start from it
+        CoordFrame3D child = frame.rotateZ(90).translate(new Point3D(0, 1, 0));
+        expected = expected.multiply(Matrix4.rotationZ(90))
+                .multiply(Matrix4.translation(0, 1, 0));
+        assertValuesEqual(expected.getValues(), child.getMatrix().getValues());
+    }
+
+    @Test
+    public void testFusion3D() {
+        CoordFrame3D base = CoordFrame3D.identity().rotateY(10);
+        CoordFrame3D fused = base.translate(1, 0, 0).translate(0, 2, 0).translate(0, 0, 3)
+                .rotateZ(20).rotateZ(25).scale(2, 1, 1).scale(1, 3, 1);
+        Matrix4 expected = Matrix4.rotationY(10).multiply(Matrix4.translation(1, 2, 3))
+                .multiply(Matrix4.rotationZ(45)).multiply(Matrix4.scale(2, 3, 1));
+        assertValuesEqual(expected.getValues(), fused.getMatrix().getValues());
+
+        // Sharing an intermediate frame does not affect either branch
+        CoordFrame3D shared = base.translate(1, 0, 0);
+        CoordFrame3D a = shared.translate(0, 1, 0);
+        CoordFrame3D b = shared.rotateX(90);
+        assertValuesEqual(Matrix4.rotationY(10).multiply(Matrix4.translation(1, 1, 0))
+                .getValues(), a.getMatrix().getValues());
+        assertValuesEqual(Matrix4.rotationY(10).multiply(Matrix4.translation(1, 0, 0))
+                .multiply(Matrix4.rotationX(90)).getValues(), b.getMatrix().getValues());
+        assertValuesEqual(Matrix4.rotationY(10).multiply(Matrix4.translation(1, 0, 0))
+                .getValues(), shared.getMatrix().getValues());
+    }
+
+    @Test
+    public void testSharedParent3D() {
+        CoordFrame3D shared = CoordFrame3D.identity().rotateY(10).translate(1, 0, 0)
+                .scale(2, 2, 2);
+        CoordFrame3D a = shared.translate(0, 1, 0);
+        CoordFrame3D b = shared.rotateX(90);
+        assertFalse(shared.isComputed());
+
+        // Computing one branch caches the shared frame, so the other branch
+        // starts from it rather than applying the shared steps again
+        Matrix4 expected = Matrix4.rotationY(10).multiply(Matrix4.translation(1, 0, 0))
+                .multiply(Matrix4.scale(2, 2, 2));
+        assertValuesEqual(expected.multiply(Matrix4.translation(0, 1, 0)).getValues(),
+                a.getMatrix().getValues());
+        assertTrue(shared.isComputed());
+        assertValuesEqual(expected.getValues(), shared.getMatrix().getValues());
+        assertValuesEqual(expected.multiply(Matrix4.rotationX(90)).getValues(),
+                b.getMatrix().getValues());
+
+        // Frames with only one child are not cached along the way
+        CoordFrame3D middle = CoordFrame3D.identity().rotateY(10).translate(1, 0, 0);
+        middle.scale(2, 2, 2).getMatrix();
+        assertFalse(middle.isComputed());
+    }
+
+    @Test
+    public void testSharedParent2D() {
+        CoordFrame2D shared = CoordFrame2D.identity().rotate(10).translate(1, 0);
+        CoordFrame2D a = shared.scale(2, 2);
+        CoordFrame2D b = shared.rotate(90);
+        assertFalse(shared.isComputed());
+        Matrix3 expected = Matrix3.rotation(10).multiply(Matrix3.translation(1, 0));
+        assertValuesEqual(expected.multiply(Matrix3.scale(2, 2)).getValues(),
+                a.getMatrix().getValues());
+        assertTrue(shared.isComputed());
+        assertValuesEqual(expected.multiply(Matrix3.rotation(90)).getValues(),
+                b.getMatrix().getValues());
+    }
+
+    @Test
+    public void testDeepChain() {
+        // Long chains are computed without recursion
+        CoordFrame3D frame = CoordFrame3D.identity();
+        for (int i = 0; i < 100000; i++)
+            frame = frame.rotateY(1).translate(0, 0, 1);
+        Point3D p = frame.transform(new Point3D(0, 0, 0));
+        assertTrue(Float.isFinite(p.getX()) && Float.isFinite(p.getZ()));
+    }
+
+    @Test
+    public void testChain2D() {
+        CoordFrame2D frame = CoordFrame2D.identity().translate(1, 2).translate(3, 4)
+                .rotate(30).rotate(15).scale(2, 3).horizontalShear(0.5f).verticalShear(0.25f);
+        Matrix3 expected = Matrix3.translation(4, 6).multiply(Matrix3.rotation(45))
+                .multiply(Matrix3.scale(2, 3)).multiply(Matrix3.horizontalShear(0.5f))
+                .multiply(Matrix3.verticalShear(0.25f));
+        assertValuesEqual(expected.getValues(), frame.getMatrix().getValues());
+        assertEquals(MatrixKind.TRANSLATION,
+                CoordFrame2D.identity().translate(1, 1).getMatrix().getKind());
+    }
+}
@@ -0,0 +1,89 @@
+package unsw.graphics.tests;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+import unsw.graphics.voxel.GreedyMesher;
+import unsw.graphics.voxel.VoxelGrid;
+
+/**
+ * Checks that the meshes built for voxel chunks have the faces they should.
+ */
+public class GreedyMesherTest extends TestCase {
+
+    private static int quads(TriangleMesh mesh) {
+        return mesh == null ? 0 : mesh.getIndices().capacity() / 6;
+    }
+
+    private static float distance(Point3D a, Point3D b) {
+        float dx = a.getX() - b.getX(), dy = a.getY() - b.getY(), dz = a.getZ() - b.getZ();
+        return (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
+    }
+
+    /**
+     * The total area of the faces of the mesh.
+     */
+    private static float area(TriangleMesh mesh) {
+        Point3DBuffer vertices = mesh.getVertices();
+        float area = 0;
+        for (int q = 0; q < vertices.capacity(); q += 4) {
+            Point3D p0 = vertices.get(q);
+            area += distance(p0, vertices.get(q + 1)) * distance(p0, vertices.get(q + 3));
+        }
+        return area;
+    }
+
+    @Test
+    public void testSingleVoxel() {
+        VoxelGrid grid = new VoxelGrid(4, 4, 4);
+        grid.set(1, 2, 3, true);
+        TriangleMesh mesh = GreedyMesher.mesh(grid, 0, 0, 0);
+        assertEquals(6, quads(mesh));
+
+        // Every normal points out of the cube
+        Point3DBuffer vertices = mesh.getVertices();
+        Point3DBuffer normals = mesh.getNormals();
+        for (int i = 0; i < vertices.capacity(); i++) {
+            Point3D p = vertices.get(i);
+            Point3D n = normals.get(i);
+            Point3D outside = p.translate(n.getX() * 0.5f, n.getY() * 0.5f, n.getZ() * 0.5f);
+            assertFalse(outside.getX() > 1 && outside.getX() < 2
+                    && outside.getY() > 2 && outside.getY() < 3
+                    && outside.getZ() > 3 && outside.getZ() < 4);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        VoxelGrid grid = new VoxelGrid(40, 40, 40);
+        assertNull(GreedyMesher.mesh(grid, 1, 1, 1));
+    }
+
+    @Test
+    public void testBoxIsMerged() {
+        VoxelGrid grid = new VoxelGrid(32, 32, 32);
+        grid.fill(2, 3, 4, 12, 8, 10, true);
+        TriangleMesh mesh = GreedyMesher.mesh(grid, 0, 0, 0);
+        // Interior faces are hidden and each side is a single rectangle
+        assertEquals(6, quads(mesh));
+        assertEquals(2 * (10*5 + 10*6 + 5*6), area(mesh), 0.0001f);
+    }
+
+    @Test
+    public void testChunkBoundary() {
+        int n = VoxelGrid.CHUNK_SIZE;
+        VoxelGrid grid = new VoxelGrid(2 * n, n, n);
+        // A slab that crosses from the first chunk into the second
+        grid.fill(n - 4, 0, 0, n + 4, 1, 1, true);
+
+        // Neither chunk draws the faces where the slab crosses the boundary
+        TriangleMesh first = GreedyMesher.mesh(grid, 0, 0, 0);
+        TriangleMesh second = GreedyMesher.mesh(grid, 1, 0, 0);
+        assertEquals(5, quads(first));
+        assertEquals(5, quads(second));
+        assertEquals(2 * (8 + 8 + 1), area(first) + area(second), 0.0001f);
+    }
+}
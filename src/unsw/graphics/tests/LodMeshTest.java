@@ -0,0 +1,134 @@
+package unsw.graphics.tests;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.geometry.LodMesh;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.MeshOptions;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Checks how {@link LodMesh} chooses its level of detail.
+ */
+public class LodMeshTest extends TestCase {
+
+    private static final float EPSILON = 0.0001f;
+
+    @Override
+    protected void setUp() {
+        MeshCache.setEnabled(false);
+    }
+
+    @Override
+    protected void tearDown() {
+        MeshCache.setEnabled(true);
+    }
+
+    /**
+     * A mesh with the given number of triangles, whose bounding sphere is the
+     * unit sphere.
+     */
+    private static TriangleMesh mesh(int triangles) {
+        Point3DBuffer vertices = new Point3DBuffer(6);
+        vertices.put(0, 1, 0, 0);
+        vertices.put(1, -1, 0, 0);
+        vertices.put(2, 0, 1, 0);
+        vertices.put(3, 0, -1, 0);
+        vertices.put(4, 0, 0, 1);
+        vertices.put(5, 0, 0, -1);
+        IntBuffer indices = GLBuffers.newDirectIntBuffer(triangles * 3);
+        for (int t = 0; t < triangles; t++)
+            indices.put(t % 6).put((t + 2) % 6).put((t + 4) % 6);
+        indices.flip();
+        return new TriangleMesh(vertices, null, indices);
+    }
+
+    private static LodMesh levels() {
+        List<TriangleMesh> levels = new ArrayList<TriangleMesh>();
+        levels.add(mesh(4000));
+        levels.add(mesh(1000));
+        levels.add(mesh(250));
+        LodMesh mesh = new LodMesh(levels);
+        mesh.setDensity(1000);
+        return mesh;
+    }
+
+    @Test
+    public void testSwitchSizes() {
+        LodMesh mesh = levels();
+        assertEquals(2, mesh.getSwitchSize(0), EPSILON);
+        assertEquals(1, mesh.getSwitchSize(1), EPSILON);
+
+        assertEquals(0, mesh.selectLevel(3, -1));
+        assertEquals(1, mesh.selectLevel(1.5f, -1));
+        assertEquals(2, mesh.selectLevel(0.5f, -1));
+        assertEquals(2, mesh.selectLevel(0, -1));
+        assertEquals(0, mesh.selectLevel(Float.POSITIVE_INFINITY, -1));
+    }
+
+    @Test
+    public void testHysteresis() {
+        LodMesh mesh = levels();
+        // Within 10% of a switch size the level stays the same
+        assertEquals(0, mesh.selectLevel(1.9f, 0));
+        assertEquals(1, mesh.selectLevel(1.7f, 0));
+        assertEquals(1, mesh.selectLevel(2.1f, 1));
+        assertEquals(0, mesh.selectLevel(2.3f, 1));
+        assertEquals(1, mesh.selectLevel(0.95f, 1));
+        assertEquals(2, mesh.selectLevel(0.95f, 2));
+        // Big changes skip levels
+        assertEquals(2, mesh.selectLevel(0.1f, 0));
+        assertEquals(0, mesh.selectLevel(10, 2));
+    }
+
+    @Test
+    public void testCulling() {
+        LodMesh mesh = levels();
+        assertEquals(2, mesh.selectLevel(0.01f, -1));
+        mesh.setCullSize(0.1f);
+        assertEquals(3, mesh.selectLevel(0.01f, -1));
+        assertEquals(3, mesh.selectLevel(0.105f, 3));
+        assertEquals(2, mesh.selectLevel(0.105f, 2));
+        assertEquals(2, mesh.selectLevel(0.2f, 3));
+    }
+
+    @Test
+    public void testScreenSize() {
+        LodMesh mesh = levels();
+        // A 90 degree field of view maps y = -z to the top of the viewport
+        Matrix4 proj = Matrix4.perspective(90, 1, 1, 100);
+        Matrix4 view = Matrix4.translation(0, 0, -5);
+        assertEquals(0.2f, mesh.getScreenSize(view, proj, CoordFrame3D.identity()), EPSILON);
+        assertEquals(0.1f, mesh.getScreenSize(view, proj,
+                CoordFrame3D.identity().translate(0, 0, -5)), EPSILON);
+        assertEquals(0.4f, mesh.getScreenSize(view, proj,
+                CoordFrame3D.identity().scale(1, 2, 1)), EPSILON);
+        // Behind the camera, and around it
+        assertEquals(0, mesh.getScreenSize(view, proj,
+                CoordFrame3D.identity().translate(0, 0, 10)), EPSILON);
+        assertEquals(Float.POSITIVE_INFINITY, mesh.getScreenSize(view, proj,
+                CoordFrame3D.identity().translate(0, 0, 4.5f)));
+        // An orthographic projection doesn't depend on the distance
+        Matrix4 ortho = Matrix4.orthographic(-4, 4, -4, 4, 1, 100);
+        assertEquals(0.25f, mesh.getScreenSize(view, ortho, CoordFrame3D.identity()), EPSILON);
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        LodMesh bunny = LodMesh.load("res/models/bunny.ply", new MeshOptions());
+        assertEquals(4, bunny.getLevelCount());
+        assertEquals(69451 * 3, bunny.getLevel(0).getIndices().capacity());
+        assertEquals(948 * 3, bunny.getLevel(3).getIndices().capacity());
+    }
+}
@@ -0,0 +1,115 @@
+package unsw.graphics.tests;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.Matrix3;
+import unsw.graphics.Matrix4;
+import unsw.graphics.MatrixKind;
+import unsw.graphics.MutableMatrix4;
+
+/**
+ * Checks the specialised kernels for each kind of matrix against the general ones.
+ */
+public class MatrixKindTest extends TestCase {
+
+    private static final float EPSILON = 0.0001f;
+
+    private static void assertValuesEqual(float[] expected, float[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertEquals("value " + i, expected[i], actual[i], EPSILON);
+    }
+
+    /**
+     * The product a*b computed directly from the values with the textbook formula.
+     */
+    private static float[] reference(Matrix4 a, Matrix4 b) {
+        float[] x = a.getValues(), y = b.getValues();
+        float[] r = new float[16];
+        for (int c = 0; c < 4; c++)
+            for (int row = 0; row < 4; row++)
+                for (int k = 0; k < 4; k++)
+                    r[c*4 + row] += x[k*4 + row] * y[c*4 + k];
+        return r;
+    }
+
+    @Test
+    public void testKinds() {
+        assertEquals(MatrixKind.IDENTITY, Matrix4.identity().getKind());
+        assertEquals(MatrixKind.TRANSLATION,
+                Matrix4.translation(1, 2, 3).multiply(Matrix4.translation(4, 5, 6)).getKind());
+        assertEquals(MatrixKind.RIGID,
+                Matrix4.translation(1, 2, 3).multiply(Matrix4.rotationY(30)).getKind());
+        assertEquals(MatrixKind.AFFINE,
+                Matrix4.rotationX(30).multiply(Matrix4.scale(1, 2, 3)).getKind());
+        assertEquals(MatrixKind.PROJECTIVE,
+                Matrix4.perspective(60, 1, 1, 10).multiply(Matrix4.translation(0, 0, -2)).getKind());
+        assertEquals(MatrixKind.TRANSLATION,
+                new Matrix4(Matrix4.translation(1, 0, 0).getValues()).getKind());
+        assertEquals(MatrixKind.RIGID, Matrix3.rotation(45).multiply(Matrix3.translation(1, 1)).getKind());
+    }
+
+    @Test
+    public void testProducts() {
+        Matrix4[] ms = new Matrix4[] {
+            Matrix4.identity(),
+            Matrix4.translation(1, -2, 3),
+            Matrix4.rotationZ(30).multiply(Matrix4.translation(0, 1, 0)),
+            Matrix4.scale(1, 2, 3).multiply(Matrix4.rotationX(-20)),
+            Matrix4.perspective(60, 1.5f, 1, 10)
+        };
+        for (Matrix4 a : ms)
+            for (Matrix4 b : ms)
+                assertValuesEqual(reference(a, b), a.multiply(b).getValues());
+    }
+
+    @Test
+    public void testInverse() {
+        Matrix4[] ms = new Matrix4[] {
+            Matrix4.identity(),
+            Matrix4.translation(1, -2, 3),
+            Matrix4.rotationZ(30).multiply(Matrix4.translation(0, 1, 0)).multiply(Matrix4.rotationY(10)),
+            Matrix4.scale(1, 2, 3).multiply(Matrix4.rotationX(-20)).multiply(Matrix4.translation(4, 5, 6)),
+            Matrix4.perspective(60, 1.5f, 1, 10).multiply(Matrix4.translation(0, 0, -3))
+        };
+        for (Matrix4 m : ms) {
+            assertValuesEqual(Matrix4.identity().getValues(), m.multiply(m.inverse()).getValues());
+            assertValuesEqual(Matrix4.identity().getValues(), m.inverse().multiply(m).getValues());
+        }
+
+        Matrix3[] ms3 = new Matrix3[] {
+            Matrix3.translation(1, -2),
+            Matrix3.rotation(30).multiply(Matrix3.translation(3, 1)),
+            Matrix3.scale(2, 3).multiply(Matrix3.horizontalShear(0.5f)).multiply(Matrix3.translation(-1, 1)),
+            new Matrix3(new float[] { 1, 0, 0.5f, 0, 2, 0, 1, 1, 1 })
+        };
+        for (Matrix3 m : ms3)
+            assertValuesEqual(Matrix3.identity().getValues(), m.multiply(m.inverse()).getValues());
+    }
+
+    @Test
+    public void testNormalMatrix() {
+        Matrix4[] ms = new Matrix4[] {
+            Matrix4.translation(1, -2, 3).multiply(Matrix4.rotationY(40)),
+            Matrix4.rotationX(30).multiply(Matrix4.scale(1, 2, 3)).multiply(Matrix4.translation(1, 1, 1))
+        };
+        for (Matrix4 m : ms) {
+            float[] expected = m.inverse().transpose().getValues();
+            float[] actual = m.normalMatrix().getValues();
+            for (int c = 0; c < 3; c++)
+                for (int r = 0; r < 3; r++)
+                    assertEquals(expected[c*4 + r], actual[c*3 + r], EPSILON);
+        }
+    }
+
+    @Test
+    public void testMutableKinds() {
+        MutableMatrix4 m = new MutableMatrix4().translate(1, 2, 3);
+        assertEquals(MatrixKind.TRANSLATION, m.getKind());
+        m.rotateY(90);
+        assertEquals(MatrixKind.RIGID, m.getKind());
+        m.multiply(Matrix4.perspective(60, 1, 1, 10));
+        assertEquals(MatrixKind.PROJECTIVE, m.getKind());
+    }
+}
@@ -0,0 +1,151 @@
+package unsw.graphics.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.MeshOptions;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Checks that meshes loaded through the {@link MeshCache} match their PLY
+ * files, including after the files change.
+ */
+public class MeshCacheTest extends TestCase {
+
+    private static String triangle(float x) {
+        return "ply\nformat ascii 1.0\nelement vertex 3\n"
+                + "property float x\nproperty float y\nproperty float z\n"
+                + "element face 1\nproperty list uchar int vertex_indices\nend_header\n"
+                + x + " 0 0\n0 1 0\n0 0 1\n3 0 1 2\n";
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private File ply;
+
+    @Override
+    protected void setUp() throws IOException {
+        MeshCache.setEnabled(true);
+        ply = File.createTempFile("test", ".ply");
+        ply.deleteOnExit();
+        MeshCache.getCacheFile(ply.getPath()).deleteOnExit();
+    }
+
+    @Override
+    protected void tearDown() {
+        ply.delete();
+        MeshCache.getCacheFile(ply.getPath()).delete();
+    }
+
+    @Test
+    public void testCacheIsWrittenAndRead() throws IOException {
+        write(ply, triangle(1));
+        TriangleMesh first = new TriangleMesh(ply.getPath(), true);
+        assertTrue(MeshCache.getCacheFile(ply.getPath()).isFile());
+
+        TriangleMesh second = new TriangleMesh(ply.getPath(), true);
+        assertEquals(1f, second.getVertices().get(0).getX());
+        assertEquals(3, second.getIndices().capacity());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(first.getNormals().get(i).getX(), second.getNormals().get(i).getX());
+            assertEquals(first.getNormals().get(i).getY(), second.getNormals().get(i).getY());
+            assertEquals(first.getNormals().get(i).getZ(), second.getNormals().get(i).getZ());
+        }
+    }
+
+    @Test
+    public void testWithoutNormals() throws IOException {
+        write(ply, triangle(1));
+        new TriangleMesh(ply.getPath(), false);
+        // The cache has no normals, so they have to be computed
+        TriangleMesh mesh = new TriangleMesh(ply.getPath(), true);
+        assertNotNull(mesh.getNormals());
+        assertNull(new TriangleMesh(ply.getPath(), false).getNormals());
+    }
+
+    @Test
+    public void testChangedSource() throws IOException {
+        write(ply, triangle(1));
+        new TriangleMesh(ply.getPath());
+        long modified = ply.lastModified();
+
+        // The same length, so only the CRC shows that it has changed
+        write(ply, triangle(3.5f));
+        ply.setLastModified(modified + 5000);
+        assertEquals(3.5f, new TriangleMesh(ply.getPath()).getVertices().get(0).getX());
+
+        write(ply, triangle(12));
+        assertEquals(12f, new TriangleMesh(ply.getPath()).getVertices().get(0).getX());
+    }
+
+    @Test
+    public void testTouchedSource() throws IOException {
+        write(ply, triangle(1));
+        new TriangleMesh(ply.getPath());
+        ply.setLastModified(ply.lastModified() + 5000);
+        assertEquals(1f, new TriangleMesh(ply.getPath()).getVertices().get(0).getX());
+    }
+
+    @Test
+    public void testOptions() throws IOException {
+        Files.copy(new File("res/models/bunny_res4.ply").toPath(), ply.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        MeshCache.setEnabled(false);
+        IntBuffer plain = new TriangleMesh(ply.getPath()).getIndices();
+        MeshCache.setEnabled(true);
+
+        // A mesh cached with different options is not used
+        new TriangleMesh(ply.getPath(), new MeshOptions().optimize(false));
+        IntBuffer indices = new TriangleMesh(ply.getPath()).getIndices();
+        assertEquals(plain, indices);
+        indices = new TriangleMesh(ply.getPath(), new MeshOptions().optimize(false)).getIndices();
+        assertFalse(plain.equals(indices));
+    }
+
+    @Test
+    public void testOtherByteOrder() throws IOException {
+        write(ply, triangle(1));
+        new TriangleMesh(ply.getPath());
+
+        // Mark the cache as written in the other byte order. The flags are
+        // the int after the magic and the version, and big-endian is 16.
+        File cache = MeshCache.getCacheFile(ply.getPath());
+        int flagByte = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 12 : 15;
+        byte original;
+        try (RandomAccessFile raf = new RandomAccessFile(cache, "rw")) {
+            raf.seek(flagByte);
+            original = raf.readByte();
+            raf.seek(flagByte);
+            raf.writeByte(original ^ 16);
+        }
+
+        // The cache is not used, and is written again in the right order
+        assertEquals(1f, new TriangleMesh(ply.getPath()).getVertices().get(0).getX());
+        try (RandomAccessFile raf = new RandomAccessFile(cache, "r")) {
+            raf.seek(flagByte);
+            assertEquals(original, raf.readByte());
+        }
+    }
+
+    @Test
+    public void testCorruptCache() throws IOException {
+        write(ply, triangle(1));
+        write(MeshCache.getCacheFile(ply.getPath()), "not a cache");
+        assertEquals(1f, new TriangleMesh(ply.getPath()).getVertices().get(0).getX());
+    }
+}
@@ -0,0 +1,78 @@
+package unsw.graphics.tests;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.geometry.AsyncMesh;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.MeshLoader;
+import unsw.graphics.geometry.MeshOptions;
+import unsw.graphics.geometry.NormalWeighting;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Checks the loading half of {@link MeshLoader}. Uploading needs OpenGL, so
+ * isn't tested here.
+ */
+public class MeshLoaderTest extends TestCase {
+
+    private MeshLoader loader;
+
+    @Override
+    protected void setUp() {
+        MeshCache.setEnabled(false);
+        loader = new MeshLoader(2);
+    }
+
+    @Override
+    protected void tearDown() {
+        loader.shutdown();
+        MeshCache.setEnabled(true);
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        MeshOptions options = new MeshOptions().normals(NormalWeighting.AREA, true);
+        AsyncMesh bunny = loader.load("res/models/bunny_res2.ply", options);
+        AsyncMesh apple = loader.load("res/models/apple.ply", options);
+        assertEquals("res/models/bunny_res2.ply", bunny.getFile());
+
+        TriangleMesh expected = new TriangleMesh("res/models/bunny_res2.ply", options);
+        TriangleMesh loaded = bunny.get();
+        assertTrue(bunny.isLoaded());
+        assertFalse(bunny.isFailed());
+        assertEquals(expected.getVertices().getBuffer(), loaded.getVertices().getBuffer());
+        assertEquals(expected.getNormals().getBuffer(), loaded.getNormals().getBuffer());
+        assertEquals(expected.getIndices(), loaded.getIndices());
+        assertNotNull(apple.get());
+
+        // Nothing is drawn until the mesh has been uploaded
+        assertFalse(bunny.isReady());
+        assertTrue(loader.isBusy());
+    }
+
+    @Test
+    public void testMissingFile() {
+        AsyncMesh missing = loader.load("res/models/missing.ply", new MeshOptions());
+        try {
+            missing.get();
+            fail("Loading a missing file should fail");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertTrue(missing.isLoaded());
+        assertTrue(missing.isFailed());
+        assertFalse(missing.isReady());
+    }
+
+    @Test
+    public void testDestroyBeforeReady() throws IOException {
+        AsyncMesh bunny = loader.load("res/models/bunny_res3.ply", new MeshOptions());
+        // Destroying a mesh that isn't ready doesn't need OpenGL
+        bunny.destroy(null);
+        assertFalse(bunny.isReady());
+        assertFalse(bunny.isFailed());
+    }
+}
@@ -0,0 +1,140 @@
+package unsw.graphics.tests;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import junit.framework.TestCase;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.MeshNormals;
+import unsw.graphics.geometry.NormalWeighting;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Checks the vertex normals computed by {@link MeshNormals}.
+ */
+public class MeshNormalsTest extends TestCase {
+
+    private static final float EPSILON = 0.0001f;
+
+    private static Point3DBuffer normals(Point3DBuffer vertices, IntBuffer indices,
+            NormalWeighting weighting, boolean normalize) {
+        Point3DBuffer normals = new Point3DBuffer(vertices.capacity());
+        MeshNormals.compute(vertices, indices, normals, weighting, normalize);
+        return normals;
+    }
+
+    private static void assertPoint(float x, float y, float z, Point3D p) {
+        assertEquals(x, p.getX(), EPSILON);
+        assertEquals(y, p.getY(), EPSILON);
+        assertEquals(z, p.getZ(), EPSILON);
+    }
+
+    /**
+     * A corner of a cube where the x = 0 side is split into two triangles
+     * and the other two sides are one triangle each.
+     */
+    private static TriangleMesh corner() {
+        Point3DBuffer vertices = new Point3DBuffer(6);
+        vertices.put(0, 0, 0, 0);
+        vertices.put(1, 1, 0, 0);
+        vertices.put(2, 0, 1, 0);
+        vertices.put(3, 0, 0, 1);
+        vertices.put(4, 0, 1, 1);
+        vertices.put(5, 0, 0, 0);
+        IntBuffer indices = GLBuffers.newDirectIntBuffer(new int[] {
+                0, 2, 1, // z = 0, facing -z
+                0, 1, 3, // y = 0, facing -y
+                0, 3, 4, // x = 0, facing -x
+                0, 4, 2,
+        });
+        return new TriangleMesh(vertices, null, indices);
+    }
+
+    @Test
+    public void testEqualWeighting() {
+        TriangleMesh mesh = corner();
+        Point3DBuffer normals = normals(mesh.getVertices(), mesh.getIndices(),
+                NormalWeighting.EQUAL, false);
+        // Not normalised, and pulled towards the side with two triangles
+        assertPoint(-2, -1, -1, normals.get(0));
+    }
+
+    @Test
+    public void testAngleWeighting() {
+        TriangleMesh mesh = corner();
+        Point3DBuffer normals = normals(mesh.getVertices(), mesh.getIndices(),
+                NormalWeighting.ANGLE, true);
+        // Each side has a right angle at the corner, however it is split
+        float c = (float) (-1 / Math.sqrt(3));
+        assertPoint(c, c, c, normals.get(0));
+        // The unused vertex has no normal
+        assertPoint(0, 0, 0, normals.get(5));
+    }
+
+    @Test
+    public void testAreaWeighting() {
+        Point3DBuffer vertices = new Point3DBuffer(4);
+        vertices.put(0, 0, 0, 0);
+        vertices.put(1, 4, 0, 0);
+        vertices.put(2, 0, 4, 0);
+        vertices.put(3, 0, 0, 1);
+        // A big triangle facing +z and a small one facing +y
+        IntBuffer indices = GLBuffers.newDirectIntBuffer(new int[] { 0, 1, 2, 0, 3, 1 });
+        Point3DBuffer normals = normals(vertices, indices, NormalWeighting.AREA, false);
+        assertPoint(0, 4, 16, normals.get(0));
+        assertPoint(0, 0, 16, normals.get(2));
+    }
+
+    @Test
+    public void testDegenerateTriangle() {
+        Point3DBuffer vertices = new Point3DBuffer(3);
+        vertices.put(0, 1, 1, 1);
+        vertices.put(1, 1, 1, 1);
+        vertices.put(2, 2, 2, 2);
+        IntBuffer indices = GLBuffers.newDirectIntBuffer(new int[] { 0, 1, 2 });
+        for (NormalWeighting weighting : NormalWeighting.values()) {
+            Point3DBuffer normals = normals(vertices, indices, weighting, true);
+            for (int i = 0; i < 3; i++)
+                assertPoint(0, 0, 0, normals.get(i));
+        }
+    }
+
+    @Test
+    public void testLargeMesh() throws IOException {
+        // Many copies of the bunny, enough to be done in parallel. Every copy
+        // should get exactly the same normals as the bunny on its own.
+        MeshCache.setEnabled(false);
+        TriangleMesh bunny = new TriangleMesh("res/models/bunny_res2.ply");
+        int copies = 8;
+        int n = bunny.getVertices().capacity();
+        Point3DBuffer vertices = new Point3DBuffer(n * copies);
+        IntBuffer indices = GLBuffers.newDirectIntBuffer(bunny.getIndices().capacity() * copies);
+        for (int c = 0; c < copies; c++) {
+            for (int i = 0; i < n; i++)
+                vertices.put(c * n + i, bunny.getVertices().get(i));
+            for (int i = 0; i < bunny.getIndices().capacity(); i++)
+                indices.put(c * n + bunny.getIndices().get(i));
+        }
+        indices.flip();
+
+        for (NormalWeighting weighting : NormalWeighting.values()) {
+            Point3DBuffer expected = normals(bunny.getVertices(), bunny.getIndices(), weighting,
+                    true);
+            Point3DBuffer actual = normals(vertices, indices, weighting, true);
+            for (int c = 0; c < copies; c++) {
+                for (int i = 0; i < n; i++) {
+                    Point3D e = expected.get(i), a = actual.get(c * n + i);
+                    assertEquals(e.getX(), a.getX());
+                    assertEquals(e.getY(), a.getY());
+                    assertEquals(e.getZ(), a.getZ());
+                }
+            }
+        }
+    }
+}
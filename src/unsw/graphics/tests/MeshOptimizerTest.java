@@ -0,0 +1,134 @@
+package unsw.graphics.tests;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import junit.framework.TestCase;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.MeshOptimizer;
+import unsw.graphics.geometry.MeshOptions;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Checks that {@link MeshOptimizer} keeps the same triangles while making
+ * better use of the vertex cache.
+ */
+public class MeshOptimizerTest extends TestCase {
+
+    private static final int GRID = 40;
+
+    private Point3DBuffer vertices;
+
+    private IntBuffer indices;
+
+    /**
+     * A grid of squares, each split into two triangles, in random order.
+     */
+    @Override
+    protected void setUp() {
+        vertices = new Point3DBuffer((GRID + 1) * (GRID + 1));
+        for (int y = 0; y <= GRID; y++)
+            for (int x = 0; x <= GRID; x++)
+                vertices.put(y * (GRID + 1) + x, x, y, 0);
+        List<int[]> triangles = new ArrayList<int[]>();
+        for (int y = 0; y < GRID; y++) {
+            for (int x = 0; x < GRID; x++) {
+                int v = y * (GRID + 1) + x;
+                triangles.add(new int[] { v, v + 1, v + GRID + 2 });
+                triangles.add(new int[] { v, v + GRID + 2, v + GRID + 1 });
+            }
+        }
+        Collections.shuffle(triangles, new Random(42));
+        indices = GLBuffers.newDirectIntBuffer(triangles.size() * 3);
+        for (int[] t : triangles)
+            indices.put(t);
+        indices.flip();
+    }
+
+    /**
+     * Each triangle, described by its corners in order. The description
+     * starts from the smallest corner so that it doesn't depend on which
+     * corner comes first, only on which way the triangle faces.
+     */
+    private static List<String> triangles(Point3DBuffer vertices, IntBuffer indices) {
+        List<String> result = new ArrayList<String>();
+        for (int t = 0; t < indices.capacity(); t += 3) {
+            String[] corners = new String[3];
+            int first = 0;
+            for (int k = 0; k < 3; k++) {
+                Point3D p = vertices.get(indices.get(t + k));
+                corners[k] = p.getX() + "," + p.getY() + "," + p.getZ();
+                if (corners[k].compareTo(corners[first]) < 0)
+                    first = k;
+            }
+            result.add(corners[first] + " " + corners[(first + 1) % 3] + " "
+                    + corners[(first + 2) % 3]);
+        }
+        return result;
+    }
+
+    private static void assertSameTriangles(List<String> expected, List<String> actual) {
+        List<String> a = new ArrayList<String>(expected), b = new ArrayList<String>(actual);
+        Collections.sort(a);
+        Collections.sort(b);
+        assertTrue(a.equals(b));
+    }
+
+    @Test
+    public void testVertexCache() {
+        List<String> before = triangles(vertices, indices);
+        float acmr = MeshOptimizer.acmr(indices, MeshOptimizer.CACHE_SIZE);
+        MeshOptimizer.optimizeVertexCache(indices, vertices.capacity());
+        assertSameTriangles(before, triangles(vertices, indices));
+        float optimized = MeshOptimizer.acmr(indices, MeshOptimizer.CACHE_SIZE);
+        assertTrue(acmr > 2);
+        assertTrue("ACMR " + optimized, optimized < 0.8f);
+    }
+
+    @Test
+    public void testOverdraw() {
+        MeshOptimizer.optimizeVertexCache(indices, vertices.capacity());
+        List<String> before = triangles(vertices, indices);
+        float acmr = MeshOptimizer.acmr(indices, MeshOptimizer.CACHE_SIZE);
+        MeshOptimizer.optimizeOverdraw(indices, vertices, 1.05f);
+        assertSameTriangles(before, triangles(vertices, indices));
+        assertTrue(MeshOptimizer.acmr(indices, MeshOptimizer.CACHE_SIZE) <= acmr * 1.2f);
+    }
+
+    @Test
+    public void testVertexFetch() {
+        List<String> before = triangles(vertices, indices);
+        MeshOptimizer.optimizeVertexFetch(indices, vertices, null);
+        assertSameTriangles(before, triangles(vertices, indices));
+        // Each vertex is used for the first time after all those before it
+        int next = 0;
+        for (int i = 0; i < indices.capacity(); i++) {
+            assertTrue(indices.get(i) <= next);
+            if (indices.get(i) == next)
+                next++;
+        }
+        assertEquals(vertices.capacity(), next);
+    }
+
+    @Test
+    public void testLoadOptimized() throws IOException {
+        MeshCache.setEnabled(false);
+        TriangleMesh plain = new TriangleMesh("res/models/bunny_res3.ply");
+        TriangleMesh optimized = new TriangleMesh("res/models/bunny_res3.ply",
+                new MeshOptions().optimize(true));
+        assertSameTriangles(triangles(plain.getVertices(), plain.getIndices()),
+                triangles(optimized.getVertices(), optimized.getIndices()));
+        assertTrue(MeshOptimizer.acmr(optimized.getIndices(), MeshOptimizer.CACHE_SIZE)
+                < MeshOptimizer.acmr(plain.getIndices(), MeshOptimizer.CACHE_SIZE));
+    }
+}
@@ -0,0 +1,148 @@
+package unsw.graphics.tests;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import junit.framework.TestCase;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.MeshSimplifier;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Checks that {@link MeshSimplifier} removes triangles without breaking the
+ * mesh or moving its boundaries.
+ */
+public class MeshSimplifierTest extends TestCase {
+
+    private static final int GRID = 20;
+
+    @Override
+    protected void setUp() {
+        MeshCache.setEnabled(false);
+    }
+
+    @Override
+    protected void tearDown() {
+        MeshCache.setEnabled(true);
+    }
+
+    /**
+     * A flat unit square split into a grid of triangles, facing +z.
+     */
+    private static TriangleMesh grid() {
+        Point3DBuffer vertices = new Point3DBuffer((GRID + 1) * (GRID + 1));
+        for (int y = 0; y <= GRID; y++)
+            for (int x = 0; x <= GRID; x++)
+                vertices.put(y * (GRID + 1) + x, x / (float) GRID, y / (float) GRID, 0);
+        IntBuffer indices = GLBuffers.newDirectIntBuffer(GRID * GRID * 6);
+        for (int y = 0; y < GRID; y++) {
+            for (int x = 0; x < GRID; x++) {
+                int v = y * (GRID + 1) + x;
+                indices.put(v).put(v + 1).put(v + GRID + 2);
+                indices.put(v).put(v + GRID + 2).put(v + GRID + 1);
+            }
+        }
+        indices.flip();
+        return new TriangleMesh(vertices, null, indices);
+    }
+
+    /**
+     * The normal of the given triangle, scaled by twice its area.
+     */
+    private static float[] normal(Point3DBuffer vertices, IntBuffer indices, int t) {
+        Point3D a = vertices.get(indices.get(3*t)), b = vertices.get(indices.get(3*t + 1)),
+                c = vertices.get(indices.get(3*t + 2));
+        float ax = b.getX() - a.getX(), ay = b.getY() - a.getY(), az = b.getZ() - a.getZ();
+        float bx = c.getX() - a.getX(), by = c.getY() - a.getY(), bz = c.getZ() - a.getZ();
+        return new float[] { ay*bz - az*by, az*bx - ax*bz, ax*by - ay*bx };
+    }
+
+    /**
+     * Check that no triangle is degenerate and no edge is in more than two
+     * triangles.
+     */
+    private static void assertValid(TriangleMesh mesh) {
+        IntBuffer indices = mesh.getIndices();
+        Map<Long, Integer> edges = new HashMap<Long, Integer>();
+        for (int t = 0; t < indices.capacity() / 3; t++) {
+            for (int k = 0; k < 3; k++) {
+                int a = indices.get(3*t + k), b = indices.get(3*t + (k + 1) % 3);
+                assertTrue(a >= 0 && a < mesh.getVertices().capacity());
+                assertTrue(a != b);
+                long key = Math.min(a, b) * (long) Integer.MAX_VALUE + Math.max(a, b);
+                Integer count = edges.get(key);
+                edges.put(key, count == null ? 1 : count + 1);
+            }
+        }
+        for (int count : edges.values())
+            assertTrue(count <= 2);
+    }
+
+    @Test
+    public void testFlatSquare() {
+        TriangleMesh grid = grid();
+        IntBuffer indices = MeshSimplifier.simplify(grid.getVertices(), grid.getIndices(), 2);
+        // Every vertex that isn't a corner can be removed without moving the
+        // surface or its boundary
+        assertEquals(6, indices.capacity());
+
+        float area = 0;
+        for (int t = 0; t < 2; t++) {
+            float[] n = normal(grid.getVertices(), indices, t);
+            assertEquals(0, n[0], 1e-6f);
+            assertEquals(0, n[1], 1e-6f);
+            assertTrue(n[2] > 0);
+            area += n[2] / 2;
+        }
+        assertEquals(1, area, 1e-5f);
+        for (int i = 0; i < 6; i++) {
+            Point3D p = grid.getVertices().get(indices.get(i));
+            assertTrue(p.getX() == 0 || p.getX() == 1);
+            assertTrue(p.getY() == 0 || p.getY() == 1);
+        }
+    }
+
+    @Test
+    public void testBoundaryKept() {
+        // Removing half of the triangles only removes vertices inside the
+        // square or along its sides, so it keeps its area and its sides
+        TriangleMesh grid = grid();
+        TriangleMesh simplified = MeshSimplifier.simplify(grid, GRID * GRID);
+        assertValid(simplified);
+        assertTrue(simplified.getIndices().capacity() / 3 <= GRID * GRID);
+
+        IntBuffer indices = simplified.getIndices();
+        float area = 0;
+        for (int t = 0; t < indices.capacity() / 3; t++) {
+            float[] n = normal(simplified.getVertices(), indices, t);
+            assertTrue(n[2] > 0);
+            area += n[2] / 2;
+        }
+        assertEquals(1, area, 1e-5f);
+        // Only vertices that are used are kept
+        assertTrue(simplified.getVertices().capacity() < grid.getVertices().capacity());
+    }
+
+    @Test
+    public void testModel() throws IOException {
+        // The full bunny is a valid mesh, unlike the lower resolution ones
+        // that come with it
+        TriangleMesh bunny = new TriangleMesh("res/models/bunny.ply", true);
+        assertValid(bunny);
+        TriangleMesh simplified = MeshSimplifier.simplify(bunny, 1000);
+        assertValid(simplified);
+        assertTrue(simplified.getIndices().capacity() / 3 <= 1000);
+        assertEquals(simplified.getVertices().capacity(), simplified.getNormals().capacity());
+
+        // The original is left alone
+        assertEquals(69451 * 3, bunny.getIndices().capacity());
+    }
+}
@@ -0,0 +1,57 @@
+package unsw.graphics.tests;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.MutableMatrix4;
+
+/**
+ * Checks that composing in place gives the same results as the immutable API.
+ */
+public class MutableMatrix4Test extends TestCase {
+
+    private static final float EPSILON = 0.0001f;
+
+    private static void assertMatrixEquals(Matrix4 expected, Matrix4 actual) {
+        float[] e = expected.getValues();
+        float[] a = actual.getValues();
+        for (int i = 0; i < 16; i++)
+            assertEquals("value " + i, e[i], a[i], EPSILON);
+    }
+
+    @Test
+    public void testMultiply() {
+        Matrix4 a = Matrix4.rotationX(30).multiply(Matrix4.translation(1, 2, 3));
+        Matrix4 b = Matrix4.scale(2, 3, 4).multiply(Matrix4.rotationZ(-45));
+
+        MutableMatrix4 m = new MutableMatrix4(a).multiply(b);
+        assertMatrixEquals(a.multiply(b), m.toMatrix4());
+    }
+
+    @Test
+    public void testSteps() {
+        MutableMatrix4 m = new MutableMatrix4()
+                .rotateX(10).rotateY(20).rotateZ(30)
+                .translate(-7.5f, -1, -3).scale(0.5f, 2, 3);
+        Matrix4 expected = Matrix4.rotationX(10)
+                .multiply(Matrix4.rotationY(20))
+                .multiply(Matrix4.rotationZ(30))
+                .multiply(Matrix4.translation(-7.5f, -1, -3))
+                .multiply(Matrix4.scale(0.5f, 2, 3));
+        assertMatrixEquals(expected, m.toMatrix4());
+    }
+
+    @Test
+    public void testBuilder() {
+        CoordFrame3D frame = CoordFrame3D.identity().rotateY(45).translate(1, 0, -2);
+        CoordFrame3D.Builder builder = frame.toBuilder().rotateX(90).scale(2, 2, 2);
+        assertMatrixEquals(frame.rotateX(90).scale(2, 2, 2).getMatrix(),
+                builder.build().getMatrix());
+
+        // Reusing the builder must not be affected by its previous state
+        builder.set(frame).translate(3, 0, 0);
+        assertMatrixEquals(frame.translate(3, 0, 0).getMatrix(), builder.build().getMatrix());
+    }
+}
@@ -0,0 +1,128 @@
+package unsw.graphics.tests;
+
+import java.nio.IntBuffer;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.util.GLBuffers;
+
+import junit.framework.TestCase;
+import unsw.graphics.Matrix4;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.Vector3;
+import unsw.graphics.Vector4;
+import unsw.graphics.geometry.PackedMesh;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Checks the compact formats of {@link PackedMesh}.
+ */
+public class PackedMeshTest extends TestCase {
+
+    /**
+     * The largest error of a component of a packed normal.
+     */
+    private static final float NORMAL_EPSILON = 1.5f / 511;
+
+    private static void assertNormal(float x, float y, float z, Vector3 n) {
+        float length = (float) Math.sqrt(x*x + y*y + z*z);
+        assertEquals(x / length, n.getX(), NORMAL_EPSILON);
+        assertEquals(y / length, n.getY(), NORMAL_EPSILON);
+        assertEquals(z / length, n.getZ(), NORMAL_EPSILON);
+    }
+
+    @Test
+    public void testPackNormal() {
+        assertNormal(1, 0, 0, PackedMesh.unpackNormal(PackedMesh.packNormal(1, 0, 0)));
+        assertNormal(0, -1, 0, PackedMesh.unpackNormal(PackedMesh.packNormal(0, -1, 0)));
+        assertNormal(0, 0, 1, PackedMesh.unpackNormal(PackedMesh.packNormal(0, 0, 1)));
+        assertNormal(-1, 2, -3, PackedMesh.unpackNormal(PackedMesh.packNormal(-1, 2, -3)));
+        assertNormal(0.3f, -0.4f, 5, PackedMesh.unpackNormal(PackedMesh.packNormal(0.3f, -0.4f, 5)));
+        // The w bits are left clear
+        assertEquals(0, PackedMesh.packNormal(-1, -1, -1) >>> 30);
+        assertEquals(0, PackedMesh.packNormal(0, 0, 0));
+    }
+
+    @Test
+    public void testIndexType() {
+        assertEquals(GL.GL_UNSIGNED_BYTE, PackedMesh.indexType(3));
+        assertEquals(GL.GL_UNSIGNED_BYTE, PackedMesh.indexType(256));
+        assertEquals(GL.GL_UNSIGNED_SHORT, PackedMesh.indexType(257));
+        assertEquals(GL.GL_UNSIGNED_SHORT, PackedMesh.indexType(65536));
+        assertEquals(GL.GL_UNSIGNED_INT, PackedMesh.indexType(65537));
+        assertEquals(1, PackedMesh.indexBytes(256));
+        assertEquals(2, PackedMesh.indexBytes(65536));
+        assertEquals(4, PackedMesh.indexBytes(65537));
+    }
+
+    /**
+     * A strip of count vertices, from (10, -2, 5) along x and y.
+     */
+    private static TriangleMesh strip(int count, boolean withNormals) {
+        Point3DBuffer vertices = new Point3DBuffer(count);
+        Point3DBuffer normals = withNormals ? new Point3DBuffer(count) : null;
+        for (int i = 0; i < count; i++) {
+            vertices.put(i, 10 + i * 0.37f, -2 + (i % 2) * 3.1f, 5);
+            if (withNormals)
+                normals.put(i, i % 3, 1, -(i % 5));
+        }
+        IntBuffer indices = GLBuffers.newDirectIntBuffer((count - 2) * 3);
+        for (int i = 0; i < count - 2; i++)
+            indices.put(i).put(i + 1).put(i + 2);
+        indices.flip();
+        return new TriangleMesh(vertices, normals, indices);
+    }
+
+    private static void assertPacked(TriangleMesh mesh) {
+        Point3DBuffer vertices = mesh.getVertices();
+        PackedMesh packed = PackedMesh.pack(vertices, mesh.getNormals(), mesh.getIndices());
+        float size = (vertices.capacity() - 1) * 0.37f;
+        Matrix4 dequantization = packed.getDequantization();
+        for (int i = 0; i < vertices.capacity(); i++) {
+            Point3D p = vertices.get(i), q = packed.getVertex(i);
+            assertEquals(p.getX(), q.getX(), size / 65534);
+            assertEquals(p.getY(), q.getY(), size / 65534);
+            assertEquals(p.getZ(), q.getZ(), size / 65534);
+            if (mesh.getNormals() != null) {
+                Point3D n = mesh.getNormals().get(i);
+                assertNormal(n.getX(), n.getY(), n.getZ(), packed.getNormal(i));
+            }
+        }
+        for (int i = 0; i < mesh.getIndices().capacity(); i++)
+            assertEquals(mesh.getIndices().get(i), packed.getIndex(i));
+
+        // The corners of the bounds are mapped from the corners of [-1, 1]
+        Vector4 corner = dequantization.multiply(new Vector4(-1, -1, 0, 1));
+        assertEquals(10, corner.getX(), 0.0001f);
+        assertEquals(5, corner.getZ(), 0.0001f);
+        corner = dequantization.multiply(new Vector4(1, 0, 0, 1));
+        assertEquals(10 + size, corner.getX(), 0.0001f);
+
+        mesh.setCompact(true);
+        assertEquals(packed.getBytes(), mesh.getGpuMemory());
+    }
+
+    @Test
+    public void testPackSmallMesh() {
+        assertPacked(strip(100, true));
+        assertPacked(strip(100, false));
+    }
+
+    @Test
+    public void testPackLargeMeshes() {
+        assertPacked(strip(1000, true));
+        assertPacked(strip(70000, true));
+    }
+
+    @Test
+    public void testGpuMemory() {
+        TriangleMesh mesh = strip(1000, true);
+        // 12 bytes each for the position and normal and 4 for each index
+        assertEquals(1000 * 24 + 998 * 3 * 4, mesh.getGpuMemory());
+        mesh.setCompact(true);
+        // 8 bytes for the position, 4 for the normal and 2 for each index
+        assertEquals(1000 * 12 + 998 * 3 * 2, mesh.getGpuMemory());
+    }
+}
@@ -0,0 +1,210 @@
+package unsw.graphics.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Checks that PLY files in each format are read into a {@link TriangleMesh}
+ * correctly.
+ */
+public class PlyParserTest extends TestCase {
+
+    private static final String QUAD_HEADER = "element vertex 4\n"
+            + "property float x\n"
+            + "property float y\n"
+            + "property float z\n"
+            + "property uchar red\n"
+            + "element face 1\n"
+            + "property list uchar int vertex_indices\n"
+            + "end_header\n";
+
+    @Override
+    protected void setUp() {
+        // Parse every file rather than loading it from the cache
+        MeshCache.setEnabled(false);
+    }
+
+    @Override
+    protected void tearDown() {
+        MeshCache.setEnabled(true);
+    }
+
+    private static File write(byte[] contents) throws IOException {
+        File file = File.createTempFile("test", ".ply");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents);
+        }
+        return file;
+    }
+
+    private static byte[] binaryQuad(String format, ByteOrder order) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("ply\nformat " + format + " 1.0\n" + QUAD_HEADER)
+                .getBytes(StandardCharsets.US_ASCII));
+        ByteBuffer body = ByteBuffer.allocate(4 * 13 + 17).order(order);
+        float[][] points = { { 0, 0, 0 }, { 1, 0, 0 }, { 1, 1, 0 }, { 0, 1, 0.5f } };
+        for (float[] p : points)
+            body.putFloat(p[0]).putFloat(p[1]).putFloat(p[2]).put((byte) 255);
+        body.put((byte) 4).putInt(0).putInt(1).putInt(2).putInt(3);
+        out.write(body.array());
+        return out.toByteArray();
+    }
+
+    /**
+     * A binary quad with a face of two vertices and a face of none before it,
+     * both of which should be dropped.
+     */
+    private static byte[] binaryQuadWithDegenerateFaces(String format, ByteOrder order)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("ply\nformat " + format + " 1.0\n" + QUAD_HEADER.replace("face 1", "face 3"))
+                .getBytes(StandardCharsets.US_ASCII));
+        ByteBuffer body = ByteBuffer.allocate(4 * 13 + 1 + 9 + 17).order(order);
+        float[][] points = { { 0, 0, 0 }, { 1, 0, 0 }, { 1, 1, 0 }, { 0, 1, 0.5f } };
+        for (float[] p : points)
+            body.putFloat(p[0]).putFloat(p[1]).putFloat(p[2]).put((byte) 255);
+        body.put((byte) 2).putInt(0).putInt(1);
+        body.put((byte) 0);
+        body.put((byte) 4).putInt(0).putInt(1).putInt(2).putInt(3);
+        out.write(body.array());
+        return out.toByteArray();
+    }
+
+    private static void assertQuad(TriangleMesh mesh) {
+        Point3DBuffer vertices = mesh.getVertices();
+        assertEquals(4, vertices.capacity());
+        assertEquals(1f, vertices.get(2).getX());
+        assertEquals(1f, vertices.get(2).getY());
+        assertEquals(0.5f, vertices.get(3).getZ());
+
+        // The quad is split into a fan of two triangles
+        IntBuffer indices = mesh.getIndices();
+        assertEquals(6, indices.capacity());
+        int[] expected = { 0, 1, 2, 0, 2, 3 };
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], indices.get(i));
+    }
+
+    @Test
+    public void testAscii() throws IOException {
+        String ply = "ply\nformat ascii 1.0\ncomment a quad\n" + QUAD_HEADER
+                + "0 0 0 255\n1 0 0 255\n1.0e0 10E-1 0 255\n0 1 0.5 255\n4 0 1 2 3\n";
+        assertQuad(new TriangleMesh(write(ply.getBytes(StandardCharsets.US_ASCII)).getPath()));
+    }
+
+    @Test
+    public void testAsciiWithWindowsLineEndings() throws IOException {
+        String ply = "ply\nformat ascii 1.0\n" + QUAD_HEADER
+                + "0 0 0 255\n1 0 0 255\n1 1 0 255\n0 1 0.5 255\n4 0 1 2 3\n";
+        ply = ply.replace("\n", "\r\n");
+        assertQuad(new TriangleMesh(write(ply.getBytes(StandardCharsets.US_ASCII)).getPath()));
+    }
+
+    @Test
+    public void testBinaryLittleEndian() throws IOException {
+        assertQuad(new TriangleMesh(write(binaryQuad("binary_little_endian",
+                ByteOrder.LITTLE_ENDIAN)).getPath()));
+    }
+
+    @Test
+    public void testBinaryBigEndian() throws IOException {
+        assertQuad(new TriangleMesh(write(binaryQuad("binary_big_endian",
+                ByteOrder.BIG_ENDIAN)).getPath()));
+    }
+
+    @Test
+    public void testBinaryLittleEndianDegenerateFaces() throws IOException {
+        assertQuad(new TriangleMesh(write(binaryQuadWithDegenerateFaces("binary_little_endian",
+                ByteOrder.LITTLE_ENDIAN)).getPath()));
+    }
+
+    @Test
+    public void testBinaryBigEndianDegenerateFaces() throws IOException {
+        assertQuad(new TriangleMesh(write(binaryQuadWithDegenerateFaces("binary_big_endian",
+                ByteOrder.BIG_ENDIAN)).getPath()));
+    }
+
+    @Test
+    public void testAsciiIndexOutOfRange() throws IOException {
+        String ply = "ply\nformat ascii 1.0\n" + QUAD_HEADER
+                + "0 0 0 255\n1 0 0 255\n1 1 0 255\n0 1 0.5 255\n4 0 1 2 4\n";
+        try {
+            new TriangleMesh(write(ply.getBytes(StandardCharsets.US_ASCII)).getPath());
+            fail("A face with an index past the last vertex should not load");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testBinaryIndexOutOfRange() throws IOException {
+        byte[] ply = binaryQuad("binary_little_endian", ByteOrder.LITTLE_ENDIAN);
+        // Make the last index of the face -1
+        for (int i = ply.length - 4; i < ply.length; i++)
+            ply[i] = (byte) 0xff;
+        try {
+            new TriangleMesh(write(ply).getPath());
+            fail("A face with a negative index should not load");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testLargeAscii() throws IOException {
+        // Big enough to be split into ranges that are parsed in parallel
+        int n = 100000;
+        StringBuilder ply = new StringBuilder("ply\nformat ascii 1.0\nelement vertex " + n
+                + "\nproperty float x\nproperty float y\nproperty float z\n"
+                + "element face " + (n - 2) + "\nproperty list uchar int vertex_indices\n"
+                + "end_header\n");
+        for (int i = 0; i < n; i++)
+            ply.append(i).append(" -").append(i * 0.25).append(' ').append(i / 1000.0)
+                    .append('\n');
+        for (int i = 0; i < n - 2; i++)
+            ply.append("3 ").append(i).append(' ').append(i + 1).append(' ').append(i + 2)
+                    .append('\n');
+
+        TriangleMesh mesh = new TriangleMesh(
+                write(ply.toString().getBytes(StandardCharsets.US_ASCII)).getPath());
+        Point3DBuffer vertices = mesh.getVertices();
+        for (int i = 0; i < n; i++) {
+            Point3D p = vertices.get(i);
+            assertEquals((float) i, p.getX());
+            assertEquals((float) -(i * 0.25), p.getY());
+            assertEquals((float) (i / 1000.0), p.getZ());
+        }
+        IntBuffer indices = mesh.getIndices();
+        assertEquals(3 * (n - 2), indices.capacity());
+        for (int i = 0; i < n - 2; i++) {
+            assertEquals(i, indices.get(3 * i));
+            assertEquals(i + 2, indices.get(3 * i + 2));
+        }
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        String ply = "ply\nformat ascii 1.0\n" + QUAD_HEADER + "0 0 0 255\n1 0 0 255\n";
+        try {
+            new TriangleMesh(write(ply.getBytes(StandardCharsets.US_ASCII)).getPath());
+            fail("A file with missing elements should not load");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package unsw.graphics.tests;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.MutableMatrix4;
+import unsw.graphics.Quaternion;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.Point3D;
+
+/**
+ * Checks quaternion rotations against the equivalent rotation matrices.
+ */
+public class QuaternionTest extends TestCase {
+
+    private static final float EPSILON = 0.0001f;
+
+    private static void assertValuesEqual(float[] expected, float[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertEquals("value " + i, expected[i], actual[i], EPSILON);
+    }
+
+    @Test
+    public void testAxes() {
+        assertValuesEqual(Matrix4.rotationX(30).getValues(),
+                Quaternion.rotationX(30).toMatrix4().getValues());
+        assertValuesEqual(Matrix4.rotationY(-70).getValues(),
+                Quaternion.rotationY(-70).toMatrix4().getValues());
+        assertValuesEqual(Matrix4.rotationZ(200).getValues(),
+                Quaternion.rotationZ(200).toMatrix4().getValues());
+        assertValuesEqual(Matrix4.rotationY(45).getValues(),
+                Quaternion.axisAngle(new Vector3(0, 3, 0), 45).toMatrix4().getValues());
+    }
+
+    @Test
+    public void testComposition() {
+        Quaternion q = new Quaternion().rotateY(40).rotateX(-25).rotateZ(10);
+        Matrix4 expected = Matrix4.rotationY(40).multiply(Matrix4.rotationX(-25))
+                .multiply(Matrix4.rotationZ(10));
+        assertValuesEqual(expected.getValues(), q.toMatrix4().getValues());
+
+        Quaternion product = Quaternion.rotationY(40).multiply(Quaternion.rotationX(-25))
+                .multiply(Quaternion.rotationZ(10));
+        assertValuesEqual(expected.getValues(), product.toMatrix4().getValues());
+
+        // The conjugate is the inverse
+        Quaternion inverse = new Quaternion(q).conjugate();
+        assertValuesEqual(Matrix4.identity().getValues(),
+                new Quaternion(q).multiply(inverse).toMatrix4().getValues());
+
+        Point3D p = q.transform(new Point3D(1, 2, 3));
+        Point3D r = new CoordFrame3D(expected).transform(new Point3D(1, 2, 3));
+        assertEquals(r.getX(), p.getX(), EPSILON);
+        assertEquals(r.getY(), p.getY(), EPSILON);
+        assertEquals(r.getZ(), p.getZ(), EPSILON);
+    }
+
+    @Test
+    public void testFrames() {
+        Quaternion q = Quaternion.rotationX(30);
+        Quaternion r = Quaternion.rotationZ(-60);
+        CoordFrame3D frame = CoordFrame3D.identity().translate(1, 2, 3).rotate(q).rotate(r)
+                .scale(2, 2, 2);
+        Matrix4 expected = Matrix4.translation(1, 2, 3).multiply(Matrix4.rotationX(30))
+                .multiply(Matrix4.rotationZ(-60)).multiply(Matrix4.scale(2, 2, 2));
+        // Changing the quaternion afterwards doesn't affect the frame
+        q.rotateY(90);
+        assertValuesEqual(expected.getValues(), frame.getMatrix().getValues());
+
+        MutableMatrix4 m = new MutableMatrix4(Matrix4.translation(1, 2, 3));
+        m.rotate(Quaternion.rotationX(30)).rotate(r).scale(2, 2, 2);
+        assertValuesEqual(expected.getValues(), m.toMatrix4().getValues());
+    }
+
+    @Test
+    public void testInterpolation() {
+        Quaternion a = Quaternion.rotationY(10);
+        Quaternion b = Quaternion.rotationY(110);
+        Quaternion q = new Quaternion();
+
+        assertValuesEqual(a.toMatrix4().getValues(), q.slerp(a, b, 0).toMatrix4().getValues());
+        assertValuesEqual(b.toMatrix4().getValues(), q.slerp(a, b, 1).toMatrix4().getValues());
+        assertValuesEqual(Matrix4.rotationY(35).getValues(),
+                q.slerp(a, b, 0.25f).toMatrix4().getValues());
+
+        // -b is the same rotation as b, but slerp should still take the short way round
+        Quaternion negB = new Quaternion(-b.getX(), -b.getY(), -b.getZ(), -b.getW());
+        assertValuesEqual(Matrix4.rotationY(60).getValues(),
+                q.slerp(a, negB, 0.5f).toMatrix4().getValues());
+
+        // nlerp is exact halfway between
+        assertValuesEqual(Matrix4.rotationY(60).getValues(),
+                q.nlerp(a, b, 0.5f).toMatrix4().getValues());
+        assertEquals(1, q.length(), EPSILON);
+    }
+}
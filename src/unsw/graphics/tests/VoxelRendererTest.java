@@ -0,0 +1,53 @@
+package unsw.graphics.tests;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.voxel.VoxelGrid;
+import unsw.graphics.voxel.VoxelRenderer;
+
+/**
+ * Checks that a {@link VoxelRenderer} spreads rebuilding dirty chunks over
+ * several updates.
+ *
+ * The grids are empty, so every chunk's mesh is null and no OpenGL context is
+ * needed.
+ */
+public class VoxelRendererTest extends TestCase {
+
+    private static int dirtyChunks(VoxelGrid grid) {
+        int dirty = 0;
+        for (int cx = 0; cx < grid.getChunksX(); cx++)
+            for (int cy = 0; cy < grid.getChunksY(); cy++)
+                for (int cz = 0; cz < grid.getChunksZ(); cz++)
+                    if (grid.isDirty(cx, cy, cz))
+                        dirty++;
+        return dirty;
+    }
+
+    @Test
+    public void testChunksPerUpdate() throws InterruptedException {
+        int size = 4 * VoxelGrid.CHUNK_SIZE;
+        VoxelGrid grid = new VoxelGrid(size, size, size);
+        VoxelRenderer renderer = new VoxelRenderer(grid, 1);
+        renderer.setChunksPerUpdate(10);
+        try {
+            renderer.update(null);
+            assertEquals(10, renderer.getPendingCount());
+            assertEquals(64 - 10, dirtyChunks(grid));
+
+            // Every chunk is started after enough updates
+            int updates = 1;
+            while ((dirtyChunks(grid) > 0 || renderer.getPendingCount() > 0) && updates < 1000) {
+                Thread.sleep(1);
+                renderer.update(null);
+                updates++;
+            }
+            assertEquals(0, dirtyChunks(grid));
+            assertEquals(0, renderer.getPendingCount());
+            assertTrue(updates >= 7);
+        } finally {
+            renderer.destroy(null);
+        }
+    }
+}
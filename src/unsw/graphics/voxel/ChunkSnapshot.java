@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package unsw.graphics.voxel;
+
+/**
+ * A copy of the voxels of one chunk, with a border one voxel thick taken from
+ * the neighbouring chunks. The border decides which faces on the edge of the
+ * chunk are hidden.
+ */
+class ChunkSnapshot {
+
+    /**
+     * The position of the chunk in the grid.
+     */
+    final int ox, oy, oz;
+
+    /**
+     * The size of the chunk, not counting the border.
+     */
+    final int nx, ny, nz;
+
+    private final boolean[] voxels;
+
+    ChunkSnapshot(int ox, int oy, int oz, int nx, int ny, int nz) {
+        this.ox = ox;
+        this.oy = oy;
+        this.oz = oz;
+        this.nx = nx;
+        this.ny = ny;
+        this.nz = nz;
+        voxels = new boolean[(nx + 2) * (ny + 2) * (nz + 2)];
+    }
+
+    /**
+     * Whether the voxel at the given position relative to the chunk is
+     * solid. Each coordinate can be from -1 to the size of the chunk.
+     */
+    boolean get(int x, int y, int z) {
+        return voxels[((x + 1) * (ny + 2) + y + 1) * (nz + 2) + z + 1];
+    }
+
+    void set(int x, int y, int z) {
+        voxels[((x + 1) * (ny + 2) + y + 1) * (nz + 2) + z + 1] = true;
+    }
+}
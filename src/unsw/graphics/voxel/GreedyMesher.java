@@ -0,0 +1,190 @@
+/**
+ *
+ */
+package unsw.graphics.voxel;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Builds the mesh for a chunk of a {@link VoxelGrid}.
+ *
+ * Only faces between a solid voxel and an empty one are visible, so faces
+ * between two solid voxels are left out. The visible faces in each plane are
+ * then merged greedily into as few rectangles as possible: a face is extended
+ * along one axis as far as possible, and then the resulting strip along the
+ * other axis as far as possible. A flat wall of any size becomes two
+ * triangles.
+ *
+ * Each rectangle has its own four vertices, so that every vertex has the
+ * normal of its face.
+ */
+public class GreedyMesher {
+
+    private GreedyMesher() {
+    }
+
+    /**
+     * Build the mesh for the given chunk of the given grid. The vertices are
+     * in grid coordinates, so voxel (x, y, z) fills the cube from (x, y, z) to
+     * (x+1, y+1, z+1).
+     *
+     * @param grid
+     * @param cx
+     * @param cy
+     * @param cz
+     * @return The mesh, or null if the chunk has no visible faces.
+     */
+    public static TriangleMesh mesh(VoxelGrid grid, int cx, int cy, int cz) {
+        return mesh(grid.snapshot(cx, cy, cz));
+    }
+
+    /**
+     * Build the mesh for the given copy of a chunk.
+     */
+    static TriangleMesh mesh(ChunkSnapshot chunk) {
+        Builder builder = new Builder();
+        int[] n = { chunk.nx, chunk.ny, chunk.nz };
+        int[] a = new int[3];
+        int[] b = new int[3];
+        int[] mask = new int[Math.max(n[0], Math.max(n[1], n[2]))
+                * Math.max(n[0], Math.max(n[1], n[2]))];
+
+        for (int d = 0; d < 3; d++) {
+            int u = (d + 1) % 3;
+            int v = (d + 2) % 3;
+
+            // Each plane between two layers of voxels along d, including the
+            // two on the outside of the chunk
+            for (int plane = 0; plane <= n[d]; plane++) {
+                // Find the visible faces in this plane. 1 means the face of
+                // the voxel below the plane, facing up along d. -1 means the
+                // face of the voxel above the plane, facing down. Faces of
+                // voxels outside the chunk belong to their own chunk.
+                for (int j = 0; j < n[v]; j++) {
+                    for (int i = 0; i < n[u]; i++) {
+                        a[d] = plane - 1;
+                        a[u] = i;
+                        a[v] = j;
+                        b[d] = plane;
+                        b[u] = i;
+                        b[v] = j;
+                        boolean below = chunk.get(a[0], a[1], a[2]);
+                        boolean above = chunk.get(b[0], b[1], b[2]);
+                        int face = 0;
+                        if (below && !above && plane > 0)
+                            face = 1;
+                        else if (above && !below && plane < n[d])
+                            face = -1;
+                        mask[j * n[u] + i] = face;
+                    }
+                }
+
+                // Merge them into rectangles
+                for (int j = 0; j < n[v]; j++) {
+                    for (int i = 0; i < n[u];) {
+                        int face = mask[j * n[u] + i];
+                        if (face == 0) {
+                            i++;
+                            continue;
+                        }
+                        int w = 1;
+                        while (i + w < n[u] && mask[j * n[u] + i + w] == face)
+                            w++;
+                        int h = 1;
+                        grow:
+                        while (j + h < n[v]) {
+                            for (int k = 0; k < w; k++) {
+                                if (mask[(j + h) * n[u] + i + k] != face)
+                                    break grow;
+                            }
+                            h++;
+                        }
+                        for (int l = 0; l < h; l++)
+                            Arrays.fill(mask, (j + l) * n[u] + i, (j + l) * n[u] + i + w, 0);
+
+                        a[d] = plane;
+                        a[u] = i;
+                        a[v] = j;
+                        builder.quad(chunk, a, d, u, v, w, h, face);
+                        i += w;
+                    }
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Collects the rectangles of a chunk.
+     */
+    private static class Builder {
+        private float[] positions = new float[3 * 256];
+        private float[] normals = new float[3 * 256];
+        private int vertices;
+
+        /**
+         * Add a rectangle in the plane perpendicular to d with its corner at
+         * p, w voxels along u and h voxels along v, facing the given way
+         * along d.
+         */
+        void quad(ChunkSnapshot chunk, int[] p, int d, int u, int v, int w, int h, int face) {
+            if (positions.length < (vertices + 4) * 3) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+                normals = Arrays.copyOf(normals, normals.length * 2);
+            }
+            float[] corner = { p[0] + chunk.ox, p[1] + chunk.oy, p[2] + chunk.oz };
+            float[] du = new float[3];
+            float[] dv = new float[3];
+            du[u] = w;
+            dv[v] = h;
+            // (d, u, v) is a right-handed set of axes, so going around
+            // u then v is anticlockwise seen from the positive side of d
+            if (face > 0) {
+                vertex(corner, 0, 0, du, dv, d, face);
+                vertex(corner, 1, 0, du, dv, d, face);
+                vertex(corner, 1, 1, du, dv, d, face);
+                vertex(corner, 0, 1, du, dv, d, face);
+            } else {
+                vertex(corner, 0, 0, du, dv, d, face);
+                vertex(corner, 0, 1, du, dv, d, face);
+                vertex(corner, 1, 1, du, dv, d, face);
+                vertex(corner, 1, 0, du, dv, d, face);
+            }
+        }
+
+        private void vertex(float[] corner, int s, int t, float[] du, float[] dv, int d,
+                int face) {
+            int k = vertices * 3;
+            for (int c = 0; c < 3; c++) {
+                positions[k + c] = corner[c] + s * du[c] + t * dv[c];
+                normals[k + c] = 0;
+            }
+            normals[k + d] = face;
+            vertices++;
+        }
+
+        TriangleMesh build() {
+            if (vertices == 0)
+                return null;
+            Point3DBuffer vertexBuffer = new Point3DBuffer(vertices);
+            Point3DBuffer normalBuffer = new Point3DBuffer(vertices);
+            for (int i = 0; i < vertices; i++) {
+                vertexBuffer.put(i, positions[3*i], positions[3*i + 1], positions[3*i + 2]);
+                normalBuffer.put(i, normals[3*i], normals[3*i + 1], normals[3*i + 2]);
+            }
+            IntBuffer indices = GLBuffers.newDirectIntBuffer(vertices / 4 * 6);
+            for (int q = 0; q < vertices; q += 4) {
+                indices.put(q).put(q + 1).put(q + 2);
+                indices.put(q + 2).put(q + 3).put(q);
+            }
+            indices.flip();
+            return new TriangleMesh(vertexBuffer, normalBuffer, indices);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ *
+ */
+package unsw.graphics.voxel;
+
+import java.util.Arrays;
+
+/**
+ * A 3D grid of voxels (cubes), each of which is either solid or empty.
+ *
+ * The grid is divided into chunks of {@link #CHUNK_SIZE} voxels along each
+ * side. A {@link VoxelRenderer} draws each chunk with its own mesh, so
+ * changing a voxel only marks the chunks whose meshes it affects as dirty,
+ * and only those are rebuilt.
+ *
+ * This class is not thread-safe. Voxels should only be changed on the thread
+ * that draws the grid (e.g. in display()).
+ */
+public class VoxelGrid {
+
+    /**
+     * The number of voxels along each side of a chunk.
+     */
+    public static final int CHUNK_SIZE = 32;
+
+    private final int sizeX, sizeY, sizeZ;
+
+    private final int chunksX, chunksY, chunksZ;
+
+    private final boolean[] voxels;
+
+    private final boolean[] dirty;
+
+    /**
+     * Create an empty grid with the given dimensions. Every chunk starts off
+     * dirty.
+     *
+     * @param sizeX
+     * @param sizeY
+     * @param sizeZ
+     */
+    public VoxelGrid(int sizeX, int sizeY, int sizeZ) {
+        if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0)
+            throw new IllegalArgumentException("Invalid grid size " + sizeX + "x" + sizeY
+                    + "x" + sizeZ);
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        chunksX = (sizeX + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunksY = (sizeY + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunksZ = (sizeZ + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        voxels = new boolean[sizeX * sizeY * sizeZ];
+        dirty = new boolean[chunksX * chunksY * chunksZ];
+        Arrays.fill(dirty, true);
+    }
+
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    public int getSizeZ() {
+        return sizeZ;
+    }
+
+    public int getChunksX() {
+        return chunksX;
+    }
+
+    public int getChunksY() {
+        return chunksY;
+    }
+
+    public int getChunksZ() {
+        return chunksZ;
+    }
+
+    /**
+     * Whether the voxel at the given position is solid. Positions outside the
+     * grid are empty.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public boolean get(int x, int y, int z) {
+        if (x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ)
+            return false;
+        return voxels[(x * sizeY + y) * sizeZ + z];
+    }
+
+    /**
+     * Make the voxel at the given position solid or empty.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param solid
+     */
+    public void set(int x, int y, int z, boolean solid) {
+        if (x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ)
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ", " + z
+                    + ") is outside the grid");
+        int i = (x * sizeY + y) * sizeZ + z;
+        if (voxels[i] == solid)
+            return;
+        voxels[i] = solid;
+
+        // A voxel on the edge of a chunk also hides or shows a face of its
+        // neighbour in the next chunk
+        int cx = x / CHUNK_SIZE, cy = y / CHUNK_SIZE, cz = z / CHUNK_SIZE;
+        markDirty(cx, cy, cz);
+        int lx = x % CHUNK_SIZE, ly = y % CHUNK_SIZE, lz = z % CHUNK_SIZE;
+        if (lx == 0)
+            markDirty(cx - 1, cy, cz);
+        if (lx == CHUNK_SIZE - 1)
+            markDirty(cx + 1, cy, cz);
+        if (ly == 0)
+            markDirty(cx, cy - 1, cz);
+        if (ly == CHUNK_SIZE - 1)
+            markDirty(cx, cy + 1, cz);
+        if (lz == 0)
+            markDirty(cx, cy, cz - 1);
+        if (lz == CHUNK_SIZE - 1)
+            markDirty(cx, cy, cz + 1);
+    }
+
+    /**
+     * Make every voxel in the given box solid or empty. The box includes
+     * (x0, y0, z0) but not (x1, y1, z1), and is clipped to the grid.
+     *
+     * @param x0
+     * @param y0
+     * @param z0
+     * @param x1
+     * @param y1
+     * @param z1
+     * @param solid
+     */
+    public void fill(int x0, int y0, int z0, int x1, int y1, int z1, boolean solid) {
+        for (int x = Math.max(x0, 0); x < Math.min(x1, sizeX); x++)
+            for (int y = Math.max(y0, 0); y < Math.min(y1, sizeY); y++)
+                for (int z = Math.max(z0, 0); z < Math.min(z1, sizeZ); z++)
+                    set(x, y, z, solid);
+    }
+
+    private void markDirty(int cx, int cy, int cz) {
+        if (cx >= 0 && cy >= 0 && cz >= 0 && cx < chunksX && cy < chunksY && cz < chunksZ)
+            dirty[chunkIndex(cx, cy, cz)] = true;
+    }
+
+    int chunkIndex(int cx, int cy, int cz) {
+        return (cx * chunksY + cy) * chunksZ + cz;
+    }
+
+    /**
+     * Whether the mesh of the given chunk is out of date.
+     *
+     * @param cx
+     * @param cy
+     * @param cz
+     * @return
+     */
+    public boolean isDirty(int cx, int cy, int cz) {
+        return dirty[chunkIndex(cx, cy, cz)];
+    }
+
+    /**
+     * Copy the voxels of the given chunk, and the layer of voxels around it,
+     * into a {@link ChunkSnapshot} that can be meshed on another thread.
+     */
+    ChunkSnapshot snapshot(int cx, int cy, int cz) {
+        int ox = cx * CHUNK_SIZE, oy = cy * CHUNK_SIZE, oz = cz * CHUNK_SIZE;
+        ChunkSnapshot snapshot = new ChunkSnapshot(ox, oy, oz,
+                Math.min(CHUNK_SIZE, sizeX - ox), Math.min(CHUNK_SIZE, sizeY - oy),
+                Math.min(CHUNK_SIZE, sizeZ - oz));
+        for (int x = -1; x <= snapshot.nx; x++)
+            for (int y = -1; y <= snapshot.ny; y++)
+                for (int z = -1; z <= snapshot.nz; z++)
+                    if (get(ox + x, oy + y, oz + z))
+                        snapshot.set(x, y, z);
+        return snapshot;
+    }
+
+    /**
+     * Mark the given chunk as up to date.
+     */
+    void clean(int cx, int cy, int cz) {
+        dirty[chunkIndex(cx, cy, cz)] = false;
+    }
+
+    /**
+     * Mark the chunk with the given index as out of date.
+     */
+    void markDirty(int chunk) {
+        dirty[chunk] = true;
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ *
+ */
+package unsw.graphics.voxel;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Draws a {@link VoxelGrid} with one {@link TriangleMesh} per chunk.
+ *
+ * The meshes of dirty chunks are rebuilt by {@link GreedyMesher} on
+ * background threads, so editing the grid doesn't hold up drawing. Until a new
+ * mesh is ready the old one is drawn. Call {@link #update(GL3)} once a frame
+ * to start rebuilding chunks that have changed and to swap in meshes that have
+ * finished.
+ *
+ * The voxels of a chunk are copied on the OpenGL thread before it is rebuilt,
+ * so each update only starts a limited number of chunks (see
+ * {@link #setChunksPerUpdate(int)}). A new grid, whose chunks are all dirty,
+ * is built over several frames rather than in one long one.
+ */
+public class VoxelRenderer {
+
+    /**
+     * The default for how many chunks {@link #update(GL3)} starts rebuilding.
+     */
+    public static final int DEFAULT_CHUNKS_PER_UPDATE = 16;
+
+    /**
+     * How many times in a row building a chunk may fail before it is given
+     * up on. It is built again if it changes.
+     */
+    private static final int MAX_FAILURES = 3;
+
+    /**
+     * A mesh that has finished building, or the exception that stopped it.
+     */
+    private static class Result {
+        final int chunk;
+        final TriangleMesh mesh;
+        final RuntimeException error;
+
+        Result(int chunk, TriangleMesh mesh, RuntimeException error) {
+            this.chunk = chunk;
+            this.mesh = mesh;
+            this.error = error;
+        }
+    }
+
+    private final VoxelGrid grid;
+
+    // The mesh of each chunk, or null if it is empty
+    private final TriangleMesh[] meshes;
+
+    // Whether each chunk is being rebuilt
+    private final boolean[] building;
+
+    // The number of times in a row building each chunk has failed
+    private final int[] failures;
+
+    private final ExecutorService executor;
+
+    private final ConcurrentLinkedQueue<Result> finished = new ConcurrentLinkedQueue<Result>();
+
+    private int pending;
+
+    private int chunksPerUpdate = DEFAULT_CHUNKS_PER_UPDATE;
+
+    /**
+     * Create a renderer for the given grid, building meshes on all but one of
+     * the processors.
+     *
+     * @param grid
+     */
+    public VoxelRenderer(VoxelGrid grid) {
+        this(grid, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Create a renderer for the given grid, building meshes on the given
+     * number of background threads.
+     *
+     * @param grid
+     * @param threads
+     */
+    public VoxelRenderer(VoxelGrid grid, int threads) {
+        this.grid = grid;
+        int chunks = grid.getChunksX() * grid.getChunksY() * grid.getChunksZ();
+        meshes = new TriangleMesh[chunks];
+        building = new boolean[chunks];
+        failures = new int[chunks];
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Voxel mesher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Set the most chunks {@link #update(GL3)} starts rebuilding each time it
+     * is called.
+     *
+     * @param chunks
+     */
+    public void setChunksPerUpdate(int chunks) {
+        this.chunksPerUpdate = chunks;
+    }
+
+    public int getChunksPerUpdate() {
+        return chunksPerUpdate;
+    }
+
+    /**
+     * Swap in the meshes that have finished building and start rebuilding
+     * up to {@link #getChunksPerUpdate()} of the chunks that have changed.
+     * Must be called on the OpenGL thread.
+     *
+     * @param gl
+     */
+    public void update(GL3 gl) {
+        Result result;
+        while ((result = finished.poll()) != null) {
+            building[result.chunk] = false;
+            pending--;
+            if (result.error != null) {
+                // The chunk was marked clean when it started, so it has to be
+                // marked dirty to be tried again in a later update
+                failures[result.chunk]++;
+                if (failures[result.chunk] < MAX_FAILURES)
+                    grid.markDirty(result.chunk);
+                else if (failures[result.chunk] == MAX_FAILURES)
+                    System.err.println("Could not build the mesh of chunk " + result.chunk
+                            + ", giving up: " + result.error);
+                continue;
+            }
+            failures[result.chunk] = 0;
+            if (meshes[result.chunk] != null)
+                meshes[result.chunk].destroy(gl);
+            if (result.mesh != null)
+                result.mesh.init(gl);
+            meshes[result.chunk] = result.mesh;
+        }
+
+        int started = 0;
+        for (int cx = 0; cx < grid.getChunksX(); cx++) {
+            for (int cy = 0; cy < grid.getChunksY(); cy++) {
+                for (int cz = 0; cz < grid.getChunksZ(); cz++) {
+                    final int chunk = grid.chunkIndex(cx, cy, cz);
+                    // A chunk that changes while it is being built is
+                    // rebuilt again once the first build has finished
+                    if (!grid.isDirty(cx, cy, cz) || building[chunk])
+                        continue;
+                    if (started == chunksPerUpdate)
+                        return;
+                    started++;
+                    final ChunkSnapshot snapshot = grid.snapshot(cx, cy, cz);
+                    grid.clean(cx, cy, cz);
+                    building[chunk] = true;
+                    pending++;
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                finished.add(new Result(chunk, GreedyMesher.mesh(snapshot),
+                                        null));
+                            } catch (RuntimeException e) {
+                                finished.add(new Result(chunk, null, e));
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of chunks being rebuilt.
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        return pending;
+    }
+
+    /**
+     * Draw every chunk in the given frame. Voxel (x, y, z) fills the cube
+     * from (x, y, z) to (x+1, y+1, z+1) in the frame.
+     *
+     * @param gl
+     * @param frame
+     */
+    public void draw(GL3 gl, CoordFrame3D frame) {
+        for (TriangleMesh mesh : meshes) {
+            if (mesh != null)
+                mesh.draw(gl, frame);
+        }
+    }
+
+    /**
+     * Stop building meshes and release the meshes that have been built.
+     *
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        executor.shutdownNow();
+        for (int i = 0; i < meshes.length; i++) {
+            if (meshes[i] != null)
+                meshes[i].destroy(gl);
+            meshes[i] = null;
+        }
+        finished.clear();
+    }
+}